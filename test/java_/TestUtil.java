@@ -0,0 +1,61 @@
+package java_;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+
+/**
+ * 各个测试共用的辅助方法：测量堆内存占用，以及启动一组线程并等待它们结束。
+ */
+public final class TestUtil {
+
+    /**
+     * 测量内存时让被测对象保持可达，避免在 {@link #usedMemory()} 之前被回收。
+     */
+    public static volatile Object retained;
+
+    private TestUtil() {
+    }
+
+    /**
+     * 连续 GC 几次之后的已用堆内存。两次调用的差值是期间新增的存活对象的大致大小。
+     */
+    public static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * 启动 threads 个线程并等待它们结束。线程中的断言失败只会结束那个线程，所以在这里收集起来，
+     * 全部结束之后在调用者的线程中重新抛出。
+     */
+    public static void runThreads(int threads, IntFunction<Runnable> body) throws InterruptedException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            Runnable task = body.apply(t);
+            workers[t] = new Thread(() -> {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    if (!failure.compareAndSet(null, e)) {
+                        failure.get().addSuppressed(e);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        Throwable e = failure.get();
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        if (e != null) {
+            throw new AssertionError(e);
+        }
+    }
+}
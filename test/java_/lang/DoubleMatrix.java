@@ -0,0 +1,347 @@
+package java_.lang;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.function.DoubleConsumer;
+
+/**
+ * 行优先存放在一整块连续内存中的 double 矩阵，用于代替 {@code double[][]}。
+ * <p>
+ * {@link LocalityTest} 中的 {@code new int[LEN][LEN]} 实际上是 LEN 个独立的行数组：每一行都有自己的对象头，
+ * 访问 {@code arr[i][j]} 要先读出第 i 行的引用再访问元素，而且相邻的行在堆中不一定相邻。
+ * 这里所有元素存放在一个一维数组中，第 i 行第 j 列的元素位于 {@code i * cols + j}，行与行首尾相接。
+ * <p>
+ * 元素个数超过 Java 数组的最大长度时，使用多块堆外的直接缓冲区存放，每块 2^{@value #CHUNK_SHIFT} 个元素。
+ * 堆外矩阵也可以通过 {@link #offHeap(int, int)} 显式创建，以免大矩阵给 GC 带来压力。
+ * 堆外内存受 {@code -XX:MaxDirectMemorySize} 限制，默认和最大堆大小相同，超过时抛出 {@link OutOfMemoryError}。
+ * 例如 50000 * 50000 的矩阵需要 20GB 堆外内存，运行时要相应地设置这个参数。
+ * <p>
+ * {@link #row(int)}、{@link #column(int)}、{@link #strided(long, long, int)} 返回共享底层存储的视图，
+ * 可以对一行、一列或者任意等间隔的元素进行读写、填充和批量复制。
+ */
+public final class DoubleMatrix {
+
+    // 和 ArrayList.MAX_ARRAY_SIZE 相同，一些虚拟机会在数组中保留一些头信息
+    static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    // 堆外存储每块的元素个数默认为 2^CHUNK_SHIFT
+    static final int CHUNK_SHIFT = 27;
+
+    private final int rows, cols;
+    private final int chunkShift, chunkMask;
+
+    // 两种存储方式只会使用其中一种
+    private final double[] array;
+    private final DoubleBuffer[] chunks;
+
+    /**
+     * 创建 rows 行 cols 列的矩阵，所有元素为 0。元素个数不超过 {@link #MAX_ARRAY_SIZE} 时存放在堆内数组中，否则存放在堆外。
+     */
+    public DoubleMatrix(int rows, int cols) {
+        this(rows, cols, checkSize(rows, cols) > MAX_ARRAY_SIZE, CHUNK_SHIFT);
+    }
+
+    private DoubleMatrix(int rows, int cols, boolean offHeap, int chunkShift) {
+        long size = checkSize(rows, cols);
+        this.rows = rows;
+        this.cols = cols;
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1 << chunkShift) - 1;
+        if (offHeap) {
+            array = null;
+            chunks = new DoubleBuffer[(int) ((size + chunkMask) >>> chunkShift)];
+            for (int c = 0; c < chunks.length; c++) {
+                long n = Math.min(1L << chunkShift, size - ((long) c << chunkShift));
+                // 直接缓冲区分配后内容为 0
+                chunks[c] = ByteBuffer.allocateDirect((int) n * Double.BYTES).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+            }
+        } else {
+            array = new double[(int) size];
+            chunks = null;
+        }
+    }
+
+    /**
+     * 创建存放在堆外的矩阵。
+     *
+     * @throws OutOfMemoryError 如果需要的堆外内存超过 {@code -XX:MaxDirectMemorySize}
+     */
+    public static DoubleMatrix offHeap(int rows, int cols) {
+        return new DoubleMatrix(rows, cols, true, CHUNK_SHIFT);
+    }
+
+    /**
+     * 使用指定块大小创建堆外矩阵，用于测试跨块的访问。
+     */
+    static DoubleMatrix offHeap(int rows, int cols, int chunkShift) {
+        if (chunkShift < 0 || chunkShift > CHUNK_SHIFT) {
+            throw new IllegalArgumentException("chunkShift(" + chunkShift + ") not in [0, " + CHUNK_SHIFT + "]");
+        }
+        return new DoubleMatrix(rows, cols, true, chunkShift);
+    }
+
+    /**
+     * 把二维数组复制到新的矩阵中，每一行的长度必须相同。
+     */
+    public static DoubleMatrix of(double[][] a) {
+        int rows = a.length, cols = rows == 0 ? 0 : a[0].length;
+        DoubleMatrix m = new DoubleMatrix(rows, cols);
+        for (int i = 0; i < rows; i++) {
+            if (a[i].length != cols) {
+                throw new IllegalArgumentException("row " + i + " length(" + a[i].length + ") != " + cols);
+            }
+            m.row(i).copyFrom(a[i], 0);
+        }
+        return m;
+    }
+
+    private static long checkSize(int rows, int cols) {
+        if (rows < 0 || cols < 0) {
+            throw new IllegalArgumentException("rows(" + rows + ") < 0 or cols(" + cols + ") < 0");
+        }
+        return (long) rows * cols;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    public long size() {
+        return (long) rows * cols;
+    }
+
+    public boolean isOffHeap() {
+        return chunks != null;
+    }
+
+    public double get(int i, int j) {
+        return getAt(index(i, j));
+    }
+
+    public void set(int i, int j, double v) {
+        setAt(index(i, j), v);
+    }
+
+    private long index(int i, int j) {
+        if (i < 0 || i >= rows || j < 0 || j >= cols) {
+            throw new IndexOutOfBoundsException("(" + i + ", " + j + ") of " + rows + "x" + cols);
+        }
+        return (long) i * cols + j;
+    }
+
+    double getAt(long index) {
+        return array != null ? array[(int) index]
+                : chunks[(int) (index >>> chunkShift)].get((int) index & chunkMask);
+    }
+
+    void setAt(long index, double v) {
+        if (array != null) {
+            array[(int) index] = v;
+        } else {
+            chunks[(int) (index >>> chunkShift)].put((int) index & chunkMask, v);
+        }
+    }
+
+    /**
+     * 第 i 行的视图。
+     */
+    public Vector row(int i) {
+        // 只检查 i，列数为 0 的矩阵也有 rows 个空行
+        if (i < 0 || i >= rows) {
+            throw new IndexOutOfBoundsException("row " + i + " of " + rows + "x" + cols);
+        }
+        return new Vector((long) i * cols, 1, cols);
+    }
+
+    /**
+     * 第 j 列的视图。相邻元素间隔 cols 个元素，遍历时每个元素都在不同的缓存行上。
+     */
+    public Vector column(int j) {
+        if (j < 0 || j >= cols) {
+            throw new IndexOutOfBoundsException("column " + j + " of " + rows + "x" + cols);
+        }
+        return new Vector(j, cols, rows);
+    }
+
+    /**
+     * 从行优先下标 start 开始，每隔 stride 个元素取一个，共 length 个元素的视图。例如对角线是
+     * {@code strided(0, cols + 1, min(rows, cols))}。
+     */
+    public Vector strided(long start, long stride, int length) {
+        // stride 很大时 start + (length - 1) * stride 会溢出成负数，所以用除法比较
+        if (start < 0 || stride < 1 || length < 0 || (length > 0 && start >= size())
+                || (length > 1 && stride > (size() - 1 - start) / (length - 1))) {
+            throw new IndexOutOfBoundsException("start: " + start + ", stride: " + stride + ", length: " + length);
+        }
+        return new Vector(start, stride, length);
+    }
+
+    /**
+     * 把所有元素设置为 v。
+     */
+    public void fill(double v) {
+        if (array != null) {
+            Arrays.fill(array, v);
+        } else {
+            // 缓冲区没有 fill 方法，用一个填充好的小数组批量写入
+            double[] block = new double[Math.min(1 << 13, (int) Math.min(size(), Integer.MAX_VALUE))];
+            Arrays.fill(block, v);
+            for (DoubleBuffer chunk : chunks) {
+                DoubleBuffer b = chunk.duplicate();
+                b.clear();
+                while (b.hasRemaining()) {
+                    b.put(block, 0, Math.min(block.length, b.remaining()));
+                }
+            }
+        }
+    }
+
+    /**
+     * 从形状相同的矩阵复制所有元素。
+     */
+    public void copyFrom(DoubleMatrix src) {
+        if (src.rows != rows || src.cols != cols) {
+            throw new IllegalArgumentException(src.rows + "x" + src.cols + " != " + rows + "x" + cols);
+        }
+        if (array != null && src.array != null) {
+            System.arraycopy(src.array, 0, array, 0, array.length);
+        } else {
+            // 按行复制，每一行最多跨越两块
+            double[] buf = new double[cols];
+            for (int i = 0; i < rows; i++) {
+                src.row(i).copyTo(buf, 0);
+                row(i).copyFrom(buf, 0);
+            }
+        }
+    }
+
+    /**
+     * 复制到新的二维数组中。
+     */
+    public double[][] toArray() {
+        double[][] a = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            row(i).copyTo(a[i], 0);
+        }
+        return a;
+    }
+
+    /**
+     * 矩阵中等间隔的一组元素的视图，和矩阵共享存储。
+     */
+    public final class Vector {
+        private final long start, stride;
+        private final int length;
+
+        Vector(long start, long stride, int length) {
+            this.start = start;
+            this.stride = stride;
+            this.length = length;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public double get(int k) {
+            return getAt(index(k));
+        }
+
+        public void set(int k, double v) {
+            setAt(index(k), v);
+        }
+
+        private long index(int k) {
+            if (k < 0 || k >= length) {
+                throw new IndexOutOfBoundsException("index: " + k + ", length: " + length);
+            }
+            return start + k * stride;
+        }
+
+        public void fill(double v) {
+            if (stride == 1 && array != null) {
+                Arrays.fill(array, (int) start, (int) start + length, v);
+            } else {
+                for (long k = 0, x = start; k < length; k++, x += stride) {
+                    setAt(x, v);
+                }
+            }
+        }
+
+        /**
+         * 把视图中的元素依次复制到 dst[offset, offset + length)。
+         */
+        public void copyTo(double[] dst, int offset) {
+            checkRange(dst.length, offset);
+            if (stride == 1 && array != null) {
+                System.arraycopy(array, (int) start, dst, offset, length);
+            } else if (stride == 1) {
+                // 堆外存储按块批量读取
+                for (int done = 0; done < length; ) {
+                    long x = start + done;
+                    DoubleBuffer chunk = chunks[(int) (x >>> chunkShift)].duplicate();
+                    int from = (int) x & chunkMask, n = Math.min(length - done, chunk.limit() - from);
+                    chunk.position(from);
+                    chunk.get(dst, offset + done, n);
+                    done += n;
+                }
+            } else {
+                for (long k = 0, x = start; k < length; k++, x += stride) {
+                    dst[offset + (int) k] = getAt(x);
+                }
+            }
+        }
+
+        /**
+         * 用 src[offset, offset + length) 依次替换视图中的元素。
+         */
+        public void copyFrom(double[] src, int offset) {
+            checkRange(src.length, offset);
+            if (stride == 1 && array != null) {
+                System.arraycopy(src, offset, array, (int) start, length);
+            } else if (stride == 1) {
+                for (int done = 0; done < length; ) {
+                    long x = start + done;
+                    DoubleBuffer chunk = chunks[(int) (x >>> chunkShift)].duplicate();
+                    int from = (int) x & chunkMask, n = Math.min(length - done, chunk.limit() - from);
+                    chunk.position(from);
+                    chunk.put(src, offset + done, n);
+                    done += n;
+                }
+            } else {
+                for (long k = 0, x = start; k < length; k++, x += stride) {
+                    setAt(x, src[offset + (int) k]);
+                }
+            }
+        }
+
+        private void checkRange(int arrayLength, int offset) {
+            if (offset < 0 || offset > arrayLength - length) {
+                throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length
+                        + ", array length: " + arrayLength);
+            }
+        }
+
+        /**
+         * 按顺序遍历视图中的元素。
+         */
+        public void forEach(DoubleConsumer action) {
+            if (array != null) {
+                double[] a = array;
+                for (long k = 0, x = start; k < length; k++, x += stride) {
+                    action.accept(a[(int) x]);
+                }
+            } else {
+                for (long k = 0, x = start; k < length; k++, x += stride) {
+                    action.accept(getAt(x));
+                }
+            }
+        }
+    }
+}
@@ -3,50 +3,348 @@ package java_.lang;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.util.Random;
+import java.util.function.LongSupplier;
+
 /**
- * 局部性原理验证
+ * 局部性原理验证，以及测量本机存储层次（L1/L2/L3/内存、TLB、预取）的基准。
+ *
+ * <p>基准的结果和机器相关，换一种机型时应当重新运行。可以通过系统属性 {@code locality.bench.maxBytes}
+ * 限制最大工作集（默认 256MB），{@code locality.bench.rounds} 设置每个数据点的测量轮数（默认 3，取最小值）。
  */
 public class LocalityTest {
 
     static final int LEN = 10000;
     static int[][] arr;
 
+    /**
+     * 假设的缓存行大小和页大小。x86 和大部分 ARM 机器上就是这两个值。
+     */
+    static final int LINE_INTS = 64 / Integer.BYTES, PAGE_INTS = 4096 / Integer.BYTES;
+
+    static final long MAX_BYTES = Long.getLong("locality.bench.maxBytes", 256L << 20);
+    static final int ROUNDS = Integer.getInteger("locality.bench.rounds", 3);
+
+    /**
+     * 每个数据点至少执行的访问次数，保证单次测量在毫秒级以上。
+     */
+    static final int MIN_ACCESSES = 1 << 22;
+
+    /**
+     * 防止 JIT 把测量的循环当作死代码消除。
+     */
+    static volatile long sink;
+
     @BeforeAll
     static void beforeAll() {
         arr = new int[LEN][LEN];
     }
 
+    /**
+     * 执行 body 一次预热，然后执行 {@link #ROUNDS} 次，返回最快一次的平均每次访问纳秒数。
+     * body 返回值会被累加到 {@link #sink}。
+     */
+    static double nsPerAccess(long accesses, LongSupplier body) {
+        long acc = body.getAsLong();
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            acc += body.getAsLong();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        sink += acc;
+        return (double) best / accesses;
+    }
+
+    /**
+     * 构造一个指针链：第 k 个结点位于下标 positions[k]，chain[positions[k]] 保存下一个结点的下标。
+     * 所有结点组成一个环，从下标 0 出发会访问每个结点恰好一次。
+     *
+     * @param shuffle 为 true 时使用 Sattolo 算法随机打乱访问顺序，让硬件预取器无法预测下一个地址；
+     *                否则按 positions 的顺序访问
+     */
+    static int[] chain(int[] positions, boolean shuffle, Random random) {
+        int n = positions.length;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        if (shuffle) {
+            // Sattolo 算法只产生单个环的排列
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i), t = order[i];
+                order[i] = order[j];
+                order[j] = t;
+            }
+            // 把结点 0 换到开头，保证从下标 0 出发
+            for (int i = 0; i < n; i++) {
+                if (order[i] == 0) {
+                    order[i] = order[0];
+                    order[0] = 0;
+                    break;
+                }
+            }
+        }
+        int[] chain = new int[positions[n - 1] + 1];
+        for (int i = 0; i < n; i++) {
+            chain[positions[order[i]]] = positions[order[(i + 1) % n]];
+        }
+        return chain;
+    }
+
+    /**
+     * 沿着指针链走 steps 步。每次访问的地址依赖上一次读到的值，CPU 无法并行发出访问，
+     * 所以测到的是访问延迟而不是带宽。
+     */
+    static long chase(int[] chain, int steps) {
+        int p = 0;
+        for (int i = 0; i < steps; i++) {
+            p = chain[p];
+        }
+        return p;
+    }
+
+    /**
+     * 每隔 stride 个元素读一次，重复 passes 遍。相邻访问相互独立，测到的是吞吐。
+     * 步长大于缓存行时，每一遍的起点后移一个缓存行，避免后面几遍重复读取已经在缓存中的行。
+     */
+    static long strided(int[] a, int stride, int passes) {
+        long sum = 0;
+        for (int pass = 0; pass < passes; pass++) {
+            int from = stride > LINE_INTS ? pass * LINE_INTS % stride : 0;
+            for (int i = from; i < a.length; i += stride) {
+                sum += a[i];
+            }
+        }
+        return sum;
+    }
+
+    static int[] positions(int nodes, int strideInts) {
+        int[] positions = new int[nodes];
+        for (int k = 0; k < nodes; k++) {
+            positions[k] = k * strideInts;
+        }
+        return positions;
+    }
+
+    static String bytes(long bytes) {
+        if (bytes >= 1 << 20) {
+            return (bytes >> 20) + "MB";
+        }
+        return bytes >= 1 << 10 ? (bytes >> 10) + "KB" : bytes + "B";
+    }
+
+    static void printMachine() {
+        System.out.printf("%s %s, %d cpus, java %s%n", System.getProperty("os.name"), System.getProperty("os.arch"),
+                Runtime.getRuntime().availableProcessors(), System.getProperty("java.version"));
+    }
+
     /**
      * 测试二维数组不同访问方式的速度差别
      */
     @Test
     public void testIn2dArray() {
-        long start, finish;
+        long accesses = (long) LEN * LEN;
 
-        start = System.currentTimeMillis();
         // 先访问行
-        for (int i = 0; i < LEN; i++) {
+        double rowMajor = nsPerAccess(accesses, () -> {
+            for (int i = 0; i < LEN; i++) {
+                for (int j = 0; j < LEN; j++) {
+                    arr[i][j] = j;
+                }
+            }
+            return arr[LEN - 1][LEN - 1];
+        });
+        System.out.printf("行优先访问：%.2fns/次，共 %.0fms%n", rowMajor, rowMajor * accesses / 1e6);
+
+        // 先访问列
+        double columnMajor = nsPerAccess(accesses, () -> {
             for (int j = 0; j < LEN; j++) {
-                arr[i][j] = j;
+                for (int i = 0; i < LEN; i++) {
+                    arr[i][j] = i;
+                }
             }
+            return arr[LEN - 1][LEN - 1];
+        });
+        System.out.printf("列优先访问：%.2fns/次，共 %.0fms%n", columnMajor, columnMajor * accesses / 1e6);
+
+        /*
+        输出：
+        行优先访问：0.71ns/次，共 71ms
+        列优先访问：18.94ns/次，共 1894ms
+         */
+    }
+
+    /**
+     * 工作集扫描：在不同大小的数组上沿指针链访问，每个缓存行一个结点。
+     * <ul>
+     *     <li>random：随机顺序，每次访问都是一次真正的缓存未命中，ns/次 的台阶就是 L1、L2、L3 和内存的延迟，
+     *     台阶出现的位置就是各级缓存的容量</li>
+     *     <li>sequential：按地址顺序访问同样的结点，硬件预取器能提前把下一行取进来，两者的差距就是预取的收益</li>
+     * </ul>
+     * 延迟相对上一个大小跳升超过 30% 的行会用 * 标出。
+     */
+    @Test
+    public void testWorkingSet() {
+        printMachine();
+        System.out.printf("%-10s%14s%14s%n", "working", "random", "sequential");
+        Random random = new Random(47);
+        double previous = 0;
+        for (long size = 4 << 10; size <= MAX_BYTES; size <<= 1) {
+            int nodes = (int) (size / 64);
+            int[] positions = positions(nodes, LINE_INTS);
+            int steps = Math.max(MIN_ACCESSES, nodes);
+
+            int[] randomChain = chain(positions, true, random);
+            double r = nsPerAccess(steps, () -> chase(randomChain, steps));
+            int[] sequentialChain = chain(positions, false, random);
+            double s = nsPerAccess(steps, () -> chase(sequentialChain, steps));
+
+            System.out.printf("%-10s%11.2fns%s%11.2fns%n", bytes(size), r,
+                    previous > 0 && r > previous * 1.3 ? "*" : " ", s);
+            previous = r;
         }
-        finish = System.currentTimeMillis();
-        System.out.println("行优先访问消耗时间：" + (finish - start) + "ms");
 
-        start = System.currentTimeMillis();
-        // 先访问列
-        for (int j = 0; j < LEN; j++) {
-            for (int i = 0; i < LEN; i++) {
-                arr[i][j] = i;
+        /*
+        输出：
+        Linux amd64, 1 cpus, java 17.0.9
+        working           random    sequential
+        4KB              1.95ns        1.95ns
+        8KB              1.95ns        1.95ns
+        16KB             1.88ns        1.95ns
+        32KB             1.97ns        1.95ns
+        64KB             6.25ns*       2.18ns
+        128KB            6.14ns        2.14ns
+        256KB            6.53ns        2.28ns
+        512KB            7.77ns        2.55ns
+        1MB             18.14ns*       2.82ns
+        2MB             45.27ns*       3.28ns
+        4MB             48.71ns        3.60ns
+        8MB            157.92ns*       3.77ns
+        16MB           156.58ns        3.79ns
+        32MB           149.79ns        8.70ns
+        64MB           170.69ns       10.75ns
+        128MB          176.39ns       11.55ns
+        256MB          185.00ns       11.95ns
+
+        结论：
+        - 随机访问有三个明显的台阶：32KB 以内约 2ns（L1），64KB~512KB 约 6~8ns（L2），
+          1MB~4MB 为 18~49ns（L3，这台虚拟机只分到了很小的一份 L3），8MB 以上 150~185ns（内存），
+          内存延迟是 L1 的近百倍。
+        - 1MB 处已经开始变慢，而 L2 到 512KB 仍然平坦，说明 L2 为 512KB~1MB；
+          超过 64MB 后延迟仍在缓慢上升，是 TLB 未命中叠加在内存访问上造成的，见 testTlb。
+        - 顺序访问时预取器把 16MB 以内的延迟都压到了 4ns 以下，即使 256MB 也只有 12ns，是随机访问的 1/15。
+          这说明“数据放得下缓存”和“访问模式可预测”同样重要：索引结构在内存中应当尽量按访问顺序排列。
+        */
+    }
+
+    /**
+     * 步长扫描：在远大于缓存的数组上每隔 stride 个 int 读一次。
+     * <ul>
+     *     <li>步长小于缓存行（16 个 int）时，一次内存传输服务多次访问，ns/次 随步长线性增长</li>
+     *     <li>步长达到缓存行后每次访问都要一次新的传输，此后主要受预取器能否跟上影响</li>
+     *     <li>步长超过页（1024 个 int）后，硬件预取器不会跨页，每次访问还需要一次 TLB 查找</li>
+     * </ul>
+     */
+    @Test
+    public void testStride() {
+        printMachine();
+        int[] a = new int[(int) Math.min(MAX_BYTES, 64 << 20) / Integer.BYTES];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = i;
+        }
+        System.out.printf("%-10s%14s%14s%n", "stride", "ns/access", "ns/line");
+        for (int stride = 1; stride <= 4 * PAGE_INTS; stride <<= 1) {
+            int perPass = a.length / stride;
+            int passes = Math.max(1, MIN_ACCESSES / perPass);
+            int s = stride;
+            double ns = nsPerAccess((long) perPass * passes, () -> strided(a, s, passes));
+            // 每个缓存行的平均代价，步长小于缓存行时一行包含多次访问
+            double perLine = ns * Math.max(1, LINE_INTS / stride);
+            System.out.printf("%-10s%12.2fns%12.2fns%n", bytes((long) stride * Integer.BYTES), ns, perLine);
+        }
+
+        /*
+        输出：
+        Linux amd64, 1 cpus, java 17.0.9
+        stride         ns/access       ns/line
+        4B                1.11ns       17.78ns
+        8B                1.61ns       12.90ns
+        16B               2.63ns       10.53ns
+        32B               4.53ns        9.06ns
+        64B               8.10ns        8.10ns
+        128B             11.20ns       11.20ns
+        256B              9.39ns        9.39ns
+        512B              8.39ns        8.39ns
+        1KB               9.79ns        9.79ns
+        2KB              11.03ns       11.03ns
+        4KB              12.12ns       12.12ns
+        8KB              12.35ns       12.35ns
+        16KB             15.02ns       15.02ns
+
+        结论：
+        - 步长小于缓存行时，每个缓存行的代价随步长增大而下降，说明这时瓶颈是循环本身（每次约 1ns），
+          而不是内存；步长等于 64B 时每行 8ns，约合 8GB/s 的内存带宽。
+        - 128B 步长比 64B 每行更贵：相邻行预取器每次成对取行，64B 步长时另一半恰好会被用到。
+        - 步长达到一页（4KB）以后每次访问稳定在 12~15ns，预取器不再跨页，每次访问还要查 TLB。
+        - 即使如此，也远小于 testWorkingSet 中随机访问内存的 150ns 以上：相互独立的访问可以同时在途，
+          而指针链每次只能有一个访问在途。所以批量查找时应当让多次查找相互独立，而不是一个接一个地依赖。
+        */
+    }
+
+    /**
+     * TLB 扫描：每页只放一个结点，随机顺序访问。和 testWorkingSet 相比，结点数相同时访问的页数多 64 倍，
+     * 当页数超过 TLB 的容量（一级 TLB 通常 64 项，二级 TLB 通常 1~2K 项）后每次访问都要走页表。
+     * 为了避免所有结点映射到同一个缓存组，第 k 个结点放在所在页的第 k % 64 个缓存行。
+     */
+    @Test
+    public void testTlb() {
+        printMachine();
+        System.out.printf("%-10s%12s%14s%14s%n", "nodes", "pages", "1 line/page", "packed");
+        Random random = new Random(47);
+        long maxNodes = MAX_BYTES / (PAGE_INTS * Integer.BYTES);
+        for (int nodes = 16; nodes <= maxNodes; nodes <<= 1) {
+            int[] spread = new int[nodes];
+            for (int k = 0; k < nodes; k++) {
+                spread[k] = k * PAGE_INTS + (k % 64) * LINE_INTS;
             }
+            int steps = Math.max(MIN_ACCESSES, nodes);
+            int[] spreadChain = chain(spread, true, random);
+            double s = nsPerAccess(steps, () -> chase(spreadChain, steps));
+            // 同样多的结点紧密排列，每个缓存行一个，作为对照
+            int[] packedChain = chain(positions(nodes, LINE_INTS), true, random);
+            double p = nsPerAccess(steps, () -> chase(packedChain, steps));
+            System.out.printf("%-10d%12s%12.2fns%12.2fns%n", nodes, bytes((long) nodes * PAGE_INTS * Integer.BYTES),
+                    s, p);
         }
-        finish = System.currentTimeMillis();
-        System.out.println("列优先访问消耗时间：" + (finish - start) + "ms");
 
         /*
         输出：
-        行优先访问消耗时间：61ms
-        列优先访问消耗时间：1177ms
-         */
+        Linux amd64, 1 cpus, java 17.0.9
+        nodes            pages   1 line/page        packed
+        16                64KB        2.00ns        2.02ns
+        32               128KB        2.04ns        2.05ns
+        64               256KB        2.24ns        2.03ns
+        128              512KB        4.61ns        2.07ns
+        256                1MB        5.00ns        2.06ns
+        512                2MB        5.92ns        2.53ns
+        1024               4MB        9.02ns        6.26ns
+        2048               8MB       11.93ns        7.25ns
+        4096              16MB       39.55ns        6.88ns
+        8192              32MB       41.37ns        8.13ns
+        16384             64MB       58.50ns        8.85ns
+        32768            128MB       56.45ns       41.43ns
+        65536            256MB      181.02ns       44.62ns
+
+        结论：
+        - 结点数相同、数据量（每个结点一个缓存行）也相同时，把结点分散到不同页会显著变慢：
+          例如 4096 个结点只有 256KB 数据，紧密排列时在 L2 中，6.9ns；分散到 4096 页后为 39.6ns。
+          多出来的时间来自 TLB 未命中后的页表遍历。
+        - 64 页以内两者相同，128 页开始变慢，对应一级数据 TLB 的 64 项；
+          超过 2048 页后再次跳升，对应二级 TLB 的容量（本机约 2K 项，可以覆盖 8MB）。
+        - 对内存中的索引而言，除了总大小，还应当关心一次查找会触及多少个不同的页；
+          节点随机散布在大堆中的树或链表，在缓存放得下时也可能被 TLB 拖慢。
+          这也是大堆应当考虑开启大页（-XX:+UseLargePages）的原因。
+        */
     }
 }
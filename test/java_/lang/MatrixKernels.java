@@ -0,0 +1,922 @@
+package java_.lang;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 考虑缓存的矩阵计算：转置、矩阵乘法和五点模板（stencil）迭代，支持 int、long、double 矩阵。
+ * <p>
+ * {@link LocalityTest#testIn2dArray()} 中按列访问二维数组比按行访问慢了 20 倍。转置和矩阵乘法无论怎样安排循环顺序，
+ * 总有一个矩阵是按列访问的；模板迭代虽然按行访问，但是矩阵大于缓存时每次迭代都要从内存重新读一遍。
+ * 这里提供两种常见的解决方法：
+ * <ul>
+ *     <li>分块（tiling）：每次只处理能放进缓存的一小块。默认的块大小是常量，可以通过系统属性指定，
+ *     也可以调用 {@link #autoTune()} 在当前机器上测量后替换；</li>
+ *     <li>缓存无关（cache-oblivious）的递归：不断对半切分，总有某一层的子问题正好能放进某一级缓存，不需要调优。</li>
+ * </ul>
+ * 矩阵都按行优先存放在一维数组中，rows 行 cols 列的矩阵第 i 行第 j 列的元素是 {@code a[i * cols + j]}。
+ * 分块大小对 int、long 矩阵使用和 double 矩阵相同的值。
+ */
+public class MatrixKernels {
+
+    // 递归转置、递归乘法切分到这个大小时直接计算
+    static final int RECURSIVE_LEAF = 16;
+
+    // 自动调优时尝试的块大小
+    static final int[] BLOCK_CANDIDATES = {8, 16, 32, 64, 128, 256};
+
+    // 自动调优时尝试的模板条带缓冲区大小（字节）
+    static final int[] STENCIL_BUDGET_CANDIDATES = {32 << 10, 128 << 10, 512 << 10, 2 << 20};
+
+    /*
+     * 分块参数。默认值是一台 x86 机器上自动调优的结果，可以通过系统属性
+     * matrix.transposeBlock、matrix.multiplyBlock、matrix.stencilBudget（字节）指定。
+     * 不在类初始化时自动调优：调优要分配几十 MB 的矩阵、运行十几次计算，第一次转置一个 3 * 3 的矩阵也要等上几秒，
+     * 而且结果和当时的机器负载有关，同样的输入在不同的运行中会使用不同的参数。
+     */
+
+    private static volatile int transposeBlock = Integer.getInteger("matrix.transposeBlock", 32);
+
+    private static volatile int multiplyBlock = Integer.getInteger("matrix.multiplyBlock", 128);
+
+    private static volatile int stencilBudget = Integer.getInteger("matrix.stencilBudget", 2 << 20);
+
+    /**
+     * 在当前机器上测量每个候选参数，用最快的参数替换默认的分块参数，之后不指定块大小的计算都使用新的参数。
+     * 需要分配约 80MB 的矩阵，耗时数秒。
+     */
+    public static void autoTune() {
+        final int n = 2048;
+        double[] src = new double[n * n], dst = new double[n * n];
+        transposeBlock = tune(BLOCK_CANDIDATES, block -> transpose(src, dst, n, n, block));
+
+        final int m = 256;
+        double[] a = new Random(47).doubles(m * m).toArray(), c = new double[m * m];
+        multiplyBlock = tune(BLOCK_CANDIDATES, block -> multiply(a, a, c, m, m, m, block));
+
+        final int r = 1024;
+        double[] s = new Random(47).doubles(r * r).toArray(), d = new double[r * r];
+        stencilBudget = tune(STENCIL_BUDGET_CANDIDATES,
+                budget -> stencil(s, d, r, r, 16, 0.5, 0.125, stripRows(r, Double.BYTES, budget)));
+    }
+
+    /**
+     * 依次使用每个候选参数运行 3 次，返回耗时最少的参数。
+     */
+    static int tune(int[] candidates, IntConsumer kernel) {
+        int best = candidates[0];
+        long bestTime = Long.MAX_VALUE;
+        for (int candidate : candidates) {
+            for (int r = 0; r < 3; r++) {
+                long start = System.nanoTime();
+                kernel.accept(candidate);
+                long time = System.nanoTime() - start;
+                if (time < bestTime) {
+                    bestTime = time;
+                    best = candidate;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 根据缓冲区大小计算模板的条带高度：两个缓冲区各有 stripRows 行加上下各 stripRows / 4 行的重叠区，总共不超过 budget 字节。
+     */
+    static int stripRows(int cols, int elementBytes, int budget) {
+        long rowBytes = (long) Math.max(cols, 1) * elementBytes;
+        int rows = (int) Math.min(1 << 16, budget / (rowBytes * 3));
+        return Math.max(4, rows & ~3);
+    }
+
+    private static int stripRows(int cols, int elementBytes) {
+        return stripRows(cols, elementBytes, stencilBudget);
+    }
+
+    private static void checkMatrix(int length, int rows, int cols) {
+        if (rows < 0 || cols < 0) {
+            throw new IllegalArgumentException("rows(" + rows + ") < 0 or cols(" + cols + ") < 0");
+        }
+        long size = (long) rows * cols;
+        if (size > length) {
+            throw new IllegalArgumentException("rows * cols(" + size + ") > array length(" + length + ")");
+        }
+    }
+
+    private static void checkBlock(int block) {
+        if (block < 1) {
+            throw new IllegalArgumentException("block(" + block + ") < 1");
+        }
+    }
+
+    /**
+     * 把 rows 行 cols 列的矩阵 src 转置到 cols 行 rows 列的 dst，使用默认的块大小分块转置。
+     */
+    public static void transpose(double[] src, double[] dst, int rows, int cols) {
+        transpose(src, dst, rows, cols, transposeBlock);
+    }
+
+    /**
+     * 分块转置：每次转置 block * block 的一块，这一块在 src 中的 block 行和在 dst 中的 block 行都能留在缓存里，
+     * 不会像逐行转置那样，写 dst 的每一列时都要访问 rows 个不同的缓存行。
+     */
+    public static void transpose(double[] src, double[] dst, int rows, int cols, int block) {
+        checkMatrix(src.length, rows, cols);
+        checkMatrix(dst.length, cols, rows);
+        checkBlock(block);
+        for (int i0 = 0; i0 < rows; i0 += block) {
+            int i1 = Math.min(i0 + block, rows);
+            for (int j0 = 0; j0 < cols; j0 += block) {
+                int j1 = Math.min(j0 + block, cols);
+                for (int i = i0; i < i1; i++) {
+                    for (int j = j0, s = i * cols + j0; j < j1; j++, s++) {
+                        dst[j * rows + i] = src[s];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 缓存无关的递归转置：总是把较长的一边对半分，直到两边都不超过 {@link #RECURSIVE_LEAF}。
+     * 递归到某一层时子矩阵正好能放进某一级缓存，所以不需要知道缓存的大小。
+     */
+    public static void transposeRecursive(double[] src, double[] dst, int rows, int cols) {
+        checkMatrix(src.length, rows, cols);
+        checkMatrix(dst.length, cols, rows);
+        transposeRecursive(src, dst, rows, cols, 0, rows, 0, cols);
+    }
+
+    private static void transposeRecursive(double[] src, double[] dst, int rows, int cols,
+                                           int i0, int i1, int j0, int j1) {
+        if (i1 - i0 <= RECURSIVE_LEAF && j1 - j0 <= RECURSIVE_LEAF) {
+            for (int i = i0; i < i1; i++) {
+                for (int j = j0, s = i * cols + j0; j < j1; j++, s++) {
+                    dst[j * rows + i] = src[s];
+                }
+            }
+        } else if (i1 - i0 >= j1 - j0) {
+            int mid = (i0 + i1) >>> 1;
+            transposeRecursive(src, dst, rows, cols, i0, mid, j0, j1);
+            transposeRecursive(src, dst, rows, cols, mid, i1, j0, j1);
+        } else {
+            int mid = (j0 + j1) >>> 1;
+            transposeRecursive(src, dst, rows, cols, i0, i1, j0, mid);
+            transposeRecursive(src, dst, rows, cols, i0, i1, mid, j1);
+        }
+    }
+
+    /**
+     * 逐行转置，写 dst 时按列访问，作为比较的基准。
+     */
+    static void transposeNaive(double[] src, double[] dst, int rows, int cols) {
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                dst[j * rows + i] = src[i * cols + j];
+            }
+        }
+    }
+
+    /**
+     * 矩阵乘法 c = a * b，a 为 m 行 k 列，b 为 k 行 n 列，c 为 m 行 n 列。使用默认的块大小分块计算。
+     */
+    public static void multiply(double[] a, double[] b, double[] c, int m, int k, int n) {
+        multiply(a, b, c, m, k, n, multiplyBlock);
+    }
+
+    /**
+     * 分块矩阵乘法。最内层按 i-p-j 的顺序循环：a[i][p] 固定在寄存器中，b 的第 p 行和 c 的第 i 行都是顺序访问；
+     * 再把 p、j 分块，使得 b 的 block * block 的一块在处理 a 的 block 行时一直留在缓存中。
+     */
+    public static void multiply(double[] a, double[] b, double[] c, int m, int k, int n, int block) {
+        checkMatrix(a.length, m, k);
+        checkMatrix(b.length, k, n);
+        checkMatrix(c.length, m, n);
+        checkBlock(block);
+        Arrays.fill(c, 0, m * n, 0);
+        for (int i0 = 0; i0 < m; i0 += block) {
+            int i1 = Math.min(i0 + block, m);
+            for (int p0 = 0; p0 < k; p0 += block) {
+                int p1 = Math.min(p0 + block, k);
+                for (int j0 = 0; j0 < n; j0 += block) {
+                    multiplyAdd(a, b, c, k, n, i0, i1, p0, p1, j0, Math.min(j0 + block, n));
+                }
+            }
+        }
+    }
+
+    /**
+     * 缓存无关的递归矩阵乘法：总是把 m、k、n 中最大的一维对半分，直到三维都不超过 {@link #RECURSIVE_LEAF} 的 2 倍。
+     */
+    public static void multiplyRecursive(double[] a, double[] b, double[] c, int m, int k, int n) {
+        checkMatrix(a.length, m, k);
+        checkMatrix(b.length, k, n);
+        checkMatrix(c.length, m, n);
+        Arrays.fill(c, 0, m * n, 0);
+        multiplyRecursive(a, b, c, k, n, 0, m, 0, k, 0, n);
+    }
+
+    private static void multiplyRecursive(double[] a, double[] b, double[] c, int k, int n,
+                                          int i0, int i1, int p0, int p1, int j0, int j1) {
+        int di = i1 - i0, dp = p1 - p0, dj = j1 - j0;
+        if (di <= RECURSIVE_LEAF * 2 && dp <= RECURSIVE_LEAF * 2 && dj <= RECURSIVE_LEAF * 2) {
+            multiplyAdd(a, b, c, k, n, i0, i1, p0, p1, j0, j1);
+        } else if (di >= dp && di >= dj) {
+            int mid = (i0 + i1) >>> 1;
+            multiplyRecursive(a, b, c, k, n, i0, mid, p0, p1, j0, j1);
+            multiplyRecursive(a, b, c, k, n, mid, i1, p0, p1, j0, j1);
+        } else if (dj >= dp) {
+            int mid = (j0 + j1) >>> 1;
+            multiplyRecursive(a, b, c, k, n, i0, i1, p0, p1, j0, mid);
+            multiplyRecursive(a, b, c, k, n, i0, i1, p0, p1, mid, j1);
+        } else {
+            // 切分 p 时两半累加到 c 的同一块上，必须依次计算
+            int mid = (p0 + p1) >>> 1;
+            multiplyRecursive(a, b, c, k, n, i0, i1, p0, mid, j0, j1);
+            multiplyRecursive(a, b, c, k, n, i0, i1, mid, p1, j0, j1);
+        }
+    }
+
+    /**
+     * c[i0..i1)[j0..j1) += a[i0..i1)[p0..p1) * b[p0..p1)[j0..j1)
+     */
+    private static void multiplyAdd(double[] a, double[] b, double[] c, int k, int n,
+                                    int i0, int i1, int p0, int p1, int j0, int j1) {
+        for (int i = i0; i < i1; i++) {
+            int ci = i * n;
+            for (int p = p0; p < p1; p++) {
+                double aip = a[i * k + p];
+                int bp = p * n;
+                for (int j = j0; j < j1; j++) {
+                    c[ci + j] += aip * b[bp + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * 教科书上的 i-j-k 矩阵乘法，最内层按列访问 b，作为比较的基准。
+     */
+    static void multiplyNaive(double[] a, double[] b, double[] c, int m, int k, int n) {
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                double sum = 0;
+                for (int p = 0; p < k; p++) {
+                    sum += a[i * k + p] * b[p * n + j];
+                }
+                c[i * n + j] = sum;
+            }
+        }
+    }
+
+    /**
+     * 五点模板迭代 steps 次，结果写入 dst，src 不变。每次迭代中，内部的元素更新为
+     * {@code wc * 自身 + wn * (上 + 下 + 左 +右)}，边界上的元素保持不变。
+     * 使用默认的缓冲区大小计算条带高度，进行时间分块。
+     */
+    public static void stencil(double[] src, double[] dst, int rows, int cols, int steps, double wc, double wn) {
+        stencil(src, dst, rows, cols, steps, wc, wn, stripRows(cols, Double.BYTES));
+    }
+
+    /**
+     * 时间分块的五点模板。
+     * <p>
+     * 逐次迭代时，矩阵大于缓存时每次迭代都要把整个矩阵从内存读一遍、写一遍。这里把矩阵按行分成高为 stripRows 的条带，
+     * 每个条带连同上下各 t 行的重叠区复制到缓冲区中，在缓冲区里连续迭代 t = stripRows / 4 次：
+     * 每迭代一次，重叠区中有效的行数减少一行，t 次之后条带本身的行仍然是正确的。
+     * 这样每 t 次迭代才访问一次内存，代价是重叠区中 2t 行的重复计算。
+     */
+    public static void stencil(double[] src, double[] dst, int rows, int cols, int steps, double wc, double wn,
+                               int stripRows) {
+        checkMatrix(src.length, rows, cols);
+        checkMatrix(dst.length, rows, cols);
+        checkBlock(stripRows);
+        // 条带比矩阵高时和整个矩阵一个条带相同
+        stripRows = Math.min(stripRows, Math.max(rows, 1));
+        if (steps < 0) {
+            throw new IllegalArgumentException("steps(" + steps + ") < 0");
+        }
+        if (src == dst) {
+            throw new IllegalArgumentException("src and dst must be different arrays");
+        }
+        int size = rows * cols;
+        if (steps == 0) {
+            System.arraycopy(src, 0, dst, 0, size);
+            return;
+        }
+
+        int t = Math.max(1, stripRows / 4);
+        int rounds = (steps + t - 1) / t;
+        // 每一轮读 in 写 out，一轮中所有条带读的数组不能改变，所以多于一轮时需要第三个数组。
+        // 输出在 dst 和 spare 之间交替，使得最后一轮正好写入 dst
+        double[] spare = rounds > 1 ? new double[size] : null;
+        // 缓冲区中的行数不会超过矩阵的行数，所以不会溢出
+        double[] buf0 = new double[Math.min(stripRows + 2 * t, rows) * cols], buf1 = new double[buf0.length];
+        double[] in = src;
+        for (int round = 1, done = 0; done < steps; round++, done += t) {
+            double[] out = ((rounds - round) & 1) == 0 ? dst : spare;
+            for (int r0 = 0; r0 < rows; r0 += stripRows) {
+                stencilStrip(in, out, rows, cols, r0, Math.min(r0 + stripRows, rows), Math.min(t, steps - done),
+                        wc, wn, buf0, buf1);
+            }
+            in = out;
+        }
+    }
+
+    /**
+     * 把 [r0, r1) 行连同上下各 steps 行复制到缓冲区，迭代 steps 次，再把 [r0, r1) 行写入 out。
+     * 第 s 次迭代只计算重叠区向内收缩 s 行之后的部分，矩阵的第一行和最后一行是边界，不会收缩。
+     */
+    private static void stencilStrip(double[] in, double[] out, int rows, int cols, int r0, int r1, int steps,
+                                     double wc, double wn, double[] buf0, double[] buf1) {
+        int lo = Math.max(0, r0 - steps), hi = Math.min(rows, r1 + steps);
+        int len = (hi - lo) * cols;
+        // 两个缓冲区都要复制一份，边界行和边界列不会被写入
+        System.arraycopy(in, lo * cols, buf0, 0, len);
+        System.arraycopy(in, lo * cols, buf1, 0, len);
+        double[] cur = buf0, next = buf1;
+        for (int s = 1; s <= steps; s++) {
+            int g0 = lo == 0 ? 1 : lo + s, g1 = hi == rows ? rows - 1 : hi - s;
+            for (int g = g0; g < g1; g++) {
+                for (int x = (g - lo) * cols + 1, end = x + cols - 2; x < end; x++) {
+                    next[x] = wc * cur[x] + wn * (cur[x - cols] + cur[x + cols] + cur[x - 1] + cur[x + 1]);
+                }
+            }
+            double[] t = cur; cur = next; next = t;
+        }
+        System.arraycopy(cur, (r0 - lo) * cols, out, r0 * cols, (r1 - r0) * cols);
+    }
+
+    /**
+     * 逐次迭代整个矩阵，作为比较的基准。
+     */
+    static void stencilNaive(double[] src, double[] dst, int rows, int cols, int steps, double wc, double wn) {
+        double[] cur = src.clone(), next = src.clone();
+        for (int s = 0; s < steps; s++) {
+            for (int i = 1; i < rows - 1; i++) {
+                for (int j = 1; j < cols - 1; j++) {
+                    int x = i * cols + j;
+                    next[x] = wc * cur[x] + wn * (cur[x - cols] + cur[x + cols] + cur[x - 1] + cur[x + 1]);
+                }
+            }
+            double[] t = cur; cur = next; next = t;
+        }
+        System.arraycopy(cur, 0, dst, 0, rows * cols);
+    }
+
+    /*
+     * long 和 int 矩阵的计算和 double 矩阵相同，只是元素类型不同。整数的乘法和加法溢出时按补码回绕。
+     */
+
+    public static void transpose(long[] src, long[] dst, int rows, int cols) {
+        transpose(src, dst, rows, cols, transposeBlock);
+    }
+
+    public static void transpose(long[] src, long[] dst, int rows, int cols, int block) {
+        checkMatrix(src.length, rows, cols);
+        checkMatrix(dst.length, cols, rows);
+        checkBlock(block);
+        for (int i0 = 0; i0 < rows; i0 += block) {
+            int i1 = Math.min(i0 + block, rows);
+            for (int j0 = 0; j0 < cols; j0 += block) {
+                int j1 = Math.min(j0 + block, cols);
+                for (int i = i0; i < i1; i++) {
+                    for (int j = j0, s = i * cols + j0; j < j1; j++, s++) {
+                        dst[j * rows + i] = src[s];
+                    }
+                }
+            }
+        }
+    }
+
+    public static void transposeRecursive(long[] src, long[] dst, int rows, int cols) {
+        checkMatrix(src.length, rows, cols);
+        checkMatrix(dst.length, cols, rows);
+        transposeRecursive(src, dst, rows, cols, 0, rows, 0, cols);
+    }
+
+    private static void transposeRecursive(long[] src, long[] dst, int rows, int cols,
+                                           int i0, int i1, int j0, int j1) {
+        if (i1 - i0 <= RECURSIVE_LEAF && j1 - j0 <= RECURSIVE_LEAF) {
+            for (int i = i0; i < i1; i++) {
+                for (int j = j0, s = i * cols + j0; j < j1; j++, s++) {
+                    dst[j * rows + i] = src[s];
+                }
+            }
+        } else if (i1 - i0 >= j1 - j0) {
+            int mid = (i0 + i1) >>> 1;
+            transposeRecursive(src, dst, rows, cols, i0, mid, j0, j1);
+            transposeRecursive(src, dst, rows, cols, mid, i1, j0, j1);
+        } else {
+            int mid = (j0 + j1) >>> 1;
+            transposeRecursive(src, dst, rows, cols, i0, i1, j0, mid);
+            transposeRecursive(src, dst, rows, cols, i0, i1, mid, j1);
+        }
+    }
+
+    static void transposeNaive(long[] src, long[] dst, int rows, int cols) {
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                dst[j * rows + i] = src[i * cols + j];
+            }
+        }
+    }
+
+    public static void multiply(long[] a, long[] b, long[] c, int m, int k, int n) {
+        multiply(a, b, c, m, k, n, multiplyBlock);
+    }
+
+    public static void multiply(long[] a, long[] b, long[] c, int m, int k, int n, int block) {
+        checkMatrix(a.length, m, k);
+        checkMatrix(b.length, k, n);
+        checkMatrix(c.length, m, n);
+        checkBlock(block);
+        Arrays.fill(c, 0, m * n, 0);
+        for (int i0 = 0; i0 < m; i0 += block) {
+            int i1 = Math.min(i0 + block, m);
+            for (int p0 = 0; p0 < k; p0 += block) {
+                int p1 = Math.min(p0 + block, k);
+                for (int j0 = 0; j0 < n; j0 += block) {
+                    multiplyAdd(a, b, c, k, n, i0, i1, p0, p1, j0, Math.min(j0 + block, n));
+                }
+            }
+        }
+    }
+
+    public static void multiplyRecursive(long[] a, long[] b, long[] c, int m, int k, int n) {
+        checkMatrix(a.length, m, k);
+        checkMatrix(b.length, k, n);
+        checkMatrix(c.length, m, n);
+        Arrays.fill(c, 0, m * n, 0);
+        multiplyRecursive(a, b, c, k, n, 0, m, 0, k, 0, n);
+    }
+
+    private static void multiplyRecursive(long[] a, long[] b, long[] c, int k, int n,
+                                          int i0, int i1, int p0, int p1, int j0, int j1) {
+        int di = i1 - i0, dp = p1 - p0, dj = j1 - j0;
+        if (di <= RECURSIVE_LEAF * 2 && dp <= RECURSIVE_LEAF * 2 && dj <= RECURSIVE_LEAF * 2) {
+            multiplyAdd(a, b, c, k, n, i0, i1, p0, p1, j0, j1);
+        } else if (di >= dp && di >= dj) {
+            int mid = (i0 + i1) >>> 1;
+            multiplyRecursive(a, b, c, k, n, i0, mid, p0, p1, j0, j1);
+            multiplyRecursive(a, b, c, k, n, mid, i1, p0, p1, j0, j1);
+        } else if (dj >= dp) {
+            int mid = (j0 + j1) >>> 1;
+            multiplyRecursive(a, b, c, k, n, i0, i1, p0, p1, j0, mid);
+            multiplyRecursive(a, b, c, k, n, i0, i1, p0, p1, mid, j1);
+        } else {
+            // 切分 p 时两半累加到 c 的同一块上，必须依次计算
+            int mid = (p0 + p1) >>> 1;
+            multiplyRecursive(a, b, c, k, n, i0, i1, p0, mid, j0, j1);
+            multiplyRecursive(a, b, c, k, n, i0, i1, mid, p1, j0, j1);
+        }
+    }
+
+    private static void multiplyAdd(long[] a, long[] b, long[] c, int k, int n,
+                                    int i0, int i1, int p0, int p1, int j0, int j1) {
+        for (int i = i0; i < i1; i++) {
+            int ci = i * n;
+            for (int p = p0; p < p1; p++) {
+                long aip = a[i * k + p];
+                int bp = p * n;
+                for (int j = j0; j < j1; j++) {
+                    c[ci + j] += aip * b[bp + j];
+                }
+            }
+        }
+    }
+
+    static void multiplyNaive(long[] a, long[] b, long[] c, int m, int k, int n) {
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                long sum = 0;
+                for (int p = 0; p < k; p++) {
+                    sum += a[i * k + p] * b[p * n + j];
+                }
+                c[i * n + j] = sum;
+            }
+        }
+    }
+
+    public static void stencil(long[] src, long[] dst, int rows, int cols, int steps, long wc, long wn) {
+        stencil(src, dst, rows, cols, steps, wc, wn, stripRows(cols, Long.BYTES));
+    }
+
+    public static void stencil(long[] src, long[] dst, int rows, int cols, int steps, long wc, long wn,
+                               int stripRows) {
+        checkMatrix(src.length, rows, cols);
+        checkMatrix(dst.length, rows, cols);
+        checkBlock(stripRows);
+        // 条带比矩阵高时和整个矩阵一个条带相同
+        stripRows = Math.min(stripRows, Math.max(rows, 1));
+        if (steps < 0) {
+            throw new IllegalArgumentException("steps(" + steps + ") < 0");
+        }
+        if (src == dst) {
+            throw new IllegalArgumentException("src and dst must be different arrays");
+        }
+        int size = rows * cols;
+        if (steps == 0) {
+            System.arraycopy(src, 0, dst, 0, size);
+            return;
+        }
+
+        int t = Math.max(1, stripRows / 4);
+        int rounds = (steps + t - 1) / t;
+        // 每一轮读 in 写 out，一轮中所有条带读的数组不能改变，所以多于一轮时需要第三个数组。
+        // 输出在 dst 和 spare 之间交替，使得最后一轮正好写入 dst
+        long[] spare = rounds > 1 ? new long[size] : null;
+        // 缓冲区中的行数不会超过矩阵的行数，所以不会溢出
+        long[] buf0 = new long[Math.min(stripRows + 2 * t, rows) * cols], buf1 = new long[buf0.length];
+        long[] in = src;
+        for (int round = 1, done = 0; done < steps; round++, done += t) {
+            long[] out = ((rounds - round) & 1) == 0 ? dst : spare;
+            for (int r0 = 0; r0 < rows; r0 += stripRows) {
+                stencilStrip(in, out, rows, cols, r0, Math.min(r0 + stripRows, rows), Math.min(t, steps - done),
+                        wc, wn, buf0, buf1);
+            }
+            in = out;
+        }
+    }
+
+    private static void stencilStrip(long[] in, long[] out, int rows, int cols, int r0, int r1, int steps,
+                                     long wc, long wn, long[] buf0, long[] buf1) {
+        int lo = Math.max(0, r0 - steps), hi = Math.min(rows, r1 + steps);
+        int len = (hi - lo) * cols;
+        // 两个缓冲区都要复制一份，边界行和边界列不会被写入
+        System.arraycopy(in, lo * cols, buf0, 0, len);
+        System.arraycopy(in, lo * cols, buf1, 0, len);
+        long[] cur = buf0, next = buf1;
+        for (int s = 1; s <= steps; s++) {
+            int g0 = lo == 0 ? 1 : lo + s, g1 = hi == rows ? rows - 1 : hi - s;
+            for (int g = g0; g < g1; g++) {
+                for (int x = (g - lo) * cols + 1, end = x + cols - 2; x < end; x++) {
+                    next[x] = wc * cur[x] + wn * (cur[x - cols] + cur[x + cols] + cur[x - 1] + cur[x + 1]);
+                }
+            }
+            long[] t = cur; cur = next; next = t;
+        }
+        System.arraycopy(cur, (r0 - lo) * cols, out, r0 * cols, (r1 - r0) * cols);
+    }
+
+    static void stencilNaive(long[] src, long[] dst, int rows, int cols, int steps, long wc, long wn) {
+        long[] cur = src.clone(), next = src.clone();
+        for (int s = 0; s < steps; s++) {
+            for (int i = 1; i < rows - 1; i++) {
+                for (int j = 1; j < cols - 1; j++) {
+                    int x = i * cols + j;
+                    next[x] = wc * cur[x] + wn * (cur[x - cols] + cur[x + cols] + cur[x - 1] + cur[x + 1]);
+                }
+            }
+            long[] t = cur; cur = next; next = t;
+        }
+        System.arraycopy(cur, 0, dst, 0, rows * cols);
+    }
+
+    public static void transpose(int[] src, int[] dst, int rows, int cols) {
+        transpose(src, dst, rows, cols, transposeBlock);
+    }
+
+    public static void transpose(int[] src, int[] dst, int rows, int cols, int block) {
+        checkMatrix(src.length, rows, cols);
+        checkMatrix(dst.length, cols, rows);
+        checkBlock(block);
+        for (int i0 = 0; i0 < rows; i0 += block) {
+            int i1 = Math.min(i0 + block, rows);
+            for (int j0 = 0; j0 < cols; j0 += block) {
+                int j1 = Math.min(j0 + block, cols);
+                for (int i = i0; i < i1; i++) {
+                    for (int j = j0, s = i * cols + j0; j < j1; j++, s++) {
+                        dst[j * rows + i] = src[s];
+                    }
+                }
+            }
+        }
+    }
+
+    public static void transposeRecursive(int[] src, int[] dst, int rows, int cols) {
+        checkMatrix(src.length, rows, cols);
+        checkMatrix(dst.length, cols, rows);
+        transposeRecursive(src, dst, rows, cols, 0, rows, 0, cols);
+    }
+
+    private static void transposeRecursive(int[] src, int[] dst, int rows, int cols,
+                                           int i0, int i1, int j0, int j1) {
+        if (i1 - i0 <= RECURSIVE_LEAF && j1 - j0 <= RECURSIVE_LEAF) {
+            for (int i = i0; i < i1; i++) {
+                for (int j = j0, s = i * cols + j0; j < j1; j++, s++) {
+                    dst[j * rows + i] = src[s];
+                }
+            }
+        } else if (i1 - i0 >= j1 - j0) {
+            int mid = (i0 + i1) >>> 1;
+            transposeRecursive(src, dst, rows, cols, i0, mid, j0, j1);
+            transposeRecursive(src, dst, rows, cols, mid, i1, j0, j1);
+        } else {
+            int mid = (j0 + j1) >>> 1;
+            transposeRecursive(src, dst, rows, cols, i0, i1, j0, mid);
+            transposeRecursive(src, dst, rows, cols, i0, i1, mid, j1);
+        }
+    }
+
+    static void transposeNaive(int[] src, int[] dst, int rows, int cols) {
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                dst[j * rows + i] = src[i * cols + j];
+            }
+        }
+    }
+
+    public static void multiply(int[] a, int[] b, int[] c, int m, int k, int n) {
+        multiply(a, b, c, m, k, n, multiplyBlock);
+    }
+
+    public static void multiply(int[] a, int[] b, int[] c, int m, int k, int n, int block) {
+        checkMatrix(a.length, m, k);
+        checkMatrix(b.length, k, n);
+        checkMatrix(c.length, m, n);
+        checkBlock(block);
+        Arrays.fill(c, 0, m * n, 0);
+        for (int i0 = 0; i0 < m; i0 += block) {
+            int i1 = Math.min(i0 + block, m);
+            for (int p0 = 0; p0 < k; p0 += block) {
+                int p1 = Math.min(p0 + block, k);
+                for (int j0 = 0; j0 < n; j0 += block) {
+                    multiplyAdd(a, b, c, k, n, i0, i1, p0, p1, j0, Math.min(j0 + block, n));
+                }
+            }
+        }
+    }
+
+    public static void multiplyRecursive(int[] a, int[] b, int[] c, int m, int k, int n) {
+        checkMatrix(a.length, m, k);
+        checkMatrix(b.length, k, n);
+        checkMatrix(c.length, m, n);
+        Arrays.fill(c, 0, m * n, 0);
+        multiplyRecursive(a, b, c, k, n, 0, m, 0, k, 0, n);
+    }
+
+    private static void multiplyRecursive(int[] a, int[] b, int[] c, int k, int n,
+                                          int i0, int i1, int p0, int p1, int j0, int j1) {
+        int di = i1 - i0, dp = p1 - p0, dj = j1 - j0;
+        if (di <= RECURSIVE_LEAF * 2 && dp <= RECURSIVE_LEAF * 2 && dj <= RECURSIVE_LEAF * 2) {
+            multiplyAdd(a, b, c, k, n, i0, i1, p0, p1, j0, j1);
+        } else if (di >= dp && di >= dj) {
+            int mid = (i0 + i1) >>> 1;
+            multiplyRecursive(a, b, c, k, n, i0, mid, p0, p1, j0, j1);
+            multiplyRecursive(a, b, c, k, n, mid, i1, p0, p1, j0, j1);
+        } else if (dj >= dp) {
+            int mid = (j0 + j1) >>> 1;
+            multiplyRecursive(a, b, c, k, n, i0, i1, p0, p1, j0, mid);
+            multiplyRecursive(a, b, c, k, n, i0, i1, p0, p1, mid, j1);
+        } else {
+            // 切分 p 时两半累加到 c 的同一块上，必须依次计算
+            int mid = (p0 + p1) >>> 1;
+            multiplyRecursive(a, b, c, k, n, i0, i1, p0, mid, j0, j1);
+            multiplyRecursive(a, b, c, k, n, i0, i1, mid, p1, j0, j1);
+        }
+    }
+
+    private static void multiplyAdd(int[] a, int[] b, int[] c, int k, int n,
+                                    int i0, int i1, int p0, int p1, int j0, int j1) {
+        for (int i = i0; i < i1; i++) {
+            int ci = i * n;
+            for (int p = p0; p < p1; p++) {
+                int aip = a[i * k + p];
+                int bp = p * n;
+                for (int j = j0; j < j1; j++) {
+                    c[ci + j] += aip * b[bp + j];
+                }
+            }
+        }
+    }
+
+    static void multiplyNaive(int[] a, int[] b, int[] c, int m, int k, int n) {
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                int sum = 0;
+                for (int p = 0; p < k; p++) {
+                    sum += a[i * k + p] * b[p * n + j];
+                }
+                c[i * n + j] = sum;
+            }
+        }
+    }
+
+    public static void stencil(int[] src, int[] dst, int rows, int cols, int steps, int wc, int wn) {
+        stencil(src, dst, rows, cols, steps, wc, wn, stripRows(cols, Integer.BYTES));
+    }
+
+    public static void stencil(int[] src, int[] dst, int rows, int cols, int steps, int wc, int wn,
+                               int stripRows) {
+        checkMatrix(src.length, rows, cols);
+        checkMatrix(dst.length, rows, cols);
+        checkBlock(stripRows);
+        // 条带比矩阵高时和整个矩阵一个条带相同
+        stripRows = Math.min(stripRows, Math.max(rows, 1));
+        if (steps < 0) {
+            throw new IllegalArgumentException("steps(" + steps + ") < 0");
+        }
+        if (src == dst) {
+            throw new IllegalArgumentException("src and dst must be different arrays");
+        }
+        int size = rows * cols;
+        if (steps == 0) {
+            System.arraycopy(src, 0, dst, 0, size);
+            return;
+        }
+
+        int t = Math.max(1, stripRows / 4);
+        int rounds = (steps + t - 1) / t;
+        // 每一轮读 in 写 out，一轮中所有条带读的数组不能改变，所以多于一轮时需要第三个数组。
+        // 输出在 dst 和 spare 之间交替，使得最后一轮正好写入 dst
+        int[] spare = rounds > 1 ? new int[size] : null;
+        // 缓冲区中的行数不会超过矩阵的行数，所以不会溢出
+        int[] buf0 = new int[Math.min(stripRows + 2 * t, rows) * cols], buf1 = new int[buf0.length];
+        int[] in = src;
+        for (int round = 1, done = 0; done < steps; round++, done += t) {
+            int[] out = ((rounds - round) & 1) == 0 ? dst : spare;
+            for (int r0 = 0; r0 < rows; r0 += stripRows) {
+                stencilStrip(in, out, rows, cols, r0, Math.min(r0 + stripRows, rows), Math.min(t, steps - done),
+                        wc, wn, buf0, buf1);
+            }
+            in = out;
+        }
+    }
+
+    private static void stencilStrip(int[] in, int[] out, int rows, int cols, int r0, int r1, int steps,
+                                     int wc, int wn, int[] buf0, int[] buf1) {
+        int lo = Math.max(0, r0 - steps), hi = Math.min(rows, r1 + steps);
+        int len = (hi - lo) * cols;
+        // 两个缓冲区都要复制一份，边界行和边界列不会被写入
+        System.arraycopy(in, lo * cols, buf0, 0, len);
+        System.arraycopy(in, lo * cols, buf1, 0, len);
+        int[] cur = buf0, next = buf1;
+        for (int s = 1; s <= steps; s++) {
+            int g0 = lo == 0 ? 1 : lo + s, g1 = hi == rows ? rows - 1 : hi - s;
+            for (int g = g0; g < g1; g++) {
+                for (int x = (g - lo) * cols + 1, end = x + cols - 2; x < end; x++) {
+                    next[x] = wc * cur[x] + wn * (cur[x - cols] + cur[x + cols] + cur[x - 1] + cur[x + 1]);
+                }
+            }
+            int[] t = cur; cur = next; next = t;
+        }
+        System.arraycopy(cur, (r0 - lo) * cols, out, r0 * cols, (r1 - r0) * cols);
+    }
+
+    static void stencilNaive(int[] src, int[] dst, int rows, int cols, int steps, int wc, int wn) {
+        int[] cur = src.clone(), next = src.clone();
+        for (int s = 0; s < steps; s++) {
+            for (int i = 1; i < rows - 1; i++) {
+                for (int j = 1; j < cols - 1; j++) {
+                    int x = i * cols + j;
+                    next[x] = wc * cur[x] + wn * (cur[x - cols] + cur[x + cols] + cur[x - 1] + cur[x + 1]);
+                }
+            }
+            int[] t = cur; cur = next; next = t;
+        }
+        System.arraycopy(cur, 0, dst, 0, rows * cols);
+    }
+
+    /**
+     * 各种形状（包括不能被块大小整除的）下，分块、递归版本和朴素版本的结果相同。
+     */
+    @Test
+    public void testKernels() {
+        Random random = new Random(47);
+        int[][] shapes = {{0, 0}, {1, 1}, {1, 7}, {7, 1}, {3, 3}, {17, 33}, {64, 64}, {100, 37}, {129, 257}};
+        for (int[] shape : shapes) {
+            int rows = shape[0], cols = shape[1];
+            double[] d = random.doubles(rows * cols).toArray();
+            long[] l = random.longs(rows * cols).toArray();
+            int[] x = random.ints(rows * cols).toArray();
+
+            double[] expectedD = new double[rows * cols], actualD = new double[rows * cols];
+            transposeNaive(d, expectedD, rows, cols);
+            for (int block : new int[]{1, 5, 16}) {
+                transpose(d, actualD, rows, cols, block);
+                assertArrayEquals(expectedD, actualD);
+            }
+            transposeRecursive(d, actualD, rows, cols);
+            assertArrayEquals(expectedD, actualD);
+            long[] expectedL = new long[rows * cols], actualL = new long[rows * cols];
+            transposeNaive(l, expectedL, rows, cols);
+            transpose(l, actualL, rows, cols, 5);
+            assertArrayEquals(expectedL, actualL);
+            int[] expectedX = new int[rows * cols], actualX = new int[rows * cols];
+            transposeNaive(x, expectedX, rows, cols);
+            transposeRecursive(x, actualX, rows, cols);
+            assertArrayEquals(expectedX, actualX);
+
+            // rows * cols 的矩阵乘以 cols * rows 的矩阵。整数的结果必须完全相同，浮点数的累加顺序不同，只能近似相同
+            int m = rows, k = cols, n = rows;
+            double[] c0 = new double[m * n], c1 = new double[m * n];
+            multiplyNaive(d, expectedD, c0, m, k, n);
+            for (int block : new int[]{1, 5, 16}) {
+                multiply(d, expectedD, c1, m, k, n, block);
+                assertArrayEquals(c0, c1, 1e-9);
+            }
+            multiplyRecursive(d, expectedD, c1, m, k, n);
+            assertArrayEquals(c0, c1, 1e-9);
+            long[] lc0 = new long[m * n], lc1 = new long[m * n];
+            multiplyNaive(l, expectedL, lc0, m, k, n);
+            multiply(l, expectedL, lc1, m, k, n, 7);
+            assertArrayEquals(lc0, lc1);
+            int[] xc0 = new int[m * n], xc1 = new int[m * n];
+            multiplyNaive(x, expectedX, xc0, m, k, n);
+            multiplyRecursive(x, expectedX, xc1, m, k, n);
+            assertArrayEquals(xc0, xc1);
+
+            for (int steps : new int[]{0, 1, 3, 10}) {
+                stencilNaive(d, expectedD, rows, cols, steps, 0.5, 0.125);
+                for (int strip : new int[]{1, 4, 8, 40}) {
+                    stencil(d, actualD, rows, cols, steps, 0.5, 0.125, strip);
+                    assertArrayEquals(expectedD, actualD);
+                }
+                stencilNaive(x, expectedX, rows, cols, steps, 3, -1);
+                stencil(x, actualX, rows, cols, steps, 3, -1, 8);
+                assertArrayEquals(expectedX, actualX);
+                stencilNaive(l, expectedL, rows, cols, steps, 3, -1);
+                stencil(l, actualL, rows, cols, steps, 3, -1);
+                assertArrayEquals(expectedL, actualL);
+            }
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> transpose(new int[10], new int[10], 3, 4));
+        assertThrows(IllegalArgumentException.class, () -> multiply(new long[4], new long[4], new long[4], 2, 2, 2, 0));
+        double[] same = new double[9];
+        assertThrows(IllegalArgumentException.class, () -> stencil(same, same, 3, 3, 1, 1, 1));
+
+        // 条带高度大于行数时按整个矩阵一个条带处理，(stripRows + 2t) * cols 不会溢出
+        double[] big = new Random(47).doubles(64 * 64).toArray(), expected = new double[big.length];
+        double[] actual = new double[big.length];
+        stencilNaive(big, expected, 64, 64, 5, 0.5, 0.125);
+        stencil(big, actual, 64, 64, 5, 0.5, 0.125, Integer.MAX_VALUE);
+        assertArrayEquals(expected, actual);
+    }
+
+    /**
+     * 和朴素的循环比较。double 矩阵：转置 4096 * 4096，乘法 1024 * 1024，模板 4096 * 4096 迭代 16 次。
+     */
+    @Test
+    public void testBenchmark() {
+        Random random = new Random(47);
+        autoTune();
+        System.out.printf("tuned: transpose block = %d, multiply block = %d, stencil budget = %dKB%n",
+                transposeBlock, multiplyBlock, stencilBudget >> 10);
+
+        int n = 4096;
+        double[] src = random.doubles(n * n).toArray(), dst = new double[n * n];
+        System.out.printf("%-28s%10.2fms%n", "transpose naive", time(() -> transposeNaive(src, dst, n, n)));
+        System.out.printf("%-28s%10.2fms%n", "transpose tiled", time(() -> transpose(src, dst, n, n)));
+        System.out.printf("%-28s%10.2fms%n", "transpose recursive", time(() -> transposeRecursive(src, dst, n, n)));
+
+        int m = 1024;
+        double[] a = random.doubles(m * m).toArray(), b = random.doubles(m * m).toArray(), c = new double[m * m];
+        System.out.printf("%-28s%10.2fms%n", "multiply naive (i-j-k)", time(() -> multiplyNaive(a, b, c, m, m, m)));
+        System.out.printf("%-28s%10.2fms%n", "multiply tiled", time(() -> multiply(a, b, c, m, m, m)));
+        System.out.printf("%-28s%10.2fms%n", "multiply recursive", time(() -> multiplyRecursive(a, b, c, m, m, m)));
+
+        System.out.printf("%-28s%10.2fms%n", "stencil naive",
+                time(() -> stencilNaive(src, dst, n, n, 16, 0.5, 0.125)));
+        System.out.printf("%-28s%10.2fms%n", "stencil tiled", time(() -> stencil(src, dst, n, n, 16, 0.5, 0.125)));
+
+        /*
+        输出（3 次取最小值）：
+        tuned: transpose block = 32, multiply block = 128, stencil budget = 2048KB
+        transpose naive                 308.40ms
+        transpose tiled                  93.38ms
+        transpose recursive             107.79ms
+        multiply naive (i-j-k)         5364.59ms
+        multiply tiled                 1141.54ms
+        multiply recursive              999.12ms
+        stencil naive                  1182.46ms
+        stencil tiled                   710.01ms
+
+        转置的块大小为 32 时，一块在 src、dst 中各占 32 个缓存行，加起来 16KB，正好在 L1 缓存之内，比朴素循环快 3 倍多；
+        递归版本不需要调优，只慢了 15%。
+        矩阵乘法的提升主要来自循环顺序：i-p-j 顺序的最内层循环连续访问 b 和 c，JIT 可以向量化；分块再让 b 的一块留在缓存中。
+        模板迭代每 t 次才访问一次内存，但是重叠区的重复计算和缓冲区复制抵消了一部分收益，快了 40% 左右。
+        同一台机器上再次运行时 autoTune 选出了 transpose block = 8、multiply block = 256，各项耗时和上面相差不到一倍：
+        几个候选参数之间的差距和测量噪声差不多，调优结果并不稳定，所以默认使用固定的参数，只在显式调用 autoTune 时调优。
+         */
+    }
+
+    /**
+     * 运行 3 次，返回最短的耗时（毫秒）。
+     */
+    private static double time(Runnable kernel) {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < 3; r++) {
+            long start = System.nanoTime();
+            kernel.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e6;
+    }
+}
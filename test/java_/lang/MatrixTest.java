@@ -0,0 +1,244 @@
+package java_.lang;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntBinaryOperator;
+
+import static java_.TestUtil.usedMemory;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link IntMatrix}、{@link DoubleMatrix} 的测试，以及和二维数组的比较。
+ */
+public class MatrixTest {
+
+    /**
+     * 堆内、堆外（使用很小的块，使得行跨越多个块）矩阵的读写、视图和批量操作结果和二维数组相同。
+     */
+    @Test
+    public void testIntMatrix() {
+        Random random = new Random(47);
+        int rows = 37, cols = 23;
+        int[][] expected = new int[rows][cols];
+        for (int[] row : expected) {
+            for (int j = 0; j < cols; j++) {
+                row[j] = random.nextInt();
+            }
+        }
+
+        for (IntMatrix m : new IntMatrix[]{new IntMatrix(rows, cols), IntMatrix.offHeap(rows, cols, 4)}) {
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < cols; j++) {
+                    m.set(i, j, expected[i][j]);
+                }
+            }
+            assertArrayEquals(expected, m.toArray());
+
+            // 行、列和对角线视图
+            int[] buf = new int[rows];
+            m.row(5).copyTo(buf, 0);
+            assertArrayEquals(expected[5], Arrays.copyOf(buf, cols));
+            m.column(7).copyTo(buf, 0);
+            for (int i = 0; i < rows; i++) {
+                assertEquals(expected[i][7], buf[i]);
+            }
+            IntMatrix.Vector diagonal = m.strided(0, cols + 1, Math.min(rows, cols));
+            for (int k = 0; k < diagonal.length(); k++) {
+                assertEquals(expected[k][k], diagonal.get(k));
+            }
+            long[] sum = new long[1];
+            m.column(3).forEach(x -> sum[0] += x);
+            assertEquals(Arrays.stream(expected).mapToLong(r -> r[3]).sum(), sum[0]);
+
+            // 通过视图写入
+            m.column(2).fill(-1);
+            m.row(4).copyFrom(expected[10], 0);
+            m.row(6).set(1, 42);
+            // 第 4 行在填充第 2 列之后被整行覆盖
+            int[] row10 = expected[10].clone();
+            for (int i = 0; i < rows; i++) {
+                expected[i][2] = -1;
+            }
+            expected[4] = row10;
+            expected[6][1] = 42;
+            assertArrayEquals(expected, m.toArray());
+
+            IntMatrix copy = IntMatrix.offHeap(rows, cols, 3);
+            copy.copyFrom(m);
+            assertArrayEquals(expected, copy.toArray());
+            IntMatrix heapCopy = IntMatrix.of(expected);
+            assertFalse(heapCopy.isOffHeap());
+            heapCopy.copyFrom(copy);
+            assertArrayEquals(expected, heapCopy.toArray());
+
+            m.fill(9);
+            for (int[] row : m.toArray()) {
+                assertTrue(Arrays.stream(row).allMatch(x -> x == 9));
+            }
+            for (int[] row : expected) {
+                Arrays.fill(row, 9);
+            }
+        }
+
+        IntMatrix m = new IntMatrix(3, 4);
+        assertThrows(IndexOutOfBoundsException.class, () -> m.get(0, 4));
+        assertThrows(IndexOutOfBoundsException.class, () -> m.set(3, 0, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> m.row(3));
+        assertThrows(IndexOutOfBoundsException.class, () -> m.strided(0, 5, 4));
+        // (length - 1) * stride 溢出 long 时不能当作负数通过检查
+        assertThrows(IndexOutOfBoundsException.class, () -> m.strided(1, Long.MAX_VALUE / 2 + 1, 3));
+        assertThrows(IndexOutOfBoundsException.class, () -> m.strided(12, 1, 1));
+        assertEquals(1, m.strided(11, Long.MAX_VALUE, 1).length());
+        assertThrows(IndexOutOfBoundsException.class, () -> m.row(0).copyTo(new int[3], 0));
+        assertThrows(IllegalArgumentException.class, () -> new IntMatrix(-1, 2));
+        assertThrows(IllegalArgumentException.class, () -> IntMatrix.of(new int[][]{{1, 2}, {3}}));
+        assertThrows(IllegalArgumentException.class, () -> m.copyFrom(new IntMatrix(4, 3)));
+
+        // 行数或列数为 0 的矩阵
+        assertArrayEquals(new int[3][0], IntMatrix.of(new int[3][0]).toArray());
+        assertArrayEquals(new int[3][0], new IntMatrix(3, 0).toArray());
+        assertArrayEquals(new int[0][5], new IntMatrix(0, 5).toArray());
+        IntMatrix empty = IntMatrix.offHeap(3, 0, 3);
+        empty.copyFrom(new IntMatrix(3, 0));
+        assertArrayEquals(new int[3][0], empty.toArray());
+        assertEquals(0, empty.row(2).length());
+        assertThrows(IndexOutOfBoundsException.class, () -> empty.row(3));
+        assertThrows(IndexOutOfBoundsException.class, () -> empty.column(0));
+        assertEquals(0, new IntMatrix(0, 5).column(4).length());
+        assertThrows(IndexOutOfBoundsException.class, () -> new IntMatrix(0, 5).row(0));
+    }
+
+    @Test
+    public void testDoubleMatrix() {
+        Random random = new Random(47);
+        double[][] expected = new double[19][31];
+        for (double[] row : expected) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] = random.nextDouble();
+            }
+        }
+        for (DoubleMatrix m : new DoubleMatrix[]{DoubleMatrix.of(expected), DoubleMatrix.offHeap(19, 31, 5)}) {
+            if (m.isOffHeap()) {
+                for (int i = 0; i < 19; i++) {
+                    m.row(i).copyFrom(expected[i], 0);
+                }
+            }
+            assertArrayEquals(expected, m.toArray());
+            double[] column = new double[19];
+            m.column(30).copyTo(column, 0);
+            for (int i = 0; i < 19; i++) {
+                assertEquals(expected[i][30], column[i]);
+            }
+            m.strided(1, 2, 100).fill(0.5);
+            for (int k = 0; k < 100; k++) {
+                int x = 1 + 2 * k;
+                expected[x / 31][x % 31] = 0.5;
+            }
+            assertArrayEquals(expected, m.toArray());
+            assertThrows(IndexOutOfBoundsException.class, () -> m.strided(5, Long.MAX_VALUE / 2, 3));
+        }
+
+        assertArrayEquals(new double[3][0], DoubleMatrix.of(new double[3][0]).toArray());
+        DoubleMatrix empty = DoubleMatrix.offHeap(3, 0, 5);
+        empty.copyFrom(new DoubleMatrix(3, 0));
+        assertArrayEquals(new double[3][0], empty.toArray());
+        assertEquals(0, new DoubleMatrix(0, 4).column(3).length());
+        assertThrows(IndexOutOfBoundsException.class, () -> empty.column(0));
+    }
+
+    /**
+     * 比较二维数组和 {@link IntMatrix} 的内存占用和访问速度：
+     * <ul>
+     *     <li>8000 * 8000 的方阵：顺序（行优先）遍历、按列遍历、随机访问</li>
+     *     <li>10,000,000 * 3 的窄矩阵：每一行只有 3 个元素时对象头的开销</li>
+     * </ul>
+     */
+    @Test
+    public void testBenchmark() {
+        System.out.printf("%-16s%-10s%12s%14s%14s%14s%n", "shape", "layout", "memory", "row-major", "column-major",
+                "random");
+        for (int[] shape : new int[][]{{8000, 8000}, {10_000_000, 3}}) {
+            int rows = shape[0], cols = shape[1];
+            String name = rows + "x" + cols;
+
+            long before = usedMemory();
+            int[][] jagged = new int[rows][cols];
+            long jaggedBytes = usedMemory() - before;
+            report(name, "int[][]", jaggedBytes, rows, cols, (i, j) -> jagged[i][j]);
+            // 释放二维数组之后再创建矩阵，避免堆不够用
+            Arrays.fill(jagged, null);
+
+            before = usedMemory();
+            IntMatrix matrix = new IntMatrix(rows, cols);
+            long matrixBytes = usedMemory() - before;
+            report(name, "IntMatrix", matrixBytes, rows, cols, matrix::get);
+        }
+        /* 输出：
+        shape           layout          memory     row-major  column-major        random
+        8000x8000       int[][]        256.2MB        1.27ns       14.44ns       42.35ns
+        8000x8000       IntMatrix      256.0MB        3.84ns       17.31ns       47.23ns
+        10000000x3      int[][]        360.0MB        2.54ns        7.50ns       82.25ns
+        10000000x3      IntMatrix      120.0MB        2.94ns        5.12ns       49.06ns
+
+        结论：
+        - 方阵的每一行本身就很大，二维数组只多了 8000 个数组对象头，内存几乎相同。
+          窄矩阵则不同：每行 3 个 int 只有 12 字节数据，却要 16 字节对象头、补齐和 4 字节引用，
+          二维数组的内存是 IntMatrix 的 3 倍。
+        - 窄矩阵的二维数组有 10^7 个小对象，随机访问要先读引用再读行，多一次缓存缺失，比 IntMatrix 慢约 70%；
+          按列遍历时 IntMatrix 的地址严格等间隔，硬件预取器能识别，也更快。
+        - 方阵行优先遍历时 IntMatrix 较慢，主要是这里通过 IntBinaryOperator 调用 get，
+          第二次 report 时调用点变成多态，get 中的下标检查也无法和循环一起消除；
+          实际使用中应当用 row(i) 视图的批量操作或直接在循环中调用 get。
+        - 不论哪种布局，按列遍历都比按行遍历慢一个数量级，这是存储顺序决定的，扁平化并不能改变这一点。
+        */
+    }
+
+    private static void report(String shape, String layout, long bytes, int rows, int cols, IntBinaryOperator get) {
+        long n = (long) rows * cols;
+        long sink = 0;
+
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < 3; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < cols; j++) {
+                    sink += get.applyAsInt(i, j);
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double rowMajor = (double) best / n;
+
+        best = Long.MAX_VALUE;
+        for (int r = 0; r < 3; r++) {
+            long start = System.nanoTime();
+            for (int j = 0; j < cols; j++) {
+                for (int i = 0; i < rows; i++) {
+                    sink += get.applyAsInt(i, j);
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double columnMajor = (double) best / n;
+
+        // 使用线性同余生成器产生随机下标，避免 Random 本身的开销
+        best = Long.MAX_VALUE;
+        final int accesses = 10_000_000;
+        for (int r = 0; r < 3; r++) {
+            long x = 47;
+            long start = System.nanoTime();
+            for (int k = 0; k < accesses; k++) {
+                x = x * 6364136223846793005L + 1442695040888963407L;
+                long index = (x >>> 1) % n;
+                sink += get.applyAsInt((int) (index / cols), (int) (index % cols));
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double random = (double) best / accesses;
+
+        System.out.printf("%-16s%-10s%10.1fMB%12.2fns%12.2fns%12.2fns%s%n", shape, layout, bytes / 1e6,
+                rowMajor, columnMajor, random, sink == 42 ? " " : "");
+    }
+}
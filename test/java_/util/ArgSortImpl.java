@@ -0,0 +1,335 @@
+package java_.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 不装箱的 argsort 和按基本类型键排序对象数组。
+ * <p>
+ * 按对象的 int 字段排序时，{@code Comparator.comparing(Item::getId)} 每次比较都要装箱（java_.lang.BoxUnBoxTest），
+ * 即使使用 {@code Comparator.comparingInt}，每次比较也要通过两个引用读取对象的字段，对象分散在堆中，大多是缓存未命中。
+ * <p>
+ * 这里把键一次性抽取到连续的基本类型数组中再排序，比较时不再访问对象：
+ * <ul>
+ *     <li>int 键：把 (key, index) 打包成一个 long，高 32 位是键，低 32 位是下标，然后用
+ *     {@link DualPivotQuickSortImpl} 对 long 数组排序。下标各不相同，所以结果是稳定的。</li>
+ *     <li>long 键：键的值域不超过 2^32 时（例如一段时间内的时间戳）减去最小值后同样打包；
+ *     否则对键数组和下标数组这两个平行数组进行稳定的归并排序。</li>
+ * </ul>
+ * 排序完成后按下标重排一次对象数组。
+ */
+public class ArgSortImpl {
+
+    // 归并排序之前，先用插入排序把数组排成长度为 RUN 的有序段
+    private static final int RUN = 32;
+
+    /**
+     * 返回排列 perm，使得 keys[perm[0]] <= keys[perm[1]] <= ...，键相等时下标小的在前。keys 不会被修改。
+     */
+    public static int[] argsort(int[] keys) {
+        int n = keys.length;
+        long[] packed = pack(keys, n);
+        int[] perm = new int[n];
+        for (int i = 0; i < n; i++) {
+            perm[i] = (int) packed[i];
+        }
+        return perm;
+    }
+
+    /**
+     * 返回排列 perm，使得 keys[perm[0]] <= keys[perm[1]] <= ...，键相等时下标小的在前。keys 不会被修改。
+     */
+    public static int[] argsort(long[] keys) {
+        int n = keys.length;
+        long[] packed = pack(keys, n);
+        int[] perm = new int[n];
+        if (packed != null) {
+            for (int i = 0; i < n; i++) {
+                perm[i] = (int) packed[i];
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                perm[i] = i;
+            }
+            mergeSort(keys.clone(), perm, new long[n], new int[n], n);
+        }
+        return perm;
+    }
+
+    /**
+     * 按 key 函数的值对数组进行稳定的升序排序，每个元素只调用一次 key 函数。
+     */
+    public static <T> void sortByIntKey(T[] a, ToIntFunction<? super T> key) {
+        int n = a.length;
+        int[] keys = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = key.applyAsInt(a[i]);
+        }
+        long[] packed = pack(keys, n);
+
+        Object[] copy = a.clone();
+        for (int i = 0; i < n; i++) {
+            a[i] = cast(copy[(int) packed[i]]);
+        }
+    }
+
+    /**
+     * 按 key 函数的值对数组进行稳定的升序排序，每个元素只调用一次 key 函数。
+     */
+    public static <T> void sortByLongKey(T[] a, ToLongFunction<? super T> key) {
+        int n = a.length;
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = key.applyAsLong(a[i]);
+        }
+
+        Object[] copy = a.clone();
+        long[] packed = pack(keys, n);
+        if (packed != null) {
+            for (int i = 0; i < n; i++) {
+                a[i] = cast(copy[(int) packed[i]]);
+            }
+        } else {
+            int[] perm = new int[n];
+            for (int i = 0; i < n; i++) {
+                perm[i] = i;
+            }
+            mergeSort(keys, perm, new long[n], new int[n], n);
+            for (int i = 0; i < n; i++) {
+                a[i] = cast(copy[perm[i]]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object o) {
+        return (T) o;
+    }
+
+    /**
+     * 把 (keys[i], i) 打包成 long 并排序。键在高 32 位，有符号的 long 比较就是先比较键再比较下标。
+     */
+    private static long[] pack(int[] keys, int n) {
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++) {
+            packed[i] = (long) keys[i] << 32 | i;
+        }
+        DualPivotQuickSortImpl.sort(packed);
+        return packed;
+    }
+
+    /**
+     * 键的值域 max - min 小于 2^32 时，把 key - min - 2^31 放到高 32 位打包并排序；否则返回 null。
+     */
+    private static long[] pack(long[] keys, int n) {
+        if (n == 0) {
+            return new long[0];
+        }
+        long min = keys[0], max = keys[0];
+        for (int i = 1; i < n; i++) {
+            long k = keys[i];
+            if (k < min) {
+                min = k;
+            } else if (k > max) {
+                max = k;
+            }
+        }
+        // max - min 可能溢出，溢出时一定不小于 2^32
+        if (max - min < 0 || max - min > 0xffffffffL) {
+            return null;
+        }
+
+        long bias = min + Integer.MAX_VALUE + 1;
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++) {
+            packed[i] = (keys[i] - bias) << 32 | i;
+        }
+        DualPivotQuickSortImpl.sort(packed);
+        return packed;
+    }
+
+    /**
+     * 对 keys、index 两个平行数组按 (key, index) 进行稳定的自底向上归并排序，keyWork、indexWork 是同样长度的工作区。
+     * 比较时只读连续的 keys 数组。
+     */
+    static void mergeSort(long[] keys, int[] index, long[] keyWork, int[] indexWork, int n) {
+        for (int lo = 0; lo < n; lo += RUN) {
+            int hi = Math.min(lo + RUN, n);
+            for (int i = lo + 1; i < hi; i++) {
+                long k = keys[i];
+                int x = index[i];
+                int j = i - 1;
+                // 只有严格大于时才后移，保持稳定
+                while (j >= lo && keys[j] > k) {
+                    keys[j + 1] = keys[j];
+                    index[j + 1] = index[j];
+                    j--;
+                }
+                keys[j + 1] = k;
+                index[j + 1] = x;
+            }
+        }
+
+        long[] srcKeys = keys, dstKeys = keyWork;
+        int[] srcIndex = index, dstIndex = indexWork;
+        for (int width = RUN; width < n; width <<= 1) {
+            for (int lo = 0; lo < n; lo += width << 1) {
+                int mid = Math.min(lo + width, n), hi = Math.min(lo + (width << 1), n);
+                int i = lo, j = mid, d = lo;
+                while (i < mid && j < hi) {
+                    if (srcKeys[j] < srcKeys[i]) {
+                        dstKeys[d] = srcKeys[j];
+                        dstIndex[d++] = srcIndex[j++];
+                    } else {
+                        dstKeys[d] = srcKeys[i];
+                        dstIndex[d++] = srcIndex[i++];
+                    }
+                }
+                System.arraycopy(srcKeys, i, dstKeys, d, mid - i);
+                System.arraycopy(srcIndex, i, dstIndex, d, mid - i);
+                d += mid - i;
+                System.arraycopy(srcKeys, j, dstKeys, d, hi - j);
+                System.arraycopy(srcIndex, j, dstIndex, d, hi - j);
+            }
+            long[] tk = srcKeys; srcKeys = dstKeys; dstKeys = tk;
+            int[] ti = srcIndex; srcIndex = dstIndex; dstIndex = ti;
+        }
+        if (srcKeys != keys) {
+            System.arraycopy(srcKeys, 0, keys, 0, n);
+            System.arraycopy(srcIndex, 0, index, 0, n);
+        }
+    }
+
+    static final class Item {
+        final int id;
+        final long timestamp;
+        final String name;
+
+        Item(int id, long timestamp, String name) {
+            this.id = id;
+            this.timestamp = timestamp;
+            this.name = name;
+        }
+
+        int getId() {
+            return id;
+        }
+
+        long getTimestamp() {
+            return timestamp;
+        }
+    }
+
+    /**
+     * 结果和使用 Comparator 的稳定排序 {@link Arrays#sort(Object[], Comparator)} 完全相同。
+     */
+    @Test
+    public void testSort() {
+        Random random = new Random(47);
+        for (int size : new int[]{0, 1, 2, 31, 32, 33, 100, 1000, 100003}) {
+            for (int bound : new int[]{3, 1000, Integer.MAX_VALUE}) {
+                Item[] items = new Item[size];
+                for (int i = 0; i < size; i++) {
+                    int id = bound == Integer.MAX_VALUE ? random.nextInt() : random.nextInt(bound);
+                    long timestamp = bound == Integer.MAX_VALUE ? random.nextLong() : random.nextInt(bound) * 1000L;
+                    items[i] = new Item(id, timestamp, "item" + i);
+                }
+
+                Item[] expected = items.clone();
+                Arrays.sort(expected, Comparator.comparingInt(Item::getId));
+                Item[] actual = items.clone();
+                sortByIntKey(actual, Item::getId);
+                assertArrayEquals(expected, actual);
+                int[] perm = argsort(Arrays.stream(items).mapToInt(Item::getId).toArray());
+                for (int i = 0; i < size; i++) {
+                    assertSame(expected[i], items[perm[i]]);
+                }
+
+                expected = items.clone();
+                Arrays.sort(expected, Comparator.comparingLong(Item::getTimestamp));
+                actual = items.clone();
+                sortByLongKey(actual, Item::getTimestamp);
+                assertArrayEquals(expected, actual);
+                perm = argsort(Arrays.stream(items).mapToLong(Item::getTimestamp).toArray());
+                for (int i = 0; i < size; i++) {
+                    assertSame(expected[i], items[perm[i]]);
+                }
+            }
+        }
+
+        // long 键的两条路径：值域跨度超过 2^32 时使用归并排序
+        long[] keys = {Long.MAX_VALUE, Long.MIN_VALUE, 0, -1, Long.MAX_VALUE, 5, Long.MIN_VALUE};
+        assertArrayEquals(new int[]{1, 6, 3, 2, 5, 0, 4}, argsort(keys));
+        keys = new long[]{0xffffffffL + 10, 10, 11, 10};
+        assertArrayEquals(new int[]{1, 3, 2, 0}, argsort(keys));
+        keys = new long[]{0x100000000L + 10, 10, 11, 10};
+        assertArrayEquals(new int[]{1, 3, 2, 0}, argsort(keys));
+    }
+
+    /**
+     * 对 2,000,000 个对象按 int 字段和 long 字段排序，比较装箱的 Comparator、基本类型的 Comparator 和这里的实现。
+     * 对象按创建顺序分配，先打乱数组使得对象在堆中的位置和数组顺序无关。
+     */
+    @Test
+    public void testBenchmark() {
+        final int size = 2_000_000, rounds = 5;
+        Random random = new Random(47);
+        Item[] data = new Item[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = new Item(random.nextInt(), System.currentTimeMillis() + random.nextInt(1 << 30), "item" + i);
+        }
+        Collections.shuffle(Arrays.asList(data), random);
+
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        String[] names = {"comparing(getId)", "comparingInt(getId)", "sortByIntKey",
+                "comparing(getTimestamp)", "comparingLong(getTs)", "sortByLongKey"};
+        System.out.printf("%-26s%12s%16s%n", "sorter", "time", "allocated");
+        for (int s = 0; s < names.length; s++) {
+            long best = Long.MAX_VALUE, allocated = 0;
+            for (int r = 0; r < rounds; r++) {
+                Item[] a = data.clone();
+                long bytes = bean.getThreadAllocatedBytes(threadId);
+                long start = System.nanoTime();
+                switch (s) {
+                    case 0: Arrays.sort(a, Comparator.comparing(Item::getId)); break;
+                    case 1: Arrays.sort(a, Comparator.comparingInt(Item::getId)); break;
+                    case 2: sortByIntKey(a, Item::getId); break;
+                    case 3: Arrays.sort(a, Comparator.comparing(Item::getTimestamp)); break;
+                    case 4: Arrays.sort(a, Comparator.comparingLong(Item::getTimestamp)); break;
+                    default: sortByLongKey(a, Item::getTimestamp); break;
+                }
+                best = Math.min(best, System.nanoTime() - start);
+                allocated = bean.getThreadAllocatedBytes(threadId) - bytes;
+            }
+            System.out.printf("%-26s%10.2fms%14.2fMB%n", names[s], best / 1e6, allocated / 1e6);
+        }
+
+        /*
+        输出（5 轮取最小值，allocated 是最后一轮的分配量）：
+        sorter                            time       allocated
+        comparing(getId)             1952.04ms        636.71MB
+        comparingInt(getId)          2627.70ms          8.19MB
+        sortByIntKey                  355.37ms         32.00MB
+        comparing(getTimestamp)      2603.94ms       1893.68MB
+        comparingLong(getTs)         2551.87ms          8.19MB
+        sortByLongKey                 337.01ms         40.00MB
+
+        装箱的 Comparator 每次比较都创建两个 Integer/Long（Integer 缓存只覆盖 -128~127），分配量是数组本身的几百倍。
+        comparingInt 不装箱，但是耗时没有减少，瓶颈在于每次比较都要从打乱的对象中读取字段；
+        TimSort 只分配一个 n/2 的引用数组作为工作区。
+        按键排序只读一次对象，额外分配的是打包的 long 数组、键数组和对象数组的副本，换来了 7 倍左右的速度。
+         */
+    }
+}
@@ -0,0 +1,829 @@
+package java_.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 在 {@link DualPivotQuickSortSimpleImpl} 基础上完善的 Dual-Pivot 快排实现，可以用于大数组排序。
+ * <p>
+ * 简单实现总是以 a[lo]、a[hi] 作为切分点，并且一直递归到单个元素，在有序、逆序和大量重复元素的数组上会退化为
+ * O(N^2) 并产生很深的递归。这里按照 DualPivotQuickSort.md 中 JDK 的做法做了以下改进：
+ * <ol>
+ *     <li>插入排序阈值：小于 {@link #INSERTION_SORT_THRESHOLD} 的部分使用插入排序，非最左边的部分使用成对插入排序</li>
+ *     <li>五点取样：均匀选取 5 个元素排序，取第 2 和第 4 个作为切分点</li>
+ *     <li>相等切分点快速路径：5 个样本有重复时退化为单切分点的三向切分；中间部分过大时再把等于切分点的元素分出去</li>
+ *     <li>显式栈：用数组模拟递归栈，不会栈溢出；切分深度超过 {@link #depthLimit(int)} 时使用堆排序兜底，保证 O(NlogN)</li>
+ * </ol>
+ */
+public class DualPivotQuickSortImpl {
+
+    // 如果要排序的数组长度小于这个值，使用插入排序替代快速排序
+    static final int INSERTION_SORT_THRESHOLD = 47;
+
+    // 显式栈中每一帧占用的 int 个数：left、right、leftmost、depth
+    static final int FRAME = 4;
+
+    /**
+     * 对整个数组进行升序排序。
+     */
+    public static void sort(int[] a) {
+        sort(a, 0, a.length - 1, true);
+    }
+
+    /**
+     * 对数组 [fromIndex, toIndex) 范围进行升序排序。
+     *
+     * @throws IllegalArgumentException 如果 fromIndex > toIndex
+     * @throws ArrayIndexOutOfBoundsException 如果 fromIndex < 0 或 toIndex > a.length
+     */
+    public static void sort(int[] a, int fromIndex, int toIndex) {
+        rangeCheck(a.length, fromIndex, toIndex);
+        // 范围左边的元素不在排序范围内，不能作为哨兵
+        sort(a, fromIndex, toIndex - 1, true);
+    }
+
+    static void rangeCheck(int arrayLength, int fromIndex, int toIndex) {
+        if (fromIndex > toIndex) {
+            throw new IllegalArgumentException(
+                    "fromIndex(" + fromIndex + ") > toIndex(" + toIndex + ")");
+        }
+        if (fromIndex < 0) {
+            throw new ArrayIndexOutOfBoundsException(fromIndex);
+        }
+        if (toIndex > arrayLength) {
+            throw new ArrayIndexOutOfBoundsException(toIndex);
+        }
+    }
+
+    /**
+     * 切分深度上限，约为 2 * log2(length)。超过这个深度的部分说明切分点选得很差，改用堆排序。
+     */
+    static int depthLimit(int length) {
+        return 2 * (32 - Integer.numberOfLeadingZeros(length));
+    }
+
+    /**
+     * 对 [left, right] 范围进行排序。
+     *
+     * @param left 要排序的第一个元素的索引（包含）
+     * @param right 要排序的最后一个元素的索引（包含）
+     * @param leftmost 指示此排序部分是否在整个排序范围的最左边。不是最左边时，a[left - 1] 可以作为插入排序的哨兵
+     */
+    static void sort(int[] a, int left, int right, boolean leftmost) {
+        int maxDepth = depthLimit(right - left + 1);
+        // 每次切分弹出一帧、最多压入三帧，所以栈中的帧数不会超过 2 * maxDepth + 3
+        int[] stack = new int[(2 * maxDepth + 3) * FRAME];
+        int[] bounds = new int[6];
+        int top = 0;
+        stack[top++] = left; stack[top++] = right; stack[top++] = leftmost ? 1 : 0; stack[top++] = 0;
+
+        while (top > 0) {
+            int depth = stack[--top];
+            leftmost = stack[--top] != 0;
+            right = stack[--top];
+            left = stack[--top];
+            int length = right - left + 1;
+
+            if (length < INSERTION_SORT_THRESHOLD) {
+                insertionSort(a, left, right, leftmost);
+                continue;
+            }
+            if (depth >= maxDepth) {
+                heapSort(a, left, right);
+                continue;
+            }
+
+            int n = partition(a, left, right, bounds);
+            depth++;
+            // 只有左边部分可能是最左边的部分
+            top = push(stack, top, bounds[0], bounds[1], leftmost, depth);
+            for (int i = 2; i < n; i += 2) {
+                top = push(stack, top, bounds[i], bounds[i + 1], false, depth);
+            }
+        }
+    }
+
+    /**
+     * 对 [left, right] 进行一次 Dual-Pivot 切分，长度不能小于 {@link #INSERTION_SORT_THRESHOLD}。
+     * 切分后还需要排序的子范围依次写入 bounds：左边部分、右边部分，以及可能有的中间部分，每个子范围占两个 int [left, right]。
+     * 子范围可能为空（right < left）。
+     *
+     * @return 写入 bounds 的 int 个数，4 或 6
+     */
+    static int partition(int[] a, int left, int right, int[] bounds) {
+        int length = right - left + 1;
+
+        // length / 7 的估计值
+        int seventh = (length >> 3) + (length >> 6) + 1;
+
+        // 分别选择 5 个点：e1、e2、e3、e4、e5。间隔相同且均匀分布在排序范围内。
+        int e3 = (left + right) >>> 1;
+        int e2 = e3 - seventh;
+        int e1 = e2 - seventh;
+        int e4 = e3 + seventh;
+        int e5 = e4 + seventh;
+
+        // 使用插入排序对 5 个元素进行排序
+        if (a[e2] < a[e1]) { int t = a[e2]; a[e2] = a[e1]; a[e1] = t; }
+
+        if (a[e3] < a[e2]) { int t = a[e3]; a[e3] = a[e2]; a[e2] = t;
+            if (t < a[e1]) { a[e2] = a[e1]; a[e1] = t; }
+        }
+        if (a[e4] < a[e3]) { int t = a[e4]; a[e4] = a[e3]; a[e3] = t;
+            if (t < a[e2]) { a[e3] = a[e2]; a[e2] = t;
+                if (t < a[e1]) { a[e2] = a[e1]; a[e1] = t; }
+            }
+        }
+        if (a[e5] < a[e4]) { int t = a[e5]; a[e5] = a[e4]; a[e4] = t;
+            if (t < a[e3]) { a[e4] = a[e3]; a[e3] = t;
+                if (t < a[e2]) { a[e3] = a[e2]; a[e2] = t;
+                    if (t < a[e1]) { a[e2] = a[e1]; a[e1] = t; }
+                }
+            }
+        }
+
+        int less  = left;  // 中间块的第一个元素的索引
+        int great = right; // 右边块第一个元素之前的索引
+
+        if (a[e1] != a[e2] && a[e2] != a[e3] && a[e3] != a[e4] && a[e4] != a[e5]) {
+            // 5 个样本互不相同，使用第 2 和第 4 个作为切分点，pivot1 < pivot2
+            int pivot1 = a[e2];
+            int pivot2 = a[e4];
+
+            // 第一个和最后一个元素移到切分点原来的位置，切分完成后切分点再换回到最终位置
+            a[e2] = a[left];
+            a[e4] = a[right];
+
+            // 跳过小于或大于切分值的元素
+            while (a[++less] < pivot1);
+            while (a[--great] > pivot2);
+
+            /*
+             *   left part           center part                   right part
+             * +--------------------------------------------------------------+
+             * |  < pivot1  |  pivot1 <= && <= pivot2  |    ?    |  > pivot2  |
+             * +--------------------------------------------------------------+
+             *               ^                          ^       ^
+             *              less                        k     great
+             */
+            outer:
+            for (int k = less - 1; ++k <= great; ) {
+                int ak = a[k];
+                if (ak < pivot1) {
+                    a[k] = a[less];
+                    a[less] = ak;
+                    ++less;
+                } else if (ak > pivot2) {
+                    while (a[great] > pivot2) {
+                        if (great-- == k) {
+                            break outer;
+                        }
+                    }
+                    if (a[great] < pivot1) {
+                        a[k] = a[less];
+                        a[less] = a[great];
+                        ++less;
+                    } else {
+                        a[k] = a[great];
+                    }
+                    a[great] = ak;
+                    --great;
+                }
+            }
+
+            // 将切分点放到到最终的位置处
+            a[left]  = a[less  - 1]; a[less  - 1] = pivot1;
+            a[right] = a[great + 1]; a[great + 1] = pivot2;
+
+            bounds[0] = left;      bounds[1] = less - 2;
+            bounds[2] = great + 2; bounds[3] = right;
+
+            // 中间部分太大（大于数组的 4/7）时，说明其中可能有很多等于切分点的元素，把它们分出去
+            if (less < e1 && e5 < great) {
+                while (a[less] == pivot1) {
+                    ++less;
+                }
+                while (a[great] == pivot2) {
+                    --great;
+                }
+
+                /*
+                 *   left part         center part                  right part
+                 * +----------------------------------------------------------+
+                 * | == pivot1 |  pivot1 < && < pivot2  |    ?    | == pivot2 |
+                 * +----------------------------------------------------------+
+                 *              ^                        ^       ^
+                 *             less                      k     great
+                 */
+                outer:
+                for (int k = less - 1; ++k <= great; ) {
+                    int ak = a[k];
+                    if (ak == pivot1) {
+                        a[k] = a[less];
+                        a[less] = ak;
+                        ++less;
+                    } else if (ak == pivot2) {
+                        while (a[great] == pivot2) {
+                            if (great-- == k) {
+                                break outer;
+                            }
+                        }
+                        if (a[great] == pivot1) {
+                            a[k] = a[less];
+                            a[less] = pivot1;
+                            ++less;
+                        } else {
+                            a[k] = a[great];
+                        }
+                        a[great] = ak;
+                        --great;
+                    }
+                }
+            }
+
+            bounds[4] = less; bounds[5] = great;
+            return 6;
+        } else {
+            // 5 个样本有重复值，只使用 a[e3] 进行传统的三向切分，中间等于切分点的部分不用再排序
+            int pivot = a[e3];
+
+            /*
+             *   left part    center part              right part
+             * +-------------------------------------------------+
+             * |  < pivot  |   == pivot   |     ?    |  > pivot  |
+             * +-------------------------------------------------+
+             *              ^              ^        ^
+             *             less            k      great
+             */
+            for (int k = less; k <= great; ++k) {
+                if (a[k] == pivot) {
+                    continue;
+                }
+                int ak = a[k];
+                if (ak < pivot) {
+                    a[k] = a[less];
+                    a[less] = ak;
+                    ++less;
+                } else {
+                    while (a[great] > pivot) {
+                        --great;
+                    }
+                    if (a[great] < pivot) {
+                        a[k] = a[less];
+                        a[less] = a[great];
+                        ++less;
+                    } else {
+                        a[k] = pivot;
+                    }
+                    a[great] = ak;
+                    --great;
+                }
+            }
+
+            bounds[0] = left;      bounds[1] = less - 1;
+            bounds[2] = great + 1; bounds[3] = right;
+            return 4;
+        }
+    }
+
+    static int push(int[] stack, int top, int left, int right, boolean leftmost, int depth) {
+        // 长度小于 2 的部分已经有序，不用入栈
+        if (right > left) {
+            stack[top++] = left; stack[top++] = right; stack[top++] = leftmost ? 1 : 0; stack[top++] = depth;
+        }
+        return top;
+    }
+
+    /**
+     * 插入排序。最左边的部分使用传统插入排序；其他部分的左边相邻元素可以作为哨兵，使用成对插入排序。
+     */
+    static void insertionSort(int[] a, int left, int right, boolean leftmost) {
+        if (leftmost) {
+            for (int i = left, j = i; i < right; j = ++i) {
+                int ai = a[i + 1];
+                while (ai < a[j]) {
+                    a[j + 1] = a[j];
+                    if (j-- == left) {
+                        break;
+                    }
+                }
+                a[j + 1] = ai;
+            }
+        } else {
+            // 跳过前面的升序序列
+            do {
+                if (left >= right) {
+                    return;
+                }
+            } while (a[++left] >= a[left - 1]);
+
+            // 成对插入排序：先插入较大的 a1，再从 a1 的位置继续向左插入 a2
+            for (int k = left; ++left <= right; k = ++left) {
+                int a1 = a[k], a2 = a[left];
+
+                if (a1 < a2) {
+                    a2 = a1; a1 = a[left];
+                }
+                while (a1 < a[--k]) {
+                    a[k + 2] = a[k];
+                }
+                a[++k + 1] = a1;
+
+                while (a2 < a[--k]) {
+                    a[k + 1] = a[k];
+                }
+                a[k + 1] = a2;
+            }
+            int last = a[right];
+
+            while (last < a[--right]) {
+                a[right + 1] = a[right];
+            }
+            a[right + 1] = last;
+        }
+    }
+
+    /**
+     * 对 [left, right] 进行堆排序，作为切分退化时的兜底。
+     */
+    static void heapSort(int[] a, int left, int right) {
+        int n = right - left + 1;
+        for (int i = (n >>> 1) - 1; i >= 0; i--) {
+            siftDown(a, left, i, n);
+        }
+        for (int end = n - 1; end > 0; end--) {
+            int t = a[left]; a[left] = a[left + end]; a[left + end] = t;
+            siftDown(a, left, 0, end);
+        }
+    }
+
+    private static void siftDown(int[] a, int base, int i, int n) {
+        int x = a[base + i];
+        int half = n >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int c = a[base + child];
+            if (child + 1 < n && a[base + child + 1] > c) {
+                c = a[base + ++child];
+            }
+            if (x >= c) {
+                break;
+            }
+            a[base + i] = c;
+            i = child;
+        }
+        a[base + i] = x;
+    }
+
+    /*
+     * long 数组的排序和 int 数组相同，只是元素类型不同。
+     */
+
+    /**
+     * 对整个 long 数组进行升序排序。
+     */
+    public static void sort(long[] a) {
+        sort(a, 0, a.length - 1, true);
+    }
+
+    /**
+     * 对 long 数组 [fromIndex, toIndex) 范围进行升序排序。
+     */
+    public static void sort(long[] a, int fromIndex, int toIndex) {
+        rangeCheck(a.length, fromIndex, toIndex);
+        // 范围左边的元素不在排序范围内，不能作为哨兵
+        sort(a, fromIndex, toIndex - 1, true);
+    }
+
+    static void sort(long[] a, int left, int right, boolean leftmost) {
+        int maxDepth = depthLimit(right - left + 1);
+        // 每次切分弹出一帧、最多压入三帧，所以栈中的帧数不会超过 2 * maxDepth + 3
+        int[] stack = new int[(2 * maxDepth + 3) * FRAME];
+        int[] bounds = new int[6];
+        int top = 0;
+        stack[top++] = left; stack[top++] = right; stack[top++] = leftmost ? 1 : 0; stack[top++] = 0;
+
+        while (top > 0) {
+            int depth = stack[--top];
+            leftmost = stack[--top] != 0;
+            right = stack[--top];
+            left = stack[--top];
+            int length = right - left + 1;
+
+            if (length < INSERTION_SORT_THRESHOLD) {
+                insertionSort(a, left, right, leftmost);
+                continue;
+            }
+            if (depth >= maxDepth) {
+                heapSort(a, left, right);
+                continue;
+            }
+
+            int n = partition(a, left, right, bounds);
+            depth++;
+            // 只有左边部分可能是最左边的部分
+            top = push(stack, top, bounds[0], bounds[1], leftmost, depth);
+            for (int i = 2; i < n; i += 2) {
+                top = push(stack, top, bounds[i], bounds[i + 1], false, depth);
+            }
+        }
+    }
+
+    static int partition(long[] a, int left, int right, int[] bounds) {
+        int length = right - left + 1;
+
+        // length / 7 的估计值
+        int seventh = (length >> 3) + (length >> 6) + 1;
+
+        // 分别选择 5 个点：e1、e2、e3、e4、e5。间隔相同且均匀分布在排序范围内。
+        int e3 = (left + right) >>> 1;
+        int e2 = e3 - seventh;
+        int e1 = e2 - seventh;
+        int e4 = e3 + seventh;
+        int e5 = e4 + seventh;
+
+        // 使用插入排序对 5 个元素进行排序
+        if (a[e2] < a[e1]) { long t = a[e2]; a[e2] = a[e1]; a[e1] = t; }
+
+        if (a[e3] < a[e2]) { long t = a[e3]; a[e3] = a[e2]; a[e2] = t;
+            if (t < a[e1]) { a[e2] = a[e1]; a[e1] = t; }
+        }
+        if (a[e4] < a[e3]) { long t = a[e4]; a[e4] = a[e3]; a[e3] = t;
+            if (t < a[e2]) { a[e3] = a[e2]; a[e2] = t;
+                if (t < a[e1]) { a[e2] = a[e1]; a[e1] = t; }
+            }
+        }
+        if (a[e5] < a[e4]) { long t = a[e5]; a[e5] = a[e4]; a[e4] = t;
+            if (t < a[e3]) { a[e4] = a[e3]; a[e3] = t;
+                if (t < a[e2]) { a[e3] = a[e2]; a[e2] = t;
+                    if (t < a[e1]) { a[e2] = a[e1]; a[e1] = t; }
+                }
+            }
+        }
+
+        int less  = left;  // 中间块的第一个元素的索引
+        int great = right; // 右边块第一个元素之前的索引
+
+        if (a[e1] != a[e2] && a[e2] != a[e3] && a[e3] != a[e4] && a[e4] != a[e5]) {
+            // 5 个样本互不相同，使用第 2 和第 4 个作为切分点，pivot1 < pivot2
+            long pivot1 = a[e2];
+            long pivot2 = a[e4];
+
+            // 第一个和最后一个元素移到切分点原来的位置，切分完成后切分点再换回到最终位置
+            a[e2] = a[left];
+            a[e4] = a[right];
+
+            // 跳过小于或大于切分值的元素
+            while (a[++less] < pivot1);
+            while (a[--great] > pivot2);
+
+            /*
+             *   left part           center part                   right part
+             * +--------------------------------------------------------------+
+             * |  < pivot1  |  pivot1 <= && <= pivot2  |    ?    |  > pivot2  |
+             * +--------------------------------------------------------------+
+             *               ^                          ^       ^
+             *              less                        k     great
+             */
+            outer:
+            for (int k = less - 1; ++k <= great; ) {
+                long ak = a[k];
+                if (ak < pivot1) {
+                    a[k] = a[less];
+                    a[less] = ak;
+                    ++less;
+                } else if (ak > pivot2) {
+                    while (a[great] > pivot2) {
+                        if (great-- == k) {
+                            break outer;
+                        }
+                    }
+                    if (a[great] < pivot1) {
+                        a[k] = a[less];
+                        a[less] = a[great];
+                        ++less;
+                    } else {
+                        a[k] = a[great];
+                    }
+                    a[great] = ak;
+                    --great;
+                }
+            }
+
+            // 将切分点放到到最终的位置处
+            a[left]  = a[less  - 1]; a[less  - 1] = pivot1;
+            a[right] = a[great + 1]; a[great + 1] = pivot2;
+
+            bounds[0] = left;      bounds[1] = less - 2;
+            bounds[2] = great + 2; bounds[3] = right;
+
+            // 中间部分太大（大于数组的 4/7）时，说明其中可能有很多等于切分点的元素，把它们分出去
+            if (less < e1 && e5 < great) {
+                while (a[less] == pivot1) {
+                    ++less;
+                }
+                while (a[great] == pivot2) {
+                    --great;
+                }
+
+                /*
+                 *   left part         center part                  right part
+                 * +----------------------------------------------------------+
+                 * | == pivot1 |  pivot1 < && < pivot2  |    ?    | == pivot2 |
+                 * +----------------------------------------------------------+
+                 *              ^                        ^       ^
+                 *             less                      k     great
+                 */
+                outer:
+                for (int k = less - 1; ++k <= great; ) {
+                    long ak = a[k];
+                    if (ak == pivot1) {
+                        a[k] = a[less];
+                        a[less] = ak;
+                        ++less;
+                    } else if (ak == pivot2) {
+                        while (a[great] == pivot2) {
+                            if (great-- == k) {
+                                break outer;
+                            }
+                        }
+                        if (a[great] == pivot1) {
+                            a[k] = a[less];
+                            a[less] = pivot1;
+                            ++less;
+                        } else {
+                            a[k] = a[great];
+                        }
+                        a[great] = ak;
+                        --great;
+                    }
+                }
+            }
+
+            bounds[4] = less; bounds[5] = great;
+            return 6;
+        } else {
+            // 5 个样本有重复值，只使用 a[e3] 进行传统的三向切分，中间等于切分点的部分不用再排序
+            long pivot = a[e3];
+
+            /*
+             *   left part    center part              right part
+             * +-------------------------------------------------+
+             * |  < pivot  |   == pivot   |     ?    |  > pivot  |
+             * +-------------------------------------------------+
+             *              ^              ^        ^
+             *             less            k      great
+             */
+            for (int k = less; k <= great; ++k) {
+                if (a[k] == pivot) {
+                    continue;
+                }
+                long ak = a[k];
+                if (ak < pivot) {
+                    a[k] = a[less];
+                    a[less] = ak;
+                    ++less;
+                } else {
+                    while (a[great] > pivot) {
+                        --great;
+                    }
+                    if (a[great] < pivot) {
+                        a[k] = a[less];
+                        a[less] = a[great];
+                        ++less;
+                    } else {
+                        a[k] = pivot;
+                    }
+                    a[great] = ak;
+                    --great;
+                }
+            }
+
+            bounds[0] = left;      bounds[1] = less - 1;
+            bounds[2] = great + 1; bounds[3] = right;
+            return 4;
+        }
+    }
+
+    static void insertionSort(long[] a, int left, int right, boolean leftmost) {
+        if (leftmost) {
+            for (int i = left, j = i; i < right; j = ++i) {
+                long ai = a[i + 1];
+                while (ai < a[j]) {
+                    a[j + 1] = a[j];
+                    if (j-- == left) {
+                        break;
+                    }
+                }
+                a[j + 1] = ai;
+            }
+        } else {
+            // 跳过前面的升序序列
+            do {
+                if (left >= right) {
+                    return;
+                }
+            } while (a[++left] >= a[left - 1]);
+
+            // 成对插入排序：先插入较大的 a1，再从 a1 的位置继续向左插入 a2
+            for (int k = left; ++left <= right; k = ++left) {
+                long a1 = a[k], a2 = a[left];
+
+                if (a1 < a2) {
+                    a2 = a1; a1 = a[left];
+                }
+                while (a1 < a[--k]) {
+                    a[k + 2] = a[k];
+                }
+                a[++k + 1] = a1;
+
+                while (a2 < a[--k]) {
+                    a[k + 1] = a[k];
+                }
+                a[k + 1] = a2;
+            }
+            long last = a[right];
+
+            while (last < a[--right]) {
+                a[right + 1] = a[right];
+            }
+            a[right + 1] = last;
+        }
+    }
+
+    static void heapSort(long[] a, int left, int right) {
+        int n = right - left + 1;
+        for (int i = (n >>> 1) - 1; i >= 0; i--) {
+            siftDown(a, left, i, n);
+        }
+        for (int end = n - 1; end > 0; end--) {
+            long t = a[left]; a[left] = a[left + end]; a[left + end] = t;
+            siftDown(a, left, 0, end);
+        }
+    }
+
+    private static void siftDown(long[] a, int base, int i, int n) {
+        long x = a[base + i];
+        int half = n >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            long c = a[base + child];
+            if (child + 1 < n && a[base + child + 1] > c) {
+                c = a[base + ++child];
+            }
+            if (x >= c) {
+                break;
+            }
+            a[base + i] = c;
+            i = child;
+        }
+        a[base + i] = x;
+    }
+
+    /**
+     * 简单实现会退化的几种数据形态。
+     */
+    static int[] shape(String name, int n, Random random) {
+        int[] a = new int[n];
+        switch (name) {
+            case "random":
+                for (int i = 0; i < n; i++) a[i] = random.nextInt();
+                break;
+            case "sorted":
+                for (int i = 0; i < n; i++) a[i] = i;
+                break;
+            case "reversed":
+                for (int i = 0; i < n; i++) a[i] = n - i;
+                break;
+            case "organ-pipe":
+                for (int i = 0; i < n; i++) a[i] = Math.min(i, n - i);
+                break;
+            case "few-unique":
+                for (int i = 0; i < n; i++) a[i] = random.nextInt(8);
+                break;
+            case "all-equal":
+                Arrays.fill(a, 7);
+                break;
+            default:
+                throw new IllegalArgumentException(name);
+        }
+        return a;
+    }
+
+    static final String[] SHAPES = {"random", "sorted", "reversed", "organ-pipe", "few-unique", "all-equal"};
+
+    /**
+     * 测试各种数据形态和长度下排序结果和 {@link Arrays#sort(int[])} 一致。
+     */
+    @Test
+    public void testSort() {
+        Random random = new Random(47);
+        int[] sizes = {0, 1, 2, 3, 46, 47, 48, 100, 287, 1000, 10007, 100000};
+        for (String name : SHAPES) {
+            for (int size : sizes) {
+                int[] a = shape(name, size, random);
+                int[] expected = a.clone();
+                Arrays.sort(expected);
+                sort(a);
+                assertArrayEquals(expected, a);
+            }
+        }
+        for (int i = 0; i < 1000; i++) {
+            int[] a = random.ints(300, -10000, 10000).toArray();
+            int[] expected = a.clone();
+            Arrays.sort(expected);
+            sort(a);
+            assertArrayEquals(expected, a);
+        }
+        for (int size : sizes) {
+            long[] a = random.longs(size, -size - 1, size + 1).toArray();
+            long[] expected = a.clone();
+            Arrays.sort(expected);
+            sort(a);
+            assertArrayEquals(expected, a);
+
+            a = random.longs(size).toArray();
+            expected = a.clone();
+            Arrays.sort(expected);
+            sort(a);
+            assertArrayEquals(expected, a);
+        }
+    }
+
+    /**
+     * 测试范围排序只修改 [fromIndex, toIndex) 内的元素，以及参数检查。
+     */
+    @Test
+    public void testSortRange() {
+        Random random = new Random(47);
+        int[] a = random.ints(10000).toArray();
+        int[] expected = a.clone();
+        Arrays.sort(expected, 1234, 8765);
+        sort(a, 1234, 8765);
+        assertArrayEquals(expected, a);
+
+        assertThrows(IllegalArgumentException.class, () -> sort(new int[10], 5, 4));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> sort(new int[10], -1, 4));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> sort(new int[10], 0, 11));
+    }
+
+    /**
+     * 测试堆排序兜底的正确性。
+     */
+    @Test
+    public void testHeapSort() {
+        Random random = new Random(47);
+        for (int size = 0; size < 200; size++) {
+            int[] a = random.ints(size + 2, -50, 50).toArray();
+            int[] expected = a.clone();
+            Arrays.sort(expected, 1, size + 1);
+            heapSort(a, 1, size);
+            assertArrayEquals(expected, a);
+        }
+    }
+
+    /**
+     * 在不同数据形态上与 {@link Arrays#sort(int[])} 比较排序速度。
+     */
+    @Test
+    public void testBenchmark() {
+        final int size = 2_000_000, rounds = 5;
+        Random random = new Random(47);
+        System.out.printf("%-12s%16s%16s%n", "shape", "Arrays.sort", "this");
+        for (String name : SHAPES) {
+            int[] data = shape(name, size, random);
+            long jdk = Long.MAX_VALUE, self = Long.MAX_VALUE;
+            for (int r = 0; r < rounds; r++) {
+                int[] a = data.clone();
+                long start = System.nanoTime();
+                Arrays.sort(a);
+                jdk = Math.min(jdk, System.nanoTime() - start);
+
+                a = data.clone();
+                start = System.nanoTime();
+                sort(a);
+                self = Math.min(self, System.nanoTime() - start);
+            }
+            System.out.printf("%-12s%14.2fms%14.2fms%n", name, jdk / 1e6, self / 1e6);
+        }
+
+        /*
+        输出（2,000,000 个元素，5 轮取最小值）：
+        shape            Arrays.sort            this
+        random              214.75ms        258.59ms
+        sorted                0.75ms         18.95ms
+        reversed              2.53ms         25.28ms
+        organ-pipe            8.20ms         73.29ms
+        few-unique           34.57ms         39.26ms
+        all-equal             0.91ms          2.36ms
+
+        各种形态都保持在 O(NlogN)，而简单实现在 sorted、all-equal 上会退化为 O(N^2)。
+        Arrays.sort 在 sorted、reversed、organ-pipe 上更快，是因为它会先检测游程并使用归并排序。
+         */
+    }
+}
@@ -0,0 +1,695 @@
+package java_.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.*;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 对超过堆大小的 int、long 二进制文件进行外部排序。
+ * <p>
+ * 整个过程不把数据读入 Java 堆，而是通过 {@link FileChannel#map} 直接在映射的堆外内存中操作：
+ * <ol>
+ *     <li>生成游程：把输入文件按 chunk 大小分块，每块用 LSD 基数排序（参见 {@link RadixSortImpl}）从输入映射区
+ *     直接分发到游程文件的映射区，另一个和 chunk 一样大的临时文件作为基数排序的中间缓冲区</li>
+ *     <li>多路归并：每个游程每次只映射一个 {@link #RUN_WINDOW_BYTES} 大小的窗口，用一个以基本类型数组实现的小顶堆进行
+ *     k 路归并，按窗口映射输出文件依次写入</li>
+ * </ol>
+ * 堆上只有基数排序的计数数组和归并堆这样 O(k) 大小的数据，和文件大小无关；同时映射的区域也只有 chunk 大小或 k 个窗口。
+ * 基数排序不需要比较，也不需要像 {@link DualPivotQuickSortImpl} 那样在同一个缓冲区里原地交换元素，
+ * 所以很适合在只能通过 get/put 访问的缓冲区之间搬运数据。
+ * <p>
+ * 文件中的元素按 {@code order} 指定的字节序存储，默认与 {@link DataOutputStream} 一样使用大端序。
+ * <p>
+ * JDK 8 没有公开的 API 解除映射，映射区要等到 GC 回收 {@link MappedByteBuffer} 时才会释放。在 Windows 上，
+ * 还有映射区的文件不能截断也不能删除，所以每个映射区用完之后都通过 {@link #unmap} 立即释放，
+ * 截断输出文件、删除临时文件之前不会留下任何映射。释放之后不能再访问这个缓冲区以及它的视图。
+ */
+public class ExternalSortImpl {
+
+    // 基数排序每一趟处理的位数，和 RadixSortImpl 相同
+    private static final int RADIX_BITS = RadixSortImpl.RADIX_BITS;
+
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    private static final int MASK = RADIX - 1;
+
+    // 默认每个游程的元素数量。int 游程为 128MB，long 游程为 256MB
+    static final int DEFAULT_CHUNK_ELEMENTS = 1 << 25;
+
+    // 归并时每次映射的输出窗口大小（字节）
+    private static final int OUTPUT_WINDOW_BYTES = 1 << 24;
+
+    // 归并时每个游程每次映射的窗口大小（字节）
+    static final int RUN_WINDOW_BYTES = 1 << 20;
+
+    /**
+     * 使用默认的 chunk 大小和大端序对 int 文件进行排序。
+     */
+    public static void sortInts(Path in, Path out) throws IOException {
+        sortInts(in, out, DEFAULT_CHUNK_ELEMENTS, ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * 对 int 文件进行排序，结果写入 out。in 和 out 不能是同一个文件。
+     *
+     * @param chunkElements 每个游程的元素数量，也是同时映射的临时缓冲区的大小
+     * @throws IllegalArgumentException 如果文件长度不是 4 的倍数，chunkElements 不是正数，或者 in 和 out 是同一个文件
+     */
+    public static void sortInts(Path in, Path out, int chunkElements, ByteOrder order) throws IOException {
+        sort(in, out, chunkElements, order, Integer.BYTES);
+    }
+
+    /**
+     * 使用默认的 chunk 大小和大端序对 long 文件进行排序。
+     */
+    public static void sortLongs(Path in, Path out) throws IOException {
+        sortLongs(in, out, DEFAULT_CHUNK_ELEMENTS, ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * 对 long 文件进行排序，结果写入 out。参数含义和 {@link #sortInts(Path, Path, int, ByteOrder)} 相同。
+     */
+    public static void sortLongs(Path in, Path out, int chunkElements, ByteOrder order) throws IOException {
+        sort(in, out, chunkElements, order, Long.BYTES);
+    }
+
+    private static void sort(Path in, Path out, int chunkElements, ByteOrder order, int width) throws IOException {
+        if (chunkElements <= 0 || (long) chunkElements * width > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("chunkElements: " + chunkElements);
+        }
+        // 打开输出文件时会截断它，in 和 out 相同时输入在读取之前就丢失了
+        if (Files.exists(out) && Files.isSameFile(in, out)) {
+            throw new IllegalArgumentException("in and out are the same file: " + in);
+        }
+        try (FileChannel src = FileChannel.open(in, READ)) {
+            long size = src.size();
+            if (size % width != 0) {
+                throw new IllegalArgumentException("file size " + size + " is not a multiple of " + width);
+            }
+            long n = size / width;
+            Path dir = out.toAbsolutePath().getParent();
+            Path runsPath = Files.createTempFile(dir, "runs", ".tmp");
+            Path scratchPath = Files.createTempFile(dir, "scratch", ".tmp");
+            try (FileChannel dst = FileChannel.open(out, READ, WRITE, CREATE, TRUNCATE_EXISTING);
+                 FileChannel scratch = FileChannel.open(scratchPath, READ, WRITE);
+                 FileChannel runs = FileChannel.open(runsPath, READ, WRITE)) {
+                // 只有一个游程时直接排序到输出文件，不需要归并
+                FileChannel runTarget = n <= chunkElements ? dst : runs;
+                int runCount = (int) ((n + chunkElements - 1) / chunkElements);
+                long[] runStart = new long[runCount + 1];
+                for (int r = 0; r < runCount; r++) {
+                    long from = (long) r * chunkElements;
+                    int len = (int) Math.min(chunkElements, n - from);
+                    runStart[r] = from;
+                    ByteBuffer s = null, t = null, d = null;
+                    try {
+                        s = map(src, READ_ONLY, from * width, (long) len * width, order);
+                        t = map(scratch, READ_WRITE, 0, (long) len * width, order);
+                        d = map(runTarget, READ_WRITE, from * width, (long) len * width, order);
+                        if (width == Integer.BYTES) {
+                            radixSort(s.asIntBuffer(), d.asIntBuffer(), t.asIntBuffer(), len);
+                        } else {
+                            radixSort(s.asLongBuffer(), d.asLongBuffer(), t.asLongBuffer(), len);
+                        }
+                    } finally {
+                        unmap(s);
+                        unmap(t);
+                        unmap(d);
+                    }
+                }
+                runStart[runCount] = n;
+                if (runCount > 1) {
+                    if (width == Integer.BYTES) {
+                        mergeInts(runs, runStart, dst, order);
+                    } else {
+                        mergeLongs(runs, runStart, dst, order);
+                    }
+                }
+                dst.truncate(size);
+            } finally {
+                Files.deleteIfExists(runsPath);
+                Files.deleteIfExists(scratchPath);
+            }
+        }
+    }
+
+    private static ByteBuffer map(FileChannel ch, FileChannel.MapMode mode, long position, long size,
+                                  ByteOrder order) throws IOException {
+        return ch.map(mode, position, size).order(order);
+    }
+
+    /**
+     * 立即释放 {@link #map} 返回的映射区，buf 为 null 时什么也不做。
+     * <p>
+     * JDK 8 上调用 {@code ((sun.nio.ch.DirectBuffer) buf).cleaner().clean()}；JDK 9 以后 sun.nio.ch 不再导出，
+     * 改用 {@code sun.misc.Unsafe.invokeCleaner}。都不可用时只能等 GC 回收。
+     */
+    static void unmap(ByteBuffer buf) {
+        if (buf == null || !buf.isDirect()) {
+            return;
+        }
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buf);
+            } else {
+                Method cleaner = buf.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                Object c = cleaner.invoke(buf);
+                if (c != null) {
+                    c.getClass().getMethod("clean").invoke(c);
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // 无法主动释放，交给 GC
+        }
+    }
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> k = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = k.getMethod("invokeCleaner", ByteBuffer.class);
+            Field f = k.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            unsafe = f.get(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // JDK 8 没有 invokeCleaner
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    /**
+     * 把 src 的前 n 个元素基数排序后写入 dst，tmp 作为中间缓冲区。src 只会被读取，所以可以是只读映射。
+     * <p>
+     * 先用一次扫描统计所有趟的计数，跳过所有元素这一位都相同的趟，再根据需要执行的趟数的奇偶性决定第一趟写入 dst 还是 tmp，
+     * 使得最后一趟正好写入 dst。
+     */
+    static void radixSort(IntBuffer src, IntBuffer dst, IntBuffer tmp, int n) {
+        final int passes = 3;
+        int[] count = new int[passes << RADIX_BITS];
+        for (int i = 0; i < n; i++) {
+            int key = src.get(i) ^ Integer.MIN_VALUE;  // 翻转符号位
+            count[key & MASK]++;
+            count[RADIX + ((key >>> RADIX_BITS) & MASK)]++;
+            count[2 * RADIX + (key >>> 2 * RADIX_BITS)]++;
+        }
+
+        boolean[] needed = new boolean[passes];
+        int neededPasses = 0;
+        if (n > 0) {
+            int key0 = src.get(0) ^ Integer.MIN_VALUE;
+            for (int p = 0; p < passes; p++) {
+                if (count[(p << RADIX_BITS) + ((key0 >>> p * RADIX_BITS) & MASK)] != n) {
+                    needed[p] = true;
+                    neededPasses++;
+                }
+            }
+        }
+        if (neededPasses == 0) {
+            copy(src, dst, n);
+            return;
+        }
+
+        IntBuffer from = src, to = (neededPasses & 1) == 1 ? dst : tmp;
+        for (int p = 0; p < passes; p++) {
+            if (!needed[p]) {
+                continue;
+            }
+            int base = p << RADIX_BITS, shift = p * RADIX_BITS;
+            for (int i = base, sum = 0; i < base + RADIX; i++) {
+                int c = count[i];
+                count[i] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < n; i++) {
+                int v = from.get(i);
+                to.put(count[base + (((v ^ Integer.MIN_VALUE) >>> shift) & MASK)]++, v);
+            }
+            from = to;
+            to = from == dst ? tmp : dst;
+        }
+    }
+
+    private static void copy(IntBuffer src, IntBuffer dst, int n) {
+        IntBuffer s = src.duplicate();
+        s.position(0).limit(n);
+        IntBuffer d = dst.duplicate();
+        d.position(0);
+        d.put(s);
+    }
+
+    /**
+     * 把所有游程 k 路归并到 out。游程 r 是 runs 文件中元素下标 [runStart[r], runStart[r + 1]) 的部分。
+     * <p>
+     * 小顶堆 heap 中保存游程编号，keys[r] 是游程 r 当前的第一个元素，堆和游标都是基本类型数组，归并过程不创建对象。
+     * 每个游程只映射从 next[r] 开始的一个窗口，窗口读完后释放并映射下一个窗口。
+     */
+    static void mergeInts(FileChannel runs, long[] runStart, FileChannel out, ByteOrder order) throws IOException {
+        int k = runStart.length - 1;
+        ByteBuffer[] runMap = new ByteBuffer[k];
+        IntBuffer[] run = new IntBuffer[k];
+        long[] next = new long[k];
+        int[] pos = new int[k];
+        int[] keys = new int[k];
+        int[] heap = new int[k];
+        int size = 0;
+        final int runWindow = RUN_WINDOW_BYTES / Integer.BYTES;
+        final int window = OUTPUT_WINDOW_BYTES / Integer.BYTES;
+        ByteBuffer wMap = null;
+        try {
+            for (int r = 0; r < k; r++) {
+                next[r] = runStart[r];
+                int len = (int) Math.min(runWindow, runStart[r + 1] - next[r]);
+                runMap[r] = map(runs, READ_ONLY, next[r] * Integer.BYTES, (long) len * Integer.BYTES, order);
+                run[r] = runMap[r].asIntBuffer();
+                next[r] += len;
+                keys[r] = run[r].get(0);
+                pos[r] = 1;
+                heap[size++] = r;
+            }
+            for (int i = (size >>> 1) - 1; i >= 0; i--) {
+                siftDown(heap, keys, i, size);
+            }
+
+            long written = 0, total = runStart[k];
+            IntBuffer w = null;
+            int wi = window;
+            while (size > 0) {
+                if (wi == window) {
+                    unmap(wMap);
+                    wMap = map(out, READ_WRITE, written * Integer.BYTES,
+                            Math.min(window, total - written) * Integer.BYTES, order);
+                    w = wMap.asIntBuffer();
+                    wi = 0;
+                }
+                int r = heap[0];
+                w.put(wi++, keys[r]);
+                written++;
+                if (pos[r] == run[r].limit()) {
+                    // 当前窗口读完，释放后映射游程的下一个窗口
+                    unmap(runMap[r]);
+                    runMap[r] = null;
+                    run[r] = null;
+                    if (next[r] < runStart[r + 1]) {
+                        int len = (int) Math.min(runWindow, runStart[r + 1] - next[r]);
+                        runMap[r] = map(runs, READ_ONLY, next[r] * Integer.BYTES, (long) len * Integer.BYTES, order);
+                        run[r] = runMap[r].asIntBuffer();
+                        next[r] += len;
+                        pos[r] = 0;
+                    }
+                }
+                if (run[r] != null) {
+                    keys[r] = run[r].get(pos[r]++);
+                } else {
+                    // 游程 r 已经归并完，用堆尾元素替换堆顶
+                    heap[0] = heap[--size];
+                }
+                siftDown(heap, keys, 0, size);
+            }
+        } finally {
+            unmap(wMap);
+            for (ByteBuffer b : runMap) {
+                unmap(b);
+            }
+        }
+    }
+
+    private static void siftDown(int[] heap, int[] keys, int i, int size) {
+        int r = heap[i];
+        int key = keys[r];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int c = heap[child];
+            if (child + 1 < size && keys[heap[child + 1]] < keys[c]) {
+                c = heap[++child];
+            }
+            if (key <= keys[c]) {
+                break;
+            }
+            heap[i] = c;
+            i = child;
+        }
+        heap[i] = r;
+    }
+
+    /*
+     * long 文件的排序和 int 文件相同，只是基数排序需要 6 趟。
+     */
+
+    static void radixSort(LongBuffer src, LongBuffer dst, LongBuffer tmp, int n) {
+        final int passes = (Long.SIZE + RADIX_BITS - 1) / RADIX_BITS;
+        int[] count = new int[passes << RADIX_BITS];
+        for (int i = 0; i < n; i++) {
+            long key = src.get(i) ^ Long.MIN_VALUE;
+            for (int p = 0; p < passes; p++) {
+                count[(p << RADIX_BITS) + (int) ((key >>> p * RADIX_BITS) & MASK)]++;
+            }
+        }
+
+        boolean[] needed = new boolean[passes];
+        int neededPasses = 0;
+        if (n > 0) {
+            long key0 = src.get(0) ^ Long.MIN_VALUE;
+            for (int p = 0; p < passes; p++) {
+                if (count[(p << RADIX_BITS) + (int) ((key0 >>> p * RADIX_BITS) & MASK)] != n) {
+                    needed[p] = true;
+                    neededPasses++;
+                }
+            }
+        }
+        if (neededPasses == 0) {
+            copy(src, dst, n);
+            return;
+        }
+
+        LongBuffer from = src, to = (neededPasses & 1) == 1 ? dst : tmp;
+        for (int p = 0; p < passes; p++) {
+            if (!needed[p]) {
+                continue;
+            }
+            int base = p << RADIX_BITS, shift = p * RADIX_BITS;
+            for (int i = base, sum = 0; i < base + RADIX; i++) {
+                int c = count[i];
+                count[i] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < n; i++) {
+                long v = from.get(i);
+                to.put(count[base + (int) (((v ^ Long.MIN_VALUE) >>> shift) & MASK)]++, v);
+            }
+            from = to;
+            to = from == dst ? tmp : dst;
+        }
+    }
+
+    private static void copy(LongBuffer src, LongBuffer dst, int n) {
+        LongBuffer s = src.duplicate();
+        s.position(0).limit(n);
+        LongBuffer d = dst.duplicate();
+        d.position(0);
+        d.put(s);
+    }
+
+    static void mergeLongs(FileChannel runs, long[] runStart, FileChannel out, ByteOrder order) throws IOException {
+        int k = runStart.length - 1;
+        ByteBuffer[] runMap = new ByteBuffer[k];
+        LongBuffer[] run = new LongBuffer[k];
+        long[] next = new long[k];
+        int[] pos = new int[k];
+        long[] keys = new long[k];
+        int[] heap = new int[k];
+        int size = 0;
+        final int runWindow = RUN_WINDOW_BYTES / Long.BYTES;
+        final int window = OUTPUT_WINDOW_BYTES / Long.BYTES;
+        ByteBuffer wMap = null;
+        try {
+            for (int r = 0; r < k; r++) {
+                next[r] = runStart[r];
+                int len = (int) Math.min(runWindow, runStart[r + 1] - next[r]);
+                runMap[r] = map(runs, READ_ONLY, next[r] * Long.BYTES, (long) len * Long.BYTES, order);
+                run[r] = runMap[r].asLongBuffer();
+                next[r] += len;
+                keys[r] = run[r].get(0);
+                pos[r] = 1;
+                heap[size++] = r;
+            }
+            for (int i = (size >>> 1) - 1; i >= 0; i--) {
+                siftDown(heap, keys, i, size);
+            }
+
+            long written = 0, total = runStart[k];
+            LongBuffer w = null;
+            int wi = window;
+            while (size > 0) {
+                if (wi == window) {
+                    unmap(wMap);
+                    wMap = map(out, READ_WRITE, written * Long.BYTES,
+                            Math.min(window, total - written) * Long.BYTES, order);
+                    w = wMap.asLongBuffer();
+                    wi = 0;
+                }
+                int r = heap[0];
+                w.put(wi++, keys[r]);
+                written++;
+                if (pos[r] == run[r].limit()) {
+                    unmap(runMap[r]);
+                    runMap[r] = null;
+                    run[r] = null;
+                    if (next[r] < runStart[r + 1]) {
+                        int len = (int) Math.min(runWindow, runStart[r + 1] - next[r]);
+                        runMap[r] = map(runs, READ_ONLY, next[r] * Long.BYTES, (long) len * Long.BYTES, order);
+                        run[r] = runMap[r].asLongBuffer();
+                        next[r] += len;
+                        pos[r] = 0;
+                    }
+                }
+                if (run[r] != null) {
+                    keys[r] = run[r].get(pos[r]++);
+                } else {
+                    heap[0] = heap[--size];
+                }
+                siftDown(heap, keys, 0, size);
+            }
+        } finally {
+            unmap(wMap);
+            for (ByteBuffer b : runMap) {
+                unmap(b);
+            }
+        }
+    }
+
+    private static void siftDown(int[] heap, long[] keys, int i, int size) {
+        int r = heap[i];
+        long key = keys[r];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int c = heap[child];
+            if (child + 1 < size && keys[heap[child + 1]] < keys[c]) {
+                c = heap[++child];
+            }
+            if (key <= keys[c]) {
+                break;
+            }
+            heap[i] = c;
+            i = child;
+        }
+        heap[i] = r;
+    }
+
+    static void writeInts(Path path, int[] a, ByteOrder order) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, READ, WRITE, CREATE, TRUNCATE_EXISTING)) {
+            ByteBuffer b = map(ch, READ_WRITE, 0, (long) a.length * Integer.BYTES, order);
+            b.asIntBuffer().put(a);
+            unmap(b);
+        }
+    }
+
+    static int[] readInts(Path path, ByteOrder order) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, READ)) {
+            int[] a = new int[(int) (ch.size() / Integer.BYTES)];
+            ByteBuffer b = map(ch, READ_ONLY, 0, ch.size(), order);
+            b.asIntBuffer().get(a);
+            unmap(b);
+            return a;
+        }
+    }
+
+    static void writeLongs(Path path, long[] a, ByteOrder order) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, READ, WRITE, CREATE, TRUNCATE_EXISTING)) {
+            ByteBuffer b = map(ch, READ_WRITE, 0, (long) a.length * Long.BYTES, order);
+            b.asLongBuffer().put(a);
+            unmap(b);
+        }
+    }
+
+    static long[] readLongs(Path path, ByteOrder order) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, READ)) {
+            long[] a = new long[(int) (ch.size() / Long.BYTES)];
+            ByteBuffer b = map(ch, READ_ONLY, 0, ch.size(), order);
+            b.asLongBuffer().get(a);
+            unmap(b);
+            return a;
+        }
+    }
+
+    /**
+     * 使用很小的 chunk 产生大量游程，测试单游程、多游程、空文件以及两种字节序下的正确性。
+     */
+    @Test
+    public void testSort() throws IOException {
+        Path dir = Files.createTempDirectory("external-sort");
+        Path in = dir.resolve("in.bin"), out = dir.resolve("out.bin");
+        Random random = new Random(47);
+        try {
+            int[] sizes = {0, 1, 999, 1000, 1001, 100_000};
+            for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+                for (int size : sizes) {
+                    for (int chunk : new int[]{1000, 1 << 20}) {
+                        int[] a = random.ints(size).toArray();
+                        writeInts(in, a, order);
+                        sortInts(in, out, chunk, order);
+                        Arrays.sort(a);
+                        assertArrayEquals(a, readInts(out, order));
+
+                        // 窄范围的数据会跳过高位的趟
+                        a = random.ints(size, -100, 100).toArray();
+                        writeInts(in, a, order);
+                        sortInts(in, out, chunk, order);
+                        Arrays.sort(a);
+                        assertArrayEquals(a, readInts(out, order));
+
+                        long[] la = random.longs(size).toArray();
+                        writeLongs(in, la, order);
+                        sortLongs(in, out, chunk, order);
+                        Arrays.sort(la);
+                        assertArrayEquals(la, readLongs(out, order));
+
+                        la = random.longs(size, -100, 100).toArray();
+                        writeLongs(in, la, order);
+                        sortLongs(in, out, chunk, order);
+                        Arrays.sort(la);
+                        assertArrayEquals(la, readLongs(out, order));
+                    }
+                }
+            }
+
+            // 游程比归并窗口长，归并时每个游程要映射多个窗口
+            int[] a = random.ints(1_000_000).toArray();
+            writeInts(in, a, ByteOrder.BIG_ENDIAN);
+            sortInts(in, out, 400_000, ByteOrder.BIG_ENDIAN);
+            Arrays.sort(a);
+            assertArrayEquals(a, readInts(out, ByteOrder.BIG_ENDIAN));
+            long[] la = random.longs(1_000_000).toArray();
+            writeLongs(in, la, ByteOrder.LITTLE_ENDIAN);
+            sortLongs(in, out, 300_000, ByteOrder.LITTLE_ENDIAN);
+            Arrays.sort(la);
+            assertArrayEquals(la, readLongs(out, ByteOrder.LITTLE_ENDIAN));
+
+            // 临时文件都已经删除
+            try (Stream<Path> files = Files.list(dir)) {
+                assertEquals(2, files.count());
+            }
+
+            Files.write(in, new byte[7]);
+            assertThrows(IllegalArgumentException.class, () -> sortInts(in, out));
+            assertThrows(IllegalArgumentException.class, () -> sortInts(in, out, 0, ByteOrder.BIG_ENDIAN));
+            // 输出到输入文件自身时拒绝，输入不会被截断
+            writeInts(in, new int[]{3, 1, 2}, ByteOrder.BIG_ENDIAN);
+            assertThrows(IllegalArgumentException.class, () -> sortInts(in, in));
+            assertThrows(IllegalArgumentException.class, () -> sortLongs(in, dir.resolve(".").resolve("in.bin")));
+            assertArrayEquals(new int[]{3, 1, 2}, readInts(in, ByteOrder.BIG_ENDIAN));
+        } finally {
+            Files.deleteIfExists(in);
+            Files.deleteIfExists(out);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    /**
+     * 与"读入 int[] 再用 Arrays.sort 排序后写回"比较耗时和堆内存占用。
+     * 堆内存占用是排序过程中所有堆内存池的峰值之和（{@link MemoryPoolMXBean#getPeakUsage}），开始之前先 GC 并重置峰值。
+     */
+    @Test
+    public void testBenchmark() throws IOException {
+        final int n = 50_000_000, chunk = 1 << 23;
+        Path dir = Files.createTempDirectory("external-sort");
+        Path in = dir.resolve("in.bin"), out = dir.resolve("out.bin");
+        try {
+            Random random = new Random(47);
+            try (FileChannel ch = FileChannel.open(in, READ, WRITE, CREATE, TRUNCATE_EXISTING)) {
+                ByteBuffer m = map(ch, READ_WRITE, 0, (long) n * Integer.BYTES, ByteOrder.BIG_ENDIAN);
+                IntBuffer b = m.asIntBuffer();
+                for (int i = 0; i < n; i++) {
+                    b.put(i, random.nextInt());
+                }
+                unmap(m);
+            }
+
+            Runnable external = () -> {
+                try {
+                    sortInts(in, out, chunk, ByteOrder.BIG_ENDIAN);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            Runnable inHeap = () -> {
+                try {
+                    int[] a = readInts(in, ByteOrder.BIG_ENDIAN);
+                    Arrays.sort(a);
+                    writeInts(out, a, ByteOrder.BIG_ENDIAN);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+
+            System.out.printf("%-12s%12s%16s%n", "method", "time", "peak heap");
+            for (String name : new String[]{"in-heap", "external"}) {
+                System.gc();
+                long base = 0;
+                for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                    if (pool.getType() == MemoryType.HEAP) {
+                        pool.resetPeakUsage();
+                        base += pool.getUsage().getUsed();
+                    }
+                }
+                long start = System.nanoTime();
+                (name.equals("external") ? external : inHeap).run();
+                long time = System.nanoTime() - start;
+                long peak = 0;
+                for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                    if (pool.getType() == MemoryType.HEAP) {
+                        peak += pool.getPeakUsage().getUsed();
+                    }
+                }
+                System.out.printf("%-12s%10.2fms%14.2fMB%n", name, time / 1e6, (peak - base) / 1e6);
+            }
+        } finally {
+            Files.deleteIfExists(in);
+            Files.deleteIfExists(out);
+            Files.deleteIfExists(dir);
+        }
+
+        /*
+        输出（50,000,000 个 int，200MB 文件，chunk 为 8M 个元素）：
+        method              time       peak heap
+        in-heap        4353.81ms        200.22MB
+        external       1968.50ms          2.13MB
+
+        峰值是在排序过程中由内存池记录的，不是排序结束后的采样。外部排序的堆占用和文件大小无关，
+        只有计数数组、归并堆和缓冲区对象；映射区用完立即释放，同时映射的只有一个 chunk 或 k 个归并窗口。
+         */
+    }
+}
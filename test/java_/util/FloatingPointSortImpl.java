@@ -0,0 +1,807 @@
+package java_.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * double 和 float 数组的 Dual-Pivot 快排，排序结果和 {@link Arrays#sort(double[])} 完全相同。
+ * <p>
+ * java_.lang.DoubleTest 中可以看到，{@code <} 和 {@code ==} 对浮点数不是全序：NaN 和任何数比较都是 false，
+ * -0.0 == 0.0 为 true。而 {@link Double#compare} 规定 -0.0 < 0.0 < NaN，所有 NaN 相等。
+ * 如果在排序主循环中使用 {@link Double#compare}，每次比较都要额外检查 NaN 和符号位。
+ * <p>
+ * 这里和 JDK 的 DualPivotQuickSort 一样，把特殊值的处理放到主循环之外：
+ * <ol>
+ *     <li>预处理：把所有 NaN 移到范围末尾，把 -0.0 替换为 0.0 并计数。剩下的元素在 {@code <} 下是全序的</li>
+ *     <li>使用和 {@link DualPivotQuickSortImpl} 相同的切分、插入排序和堆排序对非 NaN 部分排序，直接比较基本类型的值</li>
+ *     <li>后处理：二分查找第一个 0.0，把前面若干个 0.0 改回 -0.0</li>
+ * </ol>
+ * 两次额外的线性扫描相对于 O(NlogN) 的排序可以忽略。
+ */
+public class FloatingPointSortImpl {
+
+    /**
+     * 对整个数组进行升序排序，顺序和 {@link Double#compare} 一致。
+     */
+    public static void sort(double[] a) {
+        sort(a, 0, a.length);
+    }
+
+    /**
+     * 对数组 [fromIndex, toIndex) 范围进行升序排序，顺序和 {@link Double#compare} 一致。
+     *
+     * @throws IllegalArgumentException 如果 fromIndex > toIndex
+     * @throws ArrayIndexOutOfBoundsException 如果 fromIndex < 0 或 toIndex > a.length
+     */
+    public static void sort(double[] a, int fromIndex, int toIndex) {
+        DualPivotQuickSortImpl.rangeCheck(a.length, fromIndex, toIndex);
+
+        // 从右向左扫描，[end, toIndex) 是已经移到末尾的 NaN，[i + 1, end) 是检查过的非 NaN 元素
+        int end = toIndex, negativeZeros = 0;
+        for (int i = toIndex - 1; i >= fromIndex; i--) {
+            double ai = a[i];
+            if (ai != ai) {
+                a[i] = a[--end];
+                a[end] = ai;
+            } else if (ai == 0.0 && Double.doubleToRawLongBits(ai) < 0) {
+                a[i] = 0.0;
+                negativeZeros++;
+            }
+        }
+
+        // 范围左边的元素不在排序范围内，不能作为哨兵
+        sort(a, fromIndex, end - 1, true);
+
+        if (negativeZeros > 0) {
+            // 找到第一个 0.0，排序后它前面都是负数
+            int lo = fromIndex, hi = end;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (a[mid] < 0.0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            for (int i = lo, n = lo + negativeZeros; i < n; i++) {
+                a[i] = -0.0;
+            }
+        }
+    }
+
+    /**
+     * 对整个数组进行升序排序，顺序和 {@link Float#compare} 一致。
+     */
+    public static void sort(float[] a) {
+        sort(a, 0, a.length);
+    }
+
+    /**
+     * 对数组 [fromIndex, toIndex) 范围进行升序排序，顺序和 {@link Float#compare} 一致。
+     */
+    public static void sort(float[] a, int fromIndex, int toIndex) {
+        DualPivotQuickSortImpl.rangeCheck(a.length, fromIndex, toIndex);
+
+        int end = toIndex, negativeZeros = 0;
+        for (int i = toIndex - 1; i >= fromIndex; i--) {
+            float ai = a[i];
+            if (ai != ai) {
+                a[i] = a[--end];
+                a[end] = ai;
+            } else if (ai == 0.0f && Float.floatToRawIntBits(ai) < 0) {
+                a[i] = 0.0f;
+                negativeZeros++;
+            }
+        }
+
+        sort(a, fromIndex, end - 1, true);
+
+        if (negativeZeros > 0) {
+            int lo = fromIndex, hi = end;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (a[mid] < 0.0f) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            for (int i = lo, n = lo + negativeZeros; i < n; i++) {
+                a[i] = -0.0f;
+            }
+        }
+    }
+
+    /*
+     * 下面的排序和 DualPivotQuickSortImpl 中 int 数组的实现相同。调用之前 NaN 已经移走，-0.0 已经替换为 0.0，
+     * 所以可以直接使用 < 和 == 比较。
+     */
+
+    static void sort(double[] a, int left, int right, boolean leftmost) {
+        int maxDepth = DualPivotQuickSortImpl.depthLimit(right - left + 1);
+        // 每次切分弹出一帧、最多压入三帧，所以栈中的帧数不会超过 2 * maxDepth + 3
+        int[] stack = new int[(2 * maxDepth + 3) * DualPivotQuickSortImpl.FRAME];
+        int[] bounds = new int[6];
+        int top = 0;
+        stack[top++] = left; stack[top++] = right; stack[top++] = leftmost ? 1 : 0; stack[top++] = 0;
+
+        while (top > 0) {
+            int depth = stack[--top];
+            leftmost = stack[--top] != 0;
+            right = stack[--top];
+            left = stack[--top];
+            int length = right - left + 1;
+
+            if (length < DualPivotQuickSortImpl.INSERTION_SORT_THRESHOLD) {
+                insertionSort(a, left, right, leftmost);
+                continue;
+            }
+            if (depth >= maxDepth) {
+                heapSort(a, left, right);
+                continue;
+            }
+
+            int n = partition(a, left, right, bounds);
+            depth++;
+            // 只有左边部分可能是最左边的部分
+            top = DualPivotQuickSortImpl.push(stack, top, bounds[0], bounds[1], leftmost, depth);
+            for (int i = 2; i < n; i += 2) {
+                top = DualPivotQuickSortImpl.push(stack, top, bounds[i], bounds[i + 1], false, depth);
+            }
+        }
+    }
+
+    static int partition(double[] a, int left, int right, int[] bounds) {
+        int length = right - left + 1;
+
+        // length / 7 的估计值
+        int seventh = (length >> 3) + (length >> 6) + 1;
+
+        // 分别选择 5 个点：e1、e2、e3、e4、e5。间隔相同且均匀分布在排序范围内。
+        int e3 = (left + right) >>> 1;
+        int e2 = e3 - seventh;
+        int e1 = e2 - seventh;
+        int e4 = e3 + seventh;
+        int e5 = e4 + seventh;
+
+        // 使用插入排序对 5 个元素进行排序
+        if (a[e2] < a[e1]) { double t = a[e2]; a[e2] = a[e1]; a[e1] = t; }
+
+        if (a[e3] < a[e2]) { double t = a[e3]; a[e3] = a[e2]; a[e2] = t;
+            if (t < a[e1]) { a[e2] = a[e1]; a[e1] = t; }
+        }
+        if (a[e4] < a[e3]) { double t = a[e4]; a[e4] = a[e3]; a[e3] = t;
+            if (t < a[e2]) { a[e3] = a[e2]; a[e2] = t;
+                if (t < a[e1]) { a[e2] = a[e1]; a[e1] = t; }
+            }
+        }
+        if (a[e5] < a[e4]) { double t = a[e5]; a[e5] = a[e4]; a[e4] = t;
+            if (t < a[e3]) { a[e4] = a[e3]; a[e3] = t;
+                if (t < a[e2]) { a[e3] = a[e2]; a[e2] = t;
+                    if (t < a[e1]) { a[e2] = a[e1]; a[e1] = t; }
+                }
+            }
+        }
+
+        int less  = left;  // 中间块的第一个元素的索引
+        int great = right; // 右边块第一个元素之前的索引
+
+        if (a[e1] != a[e2] && a[e2] != a[e3] && a[e3] != a[e4] && a[e4] != a[e5]) {
+            // 5 个样本互不相同，使用第 2 和第 4 个作为切分点，pivot1 < pivot2
+            double pivot1 = a[e2];
+            double pivot2 = a[e4];
+
+            // 第一个和最后一个元素移到切分点原来的位置，切分完成后切分点再换回到最终位置
+            a[e2] = a[left];
+            a[e4] = a[right];
+
+            // 跳过小于或大于切分值的元素
+            while (a[++less] < pivot1);
+            while (a[--great] > pivot2);
+
+            /*
+             *   left part           center part                   right part
+             * +--------------------------------------------------------------+
+             * |  < pivot1  |  pivot1 <= && <= pivot2  |    ?    |  > pivot2  |
+             * +--------------------------------------------------------------+
+             *               ^                          ^       ^
+             *              less                        k     great
+             */
+            outer:
+            for (int k = less - 1; ++k <= great; ) {
+                double ak = a[k];
+                if (ak < pivot1) {
+                    a[k] = a[less];
+                    a[less] = ak;
+                    ++less;
+                } else if (ak > pivot2) {
+                    while (a[great] > pivot2) {
+                        if (great-- == k) {
+                            break outer;
+                        }
+                    }
+                    if (a[great] < pivot1) {
+                        a[k] = a[less];
+                        a[less] = a[great];
+                        ++less;
+                    } else {
+                        a[k] = a[great];
+                    }
+                    a[great] = ak;
+                    --great;
+                }
+            }
+
+            // 将切分点放到到最终的位置处
+            a[left]  = a[less  - 1]; a[less  - 1] = pivot1;
+            a[right] = a[great + 1]; a[great + 1] = pivot2;
+
+            bounds[0] = left;      bounds[1] = less - 2;
+            bounds[2] = great + 2; bounds[3] = right;
+
+            // 中间部分太大（大于数组的 4/7）时，说明其中可能有很多等于切分点的元素，把它们分出去
+            if (less < e1 && e5 < great) {
+                while (a[less] == pivot1) {
+                    ++less;
+                }
+                while (a[great] == pivot2) {
+                    --great;
+                }
+
+                /*
+                 *   left part         center part                  right part
+                 * +----------------------------------------------------------+
+                 * | == pivot1 |  pivot1 < && < pivot2  |    ?    | == pivot2 |
+                 * +----------------------------------------------------------+
+                 *              ^                        ^       ^
+                 *             less                      k     great
+                 */
+                outer:
+                for (int k = less - 1; ++k <= great; ) {
+                    double ak = a[k];
+                    if (ak == pivot1) {
+                        a[k] = a[less];
+                        a[less] = ak;
+                        ++less;
+                    } else if (ak == pivot2) {
+                        while (a[great] == pivot2) {
+                            if (great-- == k) {
+                                break outer;
+                            }
+                        }
+                        if (a[great] == pivot1) {
+                            a[k] = a[less];
+                            a[less] = pivot1;
+                            ++less;
+                        } else {
+                            a[k] = a[great];
+                        }
+                        a[great] = ak;
+                        --great;
+                    }
+                }
+            }
+
+            bounds[4] = less; bounds[5] = great;
+            return 6;
+        } else {
+            // 5 个样本有重复值，只使用 a[e3] 进行传统的三向切分，中间等于切分点的部分不用再排序
+            double pivot = a[e3];
+
+            /*
+             *   left part    center part              right part
+             * +-------------------------------------------------+
+             * |  < pivot  |   == pivot   |     ?    |  > pivot  |
+             * +-------------------------------------------------+
+             *              ^              ^        ^
+             *             less            k      great
+             */
+            for (int k = less; k <= great; ++k) {
+                if (a[k] == pivot) {
+                    continue;
+                }
+                double ak = a[k];
+                if (ak < pivot) {
+                    a[k] = a[less];
+                    a[less] = ak;
+                    ++less;
+                } else {
+                    while (a[great] > pivot) {
+                        --great;
+                    }
+                    if (a[great] < pivot) {
+                        a[k] = a[less];
+                        a[less] = a[great];
+                        ++less;
+                    } else {
+                        a[k] = pivot;
+                    }
+                    a[great] = ak;
+                    --great;
+                }
+            }
+
+            bounds[0] = left;      bounds[1] = less - 1;
+            bounds[2] = great + 1; bounds[3] = right;
+            return 4;
+        }
+    }
+
+    static void insertionSort(double[] a, int left, int right, boolean leftmost) {
+        if (leftmost) {
+            for (int i = left, j = i; i < right; j = ++i) {
+                double ai = a[i + 1];
+                while (ai < a[j]) {
+                    a[j + 1] = a[j];
+                    if (j-- == left) {
+                        break;
+                    }
+                }
+                a[j + 1] = ai;
+            }
+        } else {
+            // 跳过前面的升序序列
+            do {
+                if (left >= right) {
+                    return;
+                }
+            } while (a[++left] >= a[left - 1]);
+
+            // 成对插入排序：先插入较大的 a1，再从 a1 的位置继续向左插入 a2
+            for (int k = left; ++left <= right; k = ++left) {
+                double a1 = a[k], a2 = a[left];
+
+                if (a1 < a2) {
+                    a2 = a1; a1 = a[left];
+                }
+                while (a1 < a[--k]) {
+                    a[k + 2] = a[k];
+                }
+                a[++k + 1] = a1;
+
+                while (a2 < a[--k]) {
+                    a[k + 1] = a[k];
+                }
+                a[k + 1] = a2;
+            }
+            double last = a[right];
+
+            while (last < a[--right]) {
+                a[right + 1] = a[right];
+            }
+            a[right + 1] = last;
+        }
+    }
+
+    static void heapSort(double[] a, int left, int right) {
+        int n = right - left + 1;
+        for (int i = (n >>> 1) - 1; i >= 0; i--) {
+            siftDown(a, left, i, n);
+        }
+        for (int end = n - 1; end > 0; end--) {
+            double t = a[left]; a[left] = a[left + end]; a[left + end] = t;
+            siftDown(a, left, 0, end);
+        }
+    }
+
+    private static void siftDown(double[] a, int base, int i, int n) {
+        double x = a[base + i];
+        int half = n >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            double c = a[base + child];
+            if (child + 1 < n && a[base + child + 1] > c) {
+                c = a[base + ++child];
+            }
+            if (x >= c) {
+                break;
+            }
+            a[base + i] = c;
+            i = child;
+        }
+        a[base + i] = x;
+    }
+
+    static void sort(float[] a, int left, int right, boolean leftmost) {
+        int maxDepth = DualPivotQuickSortImpl.depthLimit(right - left + 1);
+        // 每次切分弹出一帧、最多压入三帧，所以栈中的帧数不会超过 2 * maxDepth + 3
+        int[] stack = new int[(2 * maxDepth + 3) * DualPivotQuickSortImpl.FRAME];
+        int[] bounds = new int[6];
+        int top = 0;
+        stack[top++] = left; stack[top++] = right; stack[top++] = leftmost ? 1 : 0; stack[top++] = 0;
+
+        while (top > 0) {
+            int depth = stack[--top];
+            leftmost = stack[--top] != 0;
+            right = stack[--top];
+            left = stack[--top];
+            int length = right - left + 1;
+
+            if (length < DualPivotQuickSortImpl.INSERTION_SORT_THRESHOLD) {
+                insertionSort(a, left, right, leftmost);
+                continue;
+            }
+            if (depth >= maxDepth) {
+                heapSort(a, left, right);
+                continue;
+            }
+
+            int n = partition(a, left, right, bounds);
+            depth++;
+            // 只有左边部分可能是最左边的部分
+            top = DualPivotQuickSortImpl.push(stack, top, bounds[0], bounds[1], leftmost, depth);
+            for (int i = 2; i < n; i += 2) {
+                top = DualPivotQuickSortImpl.push(stack, top, bounds[i], bounds[i + 1], false, depth);
+            }
+        }
+    }
+
+    static int partition(float[] a, int left, int right, int[] bounds) {
+        int length = right - left + 1;
+
+        // length / 7 的估计值
+        int seventh = (length >> 3) + (length >> 6) + 1;
+
+        // 分别选择 5 个点：e1、e2、e3、e4、e5。间隔相同且均匀分布在排序范围内。
+        int e3 = (left + right) >>> 1;
+        int e2 = e3 - seventh;
+        int e1 = e2 - seventh;
+        int e4 = e3 + seventh;
+        int e5 = e4 + seventh;
+
+        // 使用插入排序对 5 个元素进行排序
+        if (a[e2] < a[e1]) { float t = a[e2]; a[e2] = a[e1]; a[e1] = t; }
+
+        if (a[e3] < a[e2]) { float t = a[e3]; a[e3] = a[e2]; a[e2] = t;
+            if (t < a[e1]) { a[e2] = a[e1]; a[e1] = t; }
+        }
+        if (a[e4] < a[e3]) { float t = a[e4]; a[e4] = a[e3]; a[e3] = t;
+            if (t < a[e2]) { a[e3] = a[e2]; a[e2] = t;
+                if (t < a[e1]) { a[e2] = a[e1]; a[e1] = t; }
+            }
+        }
+        if (a[e5] < a[e4]) { float t = a[e5]; a[e5] = a[e4]; a[e4] = t;
+            if (t < a[e3]) { a[e4] = a[e3]; a[e3] = t;
+                if (t < a[e2]) { a[e3] = a[e2]; a[e2] = t;
+                    if (t < a[e1]) { a[e2] = a[e1]; a[e1] = t; }
+                }
+            }
+        }
+
+        int less  = left;  // 中间块的第一个元素的索引
+        int great = right; // 右边块第一个元素之前的索引
+
+        if (a[e1] != a[e2] && a[e2] != a[e3] && a[e3] != a[e4] && a[e4] != a[e5]) {
+            // 5 个样本互不相同，使用第 2 和第 4 个作为切分点，pivot1 < pivot2
+            float pivot1 = a[e2];
+            float pivot2 = a[e4];
+
+            // 第一个和最后一个元素移到切分点原来的位置，切分完成后切分点再换回到最终位置
+            a[e2] = a[left];
+            a[e4] = a[right];
+
+            // 跳过小于或大于切分值的元素
+            while (a[++less] < pivot1);
+            while (a[--great] > pivot2);
+
+            /*
+             *   left part           center part                   right part
+             * +--------------------------------------------------------------+
+             * |  < pivot1  |  pivot1 <= && <= pivot2  |    ?    |  > pivot2  |
+             * +--------------------------------------------------------------+
+             *               ^                          ^       ^
+             *              less                        k     great
+             */
+            outer:
+            for (int k = less - 1; ++k <= great; ) {
+                float ak = a[k];
+                if (ak < pivot1) {
+                    a[k] = a[less];
+                    a[less] = ak;
+                    ++less;
+                } else if (ak > pivot2) {
+                    while (a[great] > pivot2) {
+                        if (great-- == k) {
+                            break outer;
+                        }
+                    }
+                    if (a[great] < pivot1) {
+                        a[k] = a[less];
+                        a[less] = a[great];
+                        ++less;
+                    } else {
+                        a[k] = a[great];
+                    }
+                    a[great] = ak;
+                    --great;
+                }
+            }
+
+            // 将切分点放到到最终的位置处
+            a[left]  = a[less  - 1]; a[less  - 1] = pivot1;
+            a[right] = a[great + 1]; a[great + 1] = pivot2;
+
+            bounds[0] = left;      bounds[1] = less - 2;
+            bounds[2] = great + 2; bounds[3] = right;
+
+            // 中间部分太大（大于数组的 4/7）时，说明其中可能有很多等于切分点的元素，把它们分出去
+            if (less < e1 && e5 < great) {
+                while (a[less] == pivot1) {
+                    ++less;
+                }
+                while (a[great] == pivot2) {
+                    --great;
+                }
+
+                /*
+                 *   left part         center part                  right part
+                 * +----------------------------------------------------------+
+                 * | == pivot1 |  pivot1 < && < pivot2  |    ?    | == pivot2 |
+                 * +----------------------------------------------------------+
+                 *              ^                        ^       ^
+                 *             less                      k     great
+                 */
+                outer:
+                for (int k = less - 1; ++k <= great; ) {
+                    float ak = a[k];
+                    if (ak == pivot1) {
+                        a[k] = a[less];
+                        a[less] = ak;
+                        ++less;
+                    } else if (ak == pivot2) {
+                        while (a[great] == pivot2) {
+                            if (great-- == k) {
+                                break outer;
+                            }
+                        }
+                        if (a[great] == pivot1) {
+                            a[k] = a[less];
+                            a[less] = pivot1;
+                            ++less;
+                        } else {
+                            a[k] = a[great];
+                        }
+                        a[great] = ak;
+                        --great;
+                    }
+                }
+            }
+
+            bounds[4] = less; bounds[5] = great;
+            return 6;
+        } else {
+            // 5 个样本有重复值，只使用 a[e3] 进行传统的三向切分，中间等于切分点的部分不用再排序
+            float pivot = a[e3];
+
+            /*
+             *   left part    center part              right part
+             * +-------------------------------------------------+
+             * |  < pivot  |   == pivot   |     ?    |  > pivot  |
+             * +-------------------------------------------------+
+             *              ^              ^        ^
+             *             less            k      great
+             */
+            for (int k = less; k <= great; ++k) {
+                if (a[k] == pivot) {
+                    continue;
+                }
+                float ak = a[k];
+                if (ak < pivot) {
+                    a[k] = a[less];
+                    a[less] = ak;
+                    ++less;
+                } else {
+                    while (a[great] > pivot) {
+                        --great;
+                    }
+                    if (a[great] < pivot) {
+                        a[k] = a[less];
+                        a[less] = a[great];
+                        ++less;
+                    } else {
+                        a[k] = pivot;
+                    }
+                    a[great] = ak;
+                    --great;
+                }
+            }
+
+            bounds[0] = left;      bounds[1] = less - 1;
+            bounds[2] = great + 1; bounds[3] = right;
+            return 4;
+        }
+    }
+
+    static void insertionSort(float[] a, int left, int right, boolean leftmost) {
+        if (leftmost) {
+            for (int i = left, j = i; i < right; j = ++i) {
+                float ai = a[i + 1];
+                while (ai < a[j]) {
+                    a[j + 1] = a[j];
+                    if (j-- == left) {
+                        break;
+                    }
+                }
+                a[j + 1] = ai;
+            }
+        } else {
+            // 跳过前面的升序序列
+            do {
+                if (left >= right) {
+                    return;
+                }
+            } while (a[++left] >= a[left - 1]);
+
+            // 成对插入排序：先插入较大的 a1，再从 a1 的位置继续向左插入 a2
+            for (int k = left; ++left <= right; k = ++left) {
+                float a1 = a[k], a2 = a[left];
+
+                if (a1 < a2) {
+                    a2 = a1; a1 = a[left];
+                }
+                while (a1 < a[--k]) {
+                    a[k + 2] = a[k];
+                }
+                a[++k + 1] = a1;
+
+                while (a2 < a[--k]) {
+                    a[k + 1] = a[k];
+                }
+                a[k + 1] = a2;
+            }
+            float last = a[right];
+
+            while (last < a[--right]) {
+                a[right + 1] = a[right];
+            }
+            a[right + 1] = last;
+        }
+    }
+
+    static void heapSort(float[] a, int left, int right) {
+        int n = right - left + 1;
+        for (int i = (n >>> 1) - 1; i >= 0; i--) {
+            siftDown(a, left, i, n);
+        }
+        for (int end = n - 1; end > 0; end--) {
+            float t = a[left]; a[left] = a[left + end]; a[left + end] = t;
+            siftDown(a, left, 0, end);
+        }
+    }
+
+    private static void siftDown(float[] a, int base, int i, int n) {
+        float x = a[base + i];
+        int half = n >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            float c = a[base + child];
+            if (child + 1 < n && a[base + child + 1] > c) {
+                c = a[base + ++child];
+            }
+            if (x >= c) {
+                break;
+            }
+            a[base + i] = c;
+            i = child;
+        }
+        a[base + i] = x;
+    }
+
+    /**
+     * 模拟传感器数据：温度的随机游走，夹杂着传感器离线时连续的 NaN，以及在 0 附近取整得到的 0.0 和 -0.0。
+     */
+    static double[] sensorData(int n, double nanRatio, Random random) {
+        double[] a = new double[n];
+        double t = 0;
+        for (int i = 0; i < n; ) {
+            if (random.nextDouble() < nanRatio / 20) {
+                // 平均 20 个点的离线期
+                int gap = Math.min(n - i, 1 + random.nextInt(40));
+                Arrays.fill(a, i, i + gap, Double.NaN);
+                i += gap;
+            } else {
+                t += random.nextGaussian() * 0.1;
+                // 保留一位小数，和很多传感器一样 (-0.05, 0) 之间的读数记为 -0.0
+                double v = Math.round(t * 10) / 10.0;
+                a[i++] = v == 0.0 && t < 0 ? -0.0 : v;
+            }
+        }
+        return a;
+    }
+
+    private static double[] specialValues(int n, Random random) {
+        double[] special = {Double.NaN, -0.0, 0.0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.MIN_VALUE, -Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE,
+                Double.longBitsToDouble(0x7ff8000000000123L)};
+        double[] a = new double[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = random.nextInt(3) == 0 ? random.nextInt(5) - 2 : special[random.nextInt(special.length)];
+        }
+        return a;
+    }
+
+    /**
+     * 各种数据形态和特殊值下，排序结果和 {@link Arrays#sort(double[])}、{@link Arrays#sort(float[])} 逐位相同。
+     */
+    @Test
+    public void testSort() {
+        Random random = new Random(47);
+        int[] sizes = {0, 1, 2, 3, 46, 47, 48, 100, 287, 1000, 10007, 100000};
+        for (int size : sizes) {
+            double[][] inputs = new double[DualPivotQuickSortImpl.SHAPES.length + 2][];
+            for (int s = 0; s < DualPivotQuickSortImpl.SHAPES.length; s++) {
+                int[] shape = DualPivotQuickSortImpl.shape(DualPivotQuickSortImpl.SHAPES[s], size, random);
+                inputs[s] = Arrays.stream(shape).asDoubleStream().map(x -> x / 7).toArray();
+            }
+            inputs[inputs.length - 2] = specialValues(size, random);
+            inputs[inputs.length - 1] = sensorData(size, 0.05, random);
+
+            for (double[] a : inputs) {
+                double[] expected = a.clone();
+                Arrays.sort(expected);
+                double[] actual = a.clone();
+                sort(actual);
+                assertArrayEquals(expected, actual);
+
+                float[] f = new float[size];
+                for (int i = 0; i < size; i++) {
+                    f[i] = (float) a[i];
+                }
+                float[] expectedF = f.clone();
+                Arrays.sort(expectedF);
+                sort(f);
+                assertArrayEquals(expectedF, f);
+            }
+        }
+
+        // 范围排序不能影响范围之外的 -0.0 和 NaN
+        double[] a = specialValues(1000, random);
+        double[] expected = a.clone();
+        Arrays.sort(expected, 100, 900);
+        sort(a, 100, 900);
+        assertArrayEquals(expected, a);
+    }
+
+    /**
+     * 带 NaN 缺口的传感器数据上和 {@link Arrays#sort(double[])} 比较。
+     */
+    @Test
+    public void testBenchmark() {
+        final int size = 5_000_000, rounds = 5;
+        Random random = new Random(47);
+        System.out.printf("%-12s%18s%18s%n", "NaN ratio", "Arrays.sort", "this");
+        for (double nanRatio : new double[]{0, 0.05, 0.3}) {
+            double[] data = sensorData(size, nanRatio, random);
+            long jdk = Long.MAX_VALUE, self = Long.MAX_VALUE;
+            for (int r = 0; r < rounds; r++) {
+                double[] a = data.clone();
+                long start = System.nanoTime();
+                Arrays.sort(a);
+                jdk = Math.min(jdk, System.nanoTime() - start);
+
+                double[] b = data.clone();
+                start = System.nanoTime();
+                sort(b);
+                self = Math.min(self, System.nanoTime() - start);
+                assertArrayEquals(a, b);
+            }
+            System.out.printf("%-12.2f%16.2fms%16.2fms%n", nanRatio, jdk / 1e6, self / 1e6);
+        }
+
+        /*
+        输出（5,000,000 个元素，5 轮取最小值）：
+        NaN ratio          Arrays.sort              this
+        0.00                  178.18ms          177.19ms
+        0.05                  192.87ms          151.80ms
+        0.30                  134.70ms          121.17ms
+
+        JDK 8 的 Arrays.sort(double[]) 同样先把 NaN 移到末尾、最后修正 -0.0，所以两者处于同一水平。
+        剩下的差距主要来自 JDK 在快排之前寻找有序片段的扫描，随机游走数据中短的有序片段很多，这次扫描基本是白做的。
+        NaN 越多，真正需要排序的元素越少，两者的耗时都会下降。
+         */
+    }
+}
@@ -0,0 +1,326 @@
+package java_.util;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * 以 {@code long} 为优先级、{@code int} id 为元素的 d 叉最小堆，支持按 id 修改优先级和删除。
+ *
+ * <p>和 {@link java.util.PriorityQueue} 的区别（见 PriorityQueue.md）：
+ * <ul>
+ *     <li>优先级和 id 分别存放在两个平行的基本类型数组中，不需要包装对象，比较时也不调用 Comparator</li>
+ *     <li>默认是 4 叉堆：树的高度减半，上浮时的比较次数减半；下沉时每层要比较 4 个子结点，但它们在同一个缓存行中，
+ *     而二叉堆下沉时每层都要访问一个新的缓存行。堆很大、不能全部放进缓存时，缓存未命中比多出来的比较更昂贵</li>
+ *     <li>用 {@link #positions} 记录每个 id 在堆中的下标，因此可以在 O(log n) 时间内完成
+ *     {@link #decreaseKey}、{@link #remove}，PriorityQueue 的 {@code remove(Object)} 需要 O(n) 的线性查找</li>
+ * </ul>
+ *
+ * <p>id 必须在 [0, capacity) 之内，每个 id 同时最多在堆中出现一次，适合 id 是任务、结点等的编号的场景。
+ *
+ * <p>不是线程安全的。
+ */
+public class IndexedLongHeap {
+
+    /**
+     * 按堆的顺序存放的优先级，keys[0] 最小。结点 k 的子结点是 (k << shift) + 1 到 (k << shift) + arity。
+     */
+    private final long[] keys;
+
+    /**
+     * 和 keys 平行的 id。
+     */
+    private final int[] ids;
+
+    /**
+     * positions[id] 是 id 在堆中的下标，不在堆中时为 -1。
+     */
+    private final int[] positions;
+
+    /**
+     * log2(arity)。
+     */
+    private final int shift;
+
+    private int size;
+
+    /**
+     * 创建 4 叉堆。
+     */
+    public IndexedLongHeap(int capacity) {
+        this(capacity, 4);
+    }
+
+    /**
+     * @param capacity id 的上界，也是堆的最大元素个数
+     * @param arity    每个结点的子结点个数，必须是 2 到 16 之间的 2 的幂
+     */
+    public IndexedLongHeap(int capacity, int arity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+        if (arity < 2 || arity > 16 || Integer.bitCount(arity) != 1) {
+            throw new IllegalArgumentException("arity: " + arity);
+        }
+        keys = new long[capacity];
+        ids = new int[capacity];
+        positions = new int[capacity];
+        Arrays.fill(positions, -1);
+        shift = Integer.numberOfTrailingZeros(arity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public int arity() {
+        return 1 << shift;
+    }
+
+    public boolean contains(int id) {
+        return id >= 0 && id < positions.length && positions[id] >= 0;
+    }
+
+    /**
+     * 返回 id 的优先级。
+     *
+     * @throws NoSuchElementException 如果 id 不在堆中
+     */
+    public long keyOf(int id) {
+        return keys[position(id)];
+    }
+
+    private int position(int id) {
+        int k = positions[checkId(id)];
+        if (k < 0) {
+            throw new NoSuchElementException("id: " + id);
+        }
+        return k;
+    }
+
+    private int checkId(int id) {
+        if (id < 0 || id >= positions.length) {
+            throw new IndexOutOfBoundsException("id: " + id + ", capacity: " + positions.length);
+        }
+        return id;
+    }
+
+    /**
+     * 插入 id，优先级为 key。
+     *
+     * @throws IllegalArgumentException 如果 id 已经在堆中
+     */
+    public void push(int id, long key) {
+        if (positions[checkId(id)] >= 0) {
+            throw new IllegalArgumentException("duplicate id: " + id);
+        }
+        siftUp(size++, key, id);
+    }
+
+    /**
+     * 返回优先级最小的 id，但不删除。
+     *
+     * @throws NoSuchElementException 如果堆为空
+     */
+    public int peekId() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return ids[0];
+    }
+
+    /**
+     * 返回最小的优先级。
+     *
+     * @throws NoSuchElementException 如果堆为空
+     */
+    public long peekKey() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return keys[0];
+    }
+
+    /**
+     * 删除并返回优先级最小的 id。
+     *
+     * @throws NoSuchElementException 如果堆为空
+     */
+    public int pop() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        int result = ids[0];
+        positions[result] = -1;
+        int n = --size;
+        if (n > 0) {
+            siftDown(0, keys[n], ids[n]);
+        }
+        return result;
+    }
+
+    /**
+     * 把 id 的优先级降低为 key。Dijkstra、Prim 等算法中的 decrease-key 操作。
+     *
+     * @throws NoSuchElementException   如果 id 不在堆中
+     * @throws IllegalArgumentException 如果 key 大于当前的优先级
+     */
+    public void decreaseKey(int id, long key) {
+        int k = position(id);
+        if (key > keys[k]) {
+            throw new IllegalArgumentException("key " + key + " is greater than current key " + keys[k]);
+        }
+        siftUp(k, key, id);
+    }
+
+    /**
+     * 把 id 的优先级修改为 key，可以升高或降低。
+     *
+     * @throws NoSuchElementException 如果 id 不在堆中
+     */
+    public void changeKey(int id, long key) {
+        int k = position(id);
+        if (key < keys[k]) {
+            siftUp(k, key, id);
+        } else {
+            siftDown(k, key, id);
+        }
+    }
+
+    /**
+     * 删除 id，返回它是否在堆中。和 PriorityQueue.removeAt 相同：用最后一个元素填补空位，先下沉，没有移动再上浮。
+     */
+    public boolean remove(int id) {
+        int k = positions[checkId(id)];
+        if (k < 0) {
+            return false;
+        }
+        positions[id] = -1;
+        int n = --size;
+        if (k != n) {
+            long movedKey = keys[n];
+            int movedId = ids[n];
+            siftDown(k, movedKey, movedId);
+            if (ids[k] == movedId) {
+                siftUp(k, movedKey, movedId);
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[ids[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * 用 ids、keys 的前 n 个元素替换堆中的内容，自底向上建堆，时间复杂度是 O(n)，
+     * 比逐个 {@link #push} 的 O(n log n) 快。
+     *
+     * @throws IndexOutOfBoundsException 如果 ids 中有超出范围的 id，此时堆没有被修改
+     * @throws IllegalArgumentException 如果 ids 中有重复的 id，此时堆为空
+     */
+    public void heapify(int[] ids, long[] keys, int n) {
+        if (n < 0 || n > ids.length || n > keys.length) {
+            throw new IndexOutOfBoundsException("n: " + n);
+        }
+        if (n > capacity()) {
+            throw new IllegalArgumentException("n: " + n + ", capacity: " + capacity());
+        }
+        // 先检查所有 id 的范围，否则抛出异常时已经写入的 positions 会残留下来
+        for (int i = 0; i < n; i++) {
+            checkId(ids[i]);
+        }
+        clear();
+        for (int i = 0; i < n; i++) {
+            int id = ids[i];
+            if (positions[id] >= 0) {
+                size = i;
+                clear();
+                throw new IllegalArgumentException("duplicate id: " + id);
+            }
+            positions[id] = i;
+            this.ids[i] = id;
+        }
+        System.arraycopy(keys, 0, this.keys, 0, n);
+        size = n;
+        // 从最后一个非叶子结点开始下沉
+        for (int i = n <= 1 ? -1 : (n - 2) >>> shift; i >= 0; i--) {
+            siftDown(i, this.keys[i], this.ids[i]);
+        }
+    }
+
+    /**
+     * 把 (key, id) 放到下标 k 的位置并上浮：比它大的父结点依次下移，最后把它放到空出的位置，
+     * 和 PriorityQueue.siftUp 一样不做两两交换。
+     */
+    private void siftUp(int k, long key, int id) {
+        long[] keys = this.keys;
+        int[] ids = this.ids;
+        while (k > 0) {
+            int parent = (k - 1) >>> shift;
+            long p = keys[parent];
+            if (key >= p) {
+                break;
+            }
+            keys[k] = p;
+            int parentId = ids[parent];
+            ids[k] = parentId;
+            positions[parentId] = k;
+            k = parent;
+        }
+        keys[k] = key;
+        ids[k] = id;
+        positions[id] = k;
+    }
+
+    /**
+     * 把 (key, id) 放到下标 k 的位置并下沉：每层找出最小的子结点，比 key 小就上移。
+     */
+    private void siftDown(int k, long key, int id) {
+        long[] keys = this.keys;
+        int[] ids = this.ids;
+        int n = size;
+        int arity = 1 << shift;
+        for (;;) {
+            int first = (k << shift) + 1;
+            if (first >= n || first < 0) {
+                break;
+            }
+            int end = Math.min(first + arity, n);
+            int c = first;
+            long min = keys[first];
+            for (int i = first + 1; i < end; i++) {
+                if (keys[i] < min) {
+                    min = keys[i];
+                    c = i;
+                }
+            }
+            if (key <= min) {
+                break;
+            }
+            keys[k] = min;
+            int childId = ids[c];
+            ids[k] = childId;
+            positions[childId] = k;
+            k = c;
+        }
+        keys[k] = key;
+        ids[k] = id;
+        positions[id] = k;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size=" + size + ", capacity=" + capacity() + ", arity=" + arity() + "]";
+    }
+}
@@ -0,0 +1,248 @@
+package java_.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static java_.TestUtil.retained;
+import static java_.TestUtil.usedMemory;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link IndexedLongHeap} 的测试，以及和 {@code PriorityQueue<Long>} 的比较。
+ */
+public class IndexedLongHeapTest {
+
+    @Test
+    public void testHeap() {
+        IndexedLongHeap heap = new IndexedLongHeap(10);
+        assertEquals(4, heap.arity());
+        assertThrows(NoSuchElementException.class, heap::pop);
+        assertThrows(NoSuchElementException.class, heap::peekKey);
+        heap.push(3, 30);
+        heap.push(1, 10);
+        heap.push(7, 70);
+        heap.push(2, 20);
+        assertThrows(IllegalArgumentException.class, () -> heap.push(3, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> heap.push(10, 0));
+        assertEquals(1, heap.peekId());
+        assertEquals(10, heap.peekKey());
+
+        heap.decreaseKey(7, 5);
+        assertEquals(7, heap.peekId());
+        assertThrows(IllegalArgumentException.class, () -> heap.decreaseKey(7, 6));
+        assertThrows(NoSuchElementException.class, () -> heap.decreaseKey(4, 1));
+        heap.changeKey(7, 100);
+        assertEquals(100, heap.keyOf(7));
+        assertTrue(heap.remove(2));
+        assertFalse(heap.remove(2));
+        assertFalse(heap.contains(2));
+        assertFalse(heap.contains(-1));
+
+        assertEquals(1, heap.pop());
+        assertEquals(3, heap.pop());
+        assertEquals(7, heap.pop());
+        assertTrue(heap.isEmpty());
+
+        heap.heapify(new int[]{5, 6, 7, 8}, new long[]{4, 3, 2, 1}, 3);
+        assertEquals(3, heap.size());
+        assertFalse(heap.contains(8));
+        assertEquals(7, heap.pop());
+        assertThrows(IllegalArgumentException.class, () -> heap.heapify(new int[]{1, 1}, new long[2], 2));
+        assertTrue(heap.isEmpty());
+        assertFalse(heap.contains(1));
+        // 超出范围的 id 不会留下已经写入的位置
+        IndexedLongHeap small = new IndexedLongHeap(4);
+        small.push(2, 9);
+        assertThrows(IndexOutOfBoundsException.class,
+                () -> small.heapify(new int[]{0, 1, 7}, new long[]{3, 2, 1}, 3));
+        assertEquals(1, small.size());
+        assertFalse(small.contains(0));
+        assertFalse(small.contains(1));
+        small.push(0, 5);
+        assertEquals(0, small.pop());
+        assertEquals(2, small.pop());
+        assertThrows(IllegalArgumentException.class, () -> new IndexedLongHeap(10, 3));
+    }
+
+    /**
+     * 随机操作，和按 (key, id) 排序的 TreeSet 比较。优先级相同时弹出哪个 id 不确定，只检查优先级和 id 的存在。
+     */
+    @Test
+    public void testRandomOperations() {
+        Random random = new Random(47);
+        for (int arity : new int[]{2, 4, 8, 16}) {
+            final int capacity = 2000;
+            IndexedLongHeap heap = new IndexedLongHeap(capacity, arity);
+            TreeSet<long[]> expected = new TreeSet<>(Comparator.<long[]>comparingLong(e -> e[0])
+                    .thenComparingLong(e -> e[1]));
+            long[] keyOf = new long[capacity];
+            for (int op = 0; op < 300_000; op++) {
+                int id = random.nextInt(capacity);
+                // 优先级的范围很小，有大量相等的优先级
+                long key = random.nextInt(500);
+                boolean present = keyOf[id] != 0;
+                switch (random.nextInt(6)) {
+                    case 0:
+                    case 1:
+                        if (!present) {
+                            heap.push(id, key);
+                            expected.add(new long[]{key, id});
+                            keyOf[id] = key + 1;
+                        }
+                        break;
+                    case 2:
+                        if (!expected.isEmpty()) {
+                            long min = expected.first()[0];
+                            assertEquals(min, heap.peekKey());
+                            int popped = heap.pop();
+                            assertTrue(expected.remove(new long[]{min, popped}));
+                            keyOf[popped] = 0;
+                        }
+                        break;
+                    case 3:
+                        if (present) {
+                            long newKey = Math.min(key, keyOf[id] - 1);
+                            expected.remove(new long[]{keyOf[id] - 1, id});
+                            heap.decreaseKey(id, newKey);
+                            expected.add(new long[]{newKey, id});
+                            keyOf[id] = newKey + 1;
+                        }
+                        break;
+                    case 4:
+                        if (present) {
+                            expected.remove(new long[]{keyOf[id] - 1, id});
+                            heap.changeKey(id, key);
+                            expected.add(new long[]{key, id});
+                            keyOf[id] = key + 1;
+                        }
+                        break;
+                    default:
+                        assertEquals(present, heap.remove(id));
+                        if (present) {
+                            expected.remove(new long[]{keyOf[id] - 1, id});
+                            keyOf[id] = 0;
+                        }
+                }
+                assertEquals(expected.size(), heap.size());
+                if (present && keyOf[id] != 0) {
+                    assertEquals(keyOf[id] - 1, heap.keyOf(id));
+                }
+            }
+
+            // 建堆之后依次弹出的优先级是有序的
+            int n = capacity - 7;
+            int[] ids = new int[n];
+            long[] keys = new long[n];
+            long[] keyById = new long[capacity];
+            for (int i = 0; i < n; i++) {
+                ids[i] = (i * 7 + 3) % capacity;
+                keys[i] = random.nextInt(1000);
+                keyById[ids[i]] = keys[i];
+            }
+            heap.heapify(ids, keys, n);
+            long last = Long.MIN_VALUE;
+            for (int i = 0; i < n; i++) {
+                long key = heap.peekKey();
+                assertEquals(keyById[heap.pop()], key);
+                assertTrue(key >= last);
+                last = key;
+            }
+        }
+    }
+
+    static volatile long sink;
+
+    /**
+     * 先插入 n 个随机优先级，再全部弹出；对索引堆再测试一次建堆。输出每个元素占用的堆内存和每次操作的 ns。
+     * 默认只测 10^6 个元素，更大的规模通过系统属性 {@code heap.bench.maxSize} 打开，
+     * 例如 {@code -Dheap.bench.maxSize=10000000}。
+     */
+    @Test
+    public void testBenchmark() {
+        int maxSize = Integer.getInteger("heap.bench.maxSize", 1_000_000);
+        String[] names = {"PriorityQueue<Long>", "IndexedLongHeap(2)", "IndexedLongHeap(4)", "IndexedLongHeap(8)"};
+        System.out.printf("%-22s%6s%14s%10s%10s%14s%n", "heap", "n", "bytes/elem", "push ns", "pop ns",
+                "heapify ns");
+        for (int n = 1_000_000; n <= maxSize; n *= 10) {
+            long[] keys = new Random(47).longs(n).toArray();
+            int[] ids = new int[n];
+            for (int i = 0; i < n; i++) {
+                ids[i] = i;
+            }
+            for (String name : names) {
+                long bytes = Long.MAX_VALUE, push = Long.MAX_VALUE, pop = Long.MAX_VALUE, heapify = Long.MAX_VALUE;
+                for (int round = 0; round < 3; round++) {
+                    retained = null;
+                    long base = usedMemory();
+                    long sum = 0;
+                    if (name.startsWith("PriorityQueue")) {
+                        long start = System.nanoTime();
+                        PriorityQueue<Long> queue = new PriorityQueue<>(n);
+                        for (long key : keys) {
+                            queue.add(key);
+                        }
+                        push = Math.min(push, System.nanoTime() - start);
+                        retained = queue;
+                        bytes = Math.min(bytes, usedMemory() - base);
+                        start = System.nanoTime();
+                        while (!queue.isEmpty()) {
+                            sum += queue.poll();
+                        }
+                        pop = Math.min(pop, System.nanoTime() - start);
+                    } else {
+                        int arity = name.charAt(name.length() - 2) - '0';
+                        long start = System.nanoTime();
+                        IndexedLongHeap heap = new IndexedLongHeap(n, arity);
+                        for (int i = 0; i < n; i++) {
+                            heap.push(i, keys[i]);
+                        }
+                        push = Math.min(push, System.nanoTime() - start);
+                        retained = heap;
+                        bytes = Math.min(bytes, usedMemory() - base);
+                        start = System.nanoTime();
+                        while (!heap.isEmpty()) {
+                            sum += heap.pop();
+                        }
+                        pop = Math.min(pop, System.nanoTime() - start);
+                        start = System.nanoTime();
+                        heap.heapify(ids, keys, n);
+                        heapify = Math.min(heapify, System.nanoTime() - start);
+                    }
+                    sink += sum;
+                }
+                retained = null;
+                System.out.printf("%-22s%6s%14.1f%10.1f%10.1f%14s%n", name, "10^" + (int) Math.log10(n),
+                        (double) bytes / n, (double) push / n, (double) pop / n,
+                        heapify == Long.MAX_VALUE ? "-" : String.format("%.1f", (double) heapify / n));
+            }
+        }
+
+        /*
+        输出（-Dheap.bench.maxSize=10000000）：
+        heap                       n    bytes/elem   push ns    pop ns    heapify ns
+        PriorityQueue<Long>     10^6          28.0      53.1     473.8             -
+        IndexedLongHeap(2)      10^6          16.0      36.8     445.7          17.6
+        IndexedLongHeap(4)      10^6          16.0      23.5     256.7           8.7
+        IndexedLongHeap(8)      10^6          16.0      16.8     238.9           6.8
+        PriorityQueue<Long>     10^7          28.0      58.1    1330.4             -
+        IndexedLongHeap(2)      10^7          16.0      37.0    1308.9          22.7
+        IndexedLongHeap(4)      10^7          16.0      23.4     665.3          11.7
+        IndexedLongHeap(8)      10^7          16.0      14.6     484.9           7.9
+
+        结论：
+        - 每个元素 16 字节（8 字节的优先级、4 字节的 id、4 字节的位置索引），PriorityQueue<Long> 实测 28 字节
+          （其中 Long 对象 16 字节、数组中的引用 4 字节），而且它不能按 id 修改优先级。
+        - 随机优先级的插入平均只上浮常数层，差别主要来自装箱和 compareTo 调用。
+        - 弹出要下沉 log_d(n) 层，是瓶颈。二叉堆在 10^7 时每层都是一次缓存未命中，每次弹出 1.3 微秒；
+          4 叉堆层数减半，4 个子结点的 key 在同一个缓存行中，弹出快 2 倍；8 叉堆的子结点占满一个 64 字节的缓存行，
+          在堆大到放不进缓存时还能再快一些。相同的二叉结构下，基本类型数组和 PriorityQueue 的差别很小，
+          说明缓存未命中才是主要开销，而不是比较器调用。
+        - 自底向上建堆是 O(n)，每个元素只需要 10 纳秒左右，比逐个插入快 2~3 倍。
+         */
+    }
+}
@@ -0,0 +1,591 @@
+package java_.util;
+
+/**
+ * 针对 int 数组的 TimSort，流程和 TimSort.md 中的 {@code java.util.TimSort} 相同，只是把比较器换成了基本类型比较。
+ * <p>
+ * {@link DualPivotQuickSortImpl} 不会利用数据中已有的顺序，而 TimSort 会找出数组中的游程，
+ * 对"大部分有序、末尾追加了一小段"这样的数据只需要 O(N) 的比较和一次 gallop 合并。
+ * <p>
+ * 和 JDK 的 TimSort 每次排序都新建实例不同，这个类的实例可以重复使用：游程堆栈在构造时分配一次，
+ * tmp 数组使用调用方提供的工作区数组。工作区长度不小于排序范围的一半时，{@link #sort(int[], int, int)} 不会分配任何内存。
+ * 实例不是线程安全的。
+ */
+public class IntTimSort {
+
+    // 将被合并的游程的最短长度，更短的游程将通过 binarySort 来延长
+    private static final int MIN_MERGE = 32;
+
+    // 某一个游程连续获胜次数大于等于这个值时进入 gallop 模式
+    private static final int MIN_GALLOP = 7;
+
+    // 游程堆栈的最大长度，允许排序长度为 Integer.MAX - 4 的数组
+    private static final int MAX_STACK_LENGTH = 49;
+
+    // 正在排序的数组
+    private int[] a;
+
+    // 控制何时进入 gallop 模式，对于随机数据增大，对于高度结构化的数据减小
+    private int minGallop = MIN_GALLOP;
+
+    // 用于合并的临时存储
+    private int[] tmp;
+    private int tmpBase; // tmp 数组的开始
+    private int tmpLen;  // tmp 数组的长度
+
+    // 尚未合并的游程堆栈，runBase[i] + runLen[i] == runBase[i + 1]
+    private int stackSize = 0;
+    private final int[] runBase = new int[MAX_STACK_LENGTH];
+    private final int[] runLen = new int[MAX_STACK_LENGTH];
+
+    /**
+     * 创建一个在需要时自己分配 tmp 数组的实例。分配的 tmp 数组会保留下来，供之后的排序使用。
+     */
+    public IntTimSort() {
+        this(null, 0, 0);
+    }
+
+    /**
+     * 创建一个使用 work[workBase, workBase + workLen) 作为 tmp 数组的实例。
+     * workLen 不小于要排序长度的一半时，排序过程中不会分配内存。
+     */
+    public IntTimSort(int[] work, int workBase, int workLen) {
+        if (work != null) {
+            DualPivotQuickSortImpl.rangeCheck(work.length, workBase, workBase + workLen);
+        }
+        this.tmp = work;
+        this.tmpBase = workBase;
+        this.tmpLen = work == null ? 0 : workLen;
+    }
+
+    /**
+     * 对整个数组进行排序。
+     */
+    public static void sort(int[] a) {
+        new IntTimSort().sort(a, 0, a.length);
+    }
+
+    /**
+     * 对 [lo, hi) 进行排序，使用 work[workBase, workBase + workLen) 作为临时存储。
+     */
+    public static void sort(int[] a, int lo, int hi, int[] work, int workBase, int workLen) {
+        new IntTimSort(work, workBase, workLen).sort(a, lo, hi);
+    }
+
+    /**
+     * 对 [lo, hi) 进行排序。
+     */
+    public void sort(int[] a, int lo, int hi) {
+        DualPivotQuickSortImpl.rangeCheck(a.length, lo, hi);
+        int nRemaining = hi - lo;
+        // 长度为 0 或 1 的数组不需要排序
+        if (nRemaining < 2) {
+            return;
+        }
+
+        // 数组长度小于 MIN_MERGE，使用不需要归并的 "mini-TimSort"
+        if (nRemaining < MIN_MERGE) {
+            int initRunLen = countRunAndMakeAscending(a, lo, hi);
+            binarySort(a, lo, hi, lo + initRunLen);
+            return;
+        }
+
+        this.a = a;
+        this.minGallop = MIN_GALLOP;
+        this.stackSize = 0;
+        try {
+            int minRun = minRunLength(nRemaining);
+            do {
+                // 找到下一个游程，太短就用 binarySort 扩展为 minRun 和 nRemaining 之间的较小值
+                int runLen = countRunAndMakeAscending(a, lo, hi);
+                if (runLen < minRun) {
+                    int force = nRemaining <= minRun ? nRemaining : minRun;
+                    binarySort(a, lo, lo + force, lo + runLen);
+                    runLen = force;
+                }
+
+                pushRun(lo, runLen);
+                mergeCollapse();
+
+                lo += runLen;
+                nRemaining -= runLen;
+            } while (nRemaining != 0);
+
+            mergeForceCollapse();
+        } finally {
+            // 不持有调用方数组的引用
+            this.a = null;
+        }
+    }
+
+    /**
+     * 使用二分插入排序对 [lo, hi) 进行排序，假定 [lo, start) 已经有序。
+     */
+    static void binarySort(int[] a, int lo, int hi, int start) {
+        if (start == lo) {
+            start++;
+        }
+        for ( ; start < hi; start++) {
+            int pivot = a[start];
+
+            int left = lo;
+            int right = start;
+            while (left < right) {
+                int mid = (left + right) >>> 1;
+                if (pivot < a[mid]) {
+                    right = mid;
+                } else {
+                    left = mid + 1;
+                }
+            }
+
+            int n = start - left;
+            switch (n) {
+                // JDK 在这里让 case 2 贯穿到 case 1，展开写避免 -Xlint:fallthrough 警告
+                case 2:  a[left + 2] = a[left + 1];
+                         a[left + 1] = a[left];
+                    break;
+                case 1:  a[left + 1] = a[left];
+                    break;
+                default: System.arraycopy(a, left, a, left + 1, n);
+            }
+            a[left] = pivot;
+        }
+    }
+
+    /**
+     * 返回从 lo 开始的游程长度。如果游程是严格降序的，将其反转。
+     */
+    static int countRunAndMakeAscending(int[] a, int lo, int hi) {
+        int runHi = lo + 1;
+        if (runHi == hi) {
+            return 1;
+        }
+
+        if (a[runHi++] < a[lo]) {
+            while (runHi < hi && a[runHi] < a[runHi - 1]) {
+                runHi++;
+            }
+            reverseRange(a, lo, runHi);
+        } else {
+            while (runHi < hi && a[runHi] >= a[runHi - 1]) {
+                runHi++;
+            }
+        }
+
+        return runHi - lo;
+    }
+
+    private static void reverseRange(int[] a, int lo, int hi) {
+        hi--;
+        while (lo < hi) {
+            int t = a[lo];
+            a[lo++] = a[hi];
+            a[hi--] = t;
+        }
+    }
+
+    /**
+     * 返回最小可接受游程长度，使得 n / minRun 接近但严格小于 2 的幂。
+     */
+    static int minRunLength(int n) {
+        int r = 0;
+        while (n >= MIN_MERGE) {
+            r |= (n & 1);
+            n >>= 1;
+        }
+        return n + r;
+    }
+
+    private void pushRun(int runBase, int runLen) {
+        this.runBase[stackSize] = runBase;
+        this.runLen[stackSize] = runLen;
+        stackSize++;
+    }
+
+    /**
+     * 合并相邻游程，直到满足 runLen[i-3] > runLen[i-2] + runLen[i-1] 和 runLen[i-2] > runLen[i-1]。
+     * 和 TimSort.md 中的版本相比多检查了 runLen[n-2]，这是 JDK 后来针对 sorting.pdf 中指出的不变式被破坏问题做的修正。
+     */
+    private void mergeCollapse() {
+        while (stackSize > 1) {
+            int n = stackSize - 2;
+            if (n > 0 && runLen[n - 1] <= runLen[n] + runLen[n + 1]
+                    || n > 1 && runLen[n - 2] <= runLen[n] + runLen[n - 1]) {
+                if (runLen[n - 1] < runLen[n + 1]) {
+                    n--;
+                }
+            } else if (runLen[n] > runLen[n + 1]) {
+                break;
+            }
+            mergeAt(n);
+        }
+    }
+
+    private void mergeForceCollapse() {
+        while (stackSize > 1) {
+            int n = stackSize - 2;
+            if (n > 0 && runLen[n - 1] < runLen[n + 1]) {
+                n--;
+            }
+            mergeAt(n);
+        }
+    }
+
+    /**
+     * 合并堆栈索引 i 和 i + 1 处的游程，i 必须等于 stackSize - 2 或 stackSize - 3。
+     */
+    private void mergeAt(int i) {
+        int base1 = runBase[i];
+        int len1 = runLen[i];
+        int base2 = runBase[i + 1];
+        int len2 = runLen[i + 1];
+
+        runLen[i] = len1 + len2;
+        if (i == stackSize - 3) {
+            runBase[i + 1] = runBase[i + 2];
+            runLen[i + 1] = runLen[i + 2];
+        }
+        stackSize--;
+
+        // run1 中小于等于 run2 第一个元素的部分已经在最终位置
+        int k = gallopRight(a[base2], a, base1, len1, 0);
+        base1 += k;
+        len1 -= k;
+        if (len1 == 0) {
+            return;
+        }
+
+        // run2 中大于等于 run1 最后一个元素的部分已经在最终位置
+        len2 = gallopLeft(a[base1 + len1 - 1], a, base2, len2, len2 - 1);
+        if (len2 == 0) {
+            return;
+        }
+
+        if (len1 <= len2) {
+            mergeLo(base1, len1, base2, len2);
+        } else {
+            mergeHi(base1, len1, base2, len2);
+        }
+    }
+
+    /**
+     * 返回 k，使得 a[base + k - 1] < key <= a[base + k]，从 hint 开始二次探测后再二分查找。
+     */
+    static int gallopLeft(int key, int[] a, int base, int len, int hint) {
+        int lastOfs = 0;
+        int ofs = 1;
+        if (key > a[base + hint]) {
+            // 在 hint 右边搜索，直到 a[base+hint+lastOfs] < key <= a[base+hint+ofs]
+            int maxOfs = len - hint;
+            while (ofs < maxOfs && key > a[base + hint + ofs]) {
+                lastOfs = ofs;
+                ofs = (ofs << 1) + 1;
+                if (ofs <= 0) {
+                    ofs = maxOfs;
+                }
+            }
+            if (ofs > maxOfs) {
+                ofs = maxOfs;
+            }
+            lastOfs += hint;
+            ofs += hint;
+        } else {
+            // 在 hint 左边搜索，直到 a[base+hint-ofs] < key <= a[base+hint-lastOfs]
+            final int maxOfs = hint + 1;
+            while (ofs < maxOfs && key <= a[base + hint - ofs]) {
+                lastOfs = ofs;
+                ofs = (ofs << 1) + 1;
+                if (ofs <= 0) {
+                    ofs = maxOfs;
+                }
+            }
+            if (ofs > maxOfs) {
+                ofs = maxOfs;
+            }
+            int tmp = lastOfs;
+            lastOfs = hint - ofs;
+            ofs = hint - tmp;
+        }
+
+        lastOfs++;
+        while (lastOfs < ofs) {
+            int m = lastOfs + ((ofs - lastOfs) >>> 1);
+            if (key > a[base + m]) {
+                lastOfs = m + 1;
+            } else {
+                ofs = m;
+            }
+        }
+        return ofs;
+    }
+
+    /**
+     * 和 gallopLeft 类似，返回 k，使得 a[base + k - 1] <= key < a[base + k]。
+     */
+    static int gallopRight(int key, int[] a, int base, int len, int hint) {
+        int ofs = 1;
+        int lastOfs = 0;
+        if (key < a[base + hint]) {
+            int maxOfs = hint + 1;
+            while (ofs < maxOfs && key < a[base + hint - ofs]) {
+                lastOfs = ofs;
+                ofs = (ofs << 1) + 1;
+                if (ofs <= 0) {
+                    ofs = maxOfs;
+                }
+            }
+            if (ofs > maxOfs) {
+                ofs = maxOfs;
+            }
+            int tmp = lastOfs;
+            lastOfs = hint - ofs;
+            ofs = hint - tmp;
+        } else {
+            int maxOfs = len - hint;
+            while (ofs < maxOfs && key >= a[base + hint + ofs]) {
+                lastOfs = ofs;
+                ofs = (ofs << 1) + 1;
+                if (ofs <= 0) {
+                    ofs = maxOfs;
+                }
+            }
+            if (ofs > maxOfs) {
+                ofs = maxOfs;
+            }
+            lastOfs += hint;
+            ofs += hint;
+        }
+
+        lastOfs++;
+        while (lastOfs < ofs) {
+            int m = lastOfs + ((ofs - lastOfs) >>> 1);
+            if (key < a[base + m]) {
+                ofs = m;
+            } else {
+                lastOfs = m + 1;
+            }
+        }
+        return ofs;
+    }
+
+    /**
+     * 从左到右合并两个相邻的游程，len1 <= len2 时调用。要求 a[base1] > a[base2]，
+     * 且 run1 的最后一个元素大于 run2 的所有元素。
+     */
+    private void mergeLo(int base1, int len1, int base2, int len2) {
+        // 将第一个游程复制到 tmp
+        int[] a = this.a; // 避免 getfield 指令调用
+        int[] tmp = ensureCapacity(len1);
+        int cursor1 = tmpBase;
+        int cursor2 = base2;
+        int dest = base1;
+        System.arraycopy(a, base1, tmp, cursor1, len1);
+
+        a[dest++] = a[cursor2++];
+        if (--len2 == 0) {
+            System.arraycopy(tmp, cursor1, a, dest, len1);
+            return;
+        }
+        if (len1 == 1) {
+            System.arraycopy(a, cursor2, a, dest, len2);
+            a[dest + len2] = tmp[cursor1];
+            return;
+        }
+
+        int minGallop = this.minGallop;
+        outer:
+        while (true) {
+            int count1 = 0; // 第一个游程连续获胜的次数
+            int count2 = 0; // 第二个游程连续获胜的次数
+
+            do {
+                if (a[cursor2] < tmp[cursor1]) {
+                    a[dest++] = a[cursor2++];
+                    count2++;
+                    count1 = 0;
+                    if (--len2 == 0) {
+                        break outer;
+                    }
+                } else {
+                    a[dest++] = tmp[cursor1++];
+                    count1++;
+                    count2 = 0;
+                    if (--len1 == 1) {
+                        break outer;
+                    }
+                }
+            } while ((count1 | count2) < minGallop);
+
+            // 某个游程一直获胜，数据可能是结构化的，使用 gallop 成块移动
+            do {
+                count1 = gallopRight(a[cursor2], tmp, cursor1, len1, 0);
+                if (count1 != 0) {
+                    System.arraycopy(tmp, cursor1, a, dest, count1);
+                    dest += count1;
+                    cursor1 += count1;
+                    len1 -= count1;
+                    if (len1 <= 1) {
+                        break outer;
+                    }
+                }
+                a[dest++] = a[cursor2++];
+                if (--len2 == 0) {
+                    break outer;
+                }
+
+                count2 = gallopLeft(tmp[cursor1], a, cursor2, len2, 0);
+                if (count2 != 0) {
+                    System.arraycopy(a, cursor2, a, dest, count2);
+                    dest += count2;
+                    cursor2 += count2;
+                    len2 -= count2;
+                    if (len2 == 0) {
+                        break outer;
+                    }
+                }
+                a[dest++] = tmp[cursor1++];
+                if (--len1 == 1) {
+                    break outer;
+                }
+                minGallop--;
+            } while (count1 >= MIN_GALLOP | count2 >= MIN_GALLOP);
+
+            if (minGallop < 0) {
+                minGallop = 0;
+            }
+            // 遇到随机数据，增大下次进入 gallop 模式的阈值
+            minGallop += 2;
+        }
+        this.minGallop = minGallop < 1 ? 1 : minGallop;
+
+        // 基本类型的比较总是满足约定，不会出现 len1 == 0 的情况
+        if (len1 == 1) {
+            System.arraycopy(a, cursor2, a, dest, len2);
+            a[dest + len2] = tmp[cursor1];
+        } else {
+            System.arraycopy(tmp, cursor1, a, dest, len1);
+        }
+    }
+
+    /**
+     * 和 mergeLo 类似，从右到左合并两个相邻的游程，len1 >= len2 时调用。
+     */
+    private void mergeHi(int base1, int len1, int base2, int len2) {
+        // 将第二个游程复制到 tmp
+        int[] a = this.a; // 避免 getfield 指令调用
+        int[] tmp = ensureCapacity(len2);
+        int tmpBase = this.tmpBase;
+        System.arraycopy(a, base2, tmp, tmpBase, len2);
+
+        int cursor1 = base1 + len1 - 1;
+        int cursor2 = tmpBase + len2 - 1;
+        int dest = base2 + len2 - 1;
+
+        a[dest--] = a[cursor1--];
+        if (--len1 == 0) {
+            System.arraycopy(tmp, tmpBase, a, dest - (len2 - 1), len2);
+            return;
+        }
+        if (len2 == 1) {
+            dest -= len1;
+            cursor1 -= len1;
+            System.arraycopy(a, cursor1 + 1, a, dest + 1, len1);
+            a[dest] = tmp[cursor2];
+            return;
+        }
+
+        int minGallop = this.minGallop;
+        outer:
+        while (true) {
+            int count1 = 0;
+            int count2 = 0;
+
+            do {
+                if (tmp[cursor2] < a[cursor1]) {
+                    a[dest--] = a[cursor1--];
+                    count1++;
+                    count2 = 0;
+                    if (--len1 == 0) {
+                        break outer;
+                    }
+                } else {
+                    a[dest--] = tmp[cursor2--];
+                    count2++;
+                    count1 = 0;
+                    if (--len2 == 1) {
+                        break outer;
+                    }
+                }
+            } while ((count1 | count2) < minGallop);
+
+            do {
+                count1 = len1 - gallopRight(tmp[cursor2], a, base1, len1, len1 - 1);
+                if (count1 != 0) {
+                    dest -= count1;
+                    cursor1 -= count1;
+                    len1 -= count1;
+                    System.arraycopy(a, cursor1 + 1, a, dest + 1, count1);
+                    if (len1 == 0) {
+                        break outer;
+                    }
+                }
+                a[dest--] = tmp[cursor2--];
+                if (--len2 == 1) {
+                    break outer;
+                }
+
+                count2 = len2 - gallopLeft(a[cursor1], tmp, tmpBase, len2, len2 - 1);
+                if (count2 != 0) {
+                    dest -= count2;
+                    cursor2 -= count2;
+                    len2 -= count2;
+                    System.arraycopy(tmp, cursor2 + 1, a, dest + 1, count2);
+                    if (len2 <= 1) {
+                        break outer;
+                    }
+                }
+                a[dest--] = a[cursor1--];
+                if (--len1 == 0) {
+                    break outer;
+                }
+                minGallop--;
+            } while (count1 >= MIN_GALLOP | count2 >= MIN_GALLOP);
+
+            if (minGallop < 0) {
+                minGallop = 0;
+            }
+            minGallop += 2;
+        }
+        this.minGallop = minGallop < 1 ? 1 : minGallop;
+
+        if (len2 == 1) {
+            dest -= len1;
+            cursor1 -= len1;
+            System.arraycopy(a, cursor1 + 1, a, dest + 1, len1);
+            a[dest] = tmp[cursor2];
+        } else {
+            System.arraycopy(tmp, tmpBase, a, dest - (len2 - 1), len2);
+        }
+    }
+
+    /**
+     * 确保 tmp 数组至少有 minCapacity 个元素。只有调用方没有提供足够大的工作区数组时才会分配，
+     * 新数组大小为大于 minCapacity 的最小的 2 的幂，但不超过数组长度的一半，并且之后的排序会继续使用它。
+     */
+    private int[] ensureCapacity(int minCapacity) {
+        if (tmpLen < minCapacity) {
+            // 大于 minCapacity 的最小的 2 的幂
+            int newSize = Integer.highestOneBit(minCapacity) << 1;
+            if (newSize < 0) {
+                newSize = minCapacity;
+            } else {
+                newSize = Math.min(newSize, a.length >>> 1);
+            }
+
+            tmp = new int[newSize];
+            tmpLen = newSize;
+            tmpBase = 0;
+        }
+        return tmp;
+    }
+}
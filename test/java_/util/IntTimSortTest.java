@@ -0,0 +1,154 @@
+package java_.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link IntTimSort} 的测试，以及和 {@link Arrays#sort(int[])}、{@link DualPivotQuickSortImpl} 的比较。
+ */
+public class IntTimSortTest {
+
+    /**
+     * "大部分有序、末尾追加一小段随机数据"的形态。
+     */
+    private static int[] sortedWithTail(int n, int tail, Random random) {
+        int[] a = new int[n];
+        for (int i = 0; i < n - tail; i++) {
+            a[i] = i * 2;
+        }
+        for (int i = n - tail; i < n; i++) {
+            a[i] = random.nextInt(2 * n);
+        }
+        return a;
+    }
+
+    /**
+     * 测试各种数据形态下排序结果和 {@link Arrays#sort(int[])} 一致，包括重复使用同一个实例。
+     */
+    @Test
+    public void testSort() {
+        Random random = new Random(47);
+        IntTimSort sorter = new IntTimSort();
+        int[] sizes = {0, 1, 2, 31, 32, 33, 100, 1000, 10007, 100000};
+        for (String name : DualPivotQuickSortImpl.SHAPES) {
+            for (int size : sizes) {
+                int[] a = DualPivotQuickSortImpl.shape(name, size, random);
+                int[] expected = a.clone();
+                Arrays.sort(expected);
+                int[] b = a.clone();
+                IntTimSort.sort(b);
+                assertArrayEquals(expected, b);
+                sorter.sort(a, 0, a.length);
+                assertArrayEquals(expected, a);
+            }
+        }
+        for (int tail : new int[]{0, 1, 10, 1000}) {
+            int[] a = sortedWithTail(100000, tail, random);
+            int[] expected = a.clone();
+            Arrays.sort(expected);
+            sorter.sort(a, 0, a.length);
+            assertArrayEquals(expected, a);
+        }
+        // 一段一段的升序、降序游程
+        int[] a = new int[50000];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = (i / 700) % 2 == 0 ? i % 700 : 700 - i % 700;
+        }
+        int[] expected = a.clone();
+        Arrays.sort(expected);
+        IntTimSort.sort(a, 0, a.length, new int[10], 0, 10);
+        assertArrayEquals(expected, a);
+
+        a = random.ints(10000).toArray();
+        expected = a.clone();
+        Arrays.sort(expected, 500, 9000);
+        IntTimSort.sort(a, 500, 9000, new int[10000], 100, 5000);
+        assertArrayEquals(expected, a);
+    }
+
+    /**
+     * 测试提供了足够大的工作区数组时，重复排序不会分配内存。
+     */
+    @Test
+    public void testAllocationFree() {
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        final int n = 1_000_000;
+        int[] work = new int[n / 2];
+        IntTimSort sorter = new IntTimSort(work, 0, work.length);
+        Random random = new Random(47);
+        int[] data = random.ints(n).toArray();
+        int[] a = new int[n];
+
+        // 预热，让 JIT 完成编译
+        for (int i = 0; i < 5; i++) {
+            System.arraycopy(data, 0, a, 0, n);
+            sorter.sort(a, 0, n);
+        }
+        System.arraycopy(data, 0, a, 0, n);
+        long before = bean.getThreadAllocatedBytes(threadId);
+        sorter.sort(a, 0, n);
+        long allocated = bean.getThreadAllocatedBytes(threadId) - before;
+        System.out.println("allocated: " + allocated + " bytes");
+        // 只允许 getThreadAllocatedBytes 自身的少量分配
+        assertEquals(0, allocated / 1024);
+
+        /*
+        输出：
+        allocated: 0 bytes
+         */
+    }
+
+    /**
+     * 在"大部分有序、末尾追加一小段"的数据上与 {@link Arrays#sort(int[])}、{@link DualPivotQuickSortImpl} 比较。
+     */
+    @Test
+    public void testBenchmark() {
+        final int size = 5_000_000, rounds = 5;
+        Random random = new Random(47);
+        IntTimSort sorter = new IntTimSort(new int[size / 2], 0, size / 2);
+        System.out.printf("%-10s%16s%16s%16s%n", "tail", "Arrays.sort", "dual-pivot", "IntTimSort");
+        for (int tail : new int[]{0, 10, 1000, 100_000, size}) {
+            int[] data = sortedWithTail(size, tail, random);
+            long jdk = Long.MAX_VALUE, dualPivot = Long.MAX_VALUE, tim = Long.MAX_VALUE;
+            for (int r = 0; r < rounds; r++) {
+                int[] a = data.clone();
+                long start = System.nanoTime();
+                Arrays.sort(a);
+                jdk = Math.min(jdk, System.nanoTime() - start);
+
+                a = data.clone();
+                start = System.nanoTime();
+                DualPivotQuickSortImpl.sort(a);
+                dualPivot = Math.min(dualPivot, System.nanoTime() - start);
+
+                a = data.clone();
+                start = System.nanoTime();
+                sorter.sort(a, 0, size);
+                tim = Math.min(tim, System.nanoTime() - start);
+            }
+            System.out.printf("%-10d%14.2fms%14.2fms%14.2fms%n", tail, jdk / 1e6, dualPivot / 1e6, tim / 1e6);
+        }
+
+        /*
+        输出（5,000,000 个元素，5 轮取最小值）：
+        tail           Arrays.sort      dual-pivot      IntTimSort
+        0                   2.29ms         35.77ms          2.32ms
+        10                 21.80ms         77.45ms          3.80ms
+        1000               22.40ms        123.10ms          3.97ms
+        100000             70.75ms        107.97ms         21.51ms
+        5000000           482.10ms        629.40ms       1137.77ms
+
+        Arrays.sort 只有在游程数量不超过 MAX_RUN_COUNT 时才使用归并排序，追加的随机尾巴会产生很多短游程，
+        于是退回到快速排序；IntTimSort 把尾巴排好后只需要一次 gallop 合并。
+        完全随机的数据没有可以利用的顺序，这时应该使用 DualPivotQuickSortImpl。
+         */
+    }
+}
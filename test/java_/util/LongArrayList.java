@@ -0,0 +1,592 @@
+package java_.util;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 存放 {@code long} 的动态数组，用来代替 {@code ArrayList<Long>}。
+ *
+ * <p>{@code ArrayList<Long>} 的每个元素是一个 4 字节的引用加上一个 24 字节的 {@code Long} 对象
+ * （12 字节的对象头加 8 字节的值，对齐到 8 的倍数；-128~127 使用缓存），遍历时还要跳到每个对象所在的位置；这里的元素直接存放在 {@code long[]} 中，每个元素 8 字节，连续存放。
+ *
+ * <p>扩容规则和 JDK 8 的 {@link java.util.ArrayList} 相同（见 {@link OverflowConsciousCodeTest}）：
+ * 容量增长为原来的 1.5 倍，所有的比较都写成 {@code a - b > 0} 的形式，在 int 溢出时仍然正确。
+ *
+ * <p>迭代器和 spliterator 是快速失败的：创建之后列表的结构被其他方式修改时，抛出 {@link ConcurrentModificationException}。
+ *
+ * <p>不是线程安全的。
+ */
+public class LongArrayList {
+
+    private static final int DEFAULT_CAPACITY = 10;
+
+    /**
+     * 要分配的最大数组长度。一些虚拟机在数组中保留了一些头部字，尝试分配更大的数组可能导致 OutOfMemoryError。
+     */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private static final long[] EMPTY_ELEMENTDATA = {};
+
+    /**
+     * 用默认构造器创建的列表的空数组。和 {@link #EMPTY_ELEMENTDATA} 区分开，第一次添加元素时直接扩容到 {@link #DEFAULT_CAPACITY}。
+     */
+    private static final long[] DEFAULTCAPACITY_EMPTY_ELEMENTDATA = {};
+
+    long[] elementData;
+
+    private int size;
+
+    /**
+     * 结构修改（改变 size）的次数，用于迭代器的快速失败检查。
+     */
+    int modCount;
+
+    public LongArrayList() {
+        elementData = DEFAULTCAPACITY_EMPTY_ELEMENTDATA;
+    }
+
+    public LongArrayList(int initialCapacity) {
+        if (initialCapacity > 0) {
+            elementData = new long[initialCapacity];
+        } else if (initialCapacity == 0) {
+            elementData = EMPTY_ELEMENTDATA;
+        } else {
+            throw new IllegalArgumentException("Illegal Capacity: " + initialCapacity);
+        }
+    }
+
+    /**
+     * 创建一个包含 elements 副本的列表。
+     */
+    public static LongArrayList of(long... elements) {
+        LongArrayList list = new LongArrayList(elements.length);
+        list.addAll(elements);
+        return list;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 当前数组的长度。
+     */
+    public int capacity() {
+        return elementData.length;
+    }
+
+    public void ensureCapacity(int minCapacity) {
+        int minExpand = (elementData != DEFAULTCAPACITY_EMPTY_ELEMENTDATA) ? 0 : DEFAULT_CAPACITY;
+        if (minCapacity > minExpand) {
+            ensureExplicitCapacity(minCapacity);
+        }
+    }
+
+    private void ensureCapacityInternal(int minCapacity) {
+        if (elementData == DEFAULTCAPACITY_EMPTY_ELEMENTDATA) {
+            minCapacity = Math.max(DEFAULT_CAPACITY, minCapacity);
+        }
+        ensureExplicitCapacity(minCapacity);
+    }
+
+    private void ensureExplicitCapacity(int minCapacity) {
+        // overflow-conscious code
+        if (minCapacity - elementData.length > 0) {
+            elementData = Arrays.copyOf(elementData, newCapacity(minCapacity, elementData.length));
+        }
+    }
+
+    /**
+     * 容量至少为 minCapacity 时的新容量，和 ArrayList.grow 相同。minCapacity 溢出时抛出 {@link OutOfMemoryError}。
+     */
+    static int newCapacity(int minCapacity, int oldCapacity) {
+        // overflow-conscious code
+        int newCapacity = oldCapacity + (oldCapacity >> 1);
+        if (newCapacity - minCapacity < 0) {
+            newCapacity = minCapacity;
+        }
+        if (newCapacity - MAX_ARRAY_SIZE > 0) {
+            newCapacity = hugeCapacity(minCapacity);
+        }
+        return newCapacity;
+    }
+
+    private static int hugeCapacity(int minCapacity) {
+        if (minCapacity < 0) {
+            // overflow
+            throw new OutOfMemoryError();
+        }
+        return (minCapacity > MAX_ARRAY_SIZE) ? Integer.MAX_VALUE : MAX_ARRAY_SIZE;
+    }
+
+    /**
+     * 把数组的长度缩小到元素个数，释放多余的空间。
+     */
+    public void trimToSize() {
+        modCount++;
+        if (size < elementData.length) {
+            elementData = (size == 0) ? EMPTY_ELEMENTDATA : Arrays.copyOf(elementData, size);
+        }
+    }
+
+    private void rangeCheck(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+        }
+    }
+
+    private void rangeCheckForAdd(int index) {
+        if (index > size || index < 0) {
+            throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+        }
+    }
+
+    private String outOfBoundsMsg(int index) {
+        return "Index: " + index + ", Size: " + size;
+    }
+
+    public long get(int index) {
+        rangeCheck(index);
+        return elementData[index];
+    }
+
+    /**
+     * 替换 index 处的元素，返回原来的元素。
+     */
+    public long set(int index, long element) {
+        rangeCheck(index);
+        long oldValue = elementData[index];
+        elementData[index] = element;
+        return oldValue;
+    }
+
+    public void add(long e) {
+        ensureCapacityInternal(size + 1);
+        elementData[size++] = e;
+        modCount++;
+    }
+
+    public void add(int index, long element) {
+        rangeCheckForAdd(index);
+        ensureCapacityInternal(size + 1);
+        System.arraycopy(elementData, index, elementData, index + 1, size - index);
+        elementData[index] = element;
+        size++;
+        modCount++;
+    }
+
+    public void addAll(long[] a) {
+        addAll(a, 0, a.length);
+    }
+
+    /**
+     * 把 a 中从 offset 开始的 length 个元素添加到末尾，最多只扩容一次。
+     */
+    public void addAll(long[] a, int offset, int length) {
+        addAll(size, a, offset, length);
+    }
+
+    public void addAll(int index, long[] a, int offset, int length) {
+        rangeCheckForAdd(index);
+        if (offset < 0 || length < 0 || offset > a.length - length) {
+            throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length
+                    + ", array length: " + a.length);
+        }
+        ensureCapacityInternal(size + length);
+        System.arraycopy(elementData, index, elementData, index + length, size - index);
+        System.arraycopy(a, offset, elementData, index, length);
+        size += length;
+        modCount++;
+    }
+
+    public void addAll(LongArrayList other) {
+        addAll(other.elementData, 0, other.size);
+    }
+
+    /**
+     * 删除 index 处的元素并返回它。
+     */
+    public long removeAt(int index) {
+        rangeCheck(index);
+        modCount++;
+        long oldValue = elementData[index];
+        int numMoved = size - index - 1;
+        if (numMoved > 0) {
+            System.arraycopy(elementData, index + 1, elementData, index, numMoved);
+        }
+        size--;
+        return oldValue;
+    }
+
+    /**
+     * 删除第一个等于 o 的元素，存在时返回 true。
+     */
+    public boolean removeValue(long o) {
+        int index = indexOf(o);
+        if (index < 0) {
+            return false;
+        }
+        removeAt(index);
+        return true;
+    }
+
+    /**
+     * 删除 [fromIndex, toIndex) 之间的元素。
+     */
+    public void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || fromIndex > toIndex || toIndex > size) {
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex
+                    + ", Size: " + size);
+        }
+        modCount++;
+        System.arraycopy(elementData, toIndex, elementData, fromIndex, size - toIndex);
+        size -= toIndex - fromIndex;
+    }
+
+    /**
+     * 删除所有满足 filter 的元素，返回是否删除了元素。
+     *
+     * <p>只遍历一次：保留的元素直接向前移动到写指针的位置。ArrayList.removeIf 先用 BitSet 记录要删除的位置，
+     * 再移动元素，是为了在 filter 抛出异常时不修改列表；这里在异常时把还没有检查的元素接到写指针之后，
+     * 列表仍然是完整的，只是已经检查过的元素中满足条件的被删除了。
+     */
+    public boolean removeIf(LongPredicate filter) {
+        final int expectedModCount = modCount;
+        final long[] es = elementData;
+        final int end = size;
+        int r = 0, w = 0;
+        try {
+            for (; r < end; r++) {
+                long e = es[r];
+                if (!filter.test(e)) {
+                    es[w++] = e;
+                }
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        } finally {
+            if (r != end) {
+                System.arraycopy(es, r, es, w, end - r);
+                w += end - r;
+            }
+            if (w != end) {
+                size = w;
+                modCount++;
+            }
+        }
+        return w != end;
+    }
+
+    public void clear() {
+        modCount++;
+        size = 0;
+    }
+
+    public int indexOf(long o) {
+        long[] es = elementData;
+        for (int i = 0; i < size; i++) {
+            if (o == es[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int lastIndexOf(long o) {
+        long[] es = elementData;
+        for (int i = size - 1; i >= 0; i--) {
+            if (o == es[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(long o) {
+        return indexOf(o) >= 0;
+    }
+
+    public void sort() {
+        Arrays.sort(elementData, 0, size);
+        modCount++;
+    }
+
+    public long[] toArray() {
+        return Arrays.copyOf(elementData, size);
+    }
+
+    public void forEach(LongConsumer action) {
+        final int expectedModCount = modCount;
+        final long[] es = elementData;
+        final int size = this.size;
+        for (int i = 0; modCount == expectedModCount && i < size; i++) {
+            action.accept(es[i]);
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    public PrimitiveIterator.OfLong iterator() {
+        return new ListItr(0);
+    }
+
+    public ListItr listIterator() {
+        return new ListItr(0);
+    }
+
+    public ListItr listIterator(int index) {
+        rangeCheckForAdd(index);
+        return new ListItr(index);
+    }
+
+    /**
+     * 基本类型的 {@link java.util.ListIterator}，方法的语义和 ArrayList 的 ListItr 相同。
+     */
+    public final class ListItr implements PrimitiveIterator.OfLong {
+        /**
+         * 下一个要返回的元素的下标。
+         */
+        private int cursor;
+
+        /**
+         * 上一个返回的元素的下标，没有或者已经被删除时为 -1。
+         */
+        private int lastRet = -1;
+
+        private int expectedModCount = modCount;
+
+        private ListItr(int index) {
+            cursor = index;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor != size;
+        }
+
+        @Override
+        public long nextLong() {
+            checkForComodification();
+            int i = cursor;
+            if (i >= size) {
+                throw new NoSuchElementException();
+            }
+            long[] es = elementData;
+            if (i >= es.length) {
+                throw new ConcurrentModificationException();
+            }
+            cursor = i + 1;
+            return es[lastRet = i];
+        }
+
+        public boolean hasPrevious() {
+            return cursor != 0;
+        }
+
+        public long previousLong() {
+            checkForComodification();
+            int i = cursor - 1;
+            if (i < 0) {
+                throw new NoSuchElementException();
+            }
+            long[] es = elementData;
+            if (i >= es.length) {
+                throw new ConcurrentModificationException();
+            }
+            cursor = i;
+            return es[lastRet = i];
+        }
+
+        public int nextIndex() {
+            return cursor;
+        }
+
+        public int previousIndex() {
+            return cursor - 1;
+        }
+
+        @Override
+        public void remove() {
+            if (lastRet < 0) {
+                throw new IllegalStateException();
+            }
+            checkForComodification();
+            removeAt(lastRet);
+            cursor = lastRet;
+            lastRet = -1;
+            expectedModCount = modCount;
+        }
+
+        public void set(long e) {
+            if (lastRet < 0) {
+                throw new IllegalStateException();
+            }
+            checkForComodification();
+            LongArrayList.this.set(lastRet, e);
+        }
+
+        public void add(long e) {
+            checkForComodification();
+            LongArrayList.this.add(cursor++, e);
+            lastRet = -1;
+            expectedModCount = modCount;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            final long[] es = elementData;
+            final int size = LongArrayList.this.size;
+            int i = cursor;
+            for (; modCount == expectedModCount && i < size; i++) {
+                action.accept(es[i]);
+            }
+            cursor = i;
+            lastRet = i - 1;
+            checkForComodification();
+        }
+
+        private void checkForComodification() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /**
+     * 返回延迟绑定、快速失败的 spliterator，和 ArrayList 的 ArrayListSpliterator 相同：
+     * 第一次遍历或分割时才确定范围，遍历结束后检查列表是否被修改。
+     */
+    public Spliterator.OfLong spliterator() {
+        return new LongArraySpliterator(0, -1, 0);
+    }
+
+    public LongStream stream() {
+        return StreamSupport.longStream(spliterator(), false);
+    }
+
+    final class LongArraySpliterator implements Spliterator.OfLong {
+        private int index;
+
+        /**
+         * 范围的上界，使用之前为 -1。
+         */
+        private int fence;
+
+        private int expectedModCount;
+
+        LongArraySpliterator(int origin, int fence, int expectedModCount) {
+            this.index = origin;
+            this.fence = fence;
+            this.expectedModCount = expectedModCount;
+        }
+
+        private int getFence() {
+            int hi;
+            if ((hi = fence) < 0) {
+                expectedModCount = modCount;
+                hi = fence = size;
+            }
+            return hi;
+        }
+
+        @Override
+        public LongArraySpliterator trySplit() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            return (lo >= mid) ? null : new LongArraySpliterator(lo, index = mid, expectedModCount);
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            int hi = getFence(), i = index;
+            if (i < hi) {
+                index = i + 1;
+                action.accept(elementData[i]);
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            long[] es = elementData;
+            int hi = getFence(), i = index;
+            index = hi;
+            for (; i < hi; i++) {
+                action.accept(es[i]);
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return getFence() - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof LongArrayList)) {
+            return false;
+        }
+        LongArrayList other = (LongArrayList) o;
+        if (other.size != size) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (elementData[i] != other.elementData[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 和包含相同元素的 {@code List<Long>} 的 hashCode 相同。
+     */
+    @Override
+    public int hashCode() {
+        int hashCode = 1;
+        for (int i = 0; i < size; i++) {
+            hashCode = 31 * hashCode + Long.hashCode(elementData[i]);
+        }
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(elementData[i]);
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,466 @@
+package java_.util;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * 开放寻址的 {@code long -> long} 哈希表，用来代替 {@code HashMap<Long, Long>}。
+ *
+ * <p>{@code HashMap} 的每个条目需要一个 32 字节的 {@code Node} 和 table 中的一个引用，键和值超出 -128~127 时
+ * 还各需要一个 24 字节的 {@code Long}，一个条目大约占用 90 字节（见 {@code PrimitiveHashMapTest.testBenchmark}）；
+ * 这里的键和值交替存放在同一个 {@code long[]} 中，每个条目只占 16 字节乘以
+ * 1 / 负载因子，即 21~43 字节，而且 {@link #get}、{@link #put}、{@link #remove} 都不会分配对象。
+ *
+ * <ul>
+ *     <li>使用线性探测解决冲突：键和值相邻存放，探测的下一个槽位通常在同一个缓存行中</li>
+ *     <li>哈希函数是 Fibonacci 哈希（乘以黄金分割数后取高位），连续的键也能均匀分布</li>
+ *     <li>数组中的键 0 表示空槽位。真正的键 0 不放在数组中，而是单独保存在 {@link #hasZeroKey}、{@link #zeroValue} 中</li>
+ *     <li>删除时把后面同一探测链上的条目向前移动（backward shift），不需要墓碑，删除再多也不会拖慢查找</li>
+ * </ul>
+ *
+ * <p>不是线程安全的。
+ */
+public class LongLongHashMap {
+
+    /**
+     * 最大槽位数。键值交替存放，数组长度是槽位数的 2 倍。
+     */
+    static final int MAX_CAPACITY = 1 << 29;
+
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * 键和值交替存放：slots[2 * i] 是键，slots[2 * i + 1] 是值，键为 0 表示空槽位。
+     */
+    private long[] slots;
+
+    /**
+     * 槽位数 - 1，槽位数是 2 的幂。
+     */
+    private int mask;
+
+    /**
+     * 哈希值右移的位数，使结果落在 [0, 槽位数) 之内。
+     */
+    private int shift;
+
+    /**
+     * 数组中的条目数，不包括键 0。
+     */
+    private int assigned;
+
+    /**
+     * 数组中的条目数达到这个值时扩容。
+     */
+    private int resizeAt;
+
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    private final float loadFactor;
+    private final long noEntryValue;
+
+    public LongLongHashMap() {
+        this(16);
+    }
+
+    public LongLongHashMap(int expectedSize) {
+        this(expectedSize, DEFAULT_LOAD_FACTOR, 0);
+    }
+
+    /**
+     * @param expectedSize 预计的条目数，放入这么多条目之前不会扩容
+     * @param loadFactor   负载因子，在 (0, 1) 之内。越大越省内存，探测链也越长
+     * @param noEntryValue 键不存在时 {@link #get}、{@link #put}、{@link #remove} 返回的值
+     */
+    public LongLongHashMap(int expectedSize, float loadFactor, long noEntryValue) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize: " + expectedSize);
+        }
+        if (!(loadFactor > 0 && loadFactor < 1)) {
+            throw new IllegalArgumentException("loadFactor: " + loadFactor);
+        }
+        this.loadFactor = loadFactor;
+        this.noEntryValue = noEntryValue;
+        allocate(capacityFor(expectedSize, loadFactor));
+    }
+
+    /**
+     * 容纳 size 个条目需要的槽位数，至少为 4。
+     */
+    static int capacityFor(int size, float loadFactor) {
+        long required = (long) Math.ceil(size / (double) loadFactor);
+        if (required > MAX_CAPACITY) {
+            throw new IllegalArgumentException("too many entries: " + size);
+        }
+        return Math.max(4, Integer.highestOneBit((int) Math.max(1, required - 1)) << 1);
+    }
+
+    private void allocate(int capacity) {
+        slots = new long[capacity << 1];
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        // 至少留一个空槽位，保证探测一定会结束
+        resizeAt = Math.min(capacity - 1, (int) Math.ceil(capacity * (double) loadFactor));
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    public int size() {
+        return assigned + (hasZeroKey ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 当前的槽位数。
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public long noEntryValue() {
+        return noEntryValue;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == 0) {
+            return hasZeroKey;
+        }
+        long[] slots = this.slots;
+        int mask = this.mask;
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = slots[i << 1];
+            if (k == key) {
+                return true;
+            }
+            if (k == 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 返回 key 对应的值，不存在时返回 {@link #noEntryValue()}。
+     */
+    public long get(long key) {
+        return getOrDefault(key, noEntryValue);
+    }
+
+    public long getOrDefault(long key, long defaultValue) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        long[] slots = this.slots;
+        int mask = this.mask;
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = slots[i << 1];
+            if (k == key) {
+                return slots[(i << 1) + 1];
+            }
+            if (k == 0) {
+                return defaultValue;
+            }
+        }
+    }
+
+    /**
+     * 返回之前的值，之前不存在时返回 {@link #noEntryValue()}。
+     */
+    public long put(long key, long value) {
+        if (key == 0) {
+            long previous = hasZeroKey ? zeroValue : noEntryValue;
+            hasZeroKey = true;
+            zeroValue = value;
+            return previous;
+        }
+        long[] slots = this.slots;
+        int mask = this.mask;
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = slots[i << 1];
+            if (k == key) {
+                long previous = slots[(i << 1) + 1];
+                slots[(i << 1) + 1] = value;
+                return previous;
+            }
+            if (k == 0) {
+                insertAt(i, key, value);
+                return noEntryValue;
+            }
+        }
+    }
+
+    /**
+     * 不存在时放入 value 并返回 true，存在时不修改并返回 false。
+     */
+    public boolean putIfAbsent(long key, long value) {
+        if (key == 0) {
+            if (hasZeroKey) {
+                return false;
+            }
+            hasZeroKey = true;
+            zeroValue = value;
+            return true;
+        }
+        long[] slots = this.slots;
+        int mask = this.mask;
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = slots[i << 1];
+            if (k == key) {
+                return false;
+            }
+            if (k == 0) {
+                insertAt(i, key, value);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 把 key 对应的值加上 delta，不存在时当作 0，返回新的值。适合计数。
+     */
+    public long addTo(long key, long delta) {
+        if (key == 0) {
+            zeroValue = hasZeroKey ? zeroValue + delta : delta;
+            hasZeroKey = true;
+            return zeroValue;
+        }
+        long[] slots = this.slots;
+        int mask = this.mask;
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = slots[i << 1];
+            if (k == key) {
+                return slots[(i << 1) + 1] += delta;
+            }
+            if (k == 0) {
+                insertAt(i, key, delta);
+                return delta;
+            }
+        }
+    }
+
+    private void insertAt(int i, long key, long value) {
+        if (assigned == resizeAt) {
+            // 扩容后槽位变了，重新插入
+            grow();
+            putIfAbsent(key, value);
+            return;
+        }
+        slots[i << 1] = key;
+        slots[(i << 1) + 1] = value;
+        assigned++;
+    }
+
+    private void grow() {
+        int capacity = capacity();
+        if (capacity == MAX_CAPACITY) {
+            if (assigned == capacity - 1) {
+                throw new IllegalStateException("map is full: " + assigned);
+            }
+            // 已经不能扩容，允许负载因子继续升高，直到只剩一个空槽位
+            resizeAt = capacity - 1;
+            return;
+        }
+        long[] old = slots;
+        allocate(capacity << 1);
+        long[] slots = this.slots;
+        int mask = this.mask;
+        for (int j = 0; j < old.length; j += 2) {
+            long key = old[j];
+            if (key != 0) {
+                int i = slot(key);
+                while (slots[i << 1] != 0) {
+                    i = (i + 1) & mask;
+                }
+                slots[i << 1] = key;
+                slots[(i << 1) + 1] = old[j + 1];
+            }
+        }
+    }
+
+    /**
+     * 删除 key，返回之前的值，不存在时返回 {@link #noEntryValue()}。
+     */
+    public long remove(long key) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                return noEntryValue;
+            }
+            hasZeroKey = false;
+            return zeroValue;
+        }
+        long[] slots = this.slots;
+        int mask = this.mask;
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = slots[i << 1];
+            if (k == key) {
+                long previous = slots[(i << 1) + 1];
+                shiftBack(i);
+                assigned--;
+                return previous;
+            }
+            if (k == 0) {
+                return noEntryValue;
+            }
+        }
+    }
+
+    /**
+     * 删除槽位 gap 上的条目：依次检查后面的条目，如果它的理想槽位不在 (gap, 当前位置] 之内，
+     * 说明它是越过 gap 探测过来的，把它移到 gap，再从它原来的位置继续。
+     */
+    private void shiftBack(int gap) {
+        long[] slots = this.slots;
+        int mask = this.mask;
+        for (int i = (gap + 1) & mask; ; i = (i + 1) & mask) {
+            long key = slots[i << 1];
+            if (key == 0) {
+                break;
+            }
+            // 从理想槽位到当前位置的距离，大于等于 gap 到当前位置的距离时可以移动
+            int distance = (i - slot(key)) & mask;
+            if (distance >= ((i - gap) & mask)) {
+                slots[gap << 1] = key;
+                slots[(gap << 1) + 1] = slots[(i << 1) + 1];
+                gap = i;
+            }
+        }
+        slots[gap << 1] = 0;
+        slots[(gap << 1) + 1] = 0;
+    }
+
+    /**
+     * 删除所有条目，保留当前的容量。
+     */
+    public void clear() {
+        Arrays.fill(slots, 0);
+        assigned = 0;
+        hasZeroKey = false;
+    }
+
+    /**
+     * 对每个条目调用 action，顺序不确定。action 不能修改这个哈希表。
+     */
+    public void forEach(LongLongConsumer action) {
+        if (hasZeroKey) {
+            action.accept(0, zeroValue);
+        }
+        long[] slots = this.slots;
+        for (int j = 0; j < slots.length; j += 2) {
+            if (slots[j] != 0) {
+                action.accept(slots[j], slots[j + 1]);
+            }
+        }
+    }
+
+    public long[] keys() {
+        long[] keys = new long[size()];
+        int n = 0;
+        if (hasZeroKey) {
+            keys[n++] = 0;
+        }
+        for (int j = 0; j < slots.length; j += 2) {
+            if (slots[j] != 0) {
+                keys[n++] = slots[j];
+            }
+        }
+        return keys;
+    }
+
+    public long[] values() {
+        long[] values = new long[size()];
+        int n = 0;
+        if (hasZeroKey) {
+            values[n++] = zeroValue;
+        }
+        for (int j = 0; j < slots.length; j += 2) {
+            if (slots[j] != 0) {
+                values[n++] = slots[j + 1];
+            }
+        }
+        return values;
+    }
+
+    /**
+     * 返回一个游标，用于不分配对象地遍历所有条目：
+     * <pre>{@code
+     * for (LongLongHashMap.Cursor c = map.cursor(); c.advance(); ) {
+     *     use(c.key(), c.value());
+     * }
+     * }</pre>
+     * 遍历期间不能修改这个哈希表，但可以通过 {@link Cursor#setValue} 修改当前条目的值。
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    public final class Cursor {
+        /**
+         * -1 表示键 0，之后是槽位下标。
+         */
+        private int index = -2;
+
+        private Cursor() {
+        }
+
+        /**
+         * 移动到下一个条目，没有更多条目时返回 false。
+         */
+        public boolean advance() {
+            if (index == -2) {
+                index = -1;
+                if (hasZeroKey) {
+                    return true;
+                }
+            }
+            long[] slots = LongLongHashMap.this.slots;
+            while (++index <= mask) {
+                if (slots[index << 1] != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void check() {
+            if (index < -1 || index > mask) {
+                throw new NoSuchElementException();
+            }
+        }
+
+        public long key() {
+            check();
+            return index == -1 ? 0 : slots[index << 1];
+        }
+
+        public long value() {
+            check();
+            return index == -1 ? zeroValue : slots[(index << 1) + 1];
+        }
+
+        public void setValue(long value) {
+            check();
+            if (index == -1) {
+                zeroValue = value;
+            } else {
+                slots[(index << 1) + 1] = value;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface LongLongConsumer {
+        void accept(long key, long value);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        forEach((k, v) -> sb.append(sb.length() == 1 ? "" : ", ").append(k).append('=').append(v));
+        return sb.append('}').toString();
+    }
+}
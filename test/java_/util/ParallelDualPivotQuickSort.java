@@ -0,0 +1,287 @@
+package java_.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * {@link DualPivotQuickSortImpl} 的 Fork/Join 并行版本。
+ * <p>
+ * 结构和 ArraysParallelSortHelpers.md 中的 CilkSort 相同：{@code Sorter} 把排序范围四等分，后三块 fork 出去，
+ * 第一块继续四等分，长度小于等于 gran 的块交给 {@link DualPivotQuickSortImpl} 顺序排序；
+ * 相邻两块排好之后由 {@code Relay} 触发 {@code Merger}，先把两个 1/4 块归并到工作区数组，再把两个 1/2 块归并回原数组。
+ * {@code Merger} 也是并行的：取较大一块的中点，在另一块中二分查找它的位置，把两块的右边部分 fork 出去归并，
+ * 自己继续切分左边部分，直到两块都不超过 gran。
+ * <p>
+ * 不直接并行 Dual-Pivot 的递归是因为顶层切分要顺序扫描整个数组，第二层也只有三个任务，
+ * 关键路径长度是 Θ(n)，加速比有上限。这里顺序执行的只有长度不超过 gran 的排序和归并，
+ * 其余都是二分查找和 fork，关键路径长度是 O(gran·log n + log³ n)。代价是需要一个和排序范围一样大的工作区数组。
+ */
+public class ParallelDualPivotQuickSort {
+
+    // 和 Arrays.MIN_ARRAY_SORT_GRAN 相同，小于等于这个长度不进行并行排序
+    static final int MIN_ARRAY_SORT_GRAN = 1 << 13;
+
+    /**
+     * 使用 {@link ForkJoinPool#commonPool()} 对整个数组进行并行排序。
+     */
+    public static void parallelSort(int[] a) {
+        parallelSort(a, 0, a.length);
+    }
+
+    /**
+     * 使用 {@link ForkJoinPool#commonPool()} 对 [fromIndex, toIndex) 进行并行排序。
+     */
+    public static void parallelSort(int[] a, int fromIndex, int toIndex) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        parallelSort(a, fromIndex, toIndex, pool, defaultGran(toIndex - fromIndex, pool.getParallelism()));
+    }
+
+    /**
+     * 在指定的线程池中对 [fromIndex, toIndex) 进行并行排序。
+     *
+     * @param gran 最小排序数组划分长度，小于等于这个长度的部分不再切分出新任务，而是直接顺序排序或归并
+     * @throws IllegalArgumentException 如果 fromIndex > toIndex 或 gran 小于
+     *         {@link DualPivotQuickSortImpl#INSERTION_SORT_THRESHOLD}
+     */
+    public static void parallelSort(int[] a, int fromIndex, int toIndex, ForkJoinPool pool, int gran) {
+        DualPivotQuickSortImpl.rangeCheck(a.length, fromIndex, toIndex);
+        if (gran < DualPivotQuickSortImpl.INSERTION_SORT_THRESHOLD) {
+            throw new IllegalArgumentException("gran(" + gran + ") < "
+                    + DualPivotQuickSortImpl.INSERTION_SORT_THRESHOLD);
+        }
+        int n = toIndex - fromIndex;
+        // 和 Arrays.parallelSort 一样，数组太小或并行度只有 1 时不使用并发排序
+        if (n <= gran || pool.getParallelism() == 1) {
+            DualPivotQuickSortImpl.sort(a, fromIndex, toIndex);
+        } else {
+            pool.invoke(new Sorter(null, a, new int[n], fromIndex, n, 0, gran));
+        }
+    }
+
+    /**
+     * 默认的最小划分长度：数组的 1/(并行度*4) 和 {@link #MIN_ARRAY_SORT_GRAN} 中的较大值，与 {@code Arrays.parallelSort} 一致。
+     */
+    static int defaultGran(int n, int parallelism) {
+        int g = n / (parallelism << 2);
+        return g <= MIN_ARRAY_SORT_GRAN ? MIN_ARRAY_SORT_GRAN : g;
+    }
+
+    // Sorter 的占位符任务，用在四分之一排序任务中，不需要维护数组状态。
+    static final class EmptyCompleter extends CountedCompleter<Void> {
+        static final long serialVersionUID = 2446542900576103244L;
+        EmptyCompleter(CountedCompleter<?> p) { super(p); }
+        public final void compute() { }
+    }
+
+    // 两次排序操作后的触发器。用来在两次排序操作完成后进行合并
+    static final class Relay extends CountedCompleter<Void> {
+        static final long serialVersionUID = 2446542900576103244L;
+        final CountedCompleter<?> task;
+        Relay(CountedCompleter<?> task) {
+            super(null, 1);  // pending 设为 1，这使得第二次排序完成后触发归并
+            this.task = task;
+        }
+        public final void compute() { }
+        public final void onCompletion(CountedCompleter<?> t) {
+            task.compute();
+        }
+    }
+
+    static final class Sorter extends CountedCompleter<Void> {
+        static final long serialVersionUID = 2446542900576103244L;
+        final int[] a, w;  // 需要排序的数组和工作区数组
+        // base, size: 排序范围的起始位置和大小；wbase: 工作区数组的起始位置；gran: 最小划分长度
+        final int base, size, wbase, gran;
+
+        Sorter(CountedCompleter<?> par, int[] a, int[] w, int base, int size, int wbase, int gran) {
+            super(par);
+            this.a = a; this.w = w; this.base = base; this.size = size;
+            this.wbase = wbase; this.gran = gran;
+        }
+
+        public final void compute() {
+            CountedCompleter<?> s = this;
+            // 将所有字段全部变成局部变量，防止 getfield 频繁调用
+            int[] a = this.a, w = this.w;
+            int b = this.base, n = this.size, wb = this.wbase, g = this.gran;
+            while (n > g) {
+                // h: 1/2 的大小；q: 1/4 的大小；u: 3/4 的大小
+                int h = n >>> 1, q = h >>> 1, u = h + q;
+                // fc：把工作区中的两个 1/2 块归并回原数组
+                Relay fc = new Relay(new Merger(s, w, a, wb, h, wb + h, n - h, b, g));
+                // rc：把原数组中后面两个 1/4 块归并到工作区
+                Relay rc = new Relay(new Merger(fc, a, w, b + h, q, b + u, n - u, wb + h, g));
+                new Sorter(rc, a, w, b + u, n - u, wb + u, g).fork();
+                new Sorter(rc, a, w, b + h, q, wb + h, g).fork();
+                // bc：把原数组中前面两个 1/4 块归并到工作区
+                Relay bc = new Relay(new Merger(fc, a, w, b, q, b + q, h - q, wb, g));
+                new Sorter(bc, a, w, b + q, h - q, wb + q, g).fork();
+                // 当前任务继续处理第一个 1/4 块
+                s = new EmptyCompleter(bc);
+                n = q;
+            }
+            // 块的左边可能是其他块中更大的元素，不能作为插入排序的哨兵，所以都按 leftmost 排序
+            DualPivotQuickSortImpl.sort(a, b, b + n - 1, true);
+            s.tryComplete();
+        }
+    }
+
+    static final class Merger extends CountedCompleter<Void> {
+        static final long serialVersionUID = 2446542900576103244L;
+        final int[] a, w;  // 归并的来源数组和目标数组
+        // 左半边、右半边排序数组的起始位置和大小；目标数组的起始位置；最小划分长度
+        final int lbase, lsize, rbase, rsize, wbase, gran;
+
+        Merger(CountedCompleter<?> par, int[] a, int[] w, int lbase, int lsize,
+               int rbase, int rsize, int wbase, int gran) {
+            super(par);
+            this.a = a; this.w = w;
+            this.lbase = lbase; this.lsize = lsize;
+            this.rbase = rbase; this.rsize = rsize;
+            this.wbase = wbase; this.gran = gran;
+        }
+
+        public final void compute() {
+            // 将所有字段全部变成局部变量，防止 getfield 频繁调用
+            int[] a = this.a, w = this.w;
+            int lb = this.lbase, ln = this.lsize, rb = this.rbase,
+                    rn = this.rsize, k = this.wbase, g = this.gran;
+            // 切分较大的一块，把两块的右边部分 fork 出去，直到两块都不超过 gran
+            for (int lh, rh; ; ) {
+                if (ln >= rn) {
+                    if (ln <= g) {
+                        break;
+                    }
+                    rh = rn;
+                    int split = a[(lh = ln >>> 1) + lb];
+                    // 右半分区中第一个大于等于 split 的位置
+                    for (int lo = 0; lo < rh; ) {
+                        int rm = (lo + rh) >>> 1;
+                        if (split <= a[rm + rb]) {
+                            rh = rm;
+                        } else {
+                            lo = rm + 1;
+                        }
+                    }
+                } else {
+                    if (rn <= g) {
+                        break;
+                    }
+                    lh = ln;
+                    int split = a[(rh = rn >>> 1) + rb];
+                    // 左半分区中第一个大于等于 split 的位置
+                    for (int lo = 0; lo < lh; ) {
+                        int lm = (lo + lh) >>> 1;
+                        if (split <= a[lm + lb]) {
+                            lh = lm;
+                        } else {
+                            lo = lm + 1;
+                        }
+                    }
+                }
+                Merger m = new Merger(this, a, w, lb + lh, ln - lh, rb + rh, rn - rh, k + lh + rh, g);
+                rn = rh;
+                ln = lh;
+                addToPendingCount(1);
+                m.fork();
+            }
+
+            // 顺序归并剩下最左边的部分
+            int lf = lb + ln, rf = rb + rn;
+            while (lb < lf && rb < rf) {
+                int t, al, ar;
+                if ((al = a[lb]) <= (ar = a[rb])) {
+                    lb++; t = al;
+                } else {
+                    rb++; t = ar;
+                }
+                w[k++] = t;
+            }
+            if (rb < rf) {
+                System.arraycopy(a, rb, w, k, rf - rb);
+            } else if (lb < lf) {
+                System.arraycopy(a, lb, w, k, lf - lb);
+            }
+            tryComplete();
+        }
+    }
+
+    /**
+     * 使用很小的 gran 强制切分出大量任务，测试各种数据形态下的正确性。
+     */
+    @Test
+    public void testParallelSort() {
+        Random random = new Random(47);
+        int[] sizes = {0, 1, 100, 10007, 200000};
+        for (int parallelism : new int[]{2, 4}) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            for (String name : DualPivotQuickSortImpl.SHAPES) {
+                for (int size : sizes) {
+                    int[] a = DualPivotQuickSortImpl.shape(name, size, random);
+                    int[] expected = a.clone();
+                    Arrays.sort(expected);
+                    parallelSort(a, 0, a.length, pool, 64);
+                    assertArrayEquals(expected, a);
+                }
+            }
+            pool.shutdown();
+        }
+
+        int[] a = random.ints(100000).toArray();
+        int[] expected = a.clone();
+        Arrays.sort(expected, 100, 90000);
+        parallelSort(a, 100, 90000);
+        assertArrayEquals(expected, a);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> parallelSort(new int[10], 0, 10, ForkJoinPool.commonPool(), 1));
+    }
+
+    /**
+     * 固定数组大小，依次使用 1、2、4……个线程的线程池排序，观察加速比。
+     */
+    @Test
+    public void testScaling() {
+        final int size = 20_000_000, rounds = 3;
+        int[] data = new Random(47).ints(size).toArray();
+        int maxThreads = Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) * 2;
+
+        long base = 0;
+        System.out.printf("%-10s%14s%10s%n", "threads", "time", "speedup");
+        for (int threads = 1; threads <= maxThreads; threads <<= 1) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long best = Long.MAX_VALUE;
+            for (int r = 0; r < rounds; r++) {
+                int[] a = data.clone();
+                long start = System.nanoTime();
+                parallelSort(a, 0, size, pool, defaultGran(size, threads));
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            pool.shutdown();
+            if (threads == 1) {
+                base = best;
+            }
+            System.out.printf("%-10d%12.2fms%9.2fx%n", threads, best / 1e6, (double) base / best);
+        }
+
+        /*
+        输出（20,000,000 个元素，3 轮取最小值，单核机器）：
+        threads             time   speedup
+        1              1865.25ms     1.00x
+        2              1936.49ms     0.96x
+
+        结论：
+        - 这台机器只有 1 个 CPU，多线程只会轮流执行，测不出加速比，只能说明四等分、归并和工作区数组的额外开销不大：
+          threads = 1 时走顺序排序，threads = 2 时走完整的 Sorter/Merger，多了一次完整的归并，只慢了 4%。
+        - 多核机器上的加速比需要在多核机器上复测。之前的版本先顺序切分整个数组再 fork，关键路径是 Θ(n)，
+          在 32 核上也只能得到个位数的加速比；现在顺序执行的只有不超过 gran 的块，其余工作都可以并行。
+         */
+    }
+}
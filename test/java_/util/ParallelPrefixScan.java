@@ -0,0 +1,612 @@
+package java_.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.LongBinaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 基本类型数组的并行前缀计算（scan），支持任意满足结合律的运算符。
+ * <p>
+ * ArrayPrefixHelpers.md 中的 {@code CumulateTask} 把数组递归切成一棵任务树，用 pending count 的状态位
+ * 在树上来回传递部分和，只支持原地的包含式前缀。这里使用更直接的两趟分块算法：
+ * <ol>
+ *     <li>把数组分成 并行度*4 块，并行计算每一块的归约值，这一趟只读数组；</li>
+ *     <li>顺序计算每一块之前所有元素的归约值（进位），块数很少，这一步可以忽略；</li>
+ *     <li>每一块以进位为初始值，并行计算自己的前缀。</li>
+ * </ol>
+ * 两趟总共读 2n 次、写 n 次，运算符调用约 2n 次。顺序前缀读写各 n 次，所以 p 个线程的理论加速比是 p/2 左右，
+ * 在内存带宽成为瓶颈之前随线程数线性增长。和 {@code Arrays.parallelPrefix} 相比，这里额外支持：
+ * <ul>
+ *     <li>src、dst 不同的非原地计算；</li>
+ *     <li>排除式前缀，需要提供运算符的单位元 identity；</li>
+ *     <li>分段前缀，heads[i] 为 true 表示新段从 i 开始。分段运算 (f1, v1)·(f2, v2) = (f1|f2, f2 ? v2 : v1 op v2)
+ *     仍然满足结合律，所以分段前缀可以用同样的两趟算法计算，只要在块的归约值中记录块内是否出现了段开头。</li>
+ * </ul>
+ * 和 {@code Arrays.parallelPrefix} 一样，运算符不满足结合律时（例如浮点加法的舍入）并行结果可能和顺序计算不同。
+ */
+public class ParallelPrefixScan {
+
+    // 和 ArrayPrefixHelpers.CumulateTask.MIN_PARTITION 作用类似，长度小于它时不进行并行计算
+    static final int MIN_PARALLEL_LENGTH = 1 << 13;
+
+    // 每一块最少的元素个数
+    static final int MIN_BLOCK_SIZE = 1 << 11;
+
+    /**
+     * 对整个数组原地计算包含式前缀：a[i] = a[0] op a[1] op ... op a[i]。
+     */
+    public static void inclusiveScan(int[] a, IntBinaryOperator op) {
+        scan(a, 0, a, 0, a.length, null, false, 0, op, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 把 src[srcPos, srcPos + len) 的包含式前缀写入 dst[dstPos, dstPos + len)。
+     */
+    public static void inclusiveScan(int[] src, int srcPos, int[] dst, int dstPos, int len, IntBinaryOperator op) {
+        scan(src, srcPos, dst, dstPos, len, null, false, 0, op, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 对整个数组原地计算排除式前缀：a[0] = identity，a[i] = identity op a[0] op ... op a[i - 1]。
+     */
+    public static void exclusiveScan(int[] a, int identity, IntBinaryOperator op) {
+        scan(a, 0, a, 0, a.length, null, true, identity, op, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 把 src[srcPos, srcPos + len) 的排除式前缀写入 dst[dstPos, dstPos + len)。
+     */
+    public static void exclusiveScan(int[] src, int srcPos, int[] dst, int dstPos, int len,
+                                     int identity, IntBinaryOperator op) {
+        scan(src, srcPos, dst, dstPos, len, null, true, identity, op, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 对整个数组原地计算分段的包含式前缀。heads[i] 为 true 表示 a[i] 是一个新段的开头，累积从这里重新开始。
+     */
+    public static void segmentedScan(int[] a, boolean[] heads, IntBinaryOperator op) {
+        scan(a, 0, a, 0, a.length, heads, false, 0, op, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 把 src[srcPos, srcPos + len) 的分段包含式前缀写入 dst[dstPos, dstPos + len)，段的开头由 heads[srcPos + i] 标记。
+     */
+    public static void segmentedScan(int[] src, int srcPos, int[] dst, int dstPos, int len,
+                                     boolean[] heads, IntBinaryOperator op) {
+        scan(src, srcPos, dst, dstPos, len, heads, false, 0, op, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 分段的排除式前缀，每段的第一个元素为 identity。
+     */
+    public static void segmentedExclusiveScan(int[] src, int srcPos, int[] dst, int dstPos, int len,
+                                              boolean[] heads, int identity, IntBinaryOperator op) {
+        scan(src, srcPos, dst, dstPos, len, heads, true, identity, op, ForkJoinPool.commonPool());
+    }
+
+    static void scan(int[] src, int srcPos, int[] dst, int dstPos, int len, boolean[] heads,
+                     boolean exclusive, int identity, IntBinaryOperator op, ForkJoinPool pool) {
+        Objects.requireNonNull(op);
+        checkArgs(src.length, srcPos, dst.length, dstPos, len, src == dst, heads);
+        int blocks = blockCount(len, pool.getParallelism());
+        if (blocks == 1) {
+            scanBlock(src, srcPos, dst, dstPos, len, heads, exclusive, identity, op, identity, exclusive);
+            return;
+        }
+
+        // 第一趟：并行计算每一块的归约值，只读不写
+        final int blockSize = (len + blocks - 1) / blocks;
+        final int[] totals = new int[blocks];
+        final boolean[] hasHead = new boolean[blocks];
+        forEachBlock(pool, blocks, b -> {
+            int from = srcPos + b * blockSize, to = Math.min(srcPos + len, from + blockSize);
+            int acc = src[from];
+            boolean head = heads != null && heads[from];
+            for (int i = from + 1; i < to; i++) {
+                if (heads != null && heads[i]) {
+                    acc = src[i];
+                    head = true;
+                } else {
+                    acc = op.applyAsInt(acc, src[i]);
+                }
+            }
+            totals[b] = acc;
+            hasHead[b] = head;
+        });
+
+        // 顺序计算每一块的进位：前面所有块（遇到段开头则从段开头开始）的归约值
+        final int[] carries = new int[blocks];
+        carries[0] = identity;
+        for (int b = 1; b < blocks; b++) {
+            int prev = totals[b - 1];
+            carries[b] = hasHead[b - 1] || (b == 1 && !exclusive) ? prev : op.applyAsInt(carries[b - 1], prev);
+        }
+
+        // 第二趟：每一块以进位为初始值并行计算前缀
+        forEachBlock(pool, blocks, b -> {
+            int offset = b * blockSize, n = Math.min(len - offset, blockSize);
+            scanBlock(src, srcPos + offset, dst, dstPos + offset, n, heads, exclusive, identity, op,
+                    carries[b], b > 0 || exclusive);
+        });
+    }
+
+    /**
+     * 顺序计算一块的前缀。
+     *
+     * @param acc 这一块之前的累积值
+     * @param hasAcc acc 是否有效。包含式前缀的第一块没有累积值
+     */
+    private static void scanBlock(int[] src, int srcPos, int[] dst, int dstPos, int len, boolean[] heads,
+                                  boolean exclusive, int identity, IntBinaryOperator op, int acc, boolean hasAcc) {
+        if (len == 0) {
+            return;
+        }
+        int i = srcPos, j = dstPos, end = srcPos + len;
+        if (heads == null && !exclusive) {
+            // 最常用的非分段包含式前缀单独写一个循环
+            if (!hasAcc) {
+                dst[j++] = acc = src[i++];
+            }
+            for (; i < end; i++, j++) {
+                dst[j] = acc = op.applyAsInt(acc, src[i]);
+            }
+            return;
+        }
+        for (; i < end; i++, j++) {
+            int x = src[i];
+            if (heads != null && heads[i]) {
+                acc = identity;
+                hasAcc = exclusive;
+            }
+            if (exclusive) {
+                dst[j] = acc;
+                acc = op.applyAsInt(acc, x);
+            } else {
+                dst[j] = acc = hasAcc ? op.applyAsInt(acc, x) : x;
+                hasAcc = true;
+            }
+        }
+    }
+    /*
+     * long 和 double 数组的前缀计算和 int 数组相同，只是元素类型不同。
+     */
+
+    public static void inclusiveScan(long[] a, LongBinaryOperator op) {
+        scan(a, 0, a, 0, a.length, null, false, 0L, op, ForkJoinPool.commonPool());
+    }
+
+    public static void inclusiveScan(long[] src, int srcPos, long[] dst, int dstPos, int len, LongBinaryOperator op) {
+        scan(src, srcPos, dst, dstPos, len, null, false, 0L, op, ForkJoinPool.commonPool());
+    }
+
+    public static void exclusiveScan(long[] a, long identity, LongBinaryOperator op) {
+        scan(a, 0, a, 0, a.length, null, true, identity, op, ForkJoinPool.commonPool());
+    }
+
+    public static void exclusiveScan(long[] src, int srcPos, long[] dst, int dstPos, int len,
+                                     long identity, LongBinaryOperator op) {
+        scan(src, srcPos, dst, dstPos, len, null, true, identity, op, ForkJoinPool.commonPool());
+    }
+
+    public static void segmentedScan(long[] a, boolean[] heads, LongBinaryOperator op) {
+        scan(a, 0, a, 0, a.length, heads, false, 0L, op, ForkJoinPool.commonPool());
+    }
+
+    public static void segmentedScan(long[] src, int srcPos, long[] dst, int dstPos, int len,
+                                     boolean[] heads, LongBinaryOperator op) {
+        scan(src, srcPos, dst, dstPos, len, heads, false, 0L, op, ForkJoinPool.commonPool());
+    }
+
+    public static void segmentedExclusiveScan(long[] src, int srcPos, long[] dst, int dstPos, int len,
+                                              boolean[] heads, long identity, LongBinaryOperator op) {
+        scan(src, srcPos, dst, dstPos, len, heads, true, identity, op, ForkJoinPool.commonPool());
+    }
+
+    static void scan(long[] src, int srcPos, long[] dst, int dstPos, int len, boolean[] heads,
+                     boolean exclusive, long identity, LongBinaryOperator op, ForkJoinPool pool) {
+        Objects.requireNonNull(op);
+        checkArgs(src.length, srcPos, dst.length, dstPos, len, src == dst, heads);
+        int blocks = blockCount(len, pool.getParallelism());
+        if (blocks == 1) {
+            scanBlock(src, srcPos, dst, dstPos, len, heads, exclusive, identity, op, identity, exclusive);
+            return;
+        }
+
+        // 第一趟：并行计算每一块的归约值，只读不写
+        final int blockSize = (len + blocks - 1) / blocks;
+        final long[] totals = new long[blocks];
+        final boolean[] hasHead = new boolean[blocks];
+        forEachBlock(pool, blocks, b -> {
+            int from = srcPos + b * blockSize, to = Math.min(srcPos + len, from + blockSize);
+            long acc = src[from];
+            boolean head = heads != null && heads[from];
+            for (int i = from + 1; i < to; i++) {
+                if (heads != null && heads[i]) {
+                    acc = src[i];
+                    head = true;
+                } else {
+                    acc = op.applyAsLong(acc, src[i]);
+                }
+            }
+            totals[b] = acc;
+            hasHead[b] = head;
+        });
+
+        // 顺序计算每一块的进位：前面所有块（遇到段开头则从段开头开始）的归约值
+        final long[] carries = new long[blocks];
+        carries[0] = identity;
+        for (int b = 1; b < blocks; b++) {
+            long prev = totals[b - 1];
+            carries[b] = hasHead[b - 1] || (b == 1 && !exclusive) ? prev : op.applyAsLong(carries[b - 1], prev);
+        }
+
+        // 第二趟：每一块以进位为初始值并行计算前缀
+        forEachBlock(pool, blocks, b -> {
+            int offset = b * blockSize, n = Math.min(len - offset, blockSize);
+            scanBlock(src, srcPos + offset, dst, dstPos + offset, n, heads, exclusive, identity, op,
+                    carries[b], b > 0 || exclusive);
+        });
+    }
+
+    private static void scanBlock(long[] src, int srcPos, long[] dst, int dstPos, int len, boolean[] heads,
+                                  boolean exclusive, long identity, LongBinaryOperator op, long acc, boolean hasAcc) {
+        if (len == 0) {
+            return;
+        }
+        int i = srcPos, j = dstPos, end = srcPos + len;
+        if (heads == null && !exclusive) {
+            // 最常用的非分段包含式前缀单独写一个循环
+            if (!hasAcc) {
+                dst[j++] = acc = src[i++];
+            }
+            for (; i < end; i++, j++) {
+                dst[j] = acc = op.applyAsLong(acc, src[i]);
+            }
+            return;
+        }
+        for (; i < end; i++, j++) {
+            long x = src[i];
+            if (heads != null && heads[i]) {
+                acc = identity;
+                hasAcc = exclusive;
+            }
+            if (exclusive) {
+                dst[j] = acc;
+                acc = op.applyAsLong(acc, x);
+            } else {
+                dst[j] = acc = hasAcc ? op.applyAsLong(acc, x) : x;
+                hasAcc = true;
+            }
+        }
+    }
+
+    public static void inclusiveScan(double[] a, DoubleBinaryOperator op) {
+        scan(a, 0, a, 0, a.length, null, false, 0.0, op, ForkJoinPool.commonPool());
+    }
+
+    public static void inclusiveScan(double[] src, int srcPos, double[] dst, int dstPos, int len,
+                                     DoubleBinaryOperator op) {
+        scan(src, srcPos, dst, dstPos, len, null, false, 0.0, op, ForkJoinPool.commonPool());
+    }
+
+    public static void exclusiveScan(double[] a, double identity, DoubleBinaryOperator op) {
+        scan(a, 0, a, 0, a.length, null, true, identity, op, ForkJoinPool.commonPool());
+    }
+
+    public static void exclusiveScan(double[] src, int srcPos, double[] dst, int dstPos, int len,
+                                     double identity, DoubleBinaryOperator op) {
+        scan(src, srcPos, dst, dstPos, len, null, true, identity, op, ForkJoinPool.commonPool());
+    }
+
+    public static void segmentedScan(double[] a, boolean[] heads, DoubleBinaryOperator op) {
+        scan(a, 0, a, 0, a.length, heads, false, 0.0, op, ForkJoinPool.commonPool());
+    }
+
+    public static void segmentedScan(double[] src, int srcPos, double[] dst, int dstPos, int len,
+                                     boolean[] heads, DoubleBinaryOperator op) {
+        scan(src, srcPos, dst, dstPos, len, heads, false, 0.0, op, ForkJoinPool.commonPool());
+    }
+
+    public static void segmentedExclusiveScan(double[] src, int srcPos, double[] dst, int dstPos, int len,
+                                              boolean[] heads, double identity, DoubleBinaryOperator op) {
+        scan(src, srcPos, dst, dstPos, len, heads, true, identity, op, ForkJoinPool.commonPool());
+    }
+
+    static void scan(double[] src, int srcPos, double[] dst, int dstPos, int len, boolean[] heads,
+                     boolean exclusive, double identity, DoubleBinaryOperator op, ForkJoinPool pool) {
+        Objects.requireNonNull(op);
+        checkArgs(src.length, srcPos, dst.length, dstPos, len, src == dst, heads);
+        int blocks = blockCount(len, pool.getParallelism());
+        if (blocks == 1) {
+            scanBlock(src, srcPos, dst, dstPos, len, heads, exclusive, identity, op, identity, exclusive);
+            return;
+        }
+
+        // 第一趟：并行计算每一块的归约值，只读不写
+        final int blockSize = (len + blocks - 1) / blocks;
+        final double[] totals = new double[blocks];
+        final boolean[] hasHead = new boolean[blocks];
+        forEachBlock(pool, blocks, b -> {
+            int from = srcPos + b * blockSize, to = Math.min(srcPos + len, from + blockSize);
+            double acc = src[from];
+            boolean head = heads != null && heads[from];
+            for (int i = from + 1; i < to; i++) {
+                if (heads != null && heads[i]) {
+                    acc = src[i];
+                    head = true;
+                } else {
+                    acc = op.applyAsDouble(acc, src[i]);
+                }
+            }
+            totals[b] = acc;
+            hasHead[b] = head;
+        });
+
+        // 顺序计算每一块的进位：前面所有块（遇到段开头则从段开头开始）的归约值
+        final double[] carries = new double[blocks];
+        carries[0] = identity;
+        for (int b = 1; b < blocks; b++) {
+            double prev = totals[b - 1];
+            carries[b] = hasHead[b - 1] || (b == 1 && !exclusive) ? prev : op.applyAsDouble(carries[b - 1], prev);
+        }
+
+        // 第二趟：每一块以进位为初始值并行计算前缀
+        forEachBlock(pool, blocks, b -> {
+            int offset = b * blockSize, n = Math.min(len - offset, blockSize);
+            scanBlock(src, srcPos + offset, dst, dstPos + offset, n, heads, exclusive, identity, op,
+                    carries[b], b > 0 || exclusive);
+        });
+    }
+
+    private static void scanBlock(double[] src, int srcPos, double[] dst, int dstPos, int len, boolean[] heads,
+                                  boolean exclusive, double identity, DoubleBinaryOperator op,
+                                  double acc, boolean hasAcc) {
+        if (len == 0) {
+            return;
+        }
+        int i = srcPos, j = dstPos, end = srcPos + len;
+        if (heads == null && !exclusive) {
+            // 最常用的非分段包含式前缀单独写一个循环
+            if (!hasAcc) {
+                dst[j++] = acc = src[i++];
+            }
+            for (; i < end; i++, j++) {
+                dst[j] = acc = op.applyAsDouble(acc, src[i]);
+            }
+            return;
+        }
+        for (; i < end; i++, j++) {
+            double x = src[i];
+            if (heads != null && heads[i]) {
+                acc = identity;
+                hasAcc = exclusive;
+            }
+            if (exclusive) {
+                dst[j] = acc;
+                acc = op.applyAsDouble(acc, x);
+            } else {
+                dst[j] = acc = hasAcc ? op.applyAsDouble(acc, x) : x;
+                hasAcc = true;
+            }
+        }
+    }
+
+    private static void checkArgs(int srcLength, int srcPos, int dstLength, int dstPos, int len,
+                                  boolean sameArray, boolean[] heads) {
+        if (len < 0 || srcPos < 0 || dstPos < 0 || srcPos > srcLength - len || dstPos > dstLength - len) {
+            throw new ArrayIndexOutOfBoundsException("srcPos: " + srcPos + ", dstPos: " + dstPos + ", len: " + len);
+        }
+        // 同一个数组中错开的两个区间，后面块的第二趟会读到前面块已经写入的结果
+        if (sameArray && srcPos != dstPos) {
+            throw new IllegalArgumentException("srcPos(" + srcPos + ") != dstPos(" + dstPos + ") in the same array");
+        }
+        if (heads != null && heads.length < srcPos + len) {
+            throw new ArrayIndexOutOfBoundsException("heads.length: " + heads.length);
+        }
+    }
+
+    /**
+     * 块数：并行度*4，使得某个线程变慢时其他线程可以分担；但每块不少于 {@link #MIN_BLOCK_SIZE} 个元素。
+     * 返回 1 表示顺序计算。
+     */
+    static int blockCount(int len, int parallelism) {
+        if (len < MIN_PARALLEL_LENGTH || parallelism <= 1) {
+            return 1;
+        }
+        return Math.max(1, Math.min(parallelism << 2, len / MIN_BLOCK_SIZE));
+    }
+
+    /**
+     * 在 pool 中并行执行 action(0) 到 action(blocks - 1)，全部执行完之后返回。
+     */
+    static void forEachBlock(ForkJoinPool pool, int blocks, IntConsumer action) {
+        pool.invoke(new BlockTask(null, action, 0, blocks));
+    }
+
+    static final class BlockTask extends CountedCompleter<Void> {
+        static final long serialVersionUID = 5293554502939613543L;
+        final IntConsumer action;
+        // lo, hi: 负责的块下标范围 [lo, hi)
+        final int lo, hi;
+
+        BlockTask(CountedCompleter<?> par, IntConsumer action, int lo, int hi) {
+            super(par);
+            this.action = action; this.lo = lo; this.hi = hi;
+        }
+
+        public final void compute() {
+            int l = lo, h = hi;
+            // 不断把右半边 fork 出去，自己处理最左边的一块
+            while (h - l > 1) {
+                int mid = (l + h) >>> 1;
+                addToPendingCount(1);
+                new BlockTask(this, action, mid, h).fork();
+                h = mid;
+            }
+            action.accept(l);
+            tryComplete();
+        }
+    }
+
+    private static int[] seqInclusive(int[] a, boolean[] heads, IntBinaryOperator op) {
+        int[] r = a.clone();
+        for (int i = 1; i < r.length; i++) {
+            if (heads == null || !heads[i]) {
+                r[i] = op.applyAsInt(r[i - 1], r[i]);
+            }
+        }
+        return r;
+    }
+
+    private static int[] seqExclusive(int[] a, boolean[] heads, int identity, IntBinaryOperator op) {
+        int[] r = new int[a.length];
+        int acc = identity;
+        for (int i = 0; i < r.length; i++) {
+            if (heads != null && heads[i]) {
+                acc = identity;
+            }
+            r[i] = acc;
+            acc = op.applyAsInt(acc, a[i]);
+        }
+        return r;
+    }
+
+    private static boolean[] randomHeads(int n, double p, Random random) {
+        boolean[] heads = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            heads[i] = random.nextDouble() < p;
+        }
+        return heads;
+    }
+
+    /**
+     * 使用多个线程池和各种长度（包括不能整除块数的长度），把并行结果和顺序计算的结果比较。
+     */
+    @Test
+    public void testScan() {
+        Random random = new Random(47);
+        IntBinaryOperator[] ops = {Integer::sum, Math::max, (x, y) -> x * y};
+        int[] sizes = {0, 1, 2, 100, MIN_PARALLEL_LENGTH - 1, MIN_PARALLEL_LENGTH, 100003};
+        for (int parallelism : new int[]{1, 2, 3, 8}) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            for (IntBinaryOperator op : ops) {
+                for (int size : sizes) {
+                    int[] a = random.ints(size, -1000, 1000).toArray();
+                    for (double p : new double[]{0, 0.0001, 0.01, 0.5}) {
+                        boolean[] heads = p == 0 ? null : randomHeads(size, p, random);
+
+                        // 原地
+                        int[] b = a.clone();
+                        scan(b, 0, b, 0, size, heads, false, 0, op, pool);
+                        assertArrayEquals(seqInclusive(a, heads, op), b);
+
+                        // 非原地，排除式
+                        int identity = op == ops[1] ? Integer.MIN_VALUE : op == ops[2] ? 1 : 0;
+                        int[] c = new int[size + 5];
+                        scan(a, 0, c, 5, size, heads, true, identity, op, pool);
+                        assertArrayEquals(seqExclusive(a, heads, identity, op), Arrays.copyOfRange(c, 5, size + 5));
+                    }
+                }
+            }
+            pool.shutdown();
+        }
+
+        // 区间，heads 使用 src 的下标
+        int[] a = random.ints(50000, 0, 100).toArray();
+        boolean[] heads = randomHeads(a.length, 0.001, random);
+        int[] dst = new int[40000];
+        segmentedScan(a, 10000, dst, 0, 40000, heads, Integer::sum);
+        boolean[] subHeads = Arrays.copyOfRange(heads, 10000, 50000);
+        assertArrayEquals(seqInclusive(Arrays.copyOfRange(a, 10000, 50000), subHeads, Integer::sum), dst);
+
+        long[] l = {1, 2, 3, 4};
+        exclusiveScan(l, 1L, (x, y) -> x * y);
+        assertArrayEquals(new long[]{1, 1, 2, 6}, l);
+        double[] d = {1, 2, 3, 4};
+        segmentedScan(d, new boolean[]{false, false, true, false}, Double::sum);
+        assertArrayEquals(new double[]{1, 3, 3, 7}, d);
+
+        assertThrows(IllegalArgumentException.class, () -> inclusiveScan(a, 0, a, 1, 10, Integer::sum));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> inclusiveScan(a, 1, dst, 0, 40001, Integer::sum));
+        assertThrows(ArrayIndexOutOfBoundsException.class,
+                () -> segmentedScan(a, 0, a, 0, 100, new boolean[99], Integer::sum));
+    }
+
+    /**
+     * 比较顺序循环、{@code Arrays.parallelPrefix} 和这里的实现，并观察不同线程数下的加速比。
+     */
+    @Test
+    public void testBenchmark() {
+        final int size = 50_000_000, rounds = 5;
+        long[] data = new Random(47).longs(size, 0, 1000).toArray();
+        long[] a = new long[size];
+
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            System.arraycopy(data, 0, a, 0, size);
+            long start = System.nanoTime();
+            for (int i = 1; i < size; i++) {
+                a[i] += a[i - 1];
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        long base = best;
+        System.out.printf("%-24s%12.2fms%n", "sequential", base / 1e6);
+
+        best = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            System.arraycopy(data, 0, a, 0, size);
+            long start = System.nanoTime();
+            Arrays.parallelPrefix(a, Long::sum);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-24s%12.2fms%n", "Arrays.parallelPrefix", best / 1e6);
+
+        int maxThreads = Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) * 2;
+        long[] dst = new long[size];
+        for (int threads = 1; threads <= maxThreads; threads <<= 1) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long inPlace = Long.MAX_VALUE, outOfPlace = Long.MAX_VALUE;
+            for (int r = 0; r < rounds; r++) {
+                System.arraycopy(data, 0, a, 0, size);
+                long start = System.nanoTime();
+                scan(a, 0, a, 0, size, null, false, 0, Long::sum, pool);
+                inPlace = Math.min(inPlace, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                scan(data, 0, dst, 0, size, null, false, 0, Long::sum, pool);
+                outOfPlace = Math.min(outOfPlace, System.nanoTime() - start);
+            }
+            pool.shutdown();
+            assertArrayEquals(a, dst);
+            System.out.printf("%-24s%12.2fms%9.2fx%n", "scan, " + threads + " threads", inPlace / 1e6,
+                    (double) base / inPlace);
+            System.out.printf("%-24s%12.2fms%9.2fx%n", "scan(src, dst), " + threads, outOfPlace / 1e6,
+                    (double) base / outOfPlace);
+        }
+
+        /*
+        输出（50,000,000 个 long，5 轮取最小值，单核机器）：
+        sequential                     85.19ms
+        Arrays.parallelPrefix         122.92ms
+        scan, 1 threads                75.72ms     1.13x
+        scan(src, dst), 1              90.03ms     0.95x
+        scan, 2 threads               124.55ms     0.68x
+        scan(src, dst), 2             145.86ms     0.58x
+
+        并行度为 1 时直接顺序计算，和手写循环相当。单核机器上两个线程只能轮流执行，两趟算法多出的一次读数组
+        和运算符调用全部变成开销，所以比顺序慢 1.5 倍左右，Arrays.parallelPrefix 也是一样。
+        多核机器上每增加一个核，两趟中的每一趟都能分担到更多块，耗时按 2/p 下降，直到内存带宽饱和。
+         */
+    }
+}
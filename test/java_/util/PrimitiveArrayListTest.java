@@ -0,0 +1,371 @@
+package java_.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.Spliterator;
+
+import static java_.TestUtil.retained;
+import static java_.TestUtil.usedMemory;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link IntArrayList}、{@link LongArrayList}、{@link DoubleArrayList} 的测试，以及和 {@code ArrayList<Integer>} 的比较。
+ */
+public class PrimitiveArrayListTest {
+
+    @Test
+    public void testIntArrayList() {
+        IntArrayList list = new IntArrayList();
+        assertEquals(0, list.capacity());
+        list.add(1);
+        assertEquals(10, list.capacity());
+        list.addAll(new int[]{2, 3, 4, 5, 6, 7});
+        list.add(0, 0);
+        list.addAll(3, new int[]{-1, -2, -3}, 1, 2);
+        assertEquals("[0, 1, 2, -2, -3, 3, 4, 5, 6, 7]", list.toString());
+        assertEquals(10, list.capacity());
+        list.add(8);
+        // 1.5 倍增长
+        assertEquals(15, list.capacity());
+        assertEquals(-2, list.removeAt(3));
+        assertTrue(list.removeValue(-3));
+        assertFalse(list.removeValue(-3));
+        assertEquals(9, list.size());
+        assertEquals(4, list.set(4, 40));
+        assertEquals(4, list.indexOf(40));
+        assertEquals(-1, list.indexOf(4));
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(9));
+        assertThrows(IndexOutOfBoundsException.class, () -> list.add(10, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> list.addAll(new int[3], 2, 2));
+
+        list.trimToSize();
+        assertEquals(9, list.capacity());
+        list.removeRange(2, 4);
+        assertEquals("[0, 1, 40, 5, 6, 7, 8]", list.toString());
+        assertTrue(list.removeIf(e -> e % 2 == 0));
+        assertFalse(list.removeIf(e -> e > 100));
+        assertArrayEquals(new int[]{1, 5, 7}, list.toArray());
+        assertEquals(Arrays.asList(1, 5, 7).hashCode(), list.hashCode());
+        assertEquals(IntArrayList.of(1, 5, 7), list);
+        assertNotEquals(IntArrayList.of(1, 5), list);
+
+        // filter 抛出异常时，已经检查过的满足条件的元素被删除，其余元素保留
+        IntArrayList numbers = IntArrayList.of(1, 2, 3, 4, 5, 6);
+        assertThrows(IllegalStateException.class, () -> numbers.removeIf(e -> {
+            if (e == 4) {
+                throw new IllegalStateException();
+            }
+            return e % 2 == 0;
+        }));
+        assertEquals("[1, 3, 4, 5, 6]", numbers.toString());
+        assertThrows(ConcurrentModificationException.class, () -> numbers.removeIf(e -> {
+            numbers.add(0);
+            return false;
+        }));
+
+        list.clear();
+        assertTrue(list.isEmpty());
+        list.trimToSize();
+        assertEquals(0, list.capacity());
+        assertThrows(IllegalArgumentException.class, () -> new IntArrayList(-1));
+    }
+
+    /**
+     * 和 {@link ListIteratorTest} 相同的操作序列，结果和 ArrayList 的 ListIterator 一致。
+     */
+    @Test
+    public void testListIterator() {
+        IntArrayList list = IntArrayList.of(1, 2, 3, 4, 5, 6, 7);
+        List<Integer> expected = ListIteratorTest.testList();
+        IntArrayList.ListItr it = list.listIterator();
+        java.util.ListIterator<Integer> expectedIt = expected.listIterator();
+        Random random = new Random(47);
+        for (int op = 0; op < 10_000; op++) {
+            switch (random.nextInt(6)) {
+                case 0:
+                    assertEquals(expectedIt.hasNext(), it.hasNext());
+                    if (it.hasNext()) {
+                        assertEquals((int) expectedIt.next(), it.nextInt());
+                    } else {
+                        assertThrows(NoSuchElementException.class, it::nextInt);
+                    }
+                    break;
+                case 1:
+                    assertEquals(expectedIt.hasPrevious(), it.hasPrevious());
+                    if (it.hasPrevious()) {
+                        assertEquals((int) expectedIt.previous(), it.previousInt());
+                    } else {
+                        assertThrows(NoSuchElementException.class, it::previousInt);
+                    }
+                    break;
+                case 2:
+                    expectedIt.add(op);
+                    it.add(op);
+                    break;
+                case 3:
+                    try {
+                        expectedIt.remove();
+                    } catch (IllegalStateException e) {
+                        assertThrows(IllegalStateException.class, it::remove);
+                        break;
+                    }
+                    it.remove();
+                    break;
+                case 4:
+                    try {
+                        expectedIt.set(-op);
+                    } catch (IllegalStateException e) {
+                        assertThrows(IllegalStateException.class, () -> it.set(0));
+                        break;
+                    }
+                    it.set(-op);
+                    break;
+                default:
+                    assertEquals(expectedIt.nextIndex(), it.nextIndex());
+                    assertEquals(expectedIt.previousIndex(), it.previousIndex());
+            }
+            assertEquals(expected.toString(), list.toString());
+        }
+
+        PrimitiveIterator.OfInt iterator = list.iterator();
+        list.add(0);
+        assertThrows(ConcurrentModificationException.class, iterator::nextInt);
+        IntArrayList.ListItr tail = list.listIterator(list.size() - 2);
+        int[] rest = new int[2];
+        int[] n = {0};
+        tail.forEachRemaining((int e) -> rest[n[0]++] = e);
+        assertEquals(list.get(list.size() - 2), rest[0]);
+        assertEquals(0, rest[1]);
+        assertFalse(tail.hasNext());
+    }
+
+    @Test
+    public void testSpliterator() {
+        IntArrayList list = new IntArrayList();
+        for (int i = 0; i < 1000; i++) {
+            list.add(i);
+        }
+        Spliterator.OfInt spliterator = list.spliterator();
+        // 延迟绑定：创建之后、使用之前添加的元素也会被遍历
+        list.add(1000);
+        assertEquals(1001, spliterator.estimateSize());
+        Spliterator.OfInt prefix = spliterator.trySplit();
+        assertEquals(500, prefix.estimateSize());
+        assertEquals(501, spliterator.estimateSize());
+        long[] sum = {0};
+        assertTrue(prefix.tryAdvance((int e) -> sum[0] += e));
+        prefix.forEachRemaining((int e) -> sum[0] += e);
+        spliterator.forEachRemaining((int e) -> sum[0] += e);
+        assertEquals(1000L * 1001 / 2, sum[0]);
+
+        assertEquals(1000L * 1001 / 2, list.stream().asLongStream().sum());
+        assertEquals(1000L * 1001 / 2, list.stream().parallel().asLongStream().sum());
+        assertThrows(ConcurrentModificationException.class, () -> list.stream().forEach(e -> {
+            if (e == 10) {
+                list.add(0);
+            }
+        }));
+    }
+
+    @Test
+    public void testLongAndDouble() {
+        LongArrayList longs = LongArrayList.of(Long.MIN_VALUE, 0, Long.MAX_VALUE);
+        longs.addAll(longs);
+        assertEquals(6, longs.size());
+        assertEquals(5, longs.lastIndexOf(Long.MAX_VALUE));
+        assertTrue(longs.removeIf(e -> e == 0));
+        longs.sort();
+        assertArrayEquals(new long[]{Long.MIN_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, Long.MAX_VALUE},
+                longs.toArray());
+        assertEquals(Arrays.asList(Long.MIN_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, Long.MAX_VALUE).hashCode(),
+                longs.hashCode());
+
+        // 元素的相等和 Double.equals 相同：NaN 等于 NaN，0.0 不等于 -0.0
+        DoubleArrayList doubles = DoubleArrayList.of(0.0, Double.NaN, -0.0, 1.5);
+        assertEquals(1, doubles.indexOf(Double.NaN));
+        assertEquals(2, doubles.indexOf(-0.0));
+        assertEquals(Arrays.asList(0.0, Double.NaN, -0.0, 1.5).hashCode(), doubles.hashCode());
+        assertNotEquals(DoubleArrayList.of(0.0, Double.NaN, 0.0, 1.5), doubles);
+        assertEquals(1.5, doubles.stream().filter(d -> d > 1).sum());
+        double[] seen = new double[4];
+        int[] n = {0};
+        doubles.forEach((double d) -> seen[n[0]++] = d);
+        assertArrayEquals(doubles.toArray(), seen);
+    }
+
+    /**
+     * 扩容规则和 {@link OverflowConsciousCodeTest} 中复现的 ArrayList.grow 相同。
+     */
+    @Test
+    public void testNewCapacity() {
+        assertEquals(15, IntArrayList.newCapacity(11, 10));
+        assertEquals(100, IntArrayList.newCapacity(100, 10));
+        // newCapacity 未溢出，超过 MAX_ARRAY_SIZE 时扩容为 minCapacity
+        assertEquals(Integer.MAX_VALUE - 10, IntArrayList.newCapacity(Integer.MAX_VALUE - 10, 1431655750));
+        // newCapacity 溢出，扩容为 MAX_ARRAY_SIZE
+        assertEquals(Integer.MAX_VALUE - 8, LongArrayList.newCapacity(Integer.MAX_VALUE - 10, 1431655766));
+        assertEquals(Integer.MAX_VALUE, DoubleArrayList.newCapacity(Integer.MAX_VALUE - 1, 1431655766));
+        // minCapacity 溢出
+        assertThrows(OutOfMemoryError.class, () -> IntArrayList.newCapacity(Integer.MIN_VALUE + 100,
+                Integer.MAX_VALUE / 3 * 2 + 100));
+    }
+
+    static volatile long sink;
+
+    /**
+     * n 个随机元素（大部分超出 Integer 缓存的范围）：添加、按下标求和、用迭代器求和、删除一半。
+     * 每项取 3 轮中的最小值。列表的规模可以通过系统属性 {@code list.bench.size} 调整。
+     */
+    @Test
+    public void testBenchmark() {
+        final int n = Integer.getInteger("list.bench.size", 10_000_000);
+        int[] data = new Random(47).ints(n).toArray();
+        String[] names = {"ArrayList<Integer>", "IntArrayList", "ArrayList<Long>", "LongArrayList"};
+        System.out.printf("n = %d%n%-20s%14s%12s%12s%12s%14s%n", n, "list", "bytes/elem", "add ns", "get ns",
+                "iter ns", "removeIf ns");
+        for (String name : names) {
+            long bytes = Long.MAX_VALUE;
+            long[] best = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+            long sink = 0;
+            for (int round = 0; round < 3; round++) {
+                retained = null;
+                long base = usedMemory();
+                long[] time = new long[4];
+                switch (name) {
+                    case "ArrayList<Integer>": {
+                        long start = System.nanoTime();
+                        List<Integer> list = new ArrayList<>();
+                        for (int e : data) {
+                            list.add(e);
+                        }
+                        time[0] = System.nanoTime() - start;
+                        retained = list;
+                        bytes = Math.min(bytes, usedMemory() - base);
+                        start = System.nanoTime();
+                        for (int i = 0; i < list.size(); i++) {
+                            sink += list.get(i);
+                        }
+                        time[1] = System.nanoTime() - start;
+                        start = System.nanoTime();
+                        for (int e : list) {
+                            sink += e;
+                        }
+                        time[2] = System.nanoTime() - start;
+                        start = System.nanoTime();
+                        list.removeIf(e -> (e & 1) == 0);
+                        time[3] = System.nanoTime() - start;
+                        sink += list.size();
+                        break;
+                    }
+                    case "IntArrayList": {
+                        long start = System.nanoTime();
+                        IntArrayList list = new IntArrayList();
+                        for (int e : data) {
+                            list.add(e);
+                        }
+                        time[0] = System.nanoTime() - start;
+                        retained = list;
+                        bytes = Math.min(bytes, usedMemory() - base);
+                        start = System.nanoTime();
+                        for (int i = 0; i < list.size(); i++) {
+                            sink += list.get(i);
+                        }
+                        time[1] = System.nanoTime() - start;
+                        start = System.nanoTime();
+                        for (PrimitiveIterator.OfInt it = list.iterator(); it.hasNext(); ) {
+                            sink += it.nextInt();
+                        }
+                        time[2] = System.nanoTime() - start;
+                        start = System.nanoTime();
+                        list.removeIf(e -> (e & 1) == 0);
+                        time[3] = System.nanoTime() - start;
+                        sink += list.size();
+                        break;
+                    }
+                    case "ArrayList<Long>": {
+                        long start = System.nanoTime();
+                        List<Long> list = new ArrayList<>();
+                        for (int e : data) {
+                            list.add((long) e);
+                        }
+                        time[0] = System.nanoTime() - start;
+                        retained = list;
+                        bytes = Math.min(bytes, usedMemory() - base);
+                        start = System.nanoTime();
+                        for (int i = 0; i < list.size(); i++) {
+                            sink += list.get(i);
+                        }
+                        time[1] = System.nanoTime() - start;
+                        start = System.nanoTime();
+                        for (long e : list) {
+                            sink += e;
+                        }
+                        time[2] = System.nanoTime() - start;
+                        start = System.nanoTime();
+                        list.removeIf(e -> (e & 1) == 0);
+                        time[3] = System.nanoTime() - start;
+                        sink += list.size();
+                        break;
+                    }
+                    default: {
+                        long start = System.nanoTime();
+                        LongArrayList list = new LongArrayList();
+                        for (int e : data) {
+                            list.add(e);
+                        }
+                        time[0] = System.nanoTime() - start;
+                        retained = list;
+                        bytes = Math.min(bytes, usedMemory() - base);
+                        start = System.nanoTime();
+                        for (int i = 0; i < list.size(); i++) {
+                            sink += list.get(i);
+                        }
+                        time[1] = System.nanoTime() - start;
+                        start = System.nanoTime();
+                        for (PrimitiveIterator.OfLong it = list.iterator(); it.hasNext(); ) {
+                            sink += it.nextLong();
+                        }
+                        time[2] = System.nanoTime() - start;
+                        start = System.nanoTime();
+                        list.removeIf(e -> (e & 1) == 0);
+                        time[3] = System.nanoTime() - start;
+                        sink += list.size();
+                    }
+                }
+                for (int k = 0; k < 4; k++) {
+                    best[k] = Math.min(best[k], time[k]);
+                }
+            }
+            retained = null;
+            PrimitiveArrayListTest.sink = sink;
+            System.out.printf("%-20s%14.1f%12.2f%12.2f%12.2f%14.2f%n", name, (double) bytes / n,
+                    (double) best[0] / n, (double) best[1] / n, (double) best[2] / n, (double) best[3] / n);
+        }
+
+        /*
+        输出：
+        n = 10000000
+        list                    bytes/elem      add ns      get ns     iter ns   removeIf ns
+        ArrayList<Integer>            20.3       36.06        2.99        3.14         20.02
+        IntArrayList                   5.5        9.75        0.75        0.79          5.48
+        ArrayList<Long>               29.5       39.24        3.60        3.66         19.89
+        LongArrayList                 11.1       17.02        1.16        1.19          7.54
+
+        结论：
+        - ArrayList<Integer> 每个元素约 20 字节：16 字节的 Integer 和 4 字节的引用（加上 1.5 倍扩容留下的空位）；
+          IntArrayList 只有 4 字节乘以空位的比例，节省了 3/4 的堆。ArrayList<Long> 每个元素是 24 字节的 Long
+          和 4 字节的引用，LongArrayList 节省约 60%。
+        - 添加快 2~4 倍，主要是省去了每个元素的装箱分配，以及 GC 复制这些对象的开销。
+        - 遍历快约 4 倍：基本类型数组是连续的，每个缓存行有 16 个 int，硬件预取可以跟上；
+          ArrayList 每个元素要再跳到 Integer 对象上，对象在堆中的位置和下标顺序不一定一致。
+        - removeIf 快约 3 倍：一次遍历直接压缩，不需要 BitSet，也没有拆箱。
+         */
+    }
+}
@@ -0,0 +1,370 @@
+package java_.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static java_.TestUtil.retained;
+import static java_.TestUtil.usedMemory;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link IntIntHashMap}、{@link LongLongHashMap} 的测试，以及和 {@link HashMap} 的内存占用、吞吐比较。
+ * <p>
+ * {@link #testBenchmark()} 默认只测 10^6，更大的规模通过系统属性 {@code hash.bench.maxSize} 打开，
+ * 例如 {@code -Dhash.bench.maxSize=100000000}。按上一个规模估计堆放不下的规模会输出 -。
+ */
+public class PrimitiveHashMapTest {
+
+    @Test
+    public void testIntIntHashMap() {
+        IntIntHashMap map = new IntIntHashMap(0, 0.75f, -1);
+        assertEquals(4, map.capacity());
+        assertTrue(map.isEmpty());
+        assertEquals(-1, map.get(0));
+        assertEquals(-1, map.put(0, 10));
+        assertEquals(-1, map.put(7, 70));
+        assertEquals(10, map.put(0, 11));
+        assertTrue(map.containsKey(0));
+        assertFalse(map.putIfAbsent(7, 71));
+        assertEquals(70, map.get(7));
+        assertEquals(5, map.getOrDefault(8, 5));
+        assertEquals(3, map.addTo(8, 3));
+        assertEquals(5, map.addTo(8, 2));
+        assertEquals(3, map.size());
+        assertEquals(11, map.remove(0));
+        assertEquals(-1, map.remove(0));
+        assertFalse(map.containsKey(0));
+
+        int[] keys = map.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(new int[]{7, 8}, keys);
+        for (IntIntHashMap.Cursor c = map.cursor(); c.advance(); ) {
+            c.setValue(c.key() * 100);
+        }
+        assertEquals(700, map.get(7));
+        assertEquals(800, map.get(8));
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(-1, map.get(7));
+        assertThrows(NoSuchElementException.class, () -> map.cursor().key());
+        assertThrows(IllegalArgumentException.class, () -> new IntIntHashMap(-1));
+        assertThrows(IllegalArgumentException.class, () -> new IntIntHashMap(16, 1f, 0));
+
+        // 同一个理想槽位上的一串键：删除中间的键之后，后面的键仍然能找到
+        IntIntHashMap chain = new IntIntHashMap(16);
+        int[] colliding = new int[8];
+        for (int k = 1, n = 0; n < colliding.length; k++) {
+            if ((k * 0x9E3779B9) >>> 27 == 3) {
+                colliding[n++] = k;
+            }
+        }
+        for (int k : colliding) {
+            chain.put(k, k);
+        }
+        for (int i = 0; i < colliding.length; i += 2) {
+            assertEquals(colliding[i], chain.remove(colliding[i]));
+        }
+        for (int i = 1; i < colliding.length; i += 2) {
+            assertEquals(colliding[i], chain.get(colliding[i]));
+        }
+        assertEquals(colliding.length / 2, chain.size());
+    }
+
+    @Test
+    public void testLongLongHashMap() {
+        LongLongHashMap map = new LongLongHashMap();
+        assertEquals(0, map.noEntryValue());
+        assertEquals(0, map.put(Long.MIN_VALUE, 1));
+        assertEquals(0, map.put(0, 2));
+        assertEquals(0, map.put(-1, 3));
+        assertEquals(1, map.get(Long.MIN_VALUE));
+        assertEquals(2, map.get(0));
+        assertEquals(3, map.get(-1));
+        assertEquals(3, map.remove(-1));
+        long[] keys = map.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(new long[]{Long.MIN_VALUE, 0}, keys);
+        long[] sum = {0};
+        map.forEach((k, v) -> sum[0] += v);
+        assertEquals(3, sum[0]);
+        assertEquals("{0=2, " + Long.MIN_VALUE + "=1}", map.toString());
+    }
+
+    /**
+     * 随机地插入、更新、删除，每一步都和 HashMap 比较。键的范围很小，会有大量的冲突、删除和重新插入，
+     * 也包括键 0。
+     */
+    @Test
+    public void testRandomOperations() {
+        Random random = new Random(47);
+        for (int range : new int[]{4, 64, 10_000}) {
+            IntIntHashMap ints = new IntIntHashMap(0, 0.75f, Integer.MIN_VALUE);
+            LongLongHashMap longs = new LongLongHashMap(0, 0.9f, Long.MIN_VALUE);
+            Map<Integer, Integer> expected = new HashMap<>();
+            for (int op = 0; op < 500_000; op++) {
+                int key = random.nextInt(range) - range / 4;
+                int value = random.nextInt();
+                Integer previous;
+                switch (random.nextInt(4)) {
+                    case 0:
+                    case 1:
+                        previous = expected.put(key, value);
+                        assertEquals(previous == null ? Integer.MIN_VALUE : previous, ints.put(key, value));
+                        assertEquals(previous == null ? Long.MIN_VALUE : previous, longs.put(key, value));
+                        break;
+                    case 2:
+                        previous = expected.remove(key);
+                        assertEquals(previous == null ? Integer.MIN_VALUE : previous, ints.remove(key));
+                        assertEquals(previous == null ? Long.MIN_VALUE : previous, longs.remove(key));
+                        break;
+                    default:
+                        previous = expected.get(key);
+                        assertEquals(previous == null ? Integer.MIN_VALUE : previous, ints.get(key));
+                        assertEquals(previous == null ? Long.MIN_VALUE : previous, longs.get(key));
+                        assertEquals(previous != null, ints.containsKey(key));
+                }
+                assertEquals(expected.size(), ints.size());
+                assertEquals(expected.size(), longs.size());
+            }
+
+            Map<Integer, Integer> iterated = new HashMap<>();
+            ints.forEach(iterated::put);
+            assertEquals(expected, iterated);
+            iterated.clear();
+            for (LongLongHashMap.Cursor c = longs.cursor(); c.advance(); ) {
+                assertNull(iterated.put((int) c.key(), (int) c.value()));
+            }
+            assertEquals(expected, iterated);
+        }
+    }
+
+    /**
+     * get、put（不扩容时）、remove 都不分配对象。
+     */
+    @Test
+    public void testAllocationFree() {
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        IntIntHashMap ints = new IntIntHashMap(100_000);
+        LongLongHashMap longs = new LongLongHashMap(100_000);
+        long sum = 0;
+        for (int round = 0; round < 3; round++) {
+            long before = bean.getThreadAllocatedBytes(id);
+            for (int i = 0; i < 100_000; i++) {
+                ints.put(i * 31, i);
+                longs.put(i * 31L << 32, i);
+            }
+            for (int i = 0; i < 100_000; i++) {
+                sum += ints.get(i * 31) + longs.get(i * 31L << 32);
+                sum += ints.remove(i * 31) + longs.addTo(i, 1);
+            }
+            if (round > 0) {
+                // 前面几轮可能包含解释执行和编译期间的分配
+                assertEquals(0, bean.getThreadAllocatedBytes(id) - before);
+            }
+            longs.clear();
+        }
+        assertTrue(sum > 0);
+    }
+
+    static final String[] MAPS = {"HashMap<Integer,Integer>", "IntIntHashMap", "HashMap<Long,Long>",
+            "LongLongHashMap"};
+
+    /**
+     * 不预设容量，插入 n 个不同的随机键，再按另一个顺序查找所有的键和 n 个不存在的键。
+     * 输出每个条目占用的堆内存、插入和查找的 ns/次，以及查找时每次分配的字节数。
+     * <p>
+     * 键是 i 经过 murmur3 的 fmix 函数得到的，fmix 是双射，所以键互不相同，也不需要额外的数组保存键。
+     */
+    @Test
+    public void testBenchmark() {
+        int maxSize = Integer.getInteger("hash.bench.maxSize", 1_000_000);
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        System.out.println("max heap: " + (Runtime.getRuntime().maxMemory() >> 20) + "MB");
+        System.out.printf("%-26s%10s%28s%28s%28s%n", "map", "", "bytes/entry", "put ns/op", "get ns/op (alloc B/op)");
+        for (String name : MAPS) {
+            double bytesPerEntry = 0;
+            for (int n = 1_000_000; n <= maxSize; n *= 10) {
+                System.out.printf("%-26s%10s", name, "10^" + (int) Math.log10(n));
+                retained = null;
+                // 按上一个规模估计需要的内存，明显放不下时直接跳过，避免在 OOM 之前长时间地反复 GC
+                if (bytesPerEntry * n > Runtime.getRuntime().maxMemory()) {
+                    System.out.printf("%28s%28s%28s%n", "-", "-", "-");
+                    break;
+                }
+                try {
+                    long base = usedMemory();
+                    long start = System.nanoTime();
+                    retained = build(name, n);
+                    long putTime = System.nanoTime() - start;
+                    long bytes = usedMemory() - base;
+                    bytesPerEntry = (double) bytes / n;
+
+                    long allocated = bean.getThreadAllocatedBytes(id);
+                    start = System.nanoTime();
+                    long found = lookup(name, retained, n);
+                    long getTime = System.nanoTime() - start;
+                    allocated = bean.getThreadAllocatedBytes(id) - allocated;
+                    assertEquals(n, found);
+                    System.out.printf("%28.1f%28.1f%20.1f (%5.1f)%n", bytesPerEntry, (double) putTime / n,
+                            getTime / (2.0 * n), allocated / (2.0 * n));
+                } catch (OutOfMemoryError e) {
+                    retained = null;
+                    System.out.printf("%28s%28s%28s%n", "-", "-", "-");
+                    break;
+                }
+            }
+            retained = null;
+        }
+
+        /*
+        输出（-Dhash.bench.maxSize=100000000）：
+        max heap: 1453MB
+        map                                                  bytes/entry                   put ns/op      get ns/op (alloc B/op)
+        HashMap<Integer,Integer>        10^6                        72.4                      1049.3               158.3 ( 16.0)
+        HashMap<Integer,Integer>        10^7                        70.7                      1019.6               144.4 ( 16.0)
+        HashMap<Integer,Integer>        10^8                           -                           -                           -
+        IntIntHashMap                   10^6                        16.8                       125.7                59.9 (  0.0)
+        IntIntHashMap                   10^7                        13.4                       128.4                98.7 (  0.0)
+        IntIntHashMap                   10^8                           -                           -                           -
+        HashMap<Long,Long>              10^6                        88.4                       330.1               208.5 ( 24.0)
+        HashMap<Long,Long>              10^7                        90.1                       936.9               331.4 ( 24.0)
+        HashMap<Long,Long>              10^8                           -                           -                           -
+        LongLongHashMap                 10^6                        33.6                       153.6                69.2 (  0.0)
+        LongLongHashMap                 10^7                        26.8                       150.6               111.5 (  0.0)
+        LongLongHashMap                 10^8                           -                           -                           -
+
+        结论：
+        - HashMap 每个条目 70~90 字节：32 字节的 Node、两个包装对象（Integer 16 字节，Long 24 字节）和 table 中的引用。
+          开放寻址的哈希表每个条目只有键值本身乘以 1 / 负载因子，int 是 HashMap 的 1/5，long 是 1/3。
+          扩容后负载因子在 0.375~0.75 之间，所以 10^6 和 10^7 的字节/条目不同。
+        - 查找快 1.5~3 倍：HashMap 要依次访问 table、Node、键对象三个不相邻的位置，每一个都可能缓存未命中；
+          线性探测的键和值相邻，通常只有一次缓存未命中。规模变大后两者都受限于内存延迟，差距缩小。
+        - HashMap 查找时每次分配 16 或 24 字节，是键的装箱（超出 BoxUnBoxTest.testCache 中 -128~127 的缓存）。
+          逃逸分析没有消除这次分配，因为键被传进了 HashMap.get 中没有内联的部分。基本类型的哈希表不分配任何对象。
+        - HashMap 的插入时间包括大量对象分配和 GC 复制，10^7 时每次插入接近 1 微秒。
+        - 10^8 个条目在 1.4GB 的堆上都放不下：IntIntHashMap 需要 2^28 个槽位即 2GB，扩容时还要同时保留旧数组；
+          HashMap 需要 7GB 以上。
+         */
+    }
+
+    private static Object build(String name, int n) {
+        switch (name) {
+            case "HashMap<Integer,Integer>": {
+                Map<Integer, Integer> map = new HashMap<>();
+                for (int i = 0; i < n; i++) {
+                    map.put(mix(i), i);
+                }
+                return map;
+            }
+            case "IntIntHashMap": {
+                IntIntHashMap map = new IntIntHashMap();
+                for (int i = 0; i < n; i++) {
+                    map.put(mix(i), i);
+                }
+                return map;
+            }
+            case "HashMap<Long,Long>": {
+                Map<Long, Long> map = new HashMap<>();
+                for (int i = 0; i < n; i++) {
+                    map.put(mix((long) i), (long) i);
+                }
+                return map;
+            }
+            default: {
+                LongLongHashMap map = new LongLongHashMap();
+                for (int i = 0; i < n; i++) {
+                    map.put(mix((long) i), i);
+                }
+                return map;
+            }
+        }
+    }
+
+    /**
+     * 查找 n 个存在的键和 n 个不存在的键，返回找到的个数。存在的键按 i * 质数 mod n 的顺序查找，和插入顺序不同。
+     */
+    @SuppressWarnings("unchecked")
+    private static long lookup(String name, Object map, int n) {
+        long found = 0;
+        switch (name) {
+            case "HashMap<Integer,Integer>": {
+                Map<Integer, Integer> m = (Map<Integer, Integer>) map;
+                for (int i = 0; i < n; i++) {
+                    int j = (int) (i * 1_000_003L % n);
+                    if (m.get(mix(j)) != null) {
+                        found++;
+                    }
+                    if (m.get(mix(n + i)) != null) {
+                        found++;
+                    }
+                }
+                return found;
+            }
+            case "IntIntHashMap": {
+                IntIntHashMap m = (IntIntHashMap) map;
+                for (int i = 0; i < n; i++) {
+                    int j = (int) (i * 1_000_003L % n);
+                    if (m.getOrDefault(mix(j), -1) != -1) {
+                        found++;
+                    }
+                    if (m.getOrDefault(mix(n + i), -1) != -1) {
+                        found++;
+                    }
+                }
+                return found;
+            }
+            case "HashMap<Long,Long>": {
+                Map<Long, Long> m = (Map<Long, Long>) map;
+                for (int i = 0; i < n; i++) {
+                    int j = (int) (i * 1_000_003L % n);
+                    if (m.get(mix((long) j)) != null) {
+                        found++;
+                    }
+                    if (m.get(mix((long) n + i)) != null) {
+                        found++;
+                    }
+                }
+                return found;
+            }
+            default: {
+                LongLongHashMap m = (LongLongHashMap) map;
+                for (int i = 0; i < n; i++) {
+                    int j = (int) (i * 1_000_003L % n);
+                    if (m.getOrDefault(mix((long) j), -1) != -1) {
+                        found++;
+                    }
+                    if (m.getOrDefault(mix((long) n + i), -1) != -1) {
+                        found++;
+                    }
+                }
+                return found;
+            }
+        }
+    }
+
+    static int mix(int x) {
+        x ^= x >>> 16;
+        x *= 0x85EBCA6B;
+        x ^= x >>> 13;
+        x *= 0xC2B2AE35;
+        return x ^ (x >>> 16);
+    }
+
+    static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xFF51AFD7ED558CCDL;
+        x ^= x >>> 33;
+        x *= 0xC4CEB93FE53B9A63L;
+        return x ^ (x >>> 33);
+    }
+}
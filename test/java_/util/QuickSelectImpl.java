@@ -0,0 +1,689 @@
+package java_.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 基于 {@link DualPivotQuickSortImpl} 切分的快速选择、部分排序和 top-K。
+ * <p>
+ * 只需要前 100 大的元素、中位数或百分位数时，完整排序做了很多无用功。快速选择使用和快排相同的切分，
+ * 但每次切分之后只继续处理包含 k 的那一部分，期望比较次数是 N + N/3 + N/9 + ... = O(N)，而不是 O(NlogN)。
+ * 和 {@link DualPivotQuickSortSimpleImpl} 一样，Dual-Pivot 切分会把数组分为三部分，使得每次能丢掉更多的元素。
+ * <p>
+ * 对于不能修改或者无法一次放入内存的数据，{@link IntTopK} 等类使用大小为 k 的小顶堆流式地计算 top-K。
+ */
+public class QuickSelectImpl {
+
+    /**
+     * 重新排列数组，使得 a[k] 是整个数组中第 k 小（从 0 开始）的元素，并且它左边的元素都小于等于它，右边的元素都大于等于它。
+     * 例如 select(a, a.length / 2) 得到中位数。期望时间复杂度 O(N)。
+     *
+     * @return a[k]
+     */
+    public static int select(int[] a, int k) {
+        return select(a, 0, a.length, k);
+    }
+
+    /**
+     * 在 [fromIndex, toIndex) 范围内进行选择，k 是数组下标，必须在范围之内。
+     *
+     * @throws ArrayIndexOutOfBoundsException 如果 k 不在 [fromIndex, toIndex) 之内
+     */
+    public static int select(int[] a, int fromIndex, int toIndex, int k) {
+        checkK(a.length, fromIndex, toIndex, k);
+        select(a, fromIndex, toIndex - 1, k, true);
+        return a[k];
+    }
+
+    /**
+     * 部分排序：把数组中最小的 k 个元素按升序放到 [0, k)，其余元素的顺序不确定。
+     * 期望时间复杂度 O(N + klogk)。
+     */
+    public static void partialSort(int[] a, int k) {
+        partialSort(a, 0, a.length, k);
+    }
+
+    /**
+     * 把 [fromIndex, toIndex) 中最小的 k 个元素按升序放到 [fromIndex, fromIndex + k)。
+     *
+     * @throws IllegalArgumentException 如果 k < 0 或 k 大于范围长度
+     */
+    public static void partialSort(int[] a, int fromIndex, int toIndex, int k) {
+        DualPivotQuickSortImpl.rangeCheck(a.length, fromIndex, toIndex);
+        checkCount(toIndex - fromIndex, k);
+        if (k > 0) {
+            select(a, fromIndex, toIndex - 1, fromIndex + k - 1, true);
+            DualPivotQuickSortImpl.sort(a, fromIndex, fromIndex + k - 2, true);
+        }
+    }
+
+    /**
+     * 返回数组中最大的 k 个元素，按降序排列。数组会被重新排列，最大的 k 个元素位于末尾。
+     * 如果不能修改输入，或者数据不能一次放入内存，使用 {@link IntTopK}。
+     */
+    public static int[] topK(int[] a, int k) {
+        int n = a.length;
+        checkCount(n, k);
+        int[] result = new int[k];
+        if (k > 0) {
+            select(a, 0, n - 1, n - k, true);
+            DualPivotQuickSortImpl.sort(a, n - k, n - 1, k == n);
+            for (int i = 0; i < k; i++) {
+                result[i] = a[n - 1 - i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 在 [left, right] 上进行快速选择。每次切分之后只继续处理包含 k 的那一部分；
+     * k 不在任何一部分中说明 a[k] 是切分点或者等于切分点，已经在最终位置上。
+     * 长度小于插入排序阈值时直接插入排序，切分深度超过上限时使用堆排序兜底。
+     */
+    static void select(int[] a, int left, int right, int k, boolean leftmost) {
+        int maxDepth = DualPivotQuickSortImpl.depthLimit(right - left + 1);
+        int[] bounds = new int[6];
+        for (int depth = 0; right - left + 1 >= DualPivotQuickSortImpl.INSERTION_SORT_THRESHOLD; depth++) {
+            if (depth >= maxDepth) {
+                DualPivotQuickSortImpl.heapSort(a, left, right);
+                return;
+            }
+            int n = DualPivotQuickSortImpl.partition(a, left, right, bounds);
+            int i = 0;
+            while (i < n && (k < bounds[i] || k > bounds[i + 1])) {
+                i += 2;
+            }
+            if (i == n) {
+                return;
+            }
+            leftmost = leftmost && i == 0;
+            left = bounds[i];
+            right = bounds[i + 1];
+        }
+        if (right > left) {
+            DualPivotQuickSortImpl.insertionSort(a, left, right, leftmost);
+        }
+    }
+
+    /*
+     * long 数组的选择和 int 数组相同，只是元素类型不同。
+     */
+
+    public static long select(long[] a, int k) {
+        return select(a, 0, a.length, k);
+    }
+
+    public static long select(long[] a, int fromIndex, int toIndex, int k) {
+        checkK(a.length, fromIndex, toIndex, k);
+        select(a, fromIndex, toIndex - 1, k, true);
+        return a[k];
+    }
+
+    public static void partialSort(long[] a, int k) {
+        partialSort(a, 0, a.length, k);
+    }
+
+    public static void partialSort(long[] a, int fromIndex, int toIndex, int k) {
+        DualPivotQuickSortImpl.rangeCheck(a.length, fromIndex, toIndex);
+        checkCount(toIndex - fromIndex, k);
+        if (k > 0) {
+            select(a, fromIndex, toIndex - 1, fromIndex + k - 1, true);
+            DualPivotQuickSortImpl.sort(a, fromIndex, fromIndex + k - 2, true);
+        }
+    }
+
+    public static long[] topK(long[] a, int k) {
+        int n = a.length;
+        checkCount(n, k);
+        long[] result = new long[k];
+        if (k > 0) {
+            select(a, 0, n - 1, n - k, true);
+            DualPivotQuickSortImpl.sort(a, n - k, n - 1, k == n);
+            for (int i = 0; i < k; i++) {
+                result[i] = a[n - 1 - i];
+            }
+        }
+        return result;
+    }
+
+    static void select(long[] a, int left, int right, int k, boolean leftmost) {
+        int maxDepth = DualPivotQuickSortImpl.depthLimit(right - left + 1);
+        int[] bounds = new int[6];
+        for (int depth = 0; right - left + 1 >= DualPivotQuickSortImpl.INSERTION_SORT_THRESHOLD; depth++) {
+            if (depth >= maxDepth) {
+                DualPivotQuickSortImpl.heapSort(a, left, right);
+                return;
+            }
+            int n = DualPivotQuickSortImpl.partition(a, left, right, bounds);
+            int i = 0;
+            while (i < n && (k < bounds[i] || k > bounds[i + 1])) {
+                i += 2;
+            }
+            if (i == n) {
+                return;
+            }
+            leftmost = leftmost && i == 0;
+            left = bounds[i];
+            right = bounds[i + 1];
+        }
+        if (right > left) {
+            DualPivotQuickSortImpl.insertionSort(a, left, right, leftmost);
+        }
+    }
+
+    /*
+     * double 数组的选择结果和 FloatingPointSortImpl 的排序结果一致：-0.0 < 0.0，NaN 最大。
+     */
+
+    public static double select(double[] a, int k) {
+        return select(a, 0, a.length, k);
+    }
+
+    public static double select(double[] a, int fromIndex, int toIndex, int k) {
+        checkK(a.length, fromIndex, toIndex, k);
+        selectDouble(a, fromIndex, toIndex, k);
+        return a[k];
+    }
+
+    public static void partialSort(double[] a, int k) {
+        partialSort(a, 0, a.length, k);
+    }
+
+    public static void partialSort(double[] a, int fromIndex, int toIndex, int k) {
+        DualPivotQuickSortImpl.rangeCheck(a.length, fromIndex, toIndex);
+        checkCount(toIndex - fromIndex, k);
+        if (k > 0) {
+            selectDouble(a, fromIndex, toIndex, fromIndex + k - 1);
+            FloatingPointSortImpl.sort(a, fromIndex, fromIndex + k);
+        }
+    }
+
+    public static double[] topK(double[] a, int k) {
+        int n = a.length;
+        checkCount(n, k);
+        double[] result = new double[k];
+        if (k > 0) {
+            selectDouble(a, 0, n, n - k);
+            FloatingPointSortImpl.sort(a, n - k, n);
+            for (int i = 0; i < k; i++) {
+                result[i] = a[n - 1 - i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 和 {@link FloatingPointSortImpl#sort(double[], int, int)} 一样，先把 NaN 移到末尾、把 -0.0 替换为 0.0，
+     * 然后用基本类型的比较进行选择。最后按下标顺序把前面若干个 0.0 改回 -0.0：小于等于 a[k] 的元素都在 k 的左边，
+     * 所以恢复之后选择的结果仍然成立。
+     */
+    static void selectDouble(double[] a, int fromIndex, int toIndex, int k) {
+        int end = toIndex, negativeZeros = 0;
+        for (int i = toIndex - 1; i >= fromIndex; i--) {
+            double ai = a[i];
+            if (ai != ai) {
+                a[i] = a[--end];
+                a[end] = ai;
+            } else if (ai == 0.0 && Double.doubleToRawLongBits(ai) < 0) {
+                a[i] = 0.0;
+                negativeZeros++;
+            }
+        }
+
+        // k 落在 NaN 中时，左边的元素都小于 NaN，不需要再选择
+        if (k < end) {
+            select(a, fromIndex, end - 1, k, true);
+        }
+        for (int i = fromIndex; negativeZeros > 0 && i < end; i++) {
+            if (a[i] == 0.0) {
+                a[i] = -0.0;
+                negativeZeros--;
+            }
+        }
+    }
+
+    static void select(double[] a, int left, int right, int k, boolean leftmost) {
+        int maxDepth = DualPivotQuickSortImpl.depthLimit(right - left + 1);
+        int[] bounds = new int[6];
+        for (int depth = 0; right - left + 1 >= DualPivotQuickSortImpl.INSERTION_SORT_THRESHOLD; depth++) {
+            if (depth >= maxDepth) {
+                FloatingPointSortImpl.heapSort(a, left, right);
+                return;
+            }
+            int n = FloatingPointSortImpl.partition(a, left, right, bounds);
+            int i = 0;
+            while (i < n && (k < bounds[i] || k > bounds[i + 1])) {
+                i += 2;
+            }
+            if (i == n) {
+                return;
+            }
+            leftmost = leftmost && i == 0;
+            left = bounds[i];
+            right = bounds[i + 1];
+        }
+        if (right > left) {
+            FloatingPointSortImpl.insertionSort(a, left, right, leftmost);
+        }
+    }
+
+    private static void checkK(int length, int fromIndex, int toIndex, int k) {
+        DualPivotQuickSortImpl.rangeCheck(length, fromIndex, toIndex);
+        if (k < fromIndex || k >= toIndex) {
+            throw new ArrayIndexOutOfBoundsException(k);
+        }
+    }
+
+    private static void checkCount(int n, int k) {
+        if (k < 0 || k > n) {
+            throw new IllegalArgumentException("k(" + k + ") not in [0, " + n + "]");
+        }
+    }
+
+    /**
+     * 流式的 top-K。用大小为 k 的小顶堆保存目前最大的 k 个元素，堆顶是其中最小的；新元素只需要和堆顶比较一次，
+     * 在数据量远大于 k 时绝大多数元素都会被直接丢弃。时间复杂度 O(Nlogk)，空间复杂度 O(k)。
+     * <p>
+     * 实现了 {@link IntConsumer}，可以直接作为 {@code IntStream.forEach} 的参数，也可以逐块读取文件后调用
+     * {@link #accept(int[], int, int)}。
+     */
+    public static final class IntTopK implements IntConsumer {
+        private final int[] heap;
+        private int size;
+
+        public IntTopK(int k) {
+            if (k < 0) {
+                throw new IllegalArgumentException("k(" + k + ") < 0");
+            }
+            heap = new int[k];
+        }
+
+        @Override
+        public void accept(int x) {
+            if (size < heap.length) {
+                siftUp(size++, x);
+            } else if (size > 0 && x > heap[0]) {
+                siftDown(x);
+            }
+        }
+
+        public void accept(int[] a, int fromIndex, int toIndex) {
+            DualPivotQuickSortImpl.rangeCheck(a.length, fromIndex, toIndex);
+            for (int i = fromIndex; i < toIndex; i++) {
+                accept(a[i]);
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * 返回目前最大的 k 个元素（不足 k 个时返回全部），按降序排列。不会改变内部状态，之后还可以继续添加元素。
+         */
+        public int[] result() {
+            int[] r = Arrays.copyOf(heap, size);
+            Arrays.sort(r);
+            for (int i = 0, j = size - 1; i < j; i++, j--) {
+                int t = r[i]; r[i] = r[j]; r[j] = t;
+            }
+            return r;
+        }
+
+        private void siftUp(int i, int x) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                int p = heap[parent];
+                if (x >= p) {
+                    break;
+                }
+                heap[i] = p;
+                i = parent;
+            }
+            heap[i] = x;
+        }
+
+        // 用 x 替换堆顶并下沉
+        private void siftDown(int x) {
+            int i = 0, half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                int c = heap[child];
+                if (child + 1 < size && heap[child + 1] < c) {
+                    c = heap[++child];
+                }
+                if (x <= c) {
+                    break;
+                }
+                heap[i] = c;
+                i = child;
+            }
+            heap[i] = x;
+        }
+    }
+
+    public static final class LongTopK implements LongConsumer {
+        private final long[] heap;
+        private int size;
+
+        public LongTopK(int k) {
+            if (k < 0) {
+                throw new IllegalArgumentException("k(" + k + ") < 0");
+            }
+            heap = new long[k];
+        }
+
+        @Override
+        public void accept(long x) {
+            if (size < heap.length) {
+                siftUp(size++, x);
+            } else if (size > 0 && x > heap[0]) {
+                siftDown(x);
+            }
+        }
+
+        public void accept(long[] a, int fromIndex, int toIndex) {
+            DualPivotQuickSortImpl.rangeCheck(a.length, fromIndex, toIndex);
+            for (int i = fromIndex; i < toIndex; i++) {
+                accept(a[i]);
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public long[] result() {
+            long[] r = Arrays.copyOf(heap, size);
+            Arrays.sort(r);
+            for (int i = 0, j = size - 1; i < j; i++, j--) {
+                long t = r[i]; r[i] = r[j]; r[j] = t;
+            }
+            return r;
+        }
+
+        private void siftUp(int i, long x) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                long p = heap[parent];
+                if (x >= p) {
+                    break;
+                }
+                heap[i] = p;
+                i = parent;
+            }
+            heap[i] = x;
+        }
+
+        // 用 x 替换堆顶并下沉
+        private void siftDown(long x) {
+            int i = 0, half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                long c = heap[child];
+                if (child + 1 < size && heap[child + 1] < c) {
+                    c = heap[++child];
+                }
+                if (x <= c) {
+                    break;
+                }
+                heap[i] = c;
+                i = child;
+            }
+            heap[i] = x;
+        }
+    }
+
+    // NaN 和 -0.0 的顺序和 Double.compare 一致
+    public static final class DoubleTopK implements DoubleConsumer {
+        private final double[] heap;
+        private int size;
+
+        public DoubleTopK(int k) {
+            if (k < 0) {
+                throw new IllegalArgumentException("k(" + k + ") < 0");
+            }
+            heap = new double[k];
+        }
+
+        @Override
+        public void accept(double x) {
+            if (size < heap.length) {
+                siftUp(size++, x);
+            } else if (size > 0 && Double.compare(x, heap[0]) > 0) {
+                siftDown(x);
+            }
+        }
+
+        public void accept(double[] a, int fromIndex, int toIndex) {
+            DualPivotQuickSortImpl.rangeCheck(a.length, fromIndex, toIndex);
+            for (int i = fromIndex; i < toIndex; i++) {
+                accept(a[i]);
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public double[] result() {
+            double[] r = Arrays.copyOf(heap, size);
+            Arrays.sort(r);
+            for (int i = 0, j = size - 1; i < j; i++, j--) {
+                double t = r[i]; r[i] = r[j]; r[j] = t;
+            }
+            return r;
+        }
+
+        private void siftUp(int i, double x) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                double p = heap[parent];
+                if (Double.compare(x, p) >= 0) {
+                    break;
+                }
+                heap[i] = p;
+                i = parent;
+            }
+            heap[i] = x;
+        }
+
+        // 用 x 替换堆顶并下沉
+        private void siftDown(double x) {
+            int i = 0, half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                double c = heap[child];
+                if (child + 1 < size && Double.compare(heap[child + 1], c) < 0) {
+                    c = heap[++child];
+                }
+                if (Double.compare(x, c) <= 0) {
+                    break;
+                }
+                heap[i] = c;
+                i = child;
+            }
+            heap[i] = x;
+        }
+    }
+
+    /**
+     * 选择之后 a[k] 等于排序后的第 k 个元素，左边都小于等于它，右边都大于等于它。
+     */
+    @Test
+    public void testSelect() {
+        Random random = new Random(47);
+        int[] sizes = {1, 2, 3, 46, 47, 48, 100, 287, 1000, 10007, 100000};
+        for (String name : DualPivotQuickSortImpl.SHAPES) {
+            for (int size : sizes) {
+                int[] data = DualPivotQuickSortImpl.shape(name, size, random);
+                int[] sorted = data.clone();
+                Arrays.sort(sorted);
+                for (int k : new int[]{0, size / 4, size / 2, size - 1, random.nextInt(size)}) {
+                    int[] a = data.clone();
+                    assertEquals(sorted[k], select(a, k));
+                    for (int i = 0; i < size; i++) {
+                        assertTrue(i < k ? a[i] <= a[k] : a[i] >= a[k]);
+                    }
+
+                    long[] l = Arrays.stream(data).asLongStream().toArray();
+                    assertEquals(sorted[k], select(l, k));
+                }
+            }
+        }
+
+        // 范围选择不能改动范围之外的元素
+        int[] a = random.ints(1000).toArray();
+        int[] b = a.clone();
+        int[] sorted = Arrays.copyOfRange(a, 100, 900);
+        Arrays.sort(sorted);
+        assertEquals(sorted[300], select(a, 100, 900, 400));
+        assertArrayEquals(Arrays.copyOfRange(b, 0, 100), Arrays.copyOfRange(a, 0, 100));
+        assertArrayEquals(Arrays.copyOfRange(b, 900, 1000), Arrays.copyOfRange(a, 900, 1000));
+
+        // double 的特殊值：逐位和 Arrays.sort 的结果相同
+        double[] special = {Double.NaN, -0.0, 0.0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 1, -1};
+        for (int size : new int[]{1, 7, 100, 10000}) {
+            double[] d = new double[size];
+            for (int i = 0; i < size; i++) {
+                d[i] = special[random.nextInt(special.length)];
+            }
+            double[] expected = d.clone();
+            Arrays.sort(expected);
+            for (int k = 0; k < size; k += Math.max(1, size / 50)) {
+                double[] c = d.clone();
+                assertEquals(Double.doubleToLongBits(expected[k]), Double.doubleToLongBits(select(c, k)));
+                for (int i = 0; i < size; i++) {
+                    assertTrue(i < k ? Double.compare(c[i], c[k]) <= 0 : Double.compare(c[i], c[k]) >= 0);
+                }
+            }
+        }
+
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> select(new int[10], 10));
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> select(new int[10], 2, 5, 1));
+    }
+
+    /**
+     * 部分排序、top-K 和流式 top-K 的结果与完整排序一致。
+     */
+    @Test
+    public void testTopK() {
+        Random random = new Random(47);
+        for (int size : new int[]{0, 1, 10, 100, 1000, 100000}) {
+            int[] data = random.ints(size, -size, size + 1).toArray();
+            int[] sorted = data.clone();
+            Arrays.sort(sorted);
+            for (int k : new int[]{0, Math.min(1, size), size / 10, size / 2, size}) {
+                int[] a = data.clone();
+                partialSort(a, k);
+                assertArrayEquals(Arrays.copyOf(sorted, k), Arrays.copyOf(a, k));
+
+                int[] expected = new int[k];
+                for (int i = 0; i < k; i++) {
+                    expected[i] = sorted[size - 1 - i];
+                }
+                assertArrayEquals(expected, topK(data.clone(), k));
+
+                IntTopK stream = new IntTopK(k);
+                Arrays.stream(data).forEach(stream);
+                assertArrayEquals(expected, stream.result());
+
+                long[] l = Arrays.stream(data).asLongStream().toArray();
+                LongTopK longTopK = new LongTopK(k);
+                Arrays.stream(l).forEach(longTopK);
+                assertArrayEquals(Arrays.stream(expected).asLongStream().toArray(), topK(l, k));
+                assertArrayEquals(topK(l.clone(), k), longTopK.result());
+                long[] lp = l.clone();
+                partialSort(lp, k);
+                assertArrayEquals(Arrays.stream(sorted).asLongStream().limit(k).toArray(), Arrays.copyOf(lp, k));
+
+                double[] d = new double[size];
+                for (int i = 0; i < size; i++) {
+                    d[i] = data[i] % 7 == 0 ? Double.NaN : data[i] == 1 ? -0.0 : data[i] / 3.0;
+                }
+                double[] sortedD = d.clone();
+                Arrays.sort(sortedD);
+                double[] dp = d.clone();
+                partialSort(dp, k);
+                assertArrayEquals(Arrays.copyOf(sortedD, k), Arrays.copyOf(dp, k));
+                double[] expectedD = new double[k];
+                for (int i = 0; i < k; i++) {
+                    expectedD[i] = sortedD[size - 1 - i];
+                }
+                assertArrayEquals(expectedD, topK(d.clone(), k));
+                DoubleTopK doubleTopK = new DoubleTopK(k);
+                Arrays.stream(d).forEach(doubleTopK);
+                assertArrayEquals(expectedD, doubleTopK.result());
+            }
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> topK(new int[10], 11));
+        assertThrows(IllegalArgumentException.class, () -> partialSort(new long[10], -1));
+        assertThrows(IllegalArgumentException.class, () -> new IntTopK(-1));
+    }
+
+    /**
+     * 在 50,000,000 个 int 中找出最大的 100 个以及中位数。
+     */
+    @Test
+    public void testBenchmark() {
+        final int size = 50_000_000, k = 100, rounds = 3;
+        int[] data = new Random(47).ints(size).toArray();
+        int[] a = new int[size];
+        long sort = Long.MAX_VALUE, median = Long.MAX_VALUE, top = Long.MAX_VALUE, stream = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            System.arraycopy(data, 0, a, 0, size);
+            long start = System.nanoTime();
+            Arrays.sort(a);
+            sort = Math.min(sort, System.nanoTime() - start);
+            int expectedMedian = a[size / 2];
+            int[] expectedTop = new int[k];
+            for (int i = 0; i < k; i++) {
+                expectedTop[i] = a[size - 1 - i];
+            }
+
+            System.arraycopy(data, 0, a, 0, size);
+            start = System.nanoTime();
+            int m = select(a, size / 2);
+            median = Math.min(median, System.nanoTime() - start);
+            assertEquals(expectedMedian, m);
+
+            System.arraycopy(data, 0, a, 0, size);
+            start = System.nanoTime();
+            int[] t = topK(a, k);
+            top = Math.min(top, System.nanoTime() - start);
+            assertArrayEquals(expectedTop, t);
+
+            start = System.nanoTime();
+            IntTopK topK = new IntTopK(k);
+            topK.accept(data, 0, size);
+            t = topK.result();
+            stream = Math.min(stream, System.nanoTime() - start);
+            assertArrayEquals(expectedTop, t);
+        }
+        System.out.printf("%-24s%12.2fms%n", "Arrays.sort", sort / 1e6);
+        System.out.printf("%-24s%12.2fms%n", "select(median)", median / 1e6);
+        System.out.printf("%-24s%12.2fms%n", "topK(" + k + ")", top / 1e6);
+        System.out.printf("%-24s%12.2fms%n", "IntTopK(" + k + ")", stream / 1e6);
+
+        /*
+        输出（3 轮取最小值）：
+        Arrays.sort                  6436.37ms
+        select(median)                899.67ms
+        topK(100)                     378.38ms
+        IntTopK(100)                  111.21ms
+
+        求中位数时快速选择比完整排序快 7 倍左右。求 top-100 时快速选择的 k 靠近数组末尾，每次切分丢掉的部分更多，
+        所以比求中位数更快。流式的小顶堆最快：随机数据中第 i 个元素进入堆的概率只有 k/i，
+        绝大多数元素只需要和堆顶比较一次，只读一遍数组、不写数组。但是 k 接近 N 或者数据递增时，
+        每个元素都要进堆，O(Nlogk) 会比快速选择慢。
+         */
+    }
+}
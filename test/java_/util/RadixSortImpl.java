@@ -0,0 +1,389 @@
+package java_.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * int、long 数组的 LSD 基数排序、计数排序，以及根据数据范围自动选择排序策略的 {@link #sort(int[])}。
+ * <p>
+ * JDK 只对 char、short、byte 数组使用计数排序（参见 DualPivotQuickSort.md），因为它们的取值范围固定而且很小。
+ * 对于 int、long 数组，如果实际数据范围很窄（例如 {@link DualPivotQuickSortSimpleImpl#testSort()} 中的 [-10000, 10000)），
+ * 同样可以用 O(N) 的计数排序或基数排序代替 O(NlogN) 的比较排序。
+ * <p>
+ * 基数排序每一趟处理 {@link #RADIX_BITS} 位，比较的 key 为 {@code x - bias}（按无符号数比较）：
+ * <ul>
+ *     <li>bias 为 MIN_VALUE 时，{@code x - MIN_VALUE == x ^ MIN_VALUE}，也就是翻转符号位，负数就排在了正数前面</li>
+ *     <li>bias 为数组最小值时，key 的高位全部为 0，对应的趟数可以直接跳过</li>
+ * </ul>
+ */
+public class RadixSortImpl {
+
+    // 基数排序每一趟处理的位数。2^11 个桶的计数数组为 8KB，可以放进 L1 缓存
+    static final int RADIX_BITS = 11;
+
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    private static final int MASK = RADIX - 1;
+
+    // 如果要排序的数组长度小于这个值，直接使用 Dual-Pivot 快排
+    static final int RADIX_SORT_THRESHOLD = 1 << 11;
+
+    // 如果数据范围小于等于数组长度乘以这个值，使用计数排序。范围再大时计数数组的遍历开销会超过基数排序
+    static final int COUNTING_SORT_RANGE_FACTOR = 1;
+
+    // 计数排序允许的最大数据范围，计数数组最多占用 16MB
+    static final int MAX_COUNTING_SORT_RANGE = 1 << 22;
+
+    /**
+     * 根据数组长度和数据范围自动选择排序策略：
+     * <ol>
+     *     <li>数组长度小于 {@link #RADIX_SORT_THRESHOLD}：Dual-Pivot 快排</li>
+     *     <li>数据范围不超过长度的 {@link #COUNTING_SORT_RANGE_FACTOR} 倍和 {@link #MAX_COUNTING_SORT_RANGE}：计数排序</li>
+     *     <li>否则：以最小值为 bias 的基数排序，趟数由数据范围的位数决定</li>
+     * </ol>
+     * 计数排序需要确切的最小值、最大值，所以这里扫描整个数组而不是抽样，这一趟的开销小于一趟基数排序。
+     */
+    public static void sort(int[] a) {
+        sort(a, 0, a.length);
+    }
+
+    public static void sort(int[] a, int fromIndex, int toIndex) {
+        DualPivotQuickSortImpl.rangeCheck(a.length, fromIndex, toIndex);
+        int n = toIndex - fromIndex;
+        if (n < RADIX_SORT_THRESHOLD) {
+            DualPivotQuickSortImpl.sort(a, fromIndex, toIndex);
+            return;
+        }
+
+        int min = a[fromIndex], max = min;
+        for (int i = fromIndex + 1; i < toIndex; i++) {
+            int ai = a[i];
+            if (ai < min) {
+                min = ai;
+            } else if (ai > max) {
+                max = ai;
+            }
+        }
+        long range = (long) max - min;
+        if (range <= (long) n * COUNTING_SORT_RANGE_FACTOR && range <= MAX_COUNTING_SORT_RANGE) {
+            countingSort(a, fromIndex, toIndex, min, max);
+        } else {
+            radixSort(a, fromIndex, toIndex, min, (int) range, new int[n]);
+        }
+    }
+
+    /**
+     * 对整个数组进行基数排序。
+     */
+    public static void radixSort(int[] a) {
+        radixSort(a, 0, a.length, Integer.MIN_VALUE, -1, new int[a.length]);
+    }
+
+    /**
+     * 对 [fromIndex, toIndex) 进行 LSD 基数排序。
+     *
+     * @param bias 每个元素减去 bias 后按无符号数排序，必须不大于范围内的最小值
+     * @param range 按无符号数解释的 {@code max - bias}，用来确定需要排序的位数
+     * @param work 工作区数组，长度不小于 toIndex - fromIndex
+     */
+    static void radixSort(int[] a, int fromIndex, int toIndex, int bias, int range, int[] work) {
+        int n = toIndex - fromIndex;
+        if (n < 2) {
+            return;
+        }
+        int bits = 32 - Integer.numberOfLeadingZeros(range);
+        int passes = (bits + RADIX_BITS - 1) / RADIX_BITS;
+
+        // 一次扫描统计所有趟的计数
+        int[] count = new int[passes << RADIX_BITS];
+        for (int i = fromIndex; i < toIndex; i++) {
+            int key = a[i] - bias;
+            for (int p = 0, shift = 0; p < passes; p++, shift += RADIX_BITS) {
+                count[(p << RADIX_BITS) + ((key >>> shift) & MASK)]++;
+            }
+        }
+
+        int[] src = a, dst = work;
+        int srcBase = fromIndex, dstBase = 0;
+        for (int p = 0, shift = 0; p < passes; p++, shift += RADIX_BITS) {
+            int base = p << RADIX_BITS;
+            // 所有元素这一位都相同，跳过这一趟
+            if (count[base + (((src[srcBase] - bias) >>> shift) & MASK)] == n) {
+                continue;
+            }
+            // 计数转换成每个桶的起始位置
+            for (int i = base, sum = dstBase; i < base + RADIX; i++) {
+                int c = count[i];
+                count[i] = sum;
+                sum += c;
+            }
+            for (int i = srcBase, end = srcBase + n; i < end; i++) {
+                int v = src[i];
+                dst[count[base + (((v - bias) >>> shift) & MASK)]++] = v;
+            }
+            int[] t = src; src = dst; dst = t;
+            int tb = srcBase; srcBase = dstBase; dstBase = tb;
+        }
+        // 进行了奇数趟，结果在工作区数组中
+        if (src != a) {
+            System.arraycopy(src, srcBase, a, fromIndex, n);
+        }
+    }
+
+    /**
+     * 对 [fromIndex, toIndex) 进行计数排序，所有元素必须在 [min, max] 之内。
+     */
+    static void countingSort(int[] a, int fromIndex, int toIndex, int min, int max) {
+        int[] count = new int[max - min + 1];
+        for (int i = fromIndex; i < toIndex; i++) {
+            count[a[i] - min]++;
+        }
+        for (int v = 0, k = fromIndex; k < toIndex; v++) {
+            for (int s = count[v]; s > 0; s--) {
+                a[k++] = v + min;
+            }
+        }
+    }
+
+    /*
+     * long 数组的排序和 int 数组相同，只是 key 有 64 位。
+     */
+
+    public static void sort(long[] a) {
+        sort(a, 0, a.length);
+    }
+
+    public static void sort(long[] a, int fromIndex, int toIndex) {
+        DualPivotQuickSortImpl.rangeCheck(a.length, fromIndex, toIndex);
+        int n = toIndex - fromIndex;
+        if (n < RADIX_SORT_THRESHOLD) {
+            DualPivotQuickSortImpl.sort(a, fromIndex, toIndex);
+            return;
+        }
+
+        long min = a[fromIndex], max = min;
+        for (int i = fromIndex + 1; i < toIndex; i++) {
+            long ai = a[i];
+            if (ai < min) {
+                min = ai;
+            } else if (ai > max) {
+                max = ai;
+            }
+        }
+        // max - min 可能溢出，按无符号数比较
+        long range = max - min;
+        if (Long.compareUnsigned(range, Math.min((long) n * COUNTING_SORT_RANGE_FACTOR,
+                MAX_COUNTING_SORT_RANGE)) <= 0) {
+            countingSort(a, fromIndex, toIndex, min, (int) range);
+        } else {
+            radixSort(a, fromIndex, toIndex, min, range, new long[n]);
+        }
+    }
+
+    public static void radixSort(long[] a) {
+        radixSort(a, 0, a.length, Long.MIN_VALUE, -1L, new long[a.length]);
+    }
+
+    static void radixSort(long[] a, int fromIndex, int toIndex, long bias, long range, long[] work) {
+        int n = toIndex - fromIndex;
+        if (n < 2) {
+            return;
+        }
+        int bits = 64 - Long.numberOfLeadingZeros(range);
+        int passes = (bits + RADIX_BITS - 1) / RADIX_BITS;
+
+        int[] count = new int[passes << RADIX_BITS];
+        for (int i = fromIndex; i < toIndex; i++) {
+            long key = a[i] - bias;
+            for (int p = 0, shift = 0; p < passes; p++, shift += RADIX_BITS) {
+                count[(p << RADIX_BITS) + (int) ((key >>> shift) & MASK)]++;
+            }
+        }
+
+        long[] src = a, dst = work;
+        int srcBase = fromIndex, dstBase = 0;
+        for (int p = 0, shift = 0; p < passes; p++, shift += RADIX_BITS) {
+            int base = p << RADIX_BITS;
+            if (count[base + (int) (((src[srcBase] - bias) >>> shift) & MASK)] == n) {
+                continue;
+            }
+            for (int i = base, sum = dstBase; i < base + RADIX; i++) {
+                int c = count[i];
+                count[i] = sum;
+                sum += c;
+            }
+            for (int i = srcBase, end = srcBase + n; i < end; i++) {
+                long v = src[i];
+                dst[count[base + (int) (((v - bias) >>> shift) & MASK)]++] = v;
+            }
+            long[] t = src; src = dst; dst = t;
+            int tb = srcBase; srcBase = dstBase; dstBase = tb;
+        }
+        if (src != a) {
+            System.arraycopy(src, srcBase, a, fromIndex, n);
+        }
+    }
+
+    /**
+     * 所有元素必须在 [min, min + range] 之内。
+     */
+    static void countingSort(long[] a, int fromIndex, int toIndex, long min, int range) {
+        int[] count = new int[range + 1];
+        for (int i = fromIndex; i < toIndex; i++) {
+            count[(int) (a[i] - min)]++;
+        }
+        for (int v = 0, k = fromIndex; k < toIndex; v++) {
+            for (int s = count[v]; s > 0; s--) {
+                a[k++] = v + min;
+            }
+        }
+    }
+
+    /**
+     * 测试基数排序、计数排序和自动选择在各种数据范围下的正确性。
+     */
+    @Test
+    public void testSort() {
+        Random random = new Random(47);
+        int[] sizes = {0, 1, 2, 1000, 1024, 5000, 100000};
+        int[][] ranges = {{-10000, 10000}, {0, 10}, {-5, 5}, {Integer.MIN_VALUE, Integer.MAX_VALUE},
+                {Integer.MAX_VALUE - 100, Integer.MAX_VALUE}, {Integer.MIN_VALUE, Integer.MIN_VALUE + 100}};
+        for (int size : sizes) {
+            for (int[] range : ranges) {
+                int[] a = random.ints(size, range[0], range[1]).toArray();
+                int[] expected = a.clone();
+                Arrays.sort(expected);
+
+                int[] b = a.clone();
+                sort(b);
+                assertArrayEquals(expected, b);
+                b = a.clone();
+                radixSort(b);
+                assertArrayEquals(expected, b);
+                b = a.clone();
+                sort(b, 0, size);
+                assertArrayEquals(expected, b);
+
+                long[] la = random.longs(size, range[0], range[1]).toArray();
+                long[] lexpected = la.clone();
+                Arrays.sort(lexpected);
+                long[] lb = la.clone();
+                sort(lb);
+                assertArrayEquals(lexpected, lb);
+                lb = la.clone();
+                radixSort(lb);
+                assertArrayEquals(lexpected, lb);
+            }
+            long[] la = random.longs(size).toArray();
+            long[] lexpected = la.clone();
+            Arrays.sort(lexpected);
+            sort(la);
+            assertArrayEquals(lexpected, la);
+
+            la = random.longs(size, Long.MAX_VALUE - 50, Long.MAX_VALUE).toArray();
+            lexpected = la.clone();
+            Arrays.sort(lexpected);
+            sort(la);
+            assertArrayEquals(lexpected, la);
+        }
+
+        int[] a = random.ints(10000, -10000, 10000).toArray();
+        int[] expected = a.clone();
+        Arrays.sort(expected, 123, 9000);
+        sort(a, 123, 9000);
+        assertArrayEquals(expected, a);
+    }
+
+    /**
+     * 比较不同数组长度、数据范围下各种策略的耗时（ns/元素），找出交叉点。
+     */
+    @Test
+    public void testCrossover() {
+        final int rounds = 5;
+        Random random = new Random(47);
+        int[] sizes = {100, 1_000, 4_000, 10_000, 100_000, 1_000_000, 10_000_000};
+        long[] ranges = {1L << 8, 20_000, 1L << 24, 1L << 32};
+        System.out.printf("%-10s%-12s%10s%10s%12s%12s%12s%n",
+                "size", "range", "counting", "radix", "dual-pivot", "Arrays", "dispatch");
+        for (int size : sizes) {
+            for (long range : ranges) {
+                int lo = (int) -(range / 2);
+                int[] data = new int[size];
+                for (int i = 0; i < size; i++) {
+                    data[i] = (int) (lo + (long) (random.nextDouble() * range));
+                }
+                int min = Arrays.stream(data).min().getAsInt();
+                int max = Arrays.stream(data).max().getAsInt();
+                int[] work = new int[size];
+
+                double counting = range <= MAX_COUNTING_SORT_RANGE
+                        ? time(data, rounds, a -> countingSort(a, 0, a.length, min, max)) : Double.NaN;
+                double radix = time(data, rounds, a -> radixSort(a, 0, a.length, min, max - min, work));
+                double dualPivot = time(data, rounds, DualPivotQuickSortImpl::sort);
+                double jdk = time(data, rounds, Arrays::sort);
+                double dispatch = time(data, rounds, RadixSortImpl::sort);
+                System.out.printf("%-10d%-12d%10.2f%10.2f%12.2f%12.2f%12.2f%n",
+                        size, range, counting, radix, dualPivot, jdk, dispatch);
+            }
+        }
+
+        /*
+        输出（ns/元素，5 轮取最小值）：
+        size      range         counting     radix  dual-pivot      Arrays    dispatch
+        100       256              88.32    555.22      202.85      219.85      203.44
+        100       20000          1365.55   1253.52      275.83      267.39      328.00
+        100       16777216           NaN   1613.33      217.66      271.90      242.56
+        100       4294967296         NaN   2056.23       70.34      230.50      102.11
+        1000      256               9.70     19.29       62.14      332.28       48.10
+        1000      20000            98.22     32.50       46.21       45.88       48.32
+        1000      16777216           NaN     46.92       48.66       64.59       79.44
+        1000      4294967296         NaN     65.28       65.42       57.02       69.19
+        4000      256               7.27     15.35       81.14       88.66       29.62
+        4000      20000            39.99     26.84      111.36       93.95       52.01
+        4000      16777216           NaN     38.73      115.21       82.87       50.12
+        4000      4294967296         NaN     26.00      108.63       86.28       32.43
+        10000     256               2.84     15.08       87.32       67.37        8.28
+        10000     20000            22.05     25.69      127.86      135.39       31.77
+        10000     16777216           NaN     37.79      152.29       89.72       29.96
+        10000     4294967296         NaN     34.83      110.88      140.87       27.77
+        100000    256               2.13     17.14      139.67      158.06        3.87
+        100000    20000             5.45     24.06      209.21      275.71        6.26
+        100000    16777216           NaN     66.74      191.36       94.92       32.40
+        100000    4294967296         NaN     19.86       99.61       90.75       19.34
+        1000000   256               1.53      6.73       51.78       47.02        3.07
+        1000000   20000             2.69     12.40       88.64       86.49        4.65
+        1000000   16777216           NaN     17.69      112.14      118.66       23.30
+        1000000   4294967296         NaN     23.48      123.54       96.90       26.43
+        10000000  256               2.45      9.58       52.04       47.03        3.38
+        10000000  20000             2.83     13.55       84.16       83.78        2.89
+        10000000  16777216           NaN     20.49      134.44      116.29       23.75
+        10000000  4294967296         NaN     26.05      120.01      112.25       28.81
+
+        - 计数排序在数据范围不超过数组长度时最快，范围更大时遍历计数数组的开销超过了基数排序
+        - 基数排序在几千个元素以上就快于比较排序，数据范围越窄需要的趟数越少
+        - 几百个元素以下基数排序固定的计数数组开销太大，Dual-Pivot 快排更快
+         */
+    }
+
+    interface IntArraySorter {
+        void sort(int[] a);
+    }
+
+    /**
+     * 返回多轮中最快一轮的 ns/元素。
+     */
+    static double time(int[] data, int rounds, IntArraySorter sorter) {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < rounds; r++) {
+            int[] a = data.clone();
+            long start = System.nanoTime();
+            sorter.sort(a);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return (double) best / data.length;
+    }
+}
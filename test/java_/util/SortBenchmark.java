@@ -0,0 +1,395 @@
+package java_.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 项目中所有 int 数组排序实现的基准测试，以及可以复用的测试数据生成器。
+ * <p>
+ * {@link DualPivotQuickSortSimpleImpl#testSort()} 只测试了均匀随机的数据。而排序算法的差别主要体现在特殊的数据形态上：
+ * 有序、逆序、大量重复的数据会让简单的快排退化，部分有序的数据是 TimSort 的优势，
+ * 精心构造的输入可以让固定取样位置的快排每次只分出很少的元素（{@link #dualPivotKiller(int, int)}）。
+ * <p>
+ * {@link #testBenchmark()} 对每种数据形态、从 10 开始的每种规模，输出每个排序实现的 ns/元素 和 字节/元素（分配量）。
+ * 默认只测到 10^4，和其他测试一起运行时不会太久；更大的规模通过系统属性 {@code sort.bench.maxSize} 打开，
+ * 例如 {@code -Dsort.bench.maxSize=100000000}，10^8 需要 {@code -Xmx2g} 以上的堆。
+ */
+public class SortBenchmark {
+
+    static final String[] SHAPES = {"random", "sorted", "reversed", "sawtooth", "organ-pipe", "few-unique",
+            "all-equal", "sorted-runs", "dpq-killer"};
+
+    static final String[] SORTERS = {"Arrays.sort", "Arrays.parallelSort", "DPQSimple", "DPQ", "ParallelDPQ",
+            "RadixSort.sort", "radixSort", "IntTimSort"};
+
+    // 一次排序超过这个时间后，不再测试这个排序实现在这种数据形态下更大的规模
+    private static final long TIME_BUDGET_NANOS = 2_000_000_000L;
+
+    /**
+     * 生成指定形态的数据。
+     */
+    static int[] generate(String shape, int n, Random random) {
+        switch (shape) {
+            case "random":
+                return random.ints(n).toArray();
+            case "sorted":
+                return sorted(n);
+            case "reversed":
+                return reversed(n);
+            case "sawtooth":
+                return sawtooth(n, 1 + (int) Math.sqrt(n));
+            case "organ-pipe":
+                return organPipe(n);
+            case "few-unique":
+                return random.ints(n, 0, 8).toArray();
+            case "all-equal":
+                return new int[n];
+            case "sorted-runs":
+                return sortedRuns(n, 1 + 2 * (int) Math.sqrt(n), random);
+            case "dpq-killer":
+                return dualPivotKiller(n, DualPivotQuickSortImpl.depthLimit(n));
+            default:
+                throw new IllegalArgumentException(shape);
+        }
+    }
+
+    static int[] sorted(int n) {
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = i;
+        }
+        return a;
+    }
+
+    static int[] reversed(int n) {
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = n - i;
+        }
+        return a;
+    }
+
+    /**
+     * 长度为 period 的递增序列重复出现：0, 1, ..., period - 1, 0, 1, ...
+     */
+    static int[] sawtooth(int n, int period) {
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = i % period;
+        }
+        return a;
+    }
+
+    /**
+     * 先递增再递减：0, 1, ..., n/2, ..., 1
+     */
+    static int[] organPipe(int n) {
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = Math.min(i, n - i);
+        }
+        return a;
+    }
+
+    /**
+     * 随机数据被分成长度在 [1, maxRun] 之间的若干段，每段内部有序。
+     */
+    static int[] sortedRuns(int n, int maxRun, Random random) {
+        int[] a = random.ints(n).toArray();
+        for (int i = 0; i < n; ) {
+            int end = Math.min(n, i + 1 + random.nextInt(maxRun));
+            Arrays.sort(a, i, end);
+            i = end;
+        }
+        return a;
+    }
+
+    /**
+     * 针对 {@link DualPivotQuickSortImpl} 的最坏情况输入，是 [0, n) 的一个排列。JDK 7、8 的 DualPivotQuickSort
+     * 使用相同的取样位置和切分过程，同样适用。
+     * <p>
+     * 思路来自 McIlroy 的 "A Killer Adversary for Quicksort"：一开始所有元素的值都是待定的，在真实的切分过程上模拟，
+     * 每次切分前把 5 个取样位置中 e1、e2 上的元素赋为剩下最小的两个值，e4、e5 上的元素赋为剩下最大的两个值。
+     * 这样两个切分点分别是第 2 小和第 2 大的元素，每次切分只能分出 4 个元素，中间部分仍然全是待定元素。
+     * <p>
+     * 模拟时待定元素的值就是它的原始下标，已经赋值的元素编码到 int 的两端，都在待定元素的值域之外。
+     * 切分只会拿元素和切分点比较，所以编码后的数组和最终的数组在切分中的移动完全相同，
+     * 切分后根据值就能知道每个待定元素移动到了哪里。
+     * <p>
+     * 每模拟一次切分要扫描一遍中间部分，模拟全部 n/4 次切分需要 O(N^2) 时间，所以只模拟前 steps 次。
+     * steps 取 {@link DualPivotQuickSortImpl#depthLimit(int)} 时正好让 DualPivotQuickSortImpl 切换到堆排序，
+     * 剩下的元素按位置顺序赋值。
+     */
+    static int[] dualPivotKiller(int n, int steps) {
+        int[] cur = sorted(n), result = new int[n], bounds = new int[6];
+        int lo = 0, hi = n - 1, left = 0, right = n - 1;
+        for (int step = 0; step < steps; step++) {
+            int length = right - left + 1;
+            if (length < DualPivotQuickSortImpl.INSERTION_SORT_THRESHOLD) {
+                break;
+            }
+            // 和 DualPivotQuickSortImpl.partition 相同的取样位置
+            int seventh = (length >> 3) + (length >> 6) + 1;
+            int e3 = (left + right) >>> 1;
+            int e2 = e3 - seventh, e1 = e2 - seventh, e4 = e3 + seventh, e5 = e4 + seventh;
+
+            result[cur[e1]] = lo; cur[e1] = Integer.MIN_VALUE + lo++;
+            result[cur[e2]] = lo; cur[e2] = Integer.MIN_VALUE + lo++;
+            result[cur[e5]] = hi; cur[e5] = Integer.MAX_VALUE - (n - 1 - hi--);
+            result[cur[e4]] = hi; cur[e4] = Integer.MAX_VALUE - (n - 1 - hi--);
+
+            DualPivotQuickSortImpl.partition(cur, left, right, bounds);
+            left = bounds[4];
+            right = bounds[5];
+        }
+        // 剩下的待定元素按位置顺序赋值
+        for (int i = 0; i < n; i++) {
+            if (cur[i] >= 0 && cur[i] < n) {
+                result[cur[i]] = lo++;
+            }
+        }
+        return result;
+    }
+
+    static RadixSortImpl.IntArraySorter sorter(String name) {
+        switch (name) {
+            case "Arrays.sort":
+                return Arrays::sort;
+            case "Arrays.parallelSort":
+                return Arrays::parallelSort;
+            case "DPQSimple":
+                return DualPivotQuickSortSimpleImpl::sort;
+            case "DPQ":
+                return DualPivotQuickSortImpl::sort;
+            case "ParallelDPQ":
+                return ParallelDualPivotQuickSort::parallelSort;
+            case "RadixSort.sort":
+                return RadixSortImpl::sort;
+            case "radixSort":
+                return RadixSortImpl::radixSort;
+            case "IntTimSort":
+                return IntTimSort::sort;
+            default:
+                throw new IllegalArgumentException(name);
+        }
+    }
+
+    /**
+     * 生成器的基本性质，以及 dpq-killer 确实让每次切分只分出 4 个元素。
+     */
+    @Test
+    public void testGenerators() {
+        Random random = new Random(47);
+        for (String shape : SHAPES) {
+            for (int n : new int[]{0, 1, 10, 1000, 100000}) {
+                int[] a = generate(shape, n, random);
+                assertEquals(n, a.length);
+                int[] expected = a.clone();
+                Arrays.sort(expected);
+                for (String name : SORTERS) {
+                    // 简单实现在有序数据上递归太深，大数组会栈溢出
+                    if (n > 1000 && name.equals("DPQSimple")) {
+                        continue;
+                    }
+                    int[] b = a.clone();
+                    sorter(name).sort(b);
+                    assertArrayEquals(expected, b, name + " on " + shape);
+                }
+            }
+        }
+
+        int n = 100000;
+        int[] killer = dualPivotKiller(n, 10);
+        assertArrayEquals(sorted(n), Arrays.stream(killer).sorted().toArray());
+        int[] bounds = new int[6];
+        int left = 0, right = n - 1;
+        for (int i = 0; i < 10; i++) {
+            assertEquals(6, DualPivotQuickSortImpl.partition(killer, left, right, bounds));
+            assertEquals(left + 2, bounds[4]);
+            assertEquals(right - 2, bounds[5]);
+            left = bounds[4];
+            right = bounds[5];
+        }
+    }
+
+    /**
+     * 对每种数据形态和规模，输出每个排序实现的 ns/元素 和 字节/元素。
+     * <p>
+     * 小规模时一次排序太快，无法准确计时，所以每次计时连续排序多个副本，使得每次计时至少处理 10^6 个元素，
+     * 取 3 次计时中的最小值。分配量统计所有线程，包括并行排序的工作线程。
+     */
+    @Test
+    public void testBenchmark() {
+        int maxSize = Integer.getInteger("sort.bench.maxSize", 10_000);
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        for (String shape : SHAPES) {
+            System.out.println("== " + shape + "（ns/元素 字节/元素，- 表示超过时间预算后跳过，SOE 表示栈溢出）");
+            System.out.printf("%-20s", "sorter");
+            for (int n = 10; n <= maxSize; n *= 10) {
+                System.out.printf("%14s", "10^" + (int) Math.log10(n));
+            }
+            System.out.println();
+
+            for (String name : SORTERS) {
+                RadixSortImpl.IntArraySorter sorter = sorter(name);
+                System.out.printf("%-20s", name);
+                boolean skip = false;
+                for (int n = 10; n <= maxSize; n *= 10) {
+                    if (skip) {
+                        System.out.printf("%14s", "-");
+                        continue;
+                    }
+                    int[] data = generate(shape, n, new Random(47));
+                    int copies = Math.max(1, 1_000_000 / n);
+                    int[][] work = new int[copies][];
+                    long best = Long.MAX_VALUE, allocated = Long.MAX_VALUE;
+                    try {
+                        for (int r = 0; r < 3 && !skip; r++) {
+                            for (int c = 0; c < copies; c++) {
+                                work[c] = data.clone();
+                            }
+                            long bytes = totalAllocatedBytes(bean);
+                            long start = System.nanoTime();
+                            for (int c = 0; c < copies; c++) {
+                                sorter.sort(work[c]);
+                            }
+                            long time = System.nanoTime() - start;
+                            allocated = Math.min(allocated, totalAllocatedBytes(bean) - bytes);
+                            best = Math.min(best, time);
+                            skip = time > TIME_BUDGET_NANOS;
+                        }
+                        double elements = (double) n * copies;
+                        System.out.printf("%8.1f %5.1f", best / elements, allocated / elements);
+                    } catch (StackOverflowError e) {
+                        System.out.printf("%14s", "SOE");
+                        skip = true;
+                    }
+                }
+                System.out.println();
+            }
+        }
+
+        /*
+        输出（-Dsort.bench.maxSize=1000000，单核机器，所以并行排序和顺序排序没有差别）：
+        == random（ns/元素 字节/元素，- 表示超过时间预算后跳过，SOE 表示栈溢出）
+        sorter                        10^1          10^2          10^3          10^4          10^5          10^6
+        Arrays.sort             14.2   0.0    69.2   0.0    36.3   0.0    74.9   0.0    97.2   0.0   116.5   0.0
+        Arrays.parallelSort      9.7   0.0    28.0   0.0    20.6   0.0    73.9   0.0    93.7   0.0   110.7   0.0
+        DPQSimple               21.9   0.0    10.0   0.0    15.5   0.0    77.8   0.0   121.0   0.0   141.1   0.0
+        DPQ                     12.8  32.0    43.8   5.5    21.2   0.7    82.9   0.1   110.1   0.0   117.6   0.0
+        ParallelDPQ             18.0  36.0    12.7   5.5    16.4   0.7    84.2   0.1    97.8   0.0   107.7   0.0
+        RadixSort.sort          11.7  36.0     8.1   5.5    18.2   0.7    18.7   6.5    19.5   4.2    28.8   4.0
+        radixSort              572.7 2464.8    76.2 250.1    17.5  28.6    15.0   6.5    17.1   4.2    27.6   4.0
+        IntTimSort              15.7  43.2    42.0   8.4   132.5   4.3   133.3   5.3   160.8   4.6   196.0   4.1
+        == sorted（ns/元素 字节/元素，- 表示超过时间预算后跳过，SOE 表示栈溢出）
+        sorter                        10^1          10^2          10^3          10^4          10^5          10^6
+        Arrays.sort              1.8   0.0     8.0   0.0     3.7   0.0     9.2   0.0     5.1   0.0     2.1   0.0
+        Arrays.parallelSort      1.8   0.0     0.7   0.0     0.5   0.0     0.6   0.0     0.6   0.0     0.6   0.0
+        DPQSimple                9.0   0.0    57.7   0.0   521.9   0.0  5472.1   0.0             -             -
+        DPQ                     10.6  36.0     3.0   5.5     6.5   0.7     8.7   0.1    11.3   0.0    13.0   0.0
+        ParallelDPQ             20.9  36.0     3.0   5.5     5.7   0.7     7.8   0.1    11.8   0.0    14.8   0.0
+        RadixSort.sort          10.7  36.0     3.5   5.5     7.3   0.7     5.4   4.0     5.4   4.0     5.3   4.0
+        radixSort              278.8 2464.8    40.0 250.1    16.1  28.6    15.4   6.5    21.8   4.2    26.2   4.0
+        IntTimSort              24.4  48.0     1.6   4.8     1.0   0.5     1.1   0.0     0.8   0.0     1.0   0.0
+        == reversed（ns/元素 字节/元素，- 表示超过时间预算后跳过，SOE 表示栈溢出）
+        sorter                        10^1          10^2          10^3          10^4          10^5          10^6
+        Arrays.sort              6.9   0.0    15.9   0.0     1.2   0.0     1.1   0.0     1.3   0.0     0.9   0.0
+        Arrays.parallelSort      4.4   0.0     1.1   0.0     1.1   0.0     1.0   0.0     1.2   0.0     1.3   0.0
+        DPQSimple                9.7   0.0    55.2   0.0   549.5   0.0  5671.1   0.0             -             -
+        DPQ                     12.7  36.0     5.9   5.5     6.7   0.7     9.4   0.1    14.3   0.0    17.3   0.0
+        ParallelDPQ             16.1  36.0     6.7   5.5     5.7   0.7    11.5   0.1    14.7   0.0    11.3   0.0
+        RadixSort.sort          12.6  36.0     4.2   5.5     8.4   0.7     3.2   4.0     4.0   4.0     3.7   4.0
+        radixSort              273.2 2464.8    40.6 250.1    17.4  28.6    14.4   6.5    28.0   4.2    30.2   4.0
+        IntTimSort              14.7  48.0     6.5   4.8     2.0   0.5     1.9   0.0     2.0   0.0     1.9   0.0
+        == sawtooth（ns/元素 字节/元素，- 表示超过时间预算后跳过，SOE 表示栈溢出）
+        sorter                        10^1          10^2          10^3          10^4          10^5          10^6
+        Arrays.sort              8.2   0.0    18.5   0.0    10.2   0.5    25.1   0.1    30.1   4.0    21.3   4.0
+        Arrays.parallelSort      4.1   0.0     8.5   0.0    11.9   0.5    25.8   0.1    19.9   4.0    22.5   4.0
+        DPQSimple                7.8   0.0    17.0   0.0    24.2   0.0    42.7   0.0    57.3   0.0    77.2   0.0
+        DPQ                     11.4  36.0    11.8   5.5     9.5   0.7    16.5   0.1    23.5   0.0    25.1   0.0
+        ParallelDPQ             11.0  36.0     9.3   5.5     9.2   0.7    16.7   0.1    23.8   0.0    25.1   0.0
+        RadixSort.sort          11.0  36.0     8.8   5.5     9.4   0.7     3.0   0.0     3.0   0.0     3.2   0.0
+        radixSort              265.7 2464.8    37.6 250.1    15.9  28.6    11.4   6.5    11.4   4.2    15.1   4.0
+        IntTimSort              15.4  48.0    18.8   8.4    27.1   4.5    36.4   3.3    17.3   4.6    18.2   4.1
+        == organ-pipe（ns/元素 字节/元素，- 表示超过时间预算后跳过，SOE 表示栈溢出）
+        sorter                        10^1          10^2          10^3          10^4          10^5          10^6
+        Arrays.sort              3.8   0.0    13.7   5.3     4.2   4.5     3.9   4.1     3.9   4.0     4.0   4.0
+        Arrays.parallelSort      3.9   0.0    15.7   5.3     4.3   4.5     3.9   4.1     4.6   4.0     4.1   4.0
+        DPQSimple                8.7   0.0    21.2   0.0    44.0   0.0    81.6   0.0   121.4   0.0   153.0   0.0
+        DPQ                     12.4  36.0     9.2   5.5    12.9   0.7    22.9   0.1    29.9   0.0    34.0   0.0
+        ParallelDPQ             11.6  36.0    10.9   5.5    10.3   0.7    28.5   0.1    34.0   0.0    35.1   0.0
+        RadixSort.sort          11.3  36.0    10.2   5.5    11.6   0.7     4.1   2.0     4.0   2.0     4.1   2.0
+        radixSort              282.2 2464.8    50.4 250.1    16.9  28.6    10.0   6.5    11.5   4.2    20.8   4.0
+        IntTimSort              30.9  48.0    10.4   7.0     5.9   2.5     5.5   2.0     5.4   2.0     5.6   2.0
+        == few-unique（ns/元素 字节/元素，- 表示超过时间预算后跳过，SOE 表示栈溢出）
+        sorter                        10^1          10^2          10^3          10^4          10^5          10^6
+        Arrays.sort              2.8   0.0     5.8   0.0     4.9   0.0    44.4   0.0    41.8   0.0    29.8   0.0
+        Arrays.parallelSort      2.8   0.0     5.8   0.0     4.2   0.0    12.4   0.0    15.4   0.0    15.4   0.0
+        DPQSimple                5.5   0.0     9.1   0.0    14.7   0.0    27.4   0.0    39.5   0.0    45.1   0.0
+        DPQ                      9.4  36.0     5.3   5.5     4.1   0.7     9.9   0.1    14.7   0.0    16.5   0.0
+        ParallelDPQ             10.5  36.0     8.0   5.5     6.5   0.7    16.1   0.1    19.0   0.0    19.4   0.0
+        RadixSort.sort          12.8  36.0     8.8   5.5     6.2   0.7     3.5   0.0     3.3   0.0     3.4   0.0
+        radixSort              283.2 2464.8    40.4 250.1    17.0  28.6    12.3   6.5    11.7   4.2    12.4   4.0
+        IntTimSort              17.1  48.0    24.9   8.4    36.2   4.5    82.6   5.3    81.7   4.6    83.8   4.1
+        == all-equal（ns/元素 字节/元素，- 表示超过时间预算后跳过，SOE 表示栈溢出）
+        sorter                        10^1          10^2          10^3          10^4          10^5          10^6
+        Arrays.sort              2.0   0.0     0.8   0.0     0.6   0.0     0.6   0.0     0.6   0.0     0.5   0.0
+        Arrays.parallelSort      2.0   0.0     0.7   0.0     0.5   0.0     0.6   0.0     0.6   0.0     0.6   0.0
+        DPQSimple                7.3   0.0    13.2   0.0    21.7   0.0    30.0   0.0    37.0   0.0    44.9   0.0
+        DPQ                     10.4  36.0     2.1   5.5     1.5   0.7     1.4   0.1     1.4   0.0     1.2   0.0
+        ParallelDPQ              8.6  36.0     1.8   5.5     1.6   0.7     1.4   0.1     1.4   0.0     1.3   0.0
+        RadixSort.sort           8.6  36.0     1.8   5.5     1.6   0.7     5.1   0.0     5.0   0.0     5.0   0.0
+        radixSort              173.9 2464.8    24.3 250.1    13.7  28.6     8.9   6.5     7.8   4.2     8.1   4.0
+        IntTimSort              19.7  48.0     1.4   4.8     0.9   0.5     0.7   0.0     0.8   0.0     0.7   0.0
+        == sorted-runs（ns/元素 字节/元素，- 表示超过时间预算后跳过，SOE 表示栈溢出）
+        sorter                        10^1          10^2          10^3          10^4          10^5          10^6
+        Arrays.sort              5.3   0.0    13.2   5.3    19.7   0.0    60.1   0.1    64.8   4.0    76.8   4.0
+        Arrays.parallelSort      4.1   0.0    13.6   5.3    19.7   0.0    61.8   0.1    65.2   4.0    74.5   4.0
+        DPQSimple                7.6   0.0    16.5   0.0    23.0   0.0    72.5   0.0    87.5   0.0   106.7   0.0
+        DPQ                     10.1  36.0     6.8   5.5    13.8   0.7    48.2   0.1    57.1   0.0    66.6   0.0
+        ParallelDPQ              7.8  36.0     7.3   5.5    15.8   0.7    43.3   0.1    57.3   0.0    76.0   0.0
+        RadixSort.sort          10.9  36.0     9.6   5.5    14.3   0.7    11.8   6.5    12.7   4.2    20.4   4.0
+        radixSort              410.2 2464.8    63.3 250.1    15.3  28.6    10.4   6.5    11.6   4.2    16.9   4.0
+        IntTimSort              12.5  48.0    12.5   8.4    22.1   4.5    58.8   5.1    77.4   4.6    86.4   4.1
+        == dpq-killer（ns/元素 字节/元素，- 表示超过时间预算后跳过，SOE 表示栈溢出）
+        sorter                        10^1          10^2          10^3          10^4          10^5          10^6
+        Arrays.sort              1.9   0.0     9.2   0.0    18.6   0.0    23.2   0.0    15.2   1.9     7.3   1.9
+        Arrays.parallelSort      1.9   0.0     9.3   0.0     8.2   0.0    13.3   0.0     9.0   1.9     7.2   1.9
+        DPQSimple               10.1   0.0    25.2   0.0   105.4   0.0   843.5   0.0  8542.1   0.0             -
+        DPQ                      9.9  36.0    35.6   5.5   108.9   0.7   126.5   0.1   187.2   0.0   208.8   0.0
+        ParallelDPQ             10.5  36.0    40.6   5.5    89.9   0.7   163.5   0.1   179.7   0.0   229.4   0.0
+        RadixSort.sort          10.2  36.0    28.3   5.5   114.8   0.7     5.0   4.0     4.5   4.0     4.2   4.0
+        radixSort              276.6 2464.8    43.7 250.1    16.6  28.6    14.3   6.5    22.7   4.2    23.2   4.0
+        IntTimSort              26.9  48.0    24.1   6.2    10.0   1.7     1.7   0.9     1.0   0.7     1.2   1.0
+
+        结论：
+        - 10^3 以下的数字受 JIT 预热和计时精度影响较大，只能参考量级。
+        - 随机数据：RadixSort.sort 在 10^4 以上比比较排序快 4 倍左右，代价是 n 个 int 的工作区（4 字节/元素）；
+          单独的 radixSort 在 10^2 以下被计数数组的初始化拖慢，所以 RadixSort.sort 对小数组使用 DPQ。
+        - 有序、逆序、全部相同：TimSort（Arrays.sort 内部的有序片段检测也是一样）只需要一次扫描，不到 1ns/元素。
+        - DPQSimple 在有序、逆序和 dpq-killer 上退化为 O(N^2)，10^4 时已经是 5μs/元素。
+        - dpq-killer 让 DPQ 每次切分只分出 4 个元素，直到切分深度达到上限后切换到堆排序，仍然是 O(NlogN)，
+          但比随机数据慢 2 倍多。同样的输入对 JDK 17 的 Arrays.sort 无效，它的取样和切分方式已经不同。
+        - 大量重复（few-unique、sawtooth）时，RadixSort.sort 选择计数排序，3ns/元素左右且不需要工作区。
+         */
+    }
+
+    private static long totalAllocatedBytes(com.sun.management.ThreadMXBean bean) {
+        long sum = 0;
+        for (long bytes : bean.getThreadAllocatedBytes(bean.getAllThreadIds())) {
+            // 线程已经结束时返回 -1
+            if (bytes > 0) {
+                sum += bytes;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,527 @@
+package java_.util.concurrent;
+
+import java_.util.LongLongHashMap;
+import java_.util.concurrent.atomic.StripedLongCounter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * 线程安全的 {@code long -> long} 哈希表，用来代替 {@code ConcurrentHashMap<Long, Long>}。
+ *
+ * <p>{@code ConcurrentHashMap} 的每个条目是一个 {@code Node} 加上两个 {@code Long}，大约 80 字节，
+ * 几亿个条目会让每次 GC 都要遍历几亿个对象。这里的键和值交替存放在一个 {@link AtomicLongArray} 中
+ * （和 {@link LongLongHashMap} 相同的线性探测），整个表只有一个大数组，GC 不需要逐个标记条目。
+ *
+ * <p>并发控制参考了 {@code ConcurrentHashMap}（见 ConcurrentHashMap.md）：
+ * <ul>
+ *     <li>读不加锁，只有 volatile 读</li>
+ *     <li>写用 CAS 领取键的槽位和修改值。一个槽位的键被写入后就不会再改变，删除只是把值设为 {@link #ABSENT}，
+ *     所以不需要锁住整个探测链，查找也不会因为并发删除而错过后面的键。被删除的键占用的槽位在扩容时回收</li>
+ *     <li>已使用的槽位数用 {@link StripedLongCounter} 计数，相当于 {@code addCount} 中的 {@code CounterCell}，
+ *     超过阈值后扩容</li>
+ *     <li>扩容时把旧表分成若干段，线程通过 {@link Table#transferIndex} 领取一段进行转移，
+ *     写线程遇到正在扩容的表时会先帮助转移，和 {@code helpTransfer} 相同</li>
+ *     <li>转移完成的槽位的值被设为 {@link #MOVED}，作用相当于 {@code ForwardingNode}：
+ *     读写线程看到它就转到 {@link Table#next} 中继续</li>
+ * </ul>
+ *
+ * <p>转移一个槽位时，先把值复制到新表，再把旧表中的值 CAS 为 {@link #MOVED}。CAS 失败说明期间有线程修改了值，
+ * 重新复制。所以在 {@link #MOVED} 出现之前新表中已经有最新的值，读线程不会在转移期间看到键消失。
+ * 如果重新读到的值是 {@link #ABSENT}，说明复制之后键被删除了，要先把新表中的副本也设为 {@link #ABSENT}，
+ * 再把旧表中的值 CAS 为 {@link #MOVED}。
+ *
+ * <p>值在数组中异或 {@link Long#MIN_VALUE} 后存放，使得数组的初始值 0 表示 {@link #ABSENT}。
+ * 因此 {@link Long#MIN_VALUE} 和 {@code Long.MIN_VALUE + 1} 被保留，不能作为值存放。键 0 单独保存。
+ *
+ * <p>{@link #size()} 和 {@link #forEach} 是弱一致的，和 {@code ConcurrentHashMap} 相同。
+ */
+public class ConcurrentLongLongHashMap {
+
+    /**
+     * 键不存在时 {@link #get}、{@link #put}、{@link #remove} 的返回值。
+     */
+    public static final long NO_VALUE = Long.MIN_VALUE;
+
+    /**
+     * 数组中表示没有值的编码，对应 {@link #NO_VALUE}。
+     */
+    static final long ABSENT = 0;
+
+    /**
+     * 数组中表示已经转移到下一个表的编码，对应 {@code Long.MIN_VALUE + 1}。
+     */
+    static final long MOVED = 1;
+
+    static final int MAX_CAPACITY = 1 << 29;
+
+    static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * 每次领取的转移段的槽位数。
+     */
+    static final int TRANSFER_STRIDE = 1024;
+
+    static final class Table {
+        /**
+         * slots[2 * i] 是键，0 表示空；slots[2 * i + 1] 是编码后的值。
+         */
+        final AtomicLongArray slots;
+        final int mask;
+        final int shift;
+        final int threshold;
+
+        /**
+         * 已经写入键的槽位数，包括值已被删除的槽位。
+         */
+        final StripedLongCounter used = new StripedLongCounter();
+
+        /**
+         * 扩容后的表，没有扩容时为 null。
+         */
+        volatile Table next;
+
+        /**
+         * 0 表示没有扩容，1 表示有线程正在创建 next。
+         */
+        volatile int resizing;
+
+        /**
+         * 还没有被领取的转移段的上界，从容量开始递减，和 ConcurrentHashMap 的 transferIndex 相同。
+         */
+        final AtomicInteger transferIndex;
+
+        /**
+         * 已经转移完成的槽位数，等于容量时转移结束。
+         */
+        final AtomicInteger transferred = new AtomicInteger();
+
+        Table(int capacity) {
+            slots = new AtomicLongArray(capacity << 1);
+            mask = capacity - 1;
+            shift = 64 - Integer.numberOfTrailingZeros(capacity);
+            threshold = (int) (capacity * LOAD_FACTOR);
+            transferIndex = new AtomicInteger(capacity);
+        }
+
+        int slot(long key) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+    }
+
+    private static final AtomicReferenceFieldUpdater<ConcurrentLongLongHashMap, Table> TABLE =
+            AtomicReferenceFieldUpdater.newUpdater(ConcurrentLongLongHashMap.class, Table.class, "table");
+    private static final AtomicLongFieldUpdater<ConcurrentLongLongHashMap> ZERO =
+            AtomicLongFieldUpdater.newUpdater(ConcurrentLongLongHashMap.class, "zeroValue");
+    private static final AtomicIntegerFieldUpdater<Table> RESIZING =
+            AtomicIntegerFieldUpdater.newUpdater(Table.class, "resizing");
+
+    private volatile Table table;
+
+    /**
+     * 键 0 的编码后的值。
+     */
+    private volatile long zeroValue;
+
+    private final StripedLongCounter size = new StripedLongCounter();
+
+    public ConcurrentLongLongHashMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize 预计的条目数，放入这么多条目之前不会扩容
+     */
+    public ConcurrentLongLongHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize: " + expectedSize);
+        }
+        long required = (long) Math.ceil(expectedSize / (double) LOAD_FACTOR) + 1;
+        if (required > MAX_CAPACITY) {
+            throw new IllegalArgumentException("too many entries: " + expectedSize);
+        }
+        table = new Table(Math.max(16, Integer.highestOneBit((int) required - 1) << 1));
+    }
+
+    private static long encode(long value) {
+        if (value == NO_VALUE || value == NO_VALUE + 1) {
+            throw new IllegalArgumentException("reserved value: " + value);
+        }
+        return value ^ Long.MIN_VALUE;
+    }
+
+    private static long decode(long encoded) {
+        return encoded ^ Long.MIN_VALUE;
+    }
+
+    /**
+     * 当前表的槽位数。
+     */
+    public int capacity() {
+        return table.capacity();
+    }
+
+    /**
+     * 条目数的估计值。并发修改时不精确。
+     */
+    public long size() {
+        return Math.max(0, size.sum());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return getEncoded(key) != ABSENT;
+    }
+
+    /**
+     * 返回 key 对应的值，不存在时返回 {@link #NO_VALUE}。
+     */
+    public long get(long key) {
+        return decode(getEncoded(key));
+    }
+
+    public long getOrDefault(long key, long defaultValue) {
+        long v = getEncoded(key);
+        return v == ABSENT ? defaultValue : decode(v);
+    }
+
+    private long getEncoded(long key) {
+        if (key == 0) {
+            return zeroValue;
+        }
+        Table t = table;
+        outer:
+        for (;;) {
+            AtomicLongArray slots = t.slots;
+            int mask = t.mask;
+            int i = t.slot(key);
+            for (int probes = 0; probes <= mask; probes++, i = (i + 1) & mask) {
+                long k = slots.get(i << 1);
+                if (k == key || k == 0) {
+                    long v = slots.get((i << 1) + 1);
+                    if (v == MOVED) {
+                        t = t.next;
+                        continue outer;
+                    }
+                    // 空槽位说明键不存在；值在键之后写入，读到键而值是 ABSENT 说明还没写入或已经删除
+                    return k == 0 ? ABSENT : v;
+                }
+            }
+            // 表中全是其他键，只可能发生在扩容之前的短暂时间内
+            if ((t = t.next) == null) {
+                return ABSENT;
+            }
+        }
+    }
+
+    /**
+     * 返回之前的值，之前不存在时返回 {@link #NO_VALUE}。
+     *
+     * @throws IllegalArgumentException 如果 value 是被保留的值
+     */
+    public long put(long key, long value) {
+        return decode(update(key, encode(value), PUT));
+    }
+
+    /**
+     * 不存在时放入 value，返回之前的值，之前不存在时返回 {@link #NO_VALUE}。
+     */
+    public long putIfAbsent(long key, long value) {
+        return decode(update(key, encode(value), PUT_IF_ABSENT));
+    }
+
+    /**
+     * 把 key 对应的值原子地加上 delta，不存在时当作 0，返回新的值。
+     *
+     * @throws IllegalArgumentException 如果结果是被保留的值
+     */
+    public long addTo(long key, long delta) {
+        return decode(update(key, delta, ADD));
+    }
+
+    private static final int PUT = 0, PUT_IF_ABSENT = 1, ADD = 2;
+
+    /**
+     * 根据 mode 计算新的编码值。PUT_IF_ABSENT 在值已存在时不会调用这个方法。
+     */
+    private static long newValue(long old, long x, int mode) {
+        return mode == ADD ? encode((old == ABSENT ? 0 : decode(old)) + x) : x;
+    }
+
+    /**
+     * ADD 返回编码后的新值，其他模式返回编码后的旧值。
+     */
+    private long update(long key, long x, int mode) {
+        if (key == 0) {
+            for (;;) {
+                long old = zeroValue;
+                if (mode == PUT_IF_ABSENT && old != ABSENT) {
+                    return old;
+                }
+                long v = newValue(old, x, mode);
+                if (ZERO.compareAndSet(this, old, v)) {
+                    if (old == ABSENT) {
+                        size.increment();
+                    }
+                    return mode == ADD ? v : old;
+                }
+            }
+        }
+        Table t = table;
+        outer:
+        for (;;) {
+            if (t.next != null) {
+                // 正在扩容，先帮助转移，避免新表在转移结束之前被写满
+                helpTransfer(t);
+            }
+            AtomicLongArray slots = t.slots;
+            int index = claim(t, key);
+            if (index < 0) {
+                // 表中没有空槽位了
+                resize(t);
+                t = t.next != null ? t.next : table;
+                continue;
+            }
+            int vi = (index << 1) + 1;
+            for (;;) {
+                long old = slots.get(vi);
+                if (old == MOVED) {
+                    t = t.next;
+                    continue outer;
+                }
+                if (mode == PUT_IF_ABSENT && old != ABSENT) {
+                    return old;
+                }
+                long v = newValue(old, x, mode);
+                if (slots.compareAndSet(vi, old, v)) {
+                    if (old == ABSENT) {
+                        size.increment();
+                    }
+                    return mode == ADD ? v : old;
+                }
+            }
+        }
+    }
+
+    /**
+     * 找到 key 所在的槽位，不存在时领取一个空槽位，返回槽位下标。表中没有空槽位时返回 -1。
+     * 遇到已经转移的空槽位时也返回它，调用者读到 {@link #MOVED} 后会转到下一个表。
+     */
+    private int claim(Table t, long key) {
+        AtomicLongArray slots = t.slots;
+        int mask = t.mask;
+        int i = t.slot(key);
+        for (int probes = 0; probes <= mask; probes++, i = (i + 1) & mask) {
+            long k = slots.get(i << 1);
+            if (k == 0) {
+                if (slots.get((i << 1) + 1) == MOVED) {
+                    return i;
+                }
+                if (slots.compareAndSet(i << 1, 0, key)) {
+                    t.used.increment();
+                    if (t.used.sum() >= t.threshold) {
+                        resize(t);
+                    }
+                    return i;
+                }
+                k = slots.get(i << 1);
+            }
+            if (k == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 删除 key，返回之前的值，不存在时返回 {@link #NO_VALUE}。
+     */
+    public long remove(long key) {
+        if (key == 0) {
+            long old = ZERO.getAndSet(this, ABSENT);
+            if (old != ABSENT) {
+                size.decrement();
+            }
+            return decode(old);
+        }
+        Table t = table;
+        outer:
+        for (;;) {
+            AtomicLongArray slots = t.slots;
+            int mask = t.mask;
+            int i = t.slot(key);
+            for (int probes = 0; probes <= mask; probes++, i = (i + 1) & mask) {
+                long k = slots.get(i << 1);
+                if (k == key || k == 0) {
+                    int vi = (i << 1) + 1;
+                    for (;;) {
+                        long old = slots.get(vi);
+                        if (old == MOVED) {
+                            t = t.next;
+                            continue outer;
+                        }
+                        if (k == 0 || old == ABSENT) {
+                            return NO_VALUE;
+                        }
+                        if (slots.compareAndSet(vi, old, ABSENT)) {
+                            size.decrement();
+                            return decode(old);
+                        }
+                    }
+                }
+            }
+            if ((t = t.next) == null) {
+                return NO_VALUE;
+            }
+        }
+    }
+
+    /**
+     * 开始 t 的扩容，或者帮助正在进行的扩容。只有当前表才能开始扩容，所以先帮助完成更早的扩容。
+     */
+    private void resize(Table t) {
+        for (Table current; (current = table) != t; ) {
+            if (current.next == null) {
+                // t 是已经被替换的旧表
+                return;
+            }
+            helpTransfer(current);
+            // 剩下的段已经被其他线程领取，等待它们完成
+            Thread.yield();
+        }
+        if (t.next == null) {
+            if (RESIZING.compareAndSet(t, 0, 1)) {
+                int capacity = t.capacity();
+                // 被删除的键也占用槽位。存活的条目不到阈值的一半时只清理被删除的键，不增加容量
+                long live = size.sum();
+                if (live > t.threshold / 2) {
+                    if (capacity == MAX_CAPACITY) {
+                        RESIZING.set(t, 0);
+                        throw new IllegalStateException("map is full: " + live);
+                    }
+                    capacity <<= 1;
+                }
+                t.next = new Table(capacity);
+            } else {
+                while (t.next == null) {
+                    Thread.yield();
+                }
+            }
+        }
+        helpTransfer(t);
+    }
+
+    /**
+     * 领取并转移 t 中的段，直到没有段可以领取。完成最后一段的线程把下一个表设为当前表。
+     */
+    private void helpTransfer(Table t) {
+        Table next = t.next;
+        AtomicLongArray slots = t.slots;
+        for (;;) {
+            int hi = t.transferIndex.get();
+            if (hi <= 0) {
+                return;
+            }
+            int lo = Math.max(0, hi - TRANSFER_STRIDE);
+            if (!t.transferIndex.compareAndSet(hi, lo)) {
+                continue;
+            }
+            for (int i = lo; i < hi; i++) {
+                int vi = (i << 1) + 1;
+                boolean copied = false;
+                for (;;) {
+                    long v = slots.get(vi);
+                    if (v == ABSENT) {
+                        if (copied) {
+                            // 复制之后值被删除了，新表中的副本也要删除，否则扩容之后被删除的键会重新出现
+                            copy(next, slots.get(i << 1), ABSENT);
+                        }
+                        if (slots.compareAndSet(vi, ABSENT, MOVED)) {
+                            break;
+                        }
+                        continue;
+                    }
+                    // 值不是 ABSENT 时键一定已经写入
+                    copy(next, slots.get(i << 1), v);
+                    copied = true;
+                    if (slots.compareAndSet(vi, v, MOVED)) {
+                        break;
+                    }
+                }
+            }
+            if (t.transferred.addAndGet(hi - lo) == t.capacity()) {
+                TABLE.compareAndSet(this, t, next);
+            }
+        }
+    }
+
+    /**
+     * 把转移的条目写入新表。在旧表的槽位变为 {@link #MOVED} 之前，其他线程不会在新表中写这个键。
+     * 新表在成为当前表之前不会扩容，所以这里不检查阈值。
+     */
+    private static void copy(Table t, long key, long value) {
+        AtomicLongArray slots = t.slots;
+        int mask = t.mask;
+        for (int i = t.slot(key); ; i = (i + 1) & mask) {
+            long k = slots.get(i << 1);
+            if (k == 0) {
+                if (!slots.compareAndSet(i << 1, 0, key)) {
+                    k = slots.get(i << 1);
+                } else {
+                    t.used.increment();
+                    k = key;
+                }
+            }
+            if (k == key) {
+                slots.set((i << 1) + 1, value);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 对每个条目调用 action，顺序不确定。遍历期间一直存在且没有被修改的条目一定会被访问一次，
+     * 并发修改的条目可能访问到新值，也可能访问到旧值或不访问。
+     */
+    public void forEach(LongLongHashMap.LongLongConsumer action) {
+        long zero = zeroValue;
+        if (zero != ABSENT) {
+            action.accept(0, decode(zero));
+        }
+        Table t = table;
+        AtomicLongArray slots = t.slots;
+        for (int i = 0; i <= t.mask; i++) {
+            long v = slots.get((i << 1) + 1);
+            if (v == ABSENT) {
+                continue;
+            }
+            long key = slots.get(i << 1);
+            if (v == MOVED) {
+                if (key == 0) {
+                    continue;
+                }
+                // 已经转移到新表，到新表中查找
+                v = getEncoded(key);
+                if (v == ABSENT) {
+                    continue;
+                }
+            }
+            action.accept(key, decode(v));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size=" + size() + ", capacity=" + capacity() + "]";
+    }
+}
@@ -0,0 +1,266 @@
+package java_.util.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java_.TestUtil.retained;
+import static java_.TestUtil.runThreads;
+import static java_.TestUtil.usedMemory;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link ConcurrentLongLongHashMap} 的测试，以及和 {@code ConcurrentHashMap<Long, Long>} 的内存、GC 和吞吐比较。
+ */
+public class ConcurrentLongLongHashMapTest {
+
+    @Test
+    public void testMap() {
+        ConcurrentLongLongHashMap map = new ConcurrentLongLongHashMap();
+        assertEquals(32, map.capacity());
+        assertEquals(ConcurrentLongLongHashMap.NO_VALUE, map.get(1));
+        assertEquals(ConcurrentLongLongHashMap.NO_VALUE, map.put(0, 5));
+        assertEquals(5, map.putIfAbsent(0, 6));
+        assertEquals(7, map.addTo(0, 2));
+        assertEquals(ConcurrentLongLongHashMap.NO_VALUE, map.put(-1, Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, map.get(-1));
+        assertEquals(-1, map.getOrDefault(2, -1));
+        assertEquals(2, map.size());
+        assertThrows(IllegalArgumentException.class, () -> map.put(1, Long.MIN_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> map.put(1, Long.MIN_VALUE + 1));
+        assertThrows(IllegalArgumentException.class, () -> map.addTo(-1, Long.MIN_VALUE + 1 - Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, map.remove(-1));
+        assertEquals(7, map.remove(0));
+        assertFalse(map.containsKey(0));
+        assertTrue(map.isEmpty());
+
+        // 随机操作和 HashMap 比较。键的范围小时大部分操作是删除后重新插入，扩容时只清理被删除的键；
+        // 范围大时容量不断翻倍
+        Random random = new Random(47);
+        for (int range : new int[]{8, 1000, 200_000}) {
+            ConcurrentLongLongHashMap m = new ConcurrentLongLongHashMap(0);
+            Map<Long, Long> expected = new HashMap<>();
+            for (int op = 0; op < 1_000_000; op++) {
+                long key = random.nextInt(range) - range / 8;
+                long value = random.nextInt(1000);
+                Long previous;
+                switch (random.nextInt(5)) {
+                    case 0:
+                        previous = expected.put(key, value);
+                        assertEquals(previous == null ? ConcurrentLongLongHashMap.NO_VALUE : previous, m.put(key, value));
+                        break;
+                    case 1:
+                        previous = expected.putIfAbsent(key, value);
+                        assertEquals(previous == null ? ConcurrentLongLongHashMap.NO_VALUE : previous,
+                                m.putIfAbsent(key, value));
+                        break;
+                    case 2:
+                        assertEquals((long) expected.merge(key, value, Long::sum), m.addTo(key, value));
+                        break;
+                    case 3:
+                        previous = expected.remove(key);
+                        assertEquals(previous == null ? ConcurrentLongLongHashMap.NO_VALUE : previous, m.remove(key));
+                        break;
+                    default:
+                        previous = expected.get(key);
+                        assertEquals(previous == null ? ConcurrentLongLongHashMap.NO_VALUE : previous, m.get(key));
+                }
+            }
+            assertEquals(expected.size(), m.size());
+            Map<Long, Long> iterated = new HashMap<>();
+            m.forEach((k, v) -> assertNull(iterated.put(k, v)));
+            assertEquals(expected, iterated);
+            assertTrue(m.capacity() <= 4 * Integer.highestOneBit(range), m.toString());
+        }
+    }
+
+    /**
+     * 多个线程同时计数、插入和删除，从 16 个槽位开始经历多次扩容。另一个线程不断读取开始之前插入的键，
+     * 它们在转移期间也必须一直能被找到。
+     */
+    @Test
+    public void testConcurrent() throws InterruptedException {
+        final int threads = 8, times = 200_000, counters = 1000, stable = 10_000;
+        ConcurrentLongLongHashMap map = new ConcurrentLongLongHashMap(0);
+        for (long k = 1; k <= stable; k++) {
+            map.put(-k, k);
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        long[] misses = new long[1];
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                for (long k = 1; k <= stable; k++) {
+                    if (map.get(-k) != k) {
+                        misses[0]++;
+                    }
+                }
+            }
+        });
+        reader.start();
+        runThreads(threads, t -> () -> {
+            for (int i = 0; i < times; i++) {
+                map.addTo(i % counters, 1);
+                long own = ((long) t + 1) << 40 | i;
+                map.put(own, i);
+                if ((i & 1) == 1) {
+                    assertEquals(i, map.remove(own));
+                }
+            }
+        });
+        done.set(true);
+        reader.join();
+
+        assertEquals(0, misses[0]);
+        for (long k = 0; k < counters; k++) {
+            assertEquals((long) threads * times / counters, map.get(k));
+        }
+        for (long t = 1; t <= threads; t++) {
+            for (int i = 0; i < times; i++) {
+                assertEquals((i & 1) == 0 ? i : ConcurrentLongLongHashMap.NO_VALUE, map.get(t << 40 | i));
+            }
+        }
+        long expectedSize = stable + counters + (long) threads * times / 2;
+        assertEquals(expectedSize, map.size());
+        long[] count = new long[1];
+        map.forEach((k, v) -> count[0]++);
+        assertEquals(expectedSize, count[0]);
+    }
+
+    /**
+     * 删除和扩容同时进行：转移线程已经把值复制到新表、还没有把旧槽位设为 MOVED 时，值被并发删除，
+     * 转移线程必须把删除同步到新表，否则扩容结束后被删除的键会重新出现。
+     */
+    @Test
+    public void testRemoveDuringResize() throws InterruptedException {
+        final int keys = 20_000, inserters = 3, inserted = 100_000;
+        for (int round = 0; round < 20; round++) {
+            ConcurrentLongLongHashMap map = new ConcurrentLongLongHashMap(keys);
+            for (long k = 1; k <= keys; k++) {
+                map.put(k, k);
+            }
+            long base = (long) round << 40;
+            runThreads(inserters + 1, t -> () -> {
+                if (t == inserters) {
+                    for (long k = 1; k <= keys; k++) {
+                        assertEquals(k, map.remove(k));
+                    }
+                } else {
+                    // 插入新键，使表在删除期间扩容多次
+                    for (int i = 0; i < inserted; i++) {
+                        map.put(base | ((long) t + 1) << 32 | i, i);
+                    }
+                }
+            });
+            for (long k = 1; k <= keys; k++) {
+                assertFalse(map.containsKey(k), "round " + round + ": removed key " + k + " is back");
+            }
+            assertEquals((long) inserters * inserted, map.size());
+            long[] count = new long[1];
+            map.forEach((k, v) -> count[0]++);
+            assertEquals((long) inserters * inserted, count[0]);
+        }
+    }
+
+    /**
+     * 模拟按用户计数的场景：n 个用户，每次给一个随机用户的计数加 1，总共 2n 次。
+     * 不预设容量，先由 1 个线程建立，再由 4 个线程继续计数，最后测量存活的表占用的堆内存和一次 Full GC 的时间。
+     * 默认只测 10^6 个用户，更大的规模通过系统属性 {@code hash.bench.maxSize} 打开，
+     * 例如 {@code -Dhash.bench.maxSize=100000000}。
+     */
+    @Test
+    public void testBenchmark() throws InterruptedException {
+        int maxSize = Integer.getInteger("hash.bench.maxSize", 1_000_000);
+        System.out.println(Runtime.getRuntime().availableProcessors() + " cpus, max heap: "
+                + (Runtime.getRuntime().maxMemory() >> 20) + "MB");
+        System.out.printf("%-28s%8s%14s%16s%16s%14s%n", "map", "n", "bytes/entry", "1 thread Mops", "4 threads Mops",
+                "full GC ms");
+        for (String name : new String[]{"ConcurrentHashMap", "ConcurrentLongLongHashMap"}) {
+            double bytesPerEntry = 0;
+            for (int n = 1_000_000; n <= maxSize; n *= 10) {
+                System.out.printf("%-28s%8s", name, "10^" + (int) Math.log10(n));
+                retained = null;
+                // 按上一个规模估计需要的内存，明显放不下时直接跳过，避免在 OOM 之前长时间地反复 GC
+                if (bytesPerEntry * n > Runtime.getRuntime().maxMemory()) {
+                    System.out.printf("%14s%16s%16s%14s%n", "-", "-", "-", "-");
+                    break;
+                }
+                try {
+                    long base = usedMemory();
+                    Object map = name.equals("ConcurrentHashMap")
+                            ? new ConcurrentHashMap<Long, Long>() : new ConcurrentLongLongHashMap();
+                    retained = map;
+                    double single = count(map, n, 1, 2L * n);
+                    double multi = count(map, n, 4, 2L * n);
+                    long bytes = usedMemory() - base;
+                    bytesPerEntry = (double) bytes / n;
+                    long start = System.nanoTime();
+                    System.gc();
+                    long gc = System.nanoTime() - start;
+                    System.out.printf("%14.1f%16.2f%16.2f%14.1f%n", bytesPerEntry, single / 1e6, multi / 1e6,
+                            gc / 1e6);
+                } catch (OutOfMemoryError e) {
+                    retained = null;
+                    System.out.printf("%14s%16s%16s%14s%n", "-", "-", "-", "-");
+                    break;
+                }
+            }
+            retained = null;
+        }
+
+        /*
+        输出（-Dhash.bench.maxSize=100000000）：
+        1 cpus, max heap: 1453MB
+        map                                n   bytes/entry   1 thread Mops  4 threads Mops    full GC ms
+        ConcurrentHashMap               10^6          63.4            2.03            2.84          92.0
+        ConcurrentHashMap               10^7          61.7            1.40            2.50        1207.0
+        ConcurrentHashMap               10^8             -               -               -             -
+        ConcurrentLongLongHashMap       10^6          33.6            4.55            7.27           2.5
+        ConcurrentLongLongHashMap       10^7          26.8            5.54            8.54           2.7
+        ConcurrentLongLongHashMap       10^8             -               -               -             -
+
+        结论：
+        - ConcurrentHashMap 每个条目约 62 字节：32 字节的 Node，24 字节的 Long 键（压缩指针下 12 字节的对象头加 8 字节的值，
+          对齐到 8 的倍数），加上 table 中的引用。值是很小的计数，Long.valueOf 返回 -128~127 的缓存对象，不占额外的内存；
+          值大于 127 时每个条目还要再多一个 24 字节的 Long。扁平数组每个条目 16 字节乘以 1 / 负载因子，约为前者的一半到 2/5。
+        - 最重要的差别是 GC：存活 10^7 个条目时，ConcurrentHashMap 的一次 Full GC 要标记和移动 3000 万个对象，
+          用了 1.2 秒；扁平数组只是一个大对象，Full GC 只用 2.7 毫秒，和条目数无关。
+          几亿个条目时前者的停顿会达到几十秒，这正是引入基本类型并发哈希表的原因。
+        - 计数的吞吐是 ConcurrentHashMap 的 2~4 倍：merge 每次都要分配新的 Long 作为值，addTo 只是一次 CAS。
+        - 4 个线程的列比 1 个线程高，是因为第一轮同时在插入新键和扩容，第二轮大部分是更新已有的键；
+          这台机器只有 1 个 CPU，多线程的吞吐不会超过单线程，测不出 CAS 竞争和协作扩容的并行加速。
+        - 10^8 在 1.4GB 的堆上都放不下：扁平数组需要 2^28 个槽位即 4GB，ConcurrentHashMap 需要 6GB 以上。
+         */
+    }
+
+    /**
+     * threads 个线程一共给随机的用户计数 total 次，返回每秒的次数。
+     */
+    @SuppressWarnings("unchecked")
+    private static double count(Object map, int users, int threads, long total) throws InterruptedException {
+        long perThread = total / threads;
+        long start = System.nanoTime();
+        if (map instanceof ConcurrentHashMap) {
+            ConcurrentHashMap<Long, Long> m = (ConcurrentHashMap<Long, Long>) map;
+            runThreads(threads, t -> () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (long i = 0; i < perThread; i++) {
+                    m.merge((long) random.nextInt(users), 1L, Long::sum);
+                }
+            });
+        } else {
+            ConcurrentLongLongHashMap m = (ConcurrentLongLongHashMap) map;
+            runThreads(threads, t -> () -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (long i = 0; i < perThread; i++) {
+                    m.addTo(random.nextInt(users), 1);
+                }
+            });
+        }
+        return perThread * threads * 1e9 / (System.nanoTime() - start);
+    }
+}
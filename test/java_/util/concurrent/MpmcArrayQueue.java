@@ -0,0 +1,402 @@
+package java_.util.concurrent;
+
+import java_.util.concurrent.atomic.PaddedLong;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+
+/**
+ * 有界的多生产者多消费者无锁队列，使用 Dmitry Vyukov 的环形数组算法。
+ *
+ * <p>每个槽位有一个序号，表示这个槽位当前在等待什么：
+ * <ul>
+ *     <li>序号等于位置 pos 时，槽位是空的，等待位置为 pos 的生产者写入</li>
+ *     <li>序号等于 pos + 1 时，槽位已经写入，等待位置为 pos 的消费者读取</li>
+ *     <li>读取之后序号设为 pos + capacity，即下一圈同一个槽位的位置</li>
+ * </ul>
+ * 生产者和消费者分别 CAS {@link #tail} 和 {@link #head} 来领取位置，然后只操作自己领取的槽位，
+ * 最后用有序写（lazySet）更新序号发布结果。和 {@link java.util.concurrent.LinkedBlockingQueue} 相比，
+ * 入队不分配结点，也没有锁；和 {@link java.util.concurrent.ConcurrentLinkedQueue} 相比，
+ * 槽位在数组中连续存放，并且队列有界，生产者太快时会被阻塞而不是耗尽内存。
+ *
+ * <p>{@link #put}、{@link #take} 等阻塞方法在条件不满足时调用 {@link WaitStrategy}，
+ * 不会像 {@link java.util.concurrent.ArrayBlockingQueue} 那样由对方线程唤醒。
+ *
+ * <p>{@link #iterator()} 是弱一致的快照：只包含创建时在队列中、而且复制期间没有被取走的元素，不会抛出
+ * {@link java.util.ConcurrentModificationException}。{@link #contains}、{@link #toArray()} 等基于迭代器的方法
+ * 因此也是弱一致的。环形数组无法删除中间的元素，所以 {@link #remove(Object)}、{@link #removeAll}、
+ * {@link #retainAll}、{@link #removeIf} 以及迭代器的 {@code remove} 都抛出 {@link UnsupportedOperationException}。
+ */
+public class MpmcArrayQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    private final E[] buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * 下一个生产者领取的位置。和 head 分别独占缓存行，避免生产者和消费者互相干扰。
+     */
+    private final PaddedLong tail = new PaddedLong();
+
+    /**
+     * 下一个消费者领取的位置。
+     */
+    private final PaddedLong head = new PaddedLong();
+
+    public MpmcArrayQueue(int capacity) {
+        this(capacity, WaitStrategy.BACKOFF);
+    }
+
+    /**
+     * @param capacity 容量，会向上取整到 2 的幂，最小为 2
+     */
+    @SuppressWarnings("unchecked")
+    public MpmcArrayQueue(int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+        int n = Math.max(2, 1 << -Integer.numberOfLeadingZeros(capacity - 1));
+        buffer = (E[]) new Object[n];
+        sequences = new AtomicLongArray(n);
+        for (int i = 0; i < n; i++) {
+            sequences.lazySet(i, i);
+        }
+        mask = n - 1;
+        this.waitStrategy = Objects.requireNonNull(waitStrategy);
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        Objects.requireNonNull(e);
+        long pos = tail.get();
+        for (;;) {
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer[index] = e;
+                    sequences.lazySet(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                // 槽位上一圈的元素还没有被取走，队列已满
+                return false;
+            } else {
+                // 其他生产者已经领取了这个位置
+                pos = tail.get();
+            }
+        }
+    }
+
+    @Override
+    public E poll() {
+        long pos = head.get();
+        for (;;) {
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    E e = buffer[index];
+                    buffer[index] = null;
+                    sequences.lazySet(index, pos + mask + 1);
+                    return e;
+                }
+                pos = head.get();
+            } else if (diff < 0) {
+                // 槽位还没有被写入，队列为空
+                return null;
+            } else {
+                pos = head.get();
+            }
+        }
+    }
+
+    /**
+     * 批量入队，一次 CAS 领取多个连续的位置。
+     *
+     * @return 实际入队的个数，队列满时可能小于 length
+     */
+    public int offer(E[] src, int offset, int length) {
+        checkRange(offset, length, src.length);
+        for (int i = offset; i < offset + length; i++) {
+            Objects.requireNonNull(src[i]);
+        }
+        // 下面的循环在 n == 0 时只有队列满才会返回
+        if (length == 0) {
+            return 0;
+        }
+        for (;;) {
+            long pos = tail.get();
+            // 从 pos 开始连续的空槽位。其他生产者在 tail 越过 pos 之前不会写这些槽位，消费者也不会读空槽位，
+            // 所以看到是空的槽位在 CAS 成功之前会一直是空的
+            int n = 0;
+            while (n < length && sequences.get((int) (pos + n) & mask) == pos + n) {
+                n++;
+            }
+            if (n == 0) {
+                if (sequences.get((int) pos & mask) - pos < 0) {
+                    return 0;
+                }
+                continue;
+            }
+            if (tail.compareAndSet(pos, pos + n)) {
+                for (int i = 0; i < n; i++) {
+                    int index = (int) (pos + i) & mask;
+                    buffer[index] = src[offset + i];
+                    sequences.lazySet(index, pos + i + 1);
+                }
+                return n;
+            }
+        }
+    }
+
+    /**
+     * 批量出队，一次 CAS 领取多个连续的位置。
+     *
+     * @return 实际出队的个数，队列中元素不足时可能小于 length
+     */
+    public int poll(E[] dst, int offset, int length) {
+        checkRange(offset, length, dst.length);
+        if (length == 0) {
+            return 0;
+        }
+        for (;;) {
+            long pos = head.get();
+            int n = 0;
+            while (n < length && sequences.get((int) (pos + n) & mask) == pos + n + 1) {
+                n++;
+            }
+            if (n == 0) {
+                if (sequences.get((int) pos & mask) - (pos + 1) < 0) {
+                    return 0;
+                }
+                continue;
+            }
+            if (head.compareAndSet(pos, pos + n)) {
+                for (int i = 0; i < n; i++) {
+                    int index = (int) (pos + i) & mask;
+                    dst[offset + i] = buffer[index];
+                    buffer[index] = null;
+                    sequences.lazySet(index, pos + i + mask + 1);
+                }
+                return n;
+            }
+        }
+    }
+
+    private static void checkRange(int offset, int length, int arrayLength) {
+        if (offset < 0 || length < 0 || offset > arrayLength - length) {
+            throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length
+                    + ", array length: " + arrayLength);
+        }
+    }
+
+    /**
+     * 返回队头元素但不出队。并发出队时返回的可能是刚被取走的元素。
+     */
+    @Override
+    public E peek() {
+        for (;;) {
+            long pos = head.get();
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff < 0) {
+                return null;
+            }
+            E e = buffer[index];
+            // 读取期间队头没有移动，e 就是位置 pos 的元素
+            if (diff == 0 && e != null && head.get() == pos) {
+                return e;
+            }
+        }
+    }
+
+    /**
+     * 返回元素个数的估计值，并发修改时不精确，但总在 [0, capacity] 之内。
+     */
+    @Override
+    public int size() {
+        long after = head.get();
+        for (;;) {
+            long before = after;
+            long t = tail.get();
+            after = head.get();
+            // 读 tail 期间 head 没有变化，两者是一致的
+            if (before == after) {
+                return (int) Math.max(0, Math.min(t - after, capacity()));
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return capacity() - size();
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        for (int counter = 0; !offer(e); counter++) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            waitStrategy.idle(counter);
+        }
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (int counter = 0; !offer(e); counter++) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (deadline - System.nanoTime() <= 0) {
+                return false;
+            }
+            waitStrategy.idle(counter);
+        }
+        return true;
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        E e;
+        for (int counter = 0; (e = poll()) == null; counter++) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            waitStrategy.idle(counter);
+        }
+        return e;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        E e;
+        for (int counter = 0; (e = poll()) == null; counter++) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (deadline - System.nanoTime() <= 0) {
+                return null;
+            }
+            waitStrategy.idle(counter);
+        }
+        return e;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        Objects.requireNonNull(c);
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        if (maxElements <= 0) {
+            return 0;
+        }
+        E[] batch = (E[]) new Object[Math.min(maxElements, capacity())];
+        int drained = 0;
+        while (drained < maxElements) {
+            int n = poll(batch, 0, Math.min(batch.length, maxElements - drained));
+            if (n == 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                c.add(batch[i]);
+                batch[i] = null;
+            }
+            drained += n;
+        }
+        return drained;
+    }
+
+    @Override
+    public void clear() {
+        while (poll() != null) {
+        }
+    }
+
+    /**
+     * 返回队列中元素的快照的迭代器，按从队头到队尾的顺序。
+     */
+    @Override
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>(size());
+        long t = tail.get();
+        for (long pos = Math.max(head.get(), t - capacity()); pos < t; pos++) {
+            int index = (int) pos & mask;
+            if (sequences.get(index) != pos + 1) {
+                // 还没有写入，或者已经被取走
+                continue;
+            }
+            E e = buffer[index];
+            // 读取之后序号没有变化，说明 e 还是位置 pos 的元素，没有被取走，也没有被下一圈覆盖
+            if (e != null && sequences.get(index) == pos + 1) {
+                snapshot.add(e);
+            }
+        }
+        Iterator<E> it = snapshot.iterator();
+        return new Iterator<E>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public E next() {
+                return it.next();
+            }
+        };
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size=" + size() + ", capacity=" + capacity() + "]";
+    }
+}
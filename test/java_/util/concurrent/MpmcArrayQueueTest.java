@@ -0,0 +1,453 @@
+package java_.util.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link MpmcArrayQueue} 的测试，以及和 JDK 队列的吞吐、延迟比较。
+ */
+public class MpmcArrayQueueTest {
+
+    @Test
+    public void testQueue() throws InterruptedException {
+        MpmcArrayQueue<Integer> queue = new MpmcArrayQueue<>(5);
+        assertEquals(8, queue.capacity());
+        assertEquals(2, new MpmcArrayQueue<>(1).capacity());
+        assertThrows(IllegalArgumentException.class, () -> new MpmcArrayQueue<>(0));
+        assertThrows(NullPointerException.class, () -> queue.offer(null));
+
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        assertNull(queue.peek());
+        // 多绕几圈，检查序号的回绕
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 8; i++) {
+                assertTrue(queue.offer(round * 8 + i));
+            }
+            assertFalse(queue.offer(-1));
+            assertEquals(8, queue.size());
+            assertEquals(0, queue.remainingCapacity());
+            assertEquals(round * 8, (int) queue.peek());
+            for (int i = 0; i < 8; i++) {
+                assertEquals(round * 8 + i, (int) queue.poll());
+            }
+            assertNull(queue.poll());
+        }
+
+        // 批量操作
+        Integer[] src = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        assertEquals(3, queue.offer(src, 0, 3));
+        assertEquals(5, queue.offer(src, 3, 7));
+        assertEquals(0, queue.offer(src, 8, 2));
+        Integer[] dst = new Integer[10];
+        assertEquals(2, queue.poll(dst, 0, 2));
+        assertEquals(6, queue.poll(dst, 2, 8));
+        assertEquals(0, queue.poll(dst, 0, 1));
+        assertArrayEquals(new Integer[]{1, 2, 3, 4, 5, 6, 7, 8, null, null}, dst);
+        assertThrows(IndexOutOfBoundsException.class, () -> queue.offer(src, 5, 6));
+        assertThrows(NullPointerException.class, () -> queue.offer(new Integer[]{1, null}, 0, 2));
+        assertTrue(queue.isEmpty());
+
+        // 长度为 0 的批量操作立即返回，不论队列是空、非空还是满
+        assertEquals(0, queue.poll(dst, 0, 0));
+        assertEquals(0, queue.offer(src, 0, 0));
+        assertEquals(1, queue.offer(src, 0, 1));
+        assertEquals(0, queue.offer(src, 0, 0));
+        assertEquals(0, queue.poll(dst, 0, 0));
+        assertEquals(7, queue.offer(src, 1, 7));
+        assertEquals(0, queue.offer(src, 0, 0));
+        assertEquals(8, queue.poll(dst, 0, 8));
+
+        // 迭代器是快照，基于迭代器的 Collection 方法都可以使用
+        queue.offer(src, 0, 5);
+        assertEquals(1, (int) queue.poll());
+        assertEquals(Arrays.asList(2, 3, 4, 5), new ArrayList<>(queue));
+        assertTrue(queue.contains(4));
+        assertFalse(queue.contains(1));
+        assertArrayEquals(new Object[]{2, 3, 4, 5}, queue.toArray());
+        assertThrows(UnsupportedOperationException.class, () -> queue.remove(4));
+        assertThrows(UnsupportedOperationException.class, () -> queue.removeAll(Arrays.asList(4)));
+        assertThrows(UnsupportedOperationException.class, () -> queue.iterator().remove());
+        queue.clear();
+
+        // BlockingQueue 的方法
+        for (int i = 0; i < 6; i++) {
+            queue.put(i);
+        }
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(4, queue.drainTo(drained, 4));
+        assertEquals(2, queue.drainTo(drained));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), drained);
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        for (int i = 0; i < 8; i++) {
+            queue.add(i);
+        }
+        assertFalse(queue.offer(8, 10, TimeUnit.MILLISECONDS));
+        assertThrows(IllegalStateException.class, () -> queue.add(8));
+        assertEquals(0, (int) queue.take());
+        queue.clear();
+        assertTrue(queue.isEmpty());
+        assertEquals("MpmcArrayQueue[size=0, capacity=8]", queue.toString());
+
+        // take 可以被中断
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedException.class, queue::take);
+    }
+
+    /**
+     * 多个生产者、多个消费者混合使用单个和批量操作。每个元素都恰好被取出一次，
+     * 而且每个消费者看到的同一个生产者的元素是按生产顺序的。
+     */
+    @Test
+    public void testConcurrent() throws InterruptedException {
+        final int producers = 4, consumers = 4, perProducer = 200_000;
+        MpmcArrayQueue<Long> queue = new MpmcArrayQueue<>(64);
+        boolean[] seen = new boolean[producers * perProducer];
+        AtomicLong consumed = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads.add(new Thread(() -> {
+                Long[] batch = new Long[7];
+                int i = 0;
+                try {
+                    while (i < perProducer) {
+                        if (producer % 2 == 0) {
+                            queue.put((long) producer << 32 | i++);
+                        } else {
+                            int n = Math.min(batch.length, perProducer - i);
+                            for (int k = 0; k < n; k++) {
+                                batch[k] = (long) producer << 32 | (i + k);
+                            }
+                            // 没有全部入队的部分下一轮重新生成
+                            int offered = queue.offer(batch, 0, n);
+                            if (offered == 0) {
+                                Thread.yield();
+                            }
+                            i += offered;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }));
+        }
+        for (int c = 0; c < consumers; c++) {
+            threads.add(new Thread(() -> {
+                int[] last = new int[producers];
+                Arrays.fill(last, -1);
+                Long[] batch = new Long[5];
+                while (consumed.get() < seen.length) {
+                    int n = queue.poll(batch, 0, batch.length);
+                    if (n == 0) {
+                        Thread.yield();
+                    }
+                    for (int k = 0; k < n; k++) {
+                        int producer = (int) (batch[k] >>> 32), i = (int) (long) batch[k];
+                        if (i <= last[producer]) {
+                            synchronized (errors) {
+                                errors.add(new AssertionError("out of order: " + producer + " " + i));
+                            }
+                        }
+                        last[producer] = i;
+                        synchronized (seen) {
+                            if (seen[producer * perProducer + i]) {
+                                errors.add(new AssertionError("duplicate: " + producer + " " + i));
+                            }
+                            seen[producer * perProducer + i] = true;
+                        }
+                    }
+                    consumed.addAndGet(n);
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertTrue(errors.isEmpty(), errors.toString());
+        for (boolean b : seen) {
+            assertTrue(b);
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    /**
+     * 收发一个元素的抽象，屏蔽阻塞队列和非阻塞队列的差别。
+     */
+    interface Channel {
+        void send(Object o) throws InterruptedException;
+
+        Object receive() throws InterruptedException;
+    }
+
+    static Channel blocking(BlockingQueue<Object> queue) {
+        return new Channel() {
+            @Override
+            public void send(Object o) throws InterruptedException {
+                queue.put(o);
+            }
+
+            @Override
+            public Object receive() throws InterruptedException {
+                return queue.take();
+            }
+        };
+    }
+
+    /**
+     * 非阻塞队列在空的时候按 {@link WaitStrategy#BACKOFF} 等待。
+     */
+    static Channel polling(Queue<Object> queue) {
+        return new Channel() {
+            @Override
+            public void send(Object o) {
+                for (int counter = 0; !queue.offer(o); counter++) {
+                    WaitStrategy.BACKOFF.idle(counter);
+                }
+            }
+
+            @Override
+            public Object receive() {
+                Object o;
+                for (int counter = 0; (o = queue.poll()) == null; counter++) {
+                    WaitStrategy.BACKOFF.idle(counter);
+                }
+                return o;
+            }
+        };
+    }
+
+    static final int CAPACITY = 1024;
+
+    static final String[] NAMES = {"MpmcArrayQueue", "MpmcArrayQueue(batch)", "ArrayBlockingQueue",
+            "LinkedBlockingQueue", "ConcurrentLinkedQueue"};
+
+    static Supplier<Channel> channel(String name) {
+        switch (name) {
+            case "MpmcArrayQueue":
+                return () -> blocking(new MpmcArrayQueue<>(CAPACITY));
+            case "ArrayBlockingQueue":
+                return () -> blocking(new ArrayBlockingQueue<>(CAPACITY));
+            case "LinkedBlockingQueue":
+                return () -> blocking(new LinkedBlockingQueue<>(CAPACITY));
+            case "ConcurrentLinkedQueue":
+                return () -> polling(new ConcurrentLinkedQueue<>());
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * producers 个线程各发送 perProducer 个元素，consumers 个线程平分接收，返回每秒传递的元素个数。
+     */
+    static double throughput(Supplier<Channel> factory, int producers, int consumers, int perProducer)
+            throws InterruptedException {
+        Channel channel = factory.get();
+        long total = (long) producers * perProducer;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < perProducer; i++) {
+                        // 使用缓存的 Integer，避免装箱分配影响结果
+                        channel.send(i & 127);
+                    }
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }));
+        }
+        for (int c = 0; c < consumers; c++) {
+            long quota = total / consumers + (c < total % consumers ? 1 : 0);
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (long i = 0; i < quota; i++) {
+                        channel.receive();
+                    }
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }));
+        }
+        return run(threads, start, total);
+    }
+
+    /**
+     * 和 {@link #throughput} 相同，但是每次批量收发 batch 个元素。
+     */
+    static double batchThroughput(int producers, int consumers, int perProducer, int batch)
+            throws InterruptedException {
+        MpmcArrayQueue<Object> queue = new MpmcArrayQueue<>(CAPACITY);
+        long total = (long) producers * perProducer;
+        AtomicLong consumed = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            threads.add(new Thread(() -> {
+                Object[] items = new Object[batch];
+                for (int k = 0; k < batch; k++) {
+                    items[k] = k & 127;
+                }
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                for (int sent = 0, counter = 0; sent < perProducer; ) {
+                    int n = queue.offer(items, 0, Math.min(batch, perProducer - sent));
+                    if (n == 0) {
+                        WaitStrategy.BACKOFF.idle(counter++);
+                    } else {
+                        counter = 0;
+                        sent += n;
+                    }
+                }
+            }));
+        }
+        for (int c = 0; c < consumers; c++) {
+            threads.add(new Thread(() -> {
+                Object[] items = new Object[batch];
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                for (int counter = 0; consumed.get() < total; ) {
+                    int n = queue.poll(items, 0, batch);
+                    if (n == 0) {
+                        WaitStrategy.BACKOFF.idle(counter++);
+                    } else {
+                        counter = 0;
+                        consumed.addAndGet(n);
+                    }
+                }
+            }));
+        }
+        return run(threads, start, total);
+    }
+
+    private static double run(List<Thread> threads, CountDownLatch start, long total) throws InterruptedException {
+        for (Thread t : threads) {
+            t.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        return total * 1e9 / (System.nanoTime() - begin);
+    }
+
+    /**
+     * 两个线程通过一对队列来回传递一个元素，返回每次往返时间（纳秒）的分位数：p50、p99、p99.9、最大值。
+     */
+    static long[] roundTrip(Supplier<Channel> factory, int trips) throws InterruptedException {
+        Channel ping = factory.get(), pong = factory.get();
+        Thread echo = new Thread(() -> {
+            try {
+                for (int i = 0; i < trips; i++) {
+                    pong.send(ping.receive());
+                }
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+        echo.start();
+        long[] rtt = new long[trips];
+        for (int i = 0; i < trips; i++) {
+            long start = System.nanoTime();
+            ping.send(i & 127);
+            pong.receive();
+            rtt[i] = System.nanoTime() - start;
+        }
+        echo.join();
+        Arrays.sort(rtt);
+        return new long[]{rtt[trips / 2], rtt[(int) (trips * 0.99)], rtt[(int) (trips * 0.999)], rtt[trips - 1]};
+    }
+
+    /**
+     * 吞吐：1、2、4 对生产者和消费者，每个生产者发送 200 万个元素，容量都是 1024。
+     * 延迟：两个线程往返 10 万次。
+     */
+    @Test
+    public void testBenchmark() throws InterruptedException {
+        final int perProducer = 2_000_000, batch = 64, trips = 100_000;
+        System.out.println(Runtime.getRuntime().availableProcessors() + " cpus");
+        System.out.printf("%-24s%12s%12s%12s%n", "throughput(Mops/s)", "1P1C", "2P2C", "4P4C");
+        for (String name : NAMES) {
+            System.out.printf("%-24s", name);
+            for (int threads = 1; threads <= 4; threads <<= 1) {
+                double ops;
+                if (channel(name) == null) {
+                    batchThroughput(threads, threads, perProducer / 4, batch);
+                    ops = batchThroughput(threads, threads, perProducer, batch);
+                } else {
+                    throughput(channel(name), threads, threads, perProducer / 4);
+                    ops = throughput(channel(name), threads, threads, perProducer);
+                }
+                System.out.printf("%12.2f", ops / 1e6);
+            }
+            System.out.println();
+        }
+
+        System.out.printf("%-24s%12s%12s%12s%12s%n", "round trip(us)", "p50", "p99", "p99.9", "max");
+        for (String name : NAMES) {
+            if (channel(name) == null) {
+                continue;
+            }
+            roundTrip(channel(name), trips / 10);
+            long[] rtt = roundTrip(channel(name), trips);
+            System.out.printf("%-24s%12.1f%12.1f%12.1f%12.1f%n", name, rtt[0] / 1e3, rtt[1] / 1e3, rtt[2] / 1e3,
+                    rtt[3] / 1e3);
+        }
+
+        /*
+        输出：
+        1 cpus
+        throughput(Mops/s)              1P1C        2P2C        4P4C
+        MpmcArrayQueue                 15.44       21.49       16.10
+        MpmcArrayQueue(batch)          33.95       45.68       44.27
+        ArrayBlockingQueue              5.13       12.22       13.17
+        LinkedBlockingQueue            10.09       10.62       10.31
+        ConcurrentLinkedQueue          15.57       18.63       14.97
+        round trip(us)                   p50         p99       p99.9         max
+        MpmcArrayQueue                   3.4         4.6        26.9      3646.2
+        ArrayBlockingQueue               4.3         7.4        76.7      4707.4
+        LinkedBlockingQueue              4.5         7.2        32.4      4477.0
+        ConcurrentLinkedQueue            2.6         3.9        45.8     50788.8
+
+        结论：
+        - 这台机器只有 1 个 CPU，生产者和消费者只能轮流运行，每次切换都要等对方让出 CPU，
+          所以吞吐主要取决于每次运行能处理多少元素，而不是缓存行的争用。多核机器上的差距会更大，
+          因为 ArrayBlockingQueue 的生产者和消费者争用同一把锁，LinkedBlockingQueue 每个元素都要分配一个结点。
+        - MpmcArrayQueue 是 ArrayBlockingQueue 的 1.3~3 倍，是 LinkedBlockingQueue 的 1.5~2 倍，
+          和不需要等待、也不限制容量的 ConcurrentLinkedQueue 相当。
+        - 批量收发每 64 个元素只需要一次 CAS，吞吐又提高了一倍以上，在线程池之间交接大量小任务时应当优先使用。
+        - 往返延迟的中位数都是几微秒，也就是两次线程切换的时间。MpmcArrayQueue 的 p99.9 最低：
+          锁队列在等待时会 park，唤醒还要经过操作系统；ConcurrentLinkedQueue 的最大值很大，
+          是退避到休眠之后又遇上了 GC（它每个元素都分配结点）。
+        */
+    }
+}
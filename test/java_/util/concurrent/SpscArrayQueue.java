@@ -0,0 +1,308 @@
+package java_.util.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 有界的单生产者单消费者队列，所有操作都在有限步内完成（wait-free）。
+ *
+ * <p>只能有一个线程调用入队方法（{@link #offer}），一个线程调用出队方法（{@link #poll}、{@link #peek}、{@link #drain}），
+ * 两者可以是不同的线程。在此约束下不需要 CAS：
+ * <ul>
+ *     <li>生产者先用普通写把元素放进数组，再用有序写（lazySet）发布新的 tail。有序写之前有 StoreStore 屏障，
+ *     消费者 volatile 读到新的 tail 时一定能看到元素；和 volatile 写不同，它后面没有 StoreLoad 屏障</li>
+ *     <li>消费者对称地读取元素、清空槽位，再用有序写发布新的 head</li>
+ *     <li>生产者缓存上一次读到的 head，只有缓存的值显示队列已满时才重新读 head；消费者同样缓存 tail。
+ *     这样大部分操作只访问自己一侧的缓存行，不会和对方争用</li>
+ * </ul>
+ * 生产者和消费者的字段分别放在不同的父类中，中间用 128 字节的填充隔开，和 {@code PaddedLong} 的做法相同。
+ *
+ * <p>{@link #offer(Object[], int, int)} 和 {@link #drain} 批量处理元素，整批只发布一次 tail 或 head。
+ *
+ * <p>{@link #iterator()} 可以从任何线程调用，返回弱一致的快照，和 {@link MpmcArrayQueue#iterator()} 相同。
+ * {@link #remove(Object)} 等删除中间元素的方法抛出 {@link UnsupportedOperationException}。
+ */
+public class SpscArrayQueue<E> extends SpscPad2<E> {
+
+    private static final AtomicLongFieldUpdater<SpscProducerFields<?>> TAIL =
+            newUpdater(SpscProducerFields.class, "tail");
+    private static final AtomicLongFieldUpdater<SpscConsumerFields<?>> HEAD =
+            newUpdater(SpscConsumerFields.class, "head");
+
+    /**
+     * 泛型类的类字面量只能是原始类型，这里把更新器转换成通配符参数化的类型。
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> AtomicLongFieldUpdater<T> newUpdater(Class<?> holder, String fieldName) {
+        return (AtomicLongFieldUpdater<T>) AtomicLongFieldUpdater.newUpdater(holder, fieldName);
+    }
+
+    /**
+     * @param capacity 容量，会向上取整到 2 的幂
+     */
+    public SpscArrayQueue(int capacity) {
+        super(capacity);
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        Objects.requireNonNull(e);
+        long t = tail;
+        if (t - headCache > mask) {
+            headCache = head;
+            if (t - headCache > mask) {
+                return false;
+            }
+        }
+        buffer[(int) t & mask] = e;
+        TAIL.lazySet(this, t + 1);
+        return true;
+    }
+
+    /**
+     * 批量入队，写入所有元素之后只发布一次 tail。
+     *
+     * @return 实际入队的个数，队列满时可能小于 length
+     */
+    public int offer(E[] src, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > src.length - length) {
+            throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length
+                    + ", array length: " + src.length);
+        }
+        for (int i = offset; i < offset + length; i++) {
+            Objects.requireNonNull(src[i]);
+        }
+        long t = tail;
+        long free = mask + 1 - (t - headCache);
+        if (free < length) {
+            headCache = head;
+            free = mask + 1 - (t - headCache);
+        }
+        int n = (int) Math.min(free, length);
+        for (int i = 0; i < n; i++) {
+            buffer[(int) (t + i) & mask] = src[offset + i];
+        }
+        if (n > 0) {
+            TAIL.lazySet(this, t + n);
+        }
+        return n;
+    }
+
+    @Override
+    public E poll() {
+        long h = head;
+        if (h >= tailCache) {
+            tailCache = tail;
+            if (h >= tailCache) {
+                return null;
+            }
+        }
+        int index = (int) h & mask;
+        E e = buffer[index];
+        buffer[index] = null;
+        HEAD.lazySet(this, h + 1);
+        return e;
+    }
+
+    /**
+     * 把最多 limit 个元素依次交给 consumer，整批只发布一次 head。consumer 抛出异常时，
+     * 已经交出的元素（包括抛出异常的那一个）视为已出队。
+     *
+     * @return 交给 consumer 的元素个数
+     */
+    public int drain(Consumer<? super E> consumer, int limit) {
+        if (limit <= 0) {
+            return 0;
+        }
+        long h = head;
+        long available = tailCache - h;
+        if (available < limit) {
+            tailCache = tail;
+            available = tailCache - h;
+        }
+        int n = (int) Math.min(available, limit);
+        int i = 0;
+        try {
+            while (i < n) {
+                int index = (int) (h + i) & mask;
+                E e = buffer[index];
+                buffer[index] = null;
+                i++;
+                consumer.accept(e);
+            }
+        } finally {
+            if (i > 0) {
+                HEAD.lazySet(this, h + i);
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public E peek() {
+        long h = head;
+        if (h >= tailCache) {
+            tailCache = tail;
+            if (h >= tailCache) {
+                return null;
+            }
+        }
+        return buffer[(int) h & mask];
+    }
+
+    /**
+     * 返回元素个数的估计值，可以从任何线程调用。
+     */
+    @Override
+    public int size() {
+        long after = head;
+        for (;;) {
+            long before = after;
+            long t = tail;
+            after = head;
+            if (before == after) {
+                return (int) Math.max(0, Math.min(t - after, capacity()));
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return tail == head;
+    }
+
+    /**
+     * 返回队列中元素的快照的迭代器，按从队头到队尾的顺序。
+     */
+    @Override
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>(size());
+        long h = head, t = tail;
+        for (long pos = h; pos < t; pos++) {
+            E e = buffer[(int) pos & mask];
+            // head 没有越过 pos，说明 e 还没有被取走，生产者也不会覆盖这个槽位
+            if (e == null || head > pos) {
+                continue;
+            }
+            snapshot.add(e);
+        }
+        Iterator<E> it = snapshot.iterator();
+        return new Iterator<E>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public E next() {
+                return it.next();
+            }
+        };
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size=" + size() + ", capacity=" + capacity() + "]";
+    }
+}
+
+@SuppressWarnings("unused")
+abstract class SpscPad0<E> extends AbstractQueue<E> {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p08, p09, p0a, p0b, p0c, p0d, p0e, p0f;
+}
+
+/**
+ * 只读字段和生产者的字段。buffer 和 mask 不会改变，和生产者放在一起不会引起争用。
+ */
+abstract class SpscProducerFields<E> extends SpscPad0<E> {
+    final E[] buffer;
+    final int mask;
+
+    /**
+     * 下一个写入的位置，只由生产者修改。
+     */
+    volatile long tail;
+
+    /**
+     * 生产者上一次读到的 head。
+     */
+    long headCache;
+
+    @SuppressWarnings("unchecked")
+    SpscProducerFields(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity: " + capacity);
+        }
+        int n = 1 << -Integer.numberOfLeadingZeros(capacity - 1);
+        buffer = (E[]) new Object[n];
+        mask = n - 1;
+    }
+}
+
+@SuppressWarnings("unused")
+abstract class SpscPad1<E> extends SpscProducerFields<E> {
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+    long p18, p19, p1a, p1b, p1c, p1d, p1e, p1f;
+
+    SpscPad1(int capacity) {
+        super(capacity);
+    }
+}
+
+abstract class SpscConsumerFields<E> extends SpscPad1<E> {
+    /**
+     * 下一个读取的位置，只由消费者修改。
+     */
+    volatile long head;
+
+    /**
+     * 消费者上一次读到的 tail。
+     */
+    long tailCache;
+
+    SpscConsumerFields(int capacity) {
+        super(capacity);
+    }
+}
+
+@SuppressWarnings("unused")
+abstract class SpscPad2<E> extends SpscConsumerFields<E> {
+    long p20, p21, p22, p23, p24, p25, p26, p27;
+    long p28, p29, p2a, p2b, p2c, p2d, p2e, p2f;
+
+    SpscPad2(int capacity) {
+        super(capacity);
+    }
+}
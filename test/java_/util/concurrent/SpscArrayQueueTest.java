@@ -0,0 +1,278 @@
+package java_.util.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link SpscArrayQueue} 的测试，以及和其他队列的单生产者单消费者吞吐比较。
+ */
+public class SpscArrayQueueTest {
+
+    @Test
+    public void testQueue() {
+        SpscArrayQueue<Integer> queue = new SpscArrayQueue<>(3);
+        assertEquals(4, queue.capacity());
+        assertThrows(IllegalArgumentException.class, () -> new SpscArrayQueue<>(0));
+        assertThrows(NullPointerException.class, () -> queue.offer(null));
+
+        assertNull(queue.poll());
+        assertNull(queue.peek());
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(queue.offer(round * 4 + i));
+            }
+            assertFalse(queue.offer(-1));
+            assertEquals(4, queue.size());
+            assertEquals(round * 4, (int) queue.peek());
+            for (int i = 0; i < 4; i++) {
+                assertEquals(round * 4 + i, (int) queue.poll());
+            }
+            assertTrue(queue.isEmpty());
+        }
+
+        Integer[] src = {1, 2, 3, 4, 5, 6};
+        assertEquals(3, queue.offer(src, 0, 3));
+        assertEquals(1, queue.offer(src, 3, 3));
+        assertEquals(0, queue.offer(src, 4, 2));
+        assertThrows(NullPointerException.class, () -> queue.offer(new Integer[]{null}, 0, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> queue.offer(src, 4, 3));
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(0, queue.drain(drained::add, 0));
+        assertEquals(3, queue.drain(drained::add, 3));
+        assertEquals(1, queue.drain(drained::add, 10));
+        assertEquals(0, queue.drain(drained::add, 10));
+        assertEquals("[1, 2, 3, 4]", drained.toString());
+
+        // consumer 抛出异常时，已经交出的元素视为已出队
+        queue.offer(src, 0, 4);
+        assertThrows(IllegalStateException.class, () -> queue.drain(e -> {
+            if (e == 2) {
+                throw new IllegalStateException();
+            }
+        }, 4));
+        assertEquals(3, (int) queue.poll());
+        assertEquals("SpscArrayQueue[size=1, capacity=4]", queue.toString());
+
+        // 迭代器是快照，基于迭代器的 Collection 方法都可以使用
+        queue.offer(src, 4, 2);
+        assertEquals(Arrays.asList(4, 5, 6), new ArrayList<>(queue));
+        assertTrue(queue.contains(5));
+        assertFalse(queue.contains(3));
+        assertArrayEquals(new Object[]{4, 5, 6}, queue.toArray());
+        assertThrows(UnsupportedOperationException.class, () -> queue.remove(5));
+        assertThrows(UnsupportedOperationException.class, () -> queue.iterator().remove());
+    }
+
+    /**
+     * 消息的字段都是普通字段，在入队之前写入。
+     */
+    static class Message {
+        long sequence;
+        long square;
+
+        Message(long sequence) {
+            this.sequence = sequence;
+            this.square = sequence * sequence;
+        }
+    }
+
+    /**
+     * 仿照 {@code ThreadUnsafeTest.testReorderExample} 验证发布的顺序：生产者先写消息的普通字段再入队，
+     * 如果 tail 的有序写可以和之前的普通写重排，消费者就可能看到字段还没有写入的消息或者旧的槽位内容。
+     * 使用很小的容量让生产者和消费者频繁地在同一个槽位上交替，并且混合使用单个和批量操作。
+     */
+    @Test
+    public void testOrdering() throws InterruptedException {
+        for (int capacity : new int[]{1, 2, 8, 1024}) {
+            final long count = 2_000_000;
+            SpscArrayQueue<Message> queue = new SpscArrayQueue<>(capacity);
+            List<String> errors = new ArrayList<>();
+            // 消费者发现错误后提前退出，生产者也要随之退出，否则会在满的队列上一直等待
+            AtomicBoolean failed = new AtomicBoolean();
+            Thread producer = new Thread(() -> {
+                Message[] batch = new Message[3];
+                long next = 0;
+                while (next < count && !failed.get()) {
+                    if ((next & 1) == 0) {
+                        if (queue.offer(new Message(next))) {
+                            next++;
+                        } else {
+                            Thread.yield();
+                        }
+                    } else {
+                        int n = (int) Math.min(batch.length, count - next);
+                        for (int k = 0; k < n; k++) {
+                            batch[k] = new Message(next + k);
+                        }
+                        int offered = queue.offer(batch, 0, n);
+                        if (offered == 0) {
+                            Thread.yield();
+                        }
+                        next += offered;
+                    }
+                }
+            });
+            Thread consumer = new Thread(() -> {
+                long[] expected = {0};
+                while (expected[0] < count && !failed.get()) {
+                    int n = queue.drain(m -> {
+                        if (m == null || m.sequence != expected[0] || m.square != expected[0] * expected[0]) {
+                            errors.add("expected " + expected[0] + " but was "
+                                    + (m == null ? null : m.sequence + "/" + m.square));
+                            failed.set(true);
+                        }
+                        expected[0]++;
+                    }, 5);
+                    if (n == 0) {
+                        Message m = queue.poll();
+                        if (m == null) {
+                            Thread.yield();
+                        } else if (m.sequence != expected[0]++) {
+                            errors.add("poll: " + m.sequence);
+                            failed.set(true);
+                        }
+                    }
+                }
+            });
+            producer.start();
+            consumer.start();
+            // 限时等待，即使两个线程因为其他原因卡住，测试也会失败而不是挂起
+            producer.join(60_000);
+            consumer.join(60_000);
+            if (producer.isAlive() || consumer.isAlive()) {
+                failed.set(true);
+                fail("capacity " + capacity + ": timed out, " + errors);
+            }
+            assertTrue(errors.isEmpty(), "capacity " + capacity + ": " + errors);
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    /**
+     * 一个生产者、一个消费者传递 5000 万个元素，容量都是 1024。
+     * SpscArrayQueue(batch) 使用 64 个元素的批量入队和 drain。
+     */
+    @Test
+    public void testBenchmark() throws InterruptedException {
+        final int count = 50_000_000, batch = 64;
+        System.out.println(Runtime.getRuntime().availableProcessors() + " cpus");
+        System.out.printf("%-24s%12s%n", "queue", "Mops/s");
+        String[] names = {"SpscArrayQueue", "SpscArrayQueue(batch)", "MpmcArrayQueue", "MpmcArrayQueue(batch)",
+                "ArrayBlockingQueue", "ConcurrentLinkedQueue"};
+        for (String name : names) {
+            double ops;
+            switch (name) {
+                case "SpscArrayQueue":
+                    MpmcArrayQueueTest.throughput(() -> MpmcArrayQueueTest.polling(new SpscArrayQueue<>(1024)),
+                            1, 1, count / 10);
+                    ops = MpmcArrayQueueTest.throughput(
+                            () -> MpmcArrayQueueTest.polling(new SpscArrayQueue<>(1024)), 1, 1, count);
+                    break;
+                case "SpscArrayQueue(batch)":
+                    batchThroughput(count / 10, batch);
+                    ops = batchThroughput(count, batch);
+                    break;
+                case "MpmcArrayQueue(batch)":
+                    MpmcArrayQueueTest.batchThroughput(1, 1, count / 10, batch);
+                    ops = MpmcArrayQueueTest.batchThroughput(1, 1, count, batch);
+                    break;
+                case "ConcurrentLinkedQueue":
+                    MpmcArrayQueueTest.throughput(() -> MpmcArrayQueueTest.polling(new ConcurrentLinkedQueue<>()),
+                            1, 1, count / 10);
+                    ops = MpmcArrayQueueTest.throughput(
+                            () -> MpmcArrayQueueTest.polling(new ConcurrentLinkedQueue<>()), 1, 1, count);
+                    break;
+                case "ArrayBlockingQueue":
+                    MpmcArrayQueueTest.throughput(() -> MpmcArrayQueueTest.blocking(new ArrayBlockingQueue<>(1024)),
+                            1, 1, count / 10);
+                    ops = MpmcArrayQueueTest.throughput(
+                            () -> MpmcArrayQueueTest.blocking(new ArrayBlockingQueue<>(1024)), 1, 1, count);
+                    break;
+                default:
+                    MpmcArrayQueueTest.throughput(() -> MpmcArrayQueueTest.polling(new MpmcArrayQueue<>(1024)),
+                            1, 1, count / 10);
+                    ops = MpmcArrayQueueTest.throughput(
+                            () -> MpmcArrayQueueTest.polling(new MpmcArrayQueue<>(1024)), 1, 1, count);
+            }
+            System.out.printf("%-24s%12.2f%n", name, ops / 1e6);
+        }
+
+        /*
+        输出：
+        1 cpus
+        queue                         Mops/s
+        SpscArrayQueue                 81.34
+        SpscArrayQueue(batch)          75.62
+        MpmcArrayQueue                 24.82
+        MpmcArrayQueue(batch)          50.63
+        ArrayBlockingQueue             12.48
+        ConcurrentLinkedQueue          20.15
+
+        结论：
+        - 去掉 CAS 之后，SpscArrayQueue 是 MpmcArrayQueue 的 3 倍多，是 ArrayBlockingQueue 的 6.5 倍。
+        - 这台机器只有 1 个 CPU，生产者和消费者轮流运行，每次运行都会把队列填满或取空，
+          缓存的 head、tail 几乎总是有效的，所以单个操作已经接近批量操作，批量反而因为多了数组拷贝略慢。
+          多核上两个线程同时运行时，批量发布能把每 64 个元素的缓存行传递减少到一次，差距会拉开。
+        - 100M+ ops/s 的目标需要生产者和消费者各占一个核心，在这台机器上无法验证；
+          单核上 81M ops/s 是两个线程加起来的速度，每个元素约 12ns。
+        */
+    }
+
+    static double batchThroughput(int count, int batch) throws InterruptedException {
+        SpscArrayQueue<Object> queue = new SpscArrayQueue<>(1024);
+        CountDownLatch start = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            Object[] items = new Object[batch];
+            for (int k = 0; k < batch; k++) {
+                items[k] = k & 127;
+            }
+            await(start);
+            for (int sent = 0, counter = 0; sent < count; ) {
+                int n = queue.offer(items, 0, Math.min(batch, count - sent));
+                if (n == 0) {
+                    WaitStrategy.BACKOFF.idle(counter++);
+                } else {
+                    counter = 0;
+                    sent += n;
+                }
+            }
+        });
+        Thread consumer = new Thread(() -> {
+            long[] sink = new long[1];
+            await(start);
+            for (int received = 0, counter = 0; received < count; ) {
+                int n = queue.drain(o -> sink[0] += (Integer) o, batch);
+                if (n == 0) {
+                    WaitStrategy.BACKOFF.idle(counter++);
+                } else {
+                    counter = 0;
+                    received += n;
+                }
+            }
+        });
+        producer.start();
+        consumer.start();
+        long begin = System.nanoTime();
+        start.countDown();
+        producer.join();
+        consumer.join();
+        return count * 1e9 / (System.nanoTime() - begin);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
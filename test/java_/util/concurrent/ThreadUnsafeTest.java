@@ -1,5 +1,7 @@
 package java_.util.concurrent;
 
+import java_.util.concurrent.atomic.StripedLongCounter;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.util.concurrent.CountDownLatch;
@@ -35,6 +37,26 @@ public class ThreadUnsafeTest {
          */
     }
 
+    /**
+     * 使用分段计数器修复 {@link ThreadUnsafeExample}：不会丢失更新，多核下也不会像 AtomicInteger 那样争用同一个缓存行。
+     */
+    @Test
+    public void testStripedCounter() throws InterruptedException {
+        final int threadSize = 1000;
+        StripedLongCounter counter = new StripedLongCounter();
+        final CountDownLatch countDownLatch = new CountDownLatch(threadSize);
+        ExecutorService executorService = Executors.newCachedThreadPool();
+        for (int i = 0; i < threadSize; i++) {
+            executorService.execute(() -> {
+                counter.increment();
+                countDownLatch.countDown();
+            });
+        }
+        countDownLatch.await();
+        executorService.shutdown();
+        Assertions.assertEquals(threadSize, counter.sum());
+    }
+
     @Test
     public void testReorderExample() throws InterruptedException {
         for (int i = 0; i < 100000; i++) {
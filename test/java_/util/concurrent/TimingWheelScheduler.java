@@ -0,0 +1,622 @@
+package java_.util.concurrent;
+
+import java_.util.concurrent.atomic.StripedLongCounter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 使用分层时间轮（hierarchical timing wheel）的 {@link ScheduledExecutorService}，用于管理大量的超时任务。
+ *
+ * <p>{@link java.util.concurrent.ScheduledThreadPoolExecutor} 把延迟任务放在一个加锁的二叉堆中，
+ * 调度和取消（removeOnCancel 时）都是 O(log n)，所有线程争用同一把锁。时间轮把时间分成固定长度的 tick：
+ * <ul>
+ *     <li>第 0 层有 wheelSize 个桶，每个桶对应一个 tick；第 L 层的每个桶对应 wheelSize^L 个 tick。
+ *     到期的 tick 数记为 D、当前 tick 记为 t，把 D 和 t 看作 wheelSize 进制的数，任务放在它们最高的不同位所在的层，
+ *     桶的下标是 D 在这一位上的数字。所以放入一个任务是 O(1) 的，和任务总数无关</li>
+ *     <li>每个 tick，第 0 层当前桶中的任务全部到期，整个桶一次取下，交给工作线程池执行。
+ *     当 t 的低 L 位都为 0 时，第 L 层当前桶中的任务离到期只剩不到 wheelSize^L 个 tick，把它们重新放到更低的层（cascade）。
+ *     每个任务最多被移动“层数”次</li>
+ *     <li>桶是双向链表，取消只需要把任务从链表中摘下，也是 O(1)</li>
+ * </ul>
+ * 代价是精度：任务在到期时间之后的第一个 tick 执行，最多晚一个 tick（加上 tick 线程的调度延迟），不会提前。
+ *
+ * <p>时间轮只由 tick 线程访问，不需要加锁。其他线程调度的任务先放入 {@link #scheduled} 队列，
+ * 取消的任务放入 {@link #cancelled} 队列，由 tick 线程在每个 tick 开始时处理，和 Netty 的 HashedWheelTimer 相同。
+ *
+ * <p>和 {@code ScheduledThreadPoolExecutor} 的默认策略不同，关闭后所有还没有到期的延迟任务和周期任务都会被取消。
+ * 任务开始运行后不能再被取消，{@code cancel} 的 mayInterruptIfRunning 参数被忽略。
+ */
+public class TimingWheelScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+
+    /**
+     * 最大延迟，和 ScheduledThreadPoolExecutor 一样限制延迟，避免到期时间溢出。
+     */
+    private static final long MAX_DELAY_NANOS = Long.MAX_VALUE >> 2;
+
+    private final long tickNanos;
+    private final int bits;
+    private final int mask;
+
+    /**
+     * wheels[L][i] 是第 L 层的第 i 个桶。
+     */
+    private final Bucket[][] wheels;
+
+    private final ExecutorService workers;
+    private final Thread tickThread;
+    private final long startNanos;
+
+    /**
+     * 已经调度、还没有被 tick 线程放入时间轮的任务。
+     */
+    private final ConcurrentLinkedQueue<TimerTask<?>> scheduled = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 已经取消、需要从时间轮中摘下的任务。
+     */
+    private final ConcurrentLinkedQueue<TimerTask<?>> cancelled = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 等待到期的任务数。
+     */
+    private final StripedLongCounter pending = new StripedLongCounter();
+
+    private volatile boolean shutdown;
+
+    /**
+     * 当前的 tick，只由 tick 线程访问。
+     */
+    private long tick;
+
+    /**
+     * 关闭时被取消的任务，在 tick 线程结束之前设置。tick 线程异常结束时为 null。
+     */
+    private volatile List<Runnable> unprocessed;
+
+    /**
+     * tick 为 1 毫秒，每层 64 个桶，使用 workers 个线程执行到期的任务。
+     */
+    public TimingWheelScheduler(int workers) {
+        this(1, TimeUnit.MILLISECONDS, 64, Executors.newFixedThreadPool(workers));
+    }
+
+    /**
+     * @param tickDuration 每个 tick 的长度，也是定时的精度
+     * @param wheelSize    每层的桶数，必须是 2 的幂
+     * @param workers      执行到期任务的线程池。它归这个调度器所有，会随调度器一起关闭
+     */
+    public TimingWheelScheduler(long tickDuration, TimeUnit unit, int wheelSize, ExecutorService workers) {
+        tickNanos = unit.toNanos(tickDuration);
+        if (tickNanos <= 0 || tickNanos > MAX_DELAY_NANOS) {
+            throw new IllegalArgumentException("tickDuration: " + tickDuration + " " + unit);
+        }
+        if (wheelSize < 2 || wheelSize > 1 << 16 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheelSize: " + wheelSize);
+        }
+        this.workers = Objects.requireNonNull(workers);
+        bits = Integer.numberOfTrailingZeros(wheelSize);
+        mask = wheelSize - 1;
+        // tick 数是非负的 long，最多 63 位
+        wheels = new Bucket[(63 + bits - 1) / bits][wheelSize];
+        for (Bucket[] wheel : wheels) {
+            for (int i = 0; i < wheelSize; i++) {
+                wheel[i] = new Bucket();
+            }
+        }
+        startNanos = System.nanoTime();
+        tickThread = new Thread(this::runTicks, "timing-wheel-" + System.identityHashCode(this));
+        tickThread.setDaemon(true);
+        tickThread.start();
+    }
+
+    /**
+     * 等待到期的任务数的估计值。
+     */
+    public long pendingTimers() {
+        return Math.max(0, pending.sum());
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // 调度
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        Objects.requireNonNull(command);
+        return enqueue(new TimerTask<Void>(command, triggerTime(delay, unit), 0));
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        Objects.requireNonNull(callable);
+        return enqueue(new TimerTask<V>(callable, triggerTime(delay, unit), 0));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        Objects.requireNonNull(command);
+        if (period <= 0) {
+            throw new IllegalArgumentException("period: " + period);
+        }
+        return enqueue(new TimerTask<Void>(command, triggerTime(initialDelay, unit), unit.toNanos(period)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        Objects.requireNonNull(command);
+        if (delay <= 0) {
+            throw new IllegalArgumentException("delay: " + delay);
+        }
+        return enqueue(new TimerTask<Void>(command, triggerTime(initialDelay, unit), -unit.toNanos(delay)));
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException("scheduler has been shut down");
+        }
+        workers.execute(command);
+    }
+
+    private long triggerTime(long delay, TimeUnit unit) {
+        long nanos = unit.toNanos(Math.max(delay, 0));
+        return System.nanoTime() + Math.min(nanos, MAX_DELAY_NANOS);
+    }
+
+    private <V> TimerTask<V> enqueue(TimerTask<V> task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("scheduler has been shut down");
+        }
+        pending.increment();
+        scheduled.offer(task);
+        // 入队的同时关闭了，tick 线程可能已经结束，不会再取出这个任务
+        if (shutdown && task.cancel(false)) {
+            throw new RejectedExecutionException("scheduler has been shut down");
+        }
+        return task;
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // tick 线程
+
+    private void runTicks() {
+        while (!shutdown) {
+            long deadline = startNanos + (tick + 1) * tickNanos;
+            long wait;
+            while ((wait = deadline - System.nanoTime()) > 0 && !shutdown) {
+                LockSupport.parkNanos(this, wait);
+            }
+            if (shutdown) {
+                break;
+            }
+            // 落后时不跳过 tick，逐个处理，保证 cascade 不会漏掉桶
+            tick++;
+            transferScheduled();
+            processCancelled();
+            advance();
+        }
+        cancelAll();
+    }
+
+    private void transferScheduled() {
+        for (TimerTask<?> task; (task = scheduled.poll()) != null; ) {
+            if (task.state == WAITING) {
+                task.deadlineTick = ticksOf(task.deadline);
+                place(task);
+            }
+        }
+    }
+
+    private void processCancelled() {
+        for (TimerTask<?> task; (task = cancelled.poll()) != null; ) {
+            if (task.bucket != null) {
+                task.bucket.remove(task);
+            }
+        }
+    }
+
+    /**
+     * 到期时间之后的第一个 tick。
+     */
+    private long ticksOf(long deadlineNanos) {
+        long elapsed = Math.max(0, deadlineNanos - startNanos);
+        return (elapsed + tickNanos - 1) / tickNanos;
+    }
+
+    /**
+     * 按 D 和当前 tick 最高的不同位把任务放入对应的层，已经到期的任务直接执行。
+     */
+    private void place(TimerTask<?> task) {
+        long d = task.deadlineTick;
+        if (d <= tick) {
+            expire(task);
+            return;
+        }
+        int level = (63 - Long.numberOfLeadingZeros(d ^ tick)) / bits;
+        wheels[level][(int) (d >>> (level * bits)) & mask].add(task);
+    }
+
+    private void advance() {
+        // 从最高的需要 cascade 的层开始，高层的任务可能被移到下一层正要 cascade 的桶中
+        int top = 0;
+        while (top + 1 < wheels.length && (tick & ((1L << ((top + 1) * bits)) - 1)) == 0) {
+            top++;
+        }
+        for (int level = top; level >= 1; level--) {
+            TimerTask<?> task = wheels[level][(int) (tick >>> (level * bits)) & mask].clear();
+            while (task != null) {
+                TimerTask<?> next = task.next;
+                task.next = null;
+                if (task.state == WAITING) {
+                    place(task);
+                }
+                task = next;
+            }
+        }
+        // 整个桶一次取下，其中的任务都在这个 tick 到期
+        TimerTask<?> task = wheels[0][(int) tick & mask].clear();
+        while (task != null) {
+            TimerTask<?> next = task.next;
+            task.next = null;
+            expire(task);
+            task = next;
+        }
+    }
+
+    private void expire(TimerTask<?> task) {
+        if (!STATE.compareAndSet(task, WAITING, EXPIRED)) {
+            return;
+        }
+        pending.decrement();
+        try {
+            workers.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.setException(e);
+        }
+    }
+
+    private void cancelAll() {
+        List<Runnable> tasks = new ArrayList<>();
+        for (Bucket[] wheel : wheels) {
+            for (Bucket bucket : wheel) {
+                for (TimerTask<?> task = bucket.clear(); task != null; task = task.next) {
+                    if (task.cancel(false)) {
+                        tasks.add(task);
+                    }
+                }
+            }
+        }
+        for (TimerTask<?> task; (task = scheduled.poll()) != null; ) {
+            if (task.cancel(false)) {
+                tasks.add(task);
+            }
+        }
+        cancelled.clear();
+        unprocessed = tasks;
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // 关闭
+
+    @Override
+    public void shutdown() {
+        stopTicks();
+        workers.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        stopTicks();
+        // tick 线程异常结束时没有执行 cancelAll，时间轮中的任务已经无法取出
+        List<Runnable> drained = unprocessed;
+        List<Runnable> tasks = drained != null ? new ArrayList<>(drained) : new ArrayList<>();
+        tasks.addAll(workers.shutdownNow());
+        return tasks;
+    }
+
+    private void stopTicks() {
+        shutdown = true;
+        LockSupport.unpark(tickThread);
+        boolean interrupted = false;
+        while (tickThread.isAlive()) {
+            try {
+                tickThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && !tickThread.isAlive() && workers.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        tickThread.join(Math.max(1, unit.toMillis(timeout)));
+        return !tickThread.isAlive()
+                && workers.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // 任务
+
+    /**
+     * 时间轮中的一个桶，任务组成双向链表。只由 tick 线程访问。
+     */
+    private static final class Bucket {
+        TimerTask<?> head, tail;
+
+        void add(TimerTask<?> task) {
+            task.bucket = this;
+            task.prev = tail;
+            task.next = null;
+            if (tail == null) {
+                head = task;
+            } else {
+                tail.next = task;
+            }
+            tail = task;
+        }
+
+        void remove(TimerTask<?> task) {
+            TimerTask<?> prev = task.prev, next = task.next;
+            if (prev == null) {
+                head = next;
+            } else {
+                prev.next = next;
+            }
+            if (next == null) {
+                tail = prev;
+            } else {
+                next.prev = prev;
+            }
+            task.bucket = null;
+            task.prev = task.next = null;
+        }
+
+        /**
+         * 取下整个链表，返回头结点。链表中的任务仍然通过 next 相连，其他链接字段被清空。
+         */
+        TimerTask<?> clear() {
+            TimerTask<?> first = head;
+            for (TimerTask<?> task = first; task != null; task = task.next) {
+                task.bucket = null;
+                task.prev = null;
+            }
+            head = tail = null;
+            return first;
+        }
+    }
+
+    /**
+     * 在时间轮或 {@link #scheduled} 中等待到期。
+     */
+    static final int WAITING = 0;
+    /**
+     * 已经交给工作线程池，还没有开始运行。
+     */
+    static final int EXPIRED = 1;
+    static final int RUNNING = 2;
+    static final int COMPLETED = 3;
+    static final int EXCEPTIONAL = 4;
+    static final int CANCELLED = 5;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<TimerTask> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(TimerTask.class, "state");
+
+    /**
+     * 定时任务和它的 Future。
+     *
+     * <p>没有继承 {@link java.util.concurrent.FutureTask}：FutureTask 把 Runnable 包装成一个 RunnableAdapter，
+     * 等待者组成链表，每个任务多出几十字节，在几百万个任务时很可观。这里直接保存 Runnable 或 Callable，
+     * 等待结果时使用任务自身的监视器。
+     */
+    private final class TimerTask<V> implements RunnableScheduledFuture<V> {
+        volatile int state;
+
+        /**
+         * {@link Runnable} 或 {@link Callable}。
+         */
+        private final Object task;
+
+        /**
+         * 完成时是结果或异常。
+         */
+        private Object outcome;
+
+        /**
+         * 到期的 System.nanoTime()。
+         */
+        volatile long deadline;
+
+        /**
+         * 0 表示不是周期任务，正数表示固定频率，负数表示固定延迟，和 ScheduledFutureTask 相同。
+         */
+        private final long period;
+
+        // 以下字段只由 tick 线程访问
+        long deadlineTick;
+        Bucket bucket;
+        TimerTask<?> prev, next;
+
+        TimerTask(Object task, long deadline, long period) {
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return period != 0;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other == this) {
+                return 0;
+            }
+            if (other instanceof TimerTask) {
+                return Long.compare(deadline - ((TimerTask<?>) other).deadline, 0);
+            }
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            if (!STATE.compareAndSet(this, EXPIRED, RUNNING)) {
+                return;
+            }
+            Object result;
+            try {
+                if (task instanceof Callable) {
+                    result = ((Callable<V>) task).call();
+                } else {
+                    ((Runnable) task).run();
+                    result = null;
+                }
+            } catch (Throwable e) {
+                setException(e);
+                return;
+            }
+            if (period == 0) {
+                finish(COMPLETED, result);
+                return;
+            }
+            deadline = period > 0 ? deadline + period : System.nanoTime() - period;
+            if (shutdown) {
+                finish(CANCELLED, null);
+                return;
+            }
+            // 重新调度。运行期间 cancel 会失败，所以此时状态一定是 RUNNING
+            state = WAITING;
+            pending.increment();
+            scheduled.offer(this);
+            if (shutdown) {
+                cancel(false);
+            }
+        }
+
+        void setException(Throwable e) {
+            finish(EXCEPTIONAL, e);
+        }
+
+        private void finish(int newState, Object result) {
+            outcome = result;
+            synchronized (this) {
+                state = newState;
+                notifyAll();
+            }
+        }
+
+        /**
+         * 只有还没有开始运行的任务可以被取消。
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            for (;;) {
+                int s = state;
+                if (s != WAITING && s != EXPIRED) {
+                    return false;
+                }
+                if (STATE.compareAndSet(this, s, CANCELLED)) {
+                    if (s == WAITING) {
+                        pending.decrement();
+                        cancelled.offer(this);
+                    }
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        @Override
+        public boolean isDone() {
+            return state >= COMPLETED;
+        }
+
+        @Override
+        public V get() throws InterruptedException, ExecutionException {
+            synchronized (this) {
+                while (!isDone()) {
+                    wait();
+                }
+            }
+            return report();
+        }
+
+        @Override
+        public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (this) {
+                while (!isDone()) {
+                    long nanos = deadline - System.nanoTime();
+                    if (nanos <= 0) {
+                        throw new TimeoutException();
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, nanos);
+                }
+            }
+            return report();
+        }
+
+        @SuppressWarnings("unchecked")
+        private V report() throws ExecutionException {
+            int s = state;
+            if (s == CANCELLED) {
+                throw new CancellationException();
+            }
+            if (s == EXCEPTIONAL) {
+                throw new ExecutionException((Throwable) outcome);
+            }
+            return (V) outcome;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[tick=" + TimeUnit.NANOSECONDS.toMicros(tickNanos)
+                + "us, wheelSize=" + (mask + 1) + ", pending=" + pendingTimers() + "]";
+    }
+}
@@ -0,0 +1,276 @@
+package java_.util.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java_.TestUtil.usedMemory;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link TimingWheelScheduler} 的测试，以及和 {@link ScheduledThreadPoolExecutor} 的比较。
+ */
+public class TimingWheelSchedulerTest {
+
+    /**
+     * 每层只有 2 个桶，延迟几百毫秒的任务要经过多层 cascade。每个任务都不能提前执行，也不能晚太多。
+     */
+    @Test
+    public void testSchedule() throws Exception {
+        TimingWheelScheduler scheduler = new TimingWheelScheduler(1, TimeUnit.MILLISECONDS, 2,
+                Executors.newFixedThreadPool(2));
+        assertEquals(42, (int) scheduler.schedule(() -> 42, 0, TimeUnit.MILLISECONDS).get());
+
+        final int count = 2000;
+        Random random = new Random(47);
+        long[] deadlines = new long[count];
+        long[] ran = new long[count];
+        CountDownLatch done = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            int id = i;
+            long delay = random.nextInt(1000);
+            deadlines[i] = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+            scheduler.schedule(() -> {
+                ran[id] = System.nanoTime();
+                done.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        long maxLate = 0;
+        for (int i = 0; i < count; i++) {
+            assertTrue(ran[i] >= deadlines[i], "task " + i + " ran early");
+            maxLate = Math.max(maxLate, ran[i] - deadlines[i]);
+        }
+        // 最多晚一个 tick，这里留出线程调度的余量
+        assertTrue(maxLate < TimeUnit.MILLISECONDS.toNanos(200), "max late: " + maxLate);
+        assertEquals(0, scheduler.pendingTimers());
+
+        ScheduledFuture<String> future = scheduler.schedule(() -> {
+            throw new IllegalStateException("boom");
+        }, 1, TimeUnit.MILLISECONDS);
+        ExecutionException e = assertThrows(ExecutionException.class, future::get);
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertTrue(future.isDone());
+        assertFalse(future.cancel(false));
+
+        ScheduledFuture<?> later = scheduler.schedule(() -> {
+        }, 1, TimeUnit.HOURS);
+        assertTrue(later.getDelay(TimeUnit.MINUTES) >= 59);
+        assertTrue(later.compareTo(future) > 0);
+        assertThrows(TimeoutException.class, () -> later.get(10, TimeUnit.MILLISECONDS));
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        TimingWheelScheduler scheduler = new TimingWheelScheduler(1);
+        AtomicInteger runs = new AtomicInteger();
+        ScheduledFuture<?>[] futures = new ScheduledFuture<?>[1000];
+        // 延迟留出 1 秒的余量，保证下面的断言和取消都在任务到期之前完成
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = scheduler.schedule((Runnable) runs::incrementAndGet, 1000 + i % 50, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(futures.length, scheduler.pendingTimers());
+        for (int i = 0; i < futures.length; i += 2) {
+            assertTrue(futures[i].cancel(false));
+            assertFalse(futures[i].cancel(false));
+            assertTrue(futures[i].isCancelled());
+            assertTrue(futures[i].isDone());
+        }
+        assertEquals(futures.length / 2, scheduler.pendingTimers());
+        for (int i = 1; i < futures.length; i += 2) {
+            assertNull(futures[i].get());
+        }
+        assertThrows(CancellationException.class, () -> futures[0].get());
+        // 没有取消的任务都执行完时已经过了所有的到期时间，再等一会儿，确认被取消的任务没有执行
+        Thread.sleep(100);
+        assertEquals(futures.length / 2, runs.get());
+        assertEquals(0, scheduler.pendingTimers());
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testPeriodic() throws Exception {
+        TimingWheelScheduler scheduler = new TimingWheelScheduler(1);
+        AtomicInteger rate = new AtomicInteger(), delay = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(10);
+        long start = System.nanoTime();
+        ScheduledFuture<?> fixedRate = scheduler.scheduleAtFixedRate(() -> {
+            rate.incrementAndGet();
+            latch.countDown();
+        }, 0, 10, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> fixedDelay = scheduler.scheduleWithFixedDelay(delay::incrementAndGet, 0, 10,
+                TimeUnit.MILLISECONDS);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        // 固定频率：第 10 次执行在 90 毫秒之后
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+        assertTrue(((RunnableScheduledFuture<?>) fixedRate).isPeriodic());
+        // 正在运行时不能取消，运行结束重新调度后就可以了
+        while (!fixedRate.cancel(false)) {
+            Thread.yield();
+        }
+        assertThrows(CancellationException.class, fixedRate::get);
+        int runs = rate.get();
+        Thread.sleep(30);
+        assertEquals(runs, rate.get());
+
+        // 抛出异常后不再执行
+        AtomicInteger failing = new AtomicInteger();
+        ScheduledFuture<?> failed = scheduler.scheduleAtFixedRate(() -> {
+            if (failing.incrementAndGet() == 3) {
+                throw new IllegalStateException();
+            }
+        }, 0, 1, TimeUnit.MILLISECONDS);
+        assertThrows(ExecutionException.class, failed::get);
+        Thread.sleep(20);
+        assertEquals(3, failing.get());
+
+        // 关闭后周期任务被取消
+        List<Runnable> unprocessed = scheduler.shutdownNow();
+        assertTrue(delay.get() > 0);
+        assertTrue(fixedDelay.isCancelled() || unprocessed.contains(fixedDelay), fixedDelay.toString());
+        assertTrue(scheduler.awaitTermination(1, TimeUnit.SECONDS));
+        assertTrue(scheduler.isTerminated());
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        TimingWheelScheduler scheduler = new TimingWheelScheduler(1);
+        ScheduledFuture<?> far = scheduler.schedule(() -> {
+        }, 1, TimeUnit.HOURS);
+        assertEquals("done", scheduler.submit(() -> "done").get());
+        scheduler.shutdown();
+        assertTrue(scheduler.isShutdown());
+        assertTrue(far.isCancelled());
+        assertThrows(RejectedExecutionException.class, () -> scheduler.schedule(() -> {
+        }, 1, TimeUnit.SECONDS));
+        assertThrows(RejectedExecutionException.class, () -> scheduler.execute(() -> {
+        }));
+        assertTrue(scheduler.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 超时任务的典型生命周期：请求开始时调度一个超时，请求在超时之前完成，取消超时。
+     * 先调度 n 个 1~2 小时后到期的任务（都不会到期），测量每次调度的时间和每个任务占用的堆内存，再全部取消。
+     * ScheduledThreadPoolExecutor 打开了 removeOnCancelPolicy，否则取消的任务要到期时才从队列中删除。
+     * 最后测量 20 万个在 1 秒内陆续到期的任务执行时的平均延迟。
+     * 默认只测 10^6 个任务，更大的规模通过系统属性 {@code timer.bench.maxSize} 打开，
+     * 例如 {@code -Dtimer.bench.maxSize=10000000}。
+     */
+    @Test
+    public void testBenchmark() throws Exception {
+        int maxSize = Integer.getInteger("timer.bench.maxSize", 1_000_000);
+        System.out.println(Runtime.getRuntime().availableProcessors() + " cpus, max heap: "
+                + (Runtime.getRuntime().maxMemory() >> 20) + "MB");
+        System.out.printf("%-30s%8s%14s%14s%14s%n", "scheduler", "n", "bytes/timer", "schedule ns", "cancel ns");
+        Runnable noop = () -> {
+        };
+        for (String name : new String[]{"ScheduledThreadPoolExecutor", "TimingWheelScheduler"}) {
+            double bytesPerTimer = 0;
+            for (int n = 1_000_000; n <= maxSize; n *= 10) {
+                System.out.printf("%-30s%8s", name, "10^" + (int) Math.log10(n));
+                if (bytesPerTimer * n > Runtime.getRuntime().maxMemory()) {
+                    System.out.printf("%14s%14s%14s%n", "-", "-", "-");
+                    break;
+                }
+                ScheduledExecutorService scheduler = newScheduler(name);
+                try {
+                    ScheduledFuture<?>[] futures = new ScheduledFuture<?>[n];
+                    long base = usedMemory();
+                    Random random = new Random(47);
+                    long start = System.nanoTime();
+                    for (int i = 0; i < n; i++) {
+                        futures[i] = scheduler.schedule(noop, 3600_000 + random.nextInt(3600_000),
+                                TimeUnit.MILLISECONDS);
+                    }
+                    long scheduleTime = System.nanoTime() - start;
+                    bytesPerTimer = (double) (usedMemory() - base) / n;
+                    start = System.nanoTime();
+                    for (int i = 0; i < n; i++) {
+                        futures[i].cancel(false);
+                    }
+                    long cancelTime = System.nanoTime() - start;
+                    System.out.printf("%14.1f%14.1f%14.1f%n", bytesPerTimer, (double) scheduleTime / n,
+                            (double) cancelTime / n);
+                } catch (OutOfMemoryError e) {
+                    System.out.printf("%14s%14s%14s%n", "-", "-", "-");
+                    break;
+                } finally {
+                    scheduler.shutdownNow();
+                    scheduler.awaitTermination(10, TimeUnit.SECONDS);
+                }
+            }
+        }
+
+        System.out.printf("%n%-30s%14s%14s%n", "scheduler", "mean late ms", "max late ms");
+        for (String name : new String[]{"ScheduledThreadPoolExecutor", "TimingWheelScheduler"}) {
+            ScheduledExecutorService scheduler = newScheduler(name);
+            final int n = 200_000;
+            CountDownLatch done = new CountDownLatch(n);
+            AtomicLong totalLate = new AtomicLong(), maxLate = new AtomicLong();
+            Random random = new Random(47);
+            for (int i = 0; i < n; i++) {
+                long delay = random.nextInt(1000);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+                scheduler.schedule(() -> {
+                    long late = System.nanoTime() - deadline;
+                    totalLate.addAndGet(late);
+                    maxLate.accumulateAndGet(late, Math::max);
+                    done.countDown();
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+            done.await();
+            System.out.printf("%-30s%14.2f%14.2f%n", name, totalLate.get() / 1e6 / n, maxLate.get() / 1e6);
+            scheduler.shutdown();
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        /*
+        输出（-Dtimer.bench.maxSize=10000000）：
+        1 cpus, max heap: 1453MB
+        scheduler                            n   bytes/timer   schedule ns     cancel ns
+        ScheduledThreadPoolExecutor       10^6         105.0         607.6         463.3
+        ScheduledThreadPoolExecutor       10^7         101.9         432.6         256.3
+        TimingWheelScheduler              10^6          64.0         594.8         258.3
+        TimingWheelScheduler              10^7          64.0         564.6         123.9
+
+        scheduler                       mean late ms   max late ms
+        ScheduledThreadPoolExecutor             1.64         24.34
+        TimingWheelScheduler                    1.69         19.74
+
+        结论：
+        - 每个定时任务 64 字节，就是 TimerTask 对象本身；ScheduledThreadPoolExecutor 约 100 字节，
+          多出来的是 FutureTask 的 RunnableAdapter 和堆数组中的引用。1000 万个等待的任务时少用约 370MB。
+        - 调度时间没有明显的优势：时间轮的放入是 O(1)，但调度要经过 ConcurrentLinkedQueue 交给 tick 线程，
+          多分配一个队列结点；只有 1 个 CPU 时 tick 线程和调度线程轮流运行，它们的竞争也体现不出来。
+          STPE 随机到期时间的上浮平均只有常数层，所以 O(log n) 的堆在单线程调度时并不慢。
+          多个线程同时调度时，STPE 争用同一把锁，时间轮只有无锁队列的 CAS，这里没有测出来。
+        - 取消快 2 倍：时间轮只是一次 CAS 加入取消队列，由 tick 线程 O(1) 地从链表中摘下；
+          STPE 需要加锁，并从堆中删除、重新调整。
+        - 到期精度：两者的平均延迟都在 1~2 毫秒，时间轮每个 tick 整桶交给工作线程池，最大延迟也没有变差。
+         */
+    }
+
+    private static ScheduledExecutorService newScheduler(String name) {
+        if (name.equals("ScheduledThreadPoolExecutor")) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+            executor.setRemoveOnCancelPolicy(true);
+            return executor;
+        }
+        return new TimingWheelScheduler(1);
+    }
+}
@@ -0,0 +1,63 @@
+package java_.util.concurrent;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 无锁队列在条件不满足（满或空）时的等待策略。
+ *
+ * <p>无锁队列没有条件变量，等待的线程只能反复检查条件，等待策略决定两次检查之间做什么：
+ * 忙等延迟最低，但会一直占用一个 CPU；让出和休眠不占 CPU，但被唤醒要更久。
+ * 在线程数多于 CPU 数的机器上不应该使用 {@link #BUSY_SPIN}，否则等待的线程会把持有数据的线程挤出 CPU。
+ */
+@FunctionalInterface
+public interface WaitStrategy {
+
+    /**
+     * 条件不满足时调用一次。
+     *
+     * @param counter 本次等待中已经调用的次数，从 0 开始，可以用来实现退避
+     */
+    void idle(int counter);
+
+    /**
+     * 忙等，什么也不做。
+     */
+    WaitStrategy BUSY_SPIN = counter -> {
+    };
+
+    /**
+     * 每次都让出 CPU。
+     */
+    WaitStrategy YIELD = counter -> Thread.yield();
+
+    /**
+     * 每次都休眠。实际休眠的时间取决于操作系统的定时器精度，在 Linux 上通常是几十微秒。
+     */
+    WaitStrategy PARK = counter -> LockSupport.parkNanos(1000L);
+
+    /**
+     * 先忙等 spins 次，再让出 yields 次，之后休眠，休眠时间从 1 微秒开始每次加倍，直到 maxParkNanos。
+     * 短暂的等待不会付出休眠的代价，长时间的等待也不会一直占用 CPU。
+     */
+    static WaitStrategy backoff(int spins, int yields, long maxParkNanos) {
+        if (spins < 0 || yields < 0 || maxParkNanos <= 0) {
+            throw new IllegalArgumentException();
+        }
+        return counter -> {
+            if (counter < spins) {
+                return;
+            }
+            if (counter < spins + yields) {
+                Thread.yield();
+                return;
+            }
+            int shift = Math.min(counter - spins - yields, 20);
+            LockSupport.parkNanos(Math.min(1000L << shift, maxParkNanos));
+        };
+    }
+
+    /**
+     * 默认的退避策略：忙等 100 次，让出 10 次，之后最多休眠 1 毫秒。
+     */
+    WaitStrategy BACKOFF = backoff(100, 10, 1_000_000L);
+}
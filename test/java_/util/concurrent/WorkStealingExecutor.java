@@ -0,0 +1,474 @@
+package java_.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 固定线程数的工作窃取线程池，每个工作线程有自己的双端队列。
+ *
+ * <p>{@code Executors.newCachedThreadPool()} 在没有空闲线程时为每个任务创建一个新线程，
+ * 大量短小的任务会创建大量线程；{@code newFixedThreadPool} 的线程数固定，但所有线程争用同一个
+ * LinkedBlockingQueue 的锁。这里的任务分布在多个队列中：
+ * <ul>
+ *     <li>工作线程执行任务时提交的任务放入自己的 {@link WorkQueue}，从同一端取出（LIFO），
+ *     不经过全局队列，刚提交的任务用到的数据很可能还在这个线程的缓存中</li>
+ *     <li>外部线程提交的任务放入全局的 {@link #submissions} 队列，工作线程的本地队列为空时才从中取出</li>
+ *     <li>本地队列和全局队列都为空时，从随机的一个工作线程开始依次窃取其他队列另一端（FIFO）的任务。
+ *     先提交的任务通常更大（例如分治任务的上层），一次窃取可以带走更多的工作，和所有者的竞争也更少</li>
+ *     <li>仍然找不到任务的线程先自旋、让出几轮，再把自己放入 {@link #idleWorkers} 并休眠。
+ *     提交任务时只有存在空闲线程才需要唤醒一个，休眠有时间上限，即使错过了唤醒也会定期重新扫描</li>
+ * </ul>
+ * 和 {@link java.util.concurrent.ForkJoinPool} 的区别是只提供 {@code Executor} 接口，没有 fork/join，
+ * 等待子任务的线程会阻塞而不是帮忙执行其他任务。
+ *
+ * <p>任务抛出的异常交给线程的 UncaughtExceptionHandler，工作线程继续运行，不会像 ThreadPoolExecutor 那样替换线程。
+ * 通过 {@code submit} 提交的任务的异常保存在返回的 Future 中。
+ */
+public class WorkStealingExecutor extends AbstractExecutorService {
+
+    /**
+     * 找不到任务时，休眠之前扫描所有队列的轮数。
+     */
+    private static final int SCAN_ROUNDS = 4;
+
+    /**
+     * 空闲线程一次休眠的最长时间。
+     */
+    private static final long MAX_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private static final AtomicInteger poolSequence = new AtomicInteger();
+
+    private final Worker[] workers;
+
+    /**
+     * 外部线程提交的任务。
+     */
+    private final ConcurrentLinkedQueue<Runnable> submissions = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 已经放弃扫描、准备或正在休眠的工作线程。
+     */
+    private final ConcurrentLinkedQueue<Worker> idleWorkers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    private volatile boolean shutdown;
+    private volatile boolean stopped;
+    private final CountDownLatch termination;
+
+    /**
+     * 使用和 CPU 数相同的工作线程。
+     */
+    public WorkStealingExecutor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public WorkStealingExecutor(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism: " + parallelism);
+        }
+        int pool = poolSequence.incrementAndGet();
+        workers = new Worker[parallelism];
+        termination = new CountDownLatch(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            workers[i] = new Worker(this, "work-stealing-pool-" + pool + "-worker-" + i);
+        }
+        for (Worker worker : workers) {
+            worker.start();
+        }
+    }
+
+    public int getParallelism() {
+        return workers.length;
+    }
+
+    /**
+     * 所有队列中等待执行的任务数的估计值。
+     */
+    public long getQueuedTaskCount() {
+        long count = submissions.size();
+        for (Worker worker : workers) {
+            count += worker.queue.size();
+        }
+        return count;
+    }
+
+    /**
+     * 从各个工作线程的队列中窃取的任务总数。
+     */
+    public long getStealCount() {
+        long count = 0;
+        for (Worker worker : workers) {
+            count += worker.steals;
+        }
+        return count;
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // 提交
+
+    /**
+     * 当前线程是这个线程池的工作线程时放入它自己的队列，否则放入全局队列。
+     */
+    @Override
+    public void execute(Runnable command) {
+        Objects.requireNonNull(command);
+        if (shutdown) {
+            throw new RejectedExecutionException("executor has been shut down");
+        }
+        Thread current = Thread.currentThread();
+        if (current instanceof Worker && ((Worker) current).pool == this) {
+            ((Worker) current).queue.push(command);
+        } else {
+            submissions.offer(command);
+            // 入队的同时关闭了，工作线程可能已经退出
+            if (shutdown && submissions.remove(command)) {
+                throw new RejectedExecutionException("executor has been shut down");
+            }
+        }
+        signalWork();
+    }
+
+    /**
+     * 有空闲线程时唤醒一个。和工作线程的“先登记空闲、再扫描队列”对应，这里是“先入队、再检查空闲”，
+     * 两者之中至少有一方能看到对方，所以任务不会在有空闲线程的情况下无人处理。
+     * 工作线程的本地队列用有序写发布 top，可能看不到刚登记的空闲线程，但这个任务至少还有提交它的工作线程会执行。
+     *
+     * <p>线程离开 {@link #awaitWork} 时会把自己移出 idleWorkers，所以取出的线程都在休眠或即将休眠，
+     * 不会把唤醒浪费在忙碌的线程上。
+     */
+    private void signalWork() {
+        if (idleCount.get() > 0) {
+            Worker worker = idleWorkers.poll();
+            if (worker != null) {
+                idleCount.decrementAndGet();
+                LockSupport.unpark(worker);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // 工作线程
+
+    private void runWorker(Worker w) {
+        try {
+            int misses = 0;
+            while (!stopped) {
+                Runnable task = findTask(w);
+                if (task != null) {
+                    misses = 0;
+                    runTask(w, task);
+                } else if (shutdown && !hasQueuedTasks()) {
+                    // 关闭后不再接受新任务，所有队列都空了就可以退出。findTask 之后重新检查一次，
+                    // 在它扫描之后、shutdown 之前被接受的任务还在队列中
+                    break;
+                } else if (++misses < SCAN_ROUNDS) {
+                    Thread.yield();
+                } else {
+                    awaitWork(w, misses - SCAN_ROUNDS);
+                }
+            }
+        } finally {
+            termination.countDown();
+        }
+    }
+
+    private Runnable findTask(Worker w) {
+        Runnable task = w.queue.pop();
+        if (task != null) {
+            return task;
+        }
+        task = submissions.poll();
+        if (task != null) {
+            // 还有更多的任务时继续唤醒空闲线程，让唤醒在线程之间传播
+            if (!submissions.isEmpty()) {
+                signalWork();
+            }
+            return task;
+        }
+        return steal(w);
+    }
+
+    /**
+     * 从随机位置开始依次窃取其他工作线程的任务。
+     */
+    private Runnable steal(Worker w) {
+        Worker[] ws = workers;
+        int n = ws.length;
+        int start = ThreadLocalRandom.current().nextInt(n);
+        for (int i = 0; i < n; i++) {
+            Worker victim = ws[(start + i) % n];
+            if (victim != w) {
+                Runnable task = victim.queue.steal();
+                if (task != null) {
+                    w.steals++;
+                    if (!victim.queue.isEmpty()) {
+                        signalWork();
+                    }
+                    return task;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 登记为空闲线程，再扫描一次队列，仍然没有任务就休眠。休眠时间随连续休眠的次数加倍，最长 {@link #MAX_IDLE_PARK_NANOS}。
+     * 返回之前取消登记，回到 {@link #findTask} 的线程不在 idleWorkers 中。
+     */
+    private void awaitWork(Worker w, int parks) {
+        idleWorkers.offer(w);
+        idleCount.incrementAndGet();
+        try {
+            if (hasQueuedTasks() || shutdown) {
+                return;
+            }
+            LockSupport.parkNanos(this, Math.min(TimeUnit.MICROSECONDS.toNanos(50) << Math.min(parks, 20),
+                    MAX_IDLE_PARK_NANOS));
+            // 被中断（shutdownNow）时清除中断状态，由 stopped 决定是否退出
+            Thread.interrupted();
+        } finally {
+            // 被 signalWork 唤醒时已经被取出，由它递减了 idleCount。poll 和 remove 只有一个能取出这个线程
+            if (idleWorkers.remove(w)) {
+                idleCount.decrementAndGet();
+            }
+        }
+    }
+
+    private boolean hasQueuedTasks() {
+        if (!submissions.isEmpty()) {
+            return true;
+        }
+        for (Worker worker : workers) {
+            if (!worker.queue.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void runTask(Worker w, Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable e) {
+            Thread.UncaughtExceptionHandler handler = w.getUncaughtExceptionHandler();
+            handler.uncaughtException(w, e);
+        } finally {
+            // 清除任务设置的中断状态，不影响下一个任务。shutdownNow 的中断由 stopped 标志代替
+            Thread.interrupted();
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // 关闭
+
+    /**
+     * 不再接受新任务，已经提交的任务（包括工作线程队列中的）会继续执行。
+     */
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        wakeAll();
+    }
+
+    /**
+     * 不再接受新任务，中断正在执行的任务，返回没有开始执行的任务。
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        stopped = true;
+        List<Runnable> tasks = new ArrayList<>();
+        for (Runnable task; (task = submissions.poll()) != null; ) {
+            tasks.add(task);
+        }
+        for (Worker worker : workers) {
+            for (Runnable task; (task = worker.queue.steal()) != null; ) {
+                tasks.add(task);
+            }
+            worker.interrupt();
+        }
+        return tasks;
+    }
+
+    private void wakeAll() {
+        for (Worker worker : workers) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return termination.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return termination.await(timeout, unit);
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + "[parallelism = " + workers.length + ", queued tasks = " + getQueuedTaskCount()
+                + ", steals = " + getStealCount() + (isTerminated() ? ", Terminated]" : shutdown ? ", Shutting down]"
+                : ", Running]");
+    }
+
+    private static final class Worker extends Thread {
+        final WorkStealingExecutor pool;
+        final WorkQueue queue = new WorkQueue();
+
+        /**
+         * 窃取的任务数，只由自己写入。
+         */
+        volatile long steals;
+
+        Worker(WorkStealingExecutor pool, String name) {
+            super(name);
+            this.pool = pool;
+        }
+
+        @Override
+        public void run() {
+            pool.runWorker(this);
+        }
+    }
+
+    /**
+     * 工作线程的双端队列，所有者在 top 一端 push、pop，其他线程在 base 一端 steal。
+     *
+     * <p>和 JDK 8 的 ForkJoinPool.WorkQueue 相同，取出任务的线程（包括所有者）先把槽位 CAS 为 null，
+     * 成功的线程才得到这个任务，再移动 top 或 base。所以所有者和窃取者争抢最后一个任务时只有一方成功，
+     * 所有者在没有竞争时 push 和 pop 都不需要锁。
+     */
+    static final class WorkQueue {
+
+        private static final int INITIAL_CAPACITY = 1 << 8;
+        private static final int MAXIMUM_CAPACITY = 1 << 26;
+
+        /**
+         * 下一个窃取的位置。
+         */
+        volatile int base;
+
+        /**
+         * 下一个 push 的位置，只由所有者写入。
+         */
+        volatile int top;
+
+        volatile AtomicReferenceArray<Runnable> array = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+
+        private static final AtomicIntegerFieldUpdater<WorkQueue> TOP =
+                AtomicIntegerFieldUpdater.newUpdater(WorkQueue.class, "top");
+
+        int size() {
+            return Math.max(0, top - base);
+        }
+
+        boolean isEmpty() {
+            return top - base <= 0;
+        }
+
+        void push(Runnable task) {
+            AtomicReferenceArray<Runnable> a = array;
+            int s = top;
+            if (s - base >= a.length() - 1) {
+                a = grow();
+            }
+            a.lazySet(s & (a.length() - 1), task);
+            // 和 ForkJoinPool.WorkQueue 的 putOrderedInt 相同，有序写保证窃取者看到新的 top 时也能看到任务，
+            // 省去 volatile 写的 StoreLoad 屏障
+            TOP.lazySet(this, s + 1);
+        }
+
+        /**
+         * 所有者从 top 一端取出任务，LIFO。
+         */
+        Runnable pop() {
+            for (;;) {
+                AtomicReferenceArray<Runnable> a = array;
+                int s = top - 1;
+                if (s - base < 0) {
+                    return null;
+                }
+                int i = s & (a.length() - 1);
+                Runnable task = a.get(i);
+                if (task == null) {
+                    // 最后一个任务被窃取了
+                    return null;
+                }
+                if (a.compareAndSet(i, task, null)) {
+                    top = s;
+                    return task;
+                }
+            }
+        }
+
+        /**
+         * 其他线程从 base 一端取出任务，FIFO。队列为空时返回 null。
+         */
+        Runnable steal() {
+            for (;;) {
+                int b = base;
+                if (top - b <= 0) {
+                    return null;
+                }
+                AtomicReferenceArray<Runnable> a = array;
+                int i = b & (a.length() - 1);
+                Runnable task = a.get(i);
+                if (b != base) {
+                    continue;
+                }
+                if (task == null) {
+                    // 另一个线程已经取走了这个任务，还没有移动 base；或者数组正在扩容
+                    if (top - b <= 0) {
+                        return null;
+                    }
+                    Thread.yield();
+                    continue;
+                }
+                if (a.compareAndSet(i, task, null)) {
+                    base = b + 1;
+                    return task;
+                }
+            }
+        }
+
+        /**
+         * 容量加倍。把旧数组中的任务 CAS 为 null 再放入新数组，和 steal 的 CAS 竞争，每个任务只会被转移或窃取一次。
+         */
+        private AtomicReferenceArray<Runnable> grow() {
+            AtomicReferenceArray<Runnable> old = array;
+            int oldCapacity = old.length();
+            if (oldCapacity >= MAXIMUM_CAPACITY) {
+                throw new RejectedExecutionException("Queue capacity exceeded");
+            }
+            AtomicReferenceArray<Runnable> a = new AtomicReferenceArray<>(oldCapacity << 1);
+            int oldMask = oldCapacity - 1, mask = a.length() - 1;
+            int t = top;
+            for (int b = base; b - t < 0; b++) {
+                Runnable task = old.get(b & oldMask);
+                if (task != null && old.compareAndSet(b & oldMask, task, null)) {
+                    a.lazySet(b & mask, task);
+                }
+            }
+            array = a;
+            return a;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package java_.util.concurrent;
+
+import java_.util.concurrent.atomic.StripedLongCounter;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link WorkStealingExecutor} 的测试，以及和 {@code Executors} 中的线程池、{@link ForkJoinPool} 的比较。
+ */
+public class WorkStealingExecutorTest {
+
+    /**
+     * 所有者在一端 push、pop，窃取者在另一端 steal：所有者 LIFO，窃取者 FIFO，容量不够时扩容。
+     */
+    @Test
+    public void testWorkQueue() {
+        WorkStealingExecutor.WorkQueue queue = new WorkStealingExecutor.WorkQueue();
+        assertNull(queue.pop());
+        assertNull(queue.steal());
+        Runnable[] tasks = new Runnable[1000];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = () -> {
+            };
+            queue.push(tasks[i]);
+        }
+        assertEquals(1000, queue.size());
+        assertSame(tasks[999], queue.pop());
+        assertSame(tasks[0], queue.steal());
+        assertSame(tasks[1], queue.steal());
+        assertSame(tasks[998], queue.pop());
+        assertEquals(996, queue.size());
+        while (queue.pop() != null) {
+            // 取出剩下的任务
+        }
+        assertTrue(queue.isEmpty());
+        assertNull(queue.steal());
+    }
+
+    /**
+     * 所有者不停地 push、偶尔 pop，3 个窃取者同时 steal，每个任务恰好被取出一次。
+     */
+    @Test
+    public void testConcurrentSteal() throws Exception {
+        WorkStealingExecutor.WorkQueue queue = new WorkStealingExecutor.WorkQueue();
+        final int n = 1_000_000;
+        AtomicIntegerArray taken = new AtomicIntegerArray(n);
+        AtomicBoolean done = new AtomicBoolean();
+        Thread[] thieves = new Thread[3];
+        for (int t = 0; t < thieves.length; t++) {
+            thieves[t] = new Thread(() -> {
+                for (;;) {
+                    Runnable task = queue.steal();
+                    if (task != null) {
+                        task.run();
+                    } else if (done.get() && queue.isEmpty()) {
+                        return;
+                    }
+                }
+            });
+            thieves[t].start();
+        }
+        for (int i = 0; i < n; i++) {
+            int id = i;
+            queue.push(() -> taken.incrementAndGet(id));
+            if ((i & 3) == 0) {
+                Runnable task = queue.pop();
+                if (task != null) {
+                    task.run();
+                }
+            }
+        }
+        for (Runnable task; (task = queue.pop()) != null; ) {
+            task.run();
+        }
+        done.set(true);
+        for (Thread thief : thieves) {
+            thief.join();
+        }
+        for (int i = 0; i < n; i++) {
+            assertEquals(1, taken.get(i), "task " + i);
+        }
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        WorkStealingExecutor executor = new WorkStealingExecutor(4);
+        StripedLongCounter counter = new StripedLongCounter();
+        final int n = 100_000;
+        CountDownLatch latch = new CountDownLatch(n);
+        for (int i = 0; i < n; i++) {
+            executor.execute(() -> {
+                counter.increment();
+                latch.countDown();
+            });
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(n, counter.sum());
+
+        assertEquals("result", executor.submit(() -> "result").get());
+        Future<?> failed = executor.submit(() -> {
+            throw new IllegalStateException();
+        });
+        ExecutionException e = assertThrows(ExecutionException.class, failed::get);
+        assertTrue(e.getCause() instanceof IllegalStateException);
+
+        // execute 提交的任务抛出的异常交给 UncaughtExceptionHandler，工作线程继续运行
+        Thread.UncaughtExceptionHandler defaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+        CountDownLatch reported = new CountDownLatch(4);
+        Thread.setDefaultUncaughtExceptionHandler((t, ex) -> reported.countDown());
+        try {
+            for (int i = 0; i < 4; i++) {
+                executor.execute(() -> {
+                    throw new IllegalStateException("expected");
+                });
+            }
+            assertTrue(reported.await(5, TimeUnit.SECONDS));
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(defaultHandler);
+        }
+        assertEquals(4, executor.getParallelism());
+
+        List<Callable<Integer>> callables = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int value = i;
+            callables.add(() -> value * value);
+        }
+        List<Future<Integer>> futures = executor.invokeAll(callables);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i * i, (int) futures.get(i).get());
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 工作线程提交的任务进入自己的队列，空闲的工作线程从中窃取。
+     */
+    @Test
+    public void testLocalSubmission() throws Exception {
+        WorkStealingExecutor executor = new WorkStealingExecutor(4);
+        final int depth = 16;
+        CountDownLatch leaves = new CountDownLatch(1 << depth);
+        executor.execute(new FanOut(executor, depth, leaves));
+        assertTrue(leaves.await(10, TimeUnit.SECONDS));
+        assertTrue(executor.toString().contains("Running"));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+        assertTrue(executor.isTerminated());
+    }
+
+    /**
+     * 二叉树形的任务，每个内部结点提交两个子任务，每个叶子结点计数一次。
+     */
+    static final class FanOut implements Runnable {
+        final ExecutorService executor;
+        final int depth;
+        final CountDownLatch leaves;
+
+        FanOut(ExecutorService executor, int depth, CountDownLatch leaves) {
+            this.executor = executor;
+            this.depth = depth;
+            this.leaves = leaves;
+        }
+
+        @Override
+        public void run() {
+            if (depth == 0) {
+                leaves.countDown();
+            } else {
+                executor.execute(new FanOut(executor, depth - 1, leaves));
+                executor.execute(new FanOut(executor, depth - 1, leaves));
+            }
+        }
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+        WorkStealingExecutor executor = new WorkStealingExecutor(2);
+        // 关闭之前提交的任务都会执行
+        StripedLongCounter counter = new StripedLongCounter();
+        for (int i = 0; i < 10_000; i++) {
+            executor.execute(counter::increment);
+        }
+        executor.shutdown();
+        assertTrue(executor.isShutdown());
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {
+        }));
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(10_000, counter.sum());
+
+        // 工作线程扫描完队列之后、看到 shutdown 之前被接受的任务也要执行
+        for (int round = 0; round < 1000; round++) {
+            WorkStealingExecutor idle = new WorkStealingExecutor(2);
+            AtomicBoolean ran = new AtomicBoolean();
+            idle.execute(() -> ran.set(true));
+            idle.shutdown();
+            assertTrue(idle.awaitTermination(5, TimeUnit.SECONDS));
+            assertTrue(ran.get(), "round " + round);
+        }
+
+        // shutdownNow 中断正在执行的任务，返回还没有开始的任务
+        WorkStealingExecutor now = new WorkStealingExecutor(1);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        now.execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+        });
+        started.await();
+        for (int i = 0; i < 10; i++) {
+            now.execute(() -> {
+            });
+        }
+        // 抛出异常的任务不会结束工作线程
+        now.execute(() -> {
+            throw new IllegalStateException("expected");
+        });
+        List<Runnable> pending = now.shutdownNow();
+        assertEquals(11, pending.size());
+        assertTrue(now.awaitTermination(1, TimeUnit.SECONDS));
+        assertTrue(interrupted.get());
+    }
+
+    /**
+     * 三种负载，每种取 3 次中最快的一次：
+     * <ul>
+     *     <li>1000 tasks：和 ThreadUnsafeTest 一样一次提交 1000 个很小的任务并等待完成，重复 100 次，
+     *     输出每批的时间和线程池创建的最多线程数</li>
+     *     <li>external：从外部线程提交 2 * 10^5 个很小的任务，输出每个任务的平均时间</li>
+     *     <li>fan-out：任务在工作线程中提交子任务，二叉树共 2^18 - 1 个任务，输出每个任务的平均时间</li>
+     * </ul>
+     * 固定大小的线程池都使用 4 个线程。cachedThreadPool 每个任务要几微秒到几十微秒，规模不能太大，否则要运行很久。
+     */
+    @Test
+    public void testBenchmark() throws Exception {
+        final int parallelism = 4;
+        System.out.println(Runtime.getRuntime().availableProcessors() + " cpus, parallelism: " + parallelism);
+        String[] names = {"cachedThreadPool", "fixedThreadPool", "ForkJoinPool", "WorkStealingExecutor"};
+        System.out.printf("%-22s%18s%10s%16s%16s%n", "executor", "1000 tasks us", "threads", "external ns",
+                "fan-out ns");
+        for (String name : names) {
+            long batch = Long.MAX_VALUE, external = Long.MAX_VALUE, fanOut = Long.MAX_VALUE;
+            int threads = parallelism;
+            for (int round = 0; round < 3; round++) {
+                ExecutorService executor = newExecutor(name, parallelism);
+                StripedLongCounter counter = new StripedLongCounter();
+
+                long start = System.nanoTime();
+                for (int b = 0; b < 100; b++) {
+                    CountDownLatch latch = new CountDownLatch(1000);
+                    for (int i = 0; i < 1000; i++) {
+                        executor.execute(() -> {
+                            counter.increment();
+                            latch.countDown();
+                        });
+                    }
+                    latch.await();
+                }
+                batch = Math.min(batch, (System.nanoTime() - start) / 100);
+                if (executor instanceof ThreadPoolExecutor) {
+                    threads = ((ThreadPoolExecutor) executor).getLargestPoolSize();
+                }
+
+                final int n = 200_000;
+                CountDownLatch latch = new CountDownLatch(n);
+                start = System.nanoTime();
+                for (int i = 0; i < n; i++) {
+                    executor.execute(() -> {
+                        counter.increment();
+                        latch.countDown();
+                    });
+                }
+                latch.await();
+                external = Math.min(external, (System.nanoTime() - start) / n);
+
+                final int depth = 17;
+                CountDownLatch leaves = new CountDownLatch(1 << depth);
+                start = System.nanoTime();
+                executor.execute(new FanOut(executor, depth, leaves));
+                leaves.await();
+                fanOut = Math.min(fanOut, (System.nanoTime() - start) / ((2 << depth) - 1));
+
+                executor.shutdown();
+                assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+                assertEquals(100L * 1000 + n, counter.sum());
+            }
+            System.out.printf("%-22s%18.1f%10d%16d%16d%n", name, batch / 1e3, threads, external, fanOut);
+        }
+
+        /*
+        输出：
+        1 cpus, parallelism: 4
+        executor                   1000 tasks us   threads     external ns      fan-out ns
+        cachedThreadPool                  3896.6        48            3297           20116
+        fixedThreadPool                    848.5         4             428             302
+        ForkJoinPool                       538.1         4             544             175
+        WorkStealingExecutor               586.7         4             439             240
+
+        结论：
+        - cachedThreadPool 在没有空闲线程时为任务创建新线程，即使只有 1 个 CPU 也创建了 48 个线程，
+          每个任务要几微秒，比固定线程数的线程池慢一个数量级。fan-out 中每个任务都由工作线程提交，慢了近 100 倍。
+        - 这台机器只有 1 个 CPU，测不出多核下 fixedThreadPool 的 LinkedBlockingQueue 锁争用，
+          单核上它的外部提交和另外两个差不多；工作窃取的优势主要体现在 fan-out：
+          子任务进入工作线程自己的队列，不经过全局队列的锁，比 fixedThreadPool 快 20% 左右，和 ForkJoinPool 接近。
+        - 1000 tasks 一批批地提交并等待，每批结束后工作线程都会空闲，主要测量的是唤醒和休眠。
+          只在看到还有任务时才继续唤醒下一个线程，避免了无谓的 unpark，和 ForkJoinPool 接近，比 fixedThreadPool 快。
+        - 单核上的数字波动比较大，多次运行之间会有 20% 左右的差别。
+         */
+    }
+
+    private static ExecutorService newExecutor(String name, int parallelism) {
+        switch (name) {
+            case "cachedThreadPool":
+                return Executors.newCachedThreadPool();
+            case "fixedThreadPool":
+                return Executors.newFixedThreadPool(parallelism);
+            case "ForkJoinPool":
+                return new ForkJoinPool(parallelism);
+            default:
+                return new WorkStealingExecutor(parallelism);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package java_.util.concurrent.atomic;
+
+import org.junit.jupiter.api.Test;
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntFunction;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 伪共享的代价，以及 {@link PaddedLong}、{@link PaddedAtomicLongArray} 的测试。
+ *
+ * <p>每个线程只写自己的槽位，线程之间逻辑上没有任何共享。槽位相邻时它们落在同一个缓存行上，
+ * 每次写入都要让其他核心上的这一行失效，吞吐会随线程数增加而下降；槽位间隔 128 字节时不会。
+ * 可以通过系统属性 {@code false.sharing.millis} 设置每个数据点的运行时间（默认 200ms）。
+ */
+public class FalseSharingTest {
+
+    static final long MILLIS = Long.getLong("false.sharing.millis", 200);
+
+    /**
+     * padded 比 adjacent 快这么多倍时认为发生了伪共享。
+     */
+    static final double FALSE_SHARING_RATIO = 1.5;
+
+    static volatile boolean stop;
+
+    /**
+     * 伪共享检测器：用 threads 个线程同时运行 body，返回每秒操作次数之和。
+     *
+     * @param body 参数是线程编号，返回的任务应当循环执行直到 {@link #stop} 为 true，并返回执行的操作次数。
+     *             把循环放在任务内部，而不是每次操作调用一次任务，可以避免调用开销掩盖缓存行争用
+     */
+    static double throughput(int threads, IntFunction<LongSupplier> body) throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(threads), start = new CountDownLatch(1);
+        long[] ops = new long[threads];
+        Thread[] workers = new Thread[threads];
+        stop = false;
+        for (int t = 0; t < threads; t++) {
+            LongSupplier task = body.apply(t);
+            int index = t;
+            workers[t] = new Thread(() -> {
+                ready.countDown();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ops[index] = task.getAsLong();
+            });
+            workers[t].start();
+        }
+        ready.await();
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(MILLIS);
+        stop = true;
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        long total = 0;
+        for (long n : ops) {
+            total += n;
+        }
+        return total * 1e9 / elapsed;
+    }
+
+    /**
+     * 先运行一次预热，再测量一次。
+     */
+    static double measure(int threads, IntFunction<LongSupplier> body) throws InterruptedException {
+        throughput(threads, body);
+        return throughput(threads, body);
+    }
+
+    /**
+     * 对每种写入方式比较三种布局：
+     * <ul>
+     *     <li>adjacent：long[] 或 {@link AtomicLongArray} 中相邻的元素，一个缓存行可以容纳 8 个线程的槽位</li>
+     *     <li>padded：{@link PaddedAtomicLongArray}（plain 方式使用间隔 16 个 long 的 long[]）</li>
+     *     <li>cells：每个线程一个 {@link PaddedLong}</li>
+     * </ul>
+     * slowdown 是 padded 相对 adjacent 的倍数，超过 {@link #FALSE_SHARING_RATIO} 时标记为伪共享。
+     */
+    @Test
+    public void testBenchmark() throws InterruptedException {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        System.out.println(cpus + " cpus, Mops/s");
+        System.out.printf("%-10s%8s%12s%12s%12s%10s%n", "write", "threads", "adjacent", "padded", "cells", "slowdown");
+        int maxThreads = Math.max(4, cpus);
+        for (String variant : new String[]{"plain", "volatile", "lazySet", "CAS"}) {
+            for (int threads = 1; threads <= maxThreads; threads <<= 1) {
+                double adjacent = measure(threads, adjacent(variant, threads));
+                double padded = measure(threads, padded(variant, threads));
+                double cells = measure(threads, cells(variant, threads));
+                double slowdown = padded / adjacent;
+                System.out.printf("%-10s%8d%12.1f%12.1f%12.1f%9.2fx%s%n", variant, threads, adjacent / 1e6,
+                        padded / 1e6, cells / 1e6, slowdown, slowdown >= FALSE_SHARING_RATIO ? " 伪共享" : "");
+            }
+        }
+
+        /*
+        输出：
+        1 cpus, Mops/s
+        write      threads    adjacent      padded       cells  slowdown
+        plain            1       351.1       326.4        91.8     0.93x
+        plain            2       351.9       341.8        95.6     0.97x
+        plain            4       336.8       313.6        81.9     0.93x
+        volatile         1        73.7        74.7        98.0     1.01x
+        volatile         2        78.8        81.8        98.3     1.04x
+        volatile         4        78.2        79.5        93.3     1.02x
+        lazySet          1       315.6       312.4       782.2     0.99x
+        lazySet          2       329.0       322.0      1128.4     0.98x
+        lazySet          4       303.1       296.0       652.8     0.98x
+        CAS              1       107.8        84.2       113.7     0.78x
+        CAS              2       111.8       107.0       117.4     0.96x
+        CAS              4       108.2       106.3        91.6     0.98x
+
+        结论：
+        - 这台机器只有 1 个 CPU，多个线程只是轮流运行，任何时刻只有一个核心持有缓存行，所以看不到伪共享，
+          adjacent 和 padded 的差别在误差之内（CAS 1 线程的 0.78x 是单次测量的抖动）。
+          伪共享要在多核机器上运行才会出现，届时 adjacent 列会随线程数增加而下降，slowdown 一列会标记出来；
+          volatile 和 CAS 尤其严重，因为每次写都要等待缓存行的独占权。
+        - 即使没有争用，不同写入方式的差距也很大：volatile 写需要 StoreLoad 屏障，只有普通写的 1/4；
+          CAS 和 volatile 写相当。lazySet 不需要 StoreLoad 屏障，和普通写一样快，
+          所以单写者的统计值应当用 addSingleWriter，而不是 CAS。
+        - cells 的 plain 一列实际上是 volatile 写（PaddedLong 没有普通写），所以和 volatile 一列相当；
+          cells 的 lazySet 比数组快一倍以上，是因为字段访问没有下标检查，JIT 还能展开循环，
+          这一列的绝对值不适合和其他列比较。
+        */
+    }
+
+    static IntFunction<LongSupplier> adjacent(String variant, int threads) {
+        switch (variant) {
+            case "plain": {
+                long[] slots = new long[threads];
+                return t -> () -> {
+                    long n = 0;
+                    while (!stop) {
+                        slots[t]++;
+                        n++;
+                    }
+                    return n;
+                };
+            }
+            case "volatile": {
+                AtomicLongArray slots = new AtomicLongArray(threads);
+                return t -> () -> {
+                    long n = 0;
+                    while (!stop) {
+                        slots.set(t, slots.get(t) + 1);
+                        n++;
+                    }
+                    return n;
+                };
+            }
+            case "lazySet": {
+                AtomicLongArray slots = new AtomicLongArray(threads);
+                return t -> () -> {
+                    long n = 0;
+                    while (!stop) {
+                        slots.lazySet(t, slots.get(t) + 1);
+                        n++;
+                    }
+                    return n;
+                };
+            }
+            default: {
+                AtomicLongArray slots = new AtomicLongArray(threads);
+                return t -> () -> {
+                    long n = 0;
+                    while (!stop) {
+                        slots.incrementAndGet(t);
+                        n++;
+                    }
+                    return n;
+                };
+            }
+        }
+    }
+
+    static IntFunction<LongSupplier> padded(String variant, int threads) {
+        switch (variant) {
+            case "plain": {
+                int spacing = PaddedAtomicLongArray.SPACING;
+                long[] slots = new long[(threads + 2) * spacing];
+                return t -> () -> {
+                    long n = 0;
+                    int i = (t + 1) * spacing;
+                    while (!stop) {
+                        slots[i]++;
+                        n++;
+                    }
+                    return n;
+                };
+            }
+            case "volatile": {
+                PaddedAtomicLongArray slots = new PaddedAtomicLongArray(threads);
+                return t -> () -> {
+                    long n = 0;
+                    while (!stop) {
+                        slots.set(t, slots.get(t) + 1);
+                        n++;
+                    }
+                    return n;
+                };
+            }
+            case "lazySet": {
+                PaddedAtomicLongArray slots = new PaddedAtomicLongArray(threads);
+                return t -> () -> {
+                    long n = 0;
+                    while (!stop) {
+                        slots.addSingleWriter(t, 1);
+                        n++;
+                    }
+                    return n;
+                };
+            }
+            default: {
+                PaddedAtomicLongArray slots = new PaddedAtomicLongArray(threads);
+                return t -> () -> {
+                    long n = 0;
+                    while (!stop) {
+                        slots.incrementAndGet(t);
+                        n++;
+                    }
+                    return n;
+                };
+            }
+        }
+    }
+
+    static IntFunction<LongSupplier> cells(String variant, int threads) {
+        PaddedLong[] cells = new PaddedLong[threads];
+        for (int t = 0; t < threads; t++) {
+            cells[t] = new PaddedLong();
+        }
+        switch (variant) {
+            case "plain":
+            case "volatile":
+                // PaddedLong 的值是 volatile 字段，没有普通写，两种方式都使用 set
+                return t -> () -> {
+                    PaddedLong cell = cells[t];
+                    long n = 0;
+                    while (!stop) {
+                        cell.set(cell.get() + 1);
+                        n++;
+                    }
+                    return n;
+                };
+            case "lazySet":
+                return t -> () -> {
+                    PaddedLong cell = cells[t];
+                    long n = 0;
+                    while (!stop) {
+                        cell.addSingleWriter(1);
+                        n++;
+                    }
+                    return n;
+                };
+            default:
+                return t -> () -> {
+                    PaddedLong cell = cells[t];
+                    long n = 0;
+                    while (!stop) {
+                        cell.incrementAndGet();
+                        n++;
+                    }
+                    return n;
+                };
+        }
+    }
+
+    /**
+     * 检查字段布局：value 前后都至少有 128 字节属于同一个对象。
+     */
+    @Test
+    public void testLayout() throws ReflectiveOperationException {
+        Field theUnsafe = Unsafe.class.getDeclaredField("theUnsafe");
+        theUnsafe.setAccessible(true);
+        Unsafe unsafe = (Unsafe) theUnsafe.get(null);
+
+        long value = unsafe.objectFieldOffset(PaddedLongValue.class.getDeclaredField("value"));
+        assertTrue(value >= 128, "value offset: " + value);
+        long maxRhs = 0;
+        for (Field f : PaddedLongLhs.class.getDeclaredFields()) {
+            assertTrue(unsafe.objectFieldOffset(f) < value, f.getName());
+        }
+        for (Field f : PaddedLongRhs.class.getDeclaredFields()) {
+            long offset = unsafe.objectFieldOffset(f);
+            assertTrue(offset > value, f.getName());
+            maxRhs = Math.max(maxRhs, offset);
+        }
+        // 最后一个填充字段的末尾距离 value 的末尾至少 128 字节
+        assertTrue(maxRhs - value >= 128, "value: " + value + ", last padding: " + maxRhs);
+    }
+
+    @Test
+    public void testPaddedLong() throws InterruptedException {
+        PaddedLong cell = new PaddedLong(5);
+        assertEquals(5, cell.get());
+        assertTrue(cell.compareAndSet(5, 7));
+        assertFalse(cell.compareAndSet(5, 8));
+        assertEquals(7, cell.getAndAdd(3));
+        assertEquals(11, cell.incrementAndGet());
+        cell.lazySet(1);
+        cell.addSingleWriter(2);
+        assertEquals(3, cell.getAndSet(0));
+        assertEquals("0", cell.toString());
+
+        PaddedAtomicLongArray array = new PaddedAtomicLongArray(4);
+        assertThrows(IndexOutOfBoundsException.class, () -> array.get(4));
+        assertThrows(IndexOutOfBoundsException.class, () -> array.set(-1, 0));
+        assertThrows(IllegalArgumentException.class, () -> new PaddedAtomicLongArray(-1));
+
+        // 多个线程 CAS 同一个 PaddedLong，单写者更新各自的槽位
+        final int threads = 4, times = 100_000;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            workers[t] = new Thread(() -> {
+                for (int k = 0; k < times; k++) {
+                    cell.incrementAndGet();
+                    array.addSingleWriter(index, 1);
+                    array.incrementAndGet(index);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals((long) threads * times, cell.get());
+        assertEquals(2L * threads * times, array.sum());
+        assertEquals("[200000, 200000, 200000, 200000]", array.toString());
+    }
+}
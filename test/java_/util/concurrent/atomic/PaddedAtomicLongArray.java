@@ -0,0 +1,96 @@
+package java_.util.concurrent.atomic;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 每个元素独占 128 字节的 {@link AtomicLongArray}，适合按线程编号分配槽位的统计数组。
+ *
+ * <p>第 i 个元素存放在底层数组的 {@code (i + 1) * SPACING} 处，前后各有 {@link #SPACING} - 1 个不使用的 long。
+ * 第 0 个元素之前也留出了一段，避免和数组对象头以及数组之前的对象共享缓存行。
+ * 和 {@link PaddedLong} 相比，一个数组只有一个对象头，元素的地址也是确定的，不依赖字段布局。
+ */
+public final class PaddedAtomicLongArray {
+
+    /**
+     * 相邻元素之间间隔的 long 个数：128 字节。
+     */
+    static final int SPACING = 128 / Long.BYTES;
+
+    private final AtomicLongArray array;
+    private final int length;
+
+    public PaddedAtomicLongArray(int length) {
+        if (length < 0 || length > Integer.MAX_VALUE / SPACING - 2) {
+            throw new IllegalArgumentException("length: " + length);
+        }
+        this.length = length;
+        array = new AtomicLongArray((length + 2) * SPACING);
+    }
+
+    private int offset(int i) {
+        if (i < 0 || i >= length) {
+            throw new IndexOutOfBoundsException("index " + i);
+        }
+        return (i + 1) * SPACING;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public long get(int i) {
+        return array.get(offset(i));
+    }
+
+    public void set(int i, long newValue) {
+        array.set(offset(i), newValue);
+    }
+
+    public void lazySet(int i, long newValue) {
+        array.lazySet(offset(i), newValue);
+    }
+
+    /**
+     * 只有一个线程写入第 i 个元素时使用的加法，见 {@link PaddedLong#addSingleWriter(long)}。
+     */
+    public void addSingleWriter(int i, long delta) {
+        int offset = offset(i);
+        array.lazySet(offset, array.get(offset) + delta);
+    }
+
+    public boolean compareAndSet(int i, long expect, long update) {
+        return array.compareAndSet(offset(i), expect, update);
+    }
+
+    public long getAndAdd(int i, long delta) {
+        return array.getAndAdd(offset(i), delta);
+    }
+
+    public long addAndGet(int i, long delta) {
+        return array.addAndGet(offset(i), delta);
+    }
+
+    public long incrementAndGet(int i) {
+        return array.incrementAndGet(offset(i));
+    }
+
+    /**
+     * 所有元素之和。不是原子快照，求和期间的并发更新可能只有一部分被计入。
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += array.get((i + 1) * SPACING);
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < length; i++) {
+            sb.append(i == 0 ? "" : ", ").append(array.get((i + 1) * SPACING));
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,74 @@
+package java_.util.concurrent.atomic;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * 独占缓存行的 long 计数器，作用相当于不需要 {@code -XX:-RestrictContended} 的 {@code @Contended AtomicLong}。
+ *
+ * <p>HotSpot 总是先排列父类的字段，再排列子类的字段，所以可以把填充字段放在父类 {@link PaddedLongLhs}
+ * 和子类 {@link PaddedLongRhs} 中，把 {@link PaddedLongValue#value} 夹在中间。两侧各有 128 字节，
+ * 和 {@code @Contended} 一样使用 2 倍的缓存行大小，避免相邻行预取把两个缓存行当作一对来争用。
+ *
+ * <p>除了原子操作以外，还提供了单写者使用的 {@link #lazySet(long)} 和 {@link #addSingleWriter(long)}：
+ * 每个线程自己的统计值只有自己写、别的线程偶尔读，这时不需要 CAS，使用 lazySet 就能让读者最终看到新值，
+ * 而且没有 volatile 写的 StoreLoad 屏障。
+ */
+public final class PaddedLong extends PaddedLongRhs {
+
+    private static final AtomicLongFieldUpdater<PaddedLongValue> UPDATER =
+            AtomicLongFieldUpdater.newUpdater(PaddedLongValue.class, "value");
+
+    public PaddedLong() {
+    }
+
+    public PaddedLong(long initialValue) {
+        value = initialValue;
+    }
+
+    public long get() {
+        return value;
+    }
+
+    public void set(long newValue) {
+        value = newValue;
+    }
+
+    /**
+     * 有序写：保证之前的写不会重排到这次写之后，但不保证这次写立即对其他线程可见。
+     */
+    public void lazySet(long newValue) {
+        UPDATER.lazySet(this, newValue);
+    }
+
+    /**
+     * 只有一个线程写入时使用的加法，读-改-有序写，不是原子操作。多个线程写入时会丢失更新。
+     */
+    public void addSingleWriter(long delta) {
+        UPDATER.lazySet(this, value + delta);
+    }
+
+    public boolean compareAndSet(long expect, long update) {
+        return UPDATER.compareAndSet(this, expect, update);
+    }
+
+    public long getAndAdd(long delta) {
+        return UPDATER.getAndAdd(this, delta);
+    }
+
+    public long addAndGet(long delta) {
+        return UPDATER.addAndGet(this, delta);
+    }
+
+    public long incrementAndGet() {
+        return UPDATER.incrementAndGet(this);
+    }
+
+    public long getAndSet(long newValue) {
+        return UPDATER.getAndSet(this, newValue);
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(value);
+    }
+}
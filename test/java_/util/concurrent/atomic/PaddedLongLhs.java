@@ -0,0 +1,10 @@
+package java_.util.concurrent.atomic;
+
+/**
+ * {@link PaddedLong} 的值前面的 128 字节填充。
+ */
+@SuppressWarnings("unused")
+abstract class PaddedLongLhs {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+    long p08, p09, p0a, p0b, p0c, p0d, p0e, p0f;
+}
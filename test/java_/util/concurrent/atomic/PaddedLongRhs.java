@@ -0,0 +1,10 @@
+package java_.util.concurrent.atomic;
+
+/**
+ * {@link PaddedLong} 的值后面的 128 字节填充。
+ */
+@SuppressWarnings("unused")
+abstract class PaddedLongRhs extends PaddedLongValue {
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+    long p18, p19, p1a, p1b, p1c, p1d, p1e, p1f;
+}
@@ -0,0 +1,8 @@
+package java_.util.concurrent.atomic;
+
+/**
+ * {@link PaddedLong} 的值，夹在两侧的填充字段之间。
+ */
+abstract class PaddedLongValue extends PaddedLongLhs {
+    volatile long value;
+}
@@ -0,0 +1,207 @@
+package java_.util.concurrent.atomic;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * 分段计数器的公共实现，算法和 {@code java.util.concurrent.atomic.Striped64} 相同：
+ * 没有竞争时只更新 {@link #base}，CAS 失败后把线程按探针哈希分散到惰性创建的 {@link #cells} 中，
+ * 槽位冲突时先换一个探针（Marsaglia XorShift）再试，冲突持续出现且表小于 CPU 数时把表扩大一倍。
+ *
+ * <p>和 {@code Striped64} 的区别：
+ * <ul>
+ *     <li>{@code Striped64} 用 Unsafe 读写 {@code Thread.threadLocalRandomProbe}，这里用 {@link ThreadLocal} 保存探针，
+ *     只在 base 上出现竞争之后才需要读取</li>
+ *     <li>{@code Cell} 依赖 {@code @Contended}，需要 {@code -XX:-RestrictContended} 才能在 JDK 之外生效；
+ *     这里的槽位是 {@link PaddedLong}，不需要任何虚拟机参数</li>
+ * </ul>
+ */
+@SuppressWarnings("serial")
+abstract class StripedCounter64 extends Number {
+
+    static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 槽位表，大小是 2 的幂。
+     */
+    transient volatile PaddedLong[] cells;
+
+    /**
+     * 没有竞争时使用的值，也是初始化表时竞争失败的后备。
+     */
+    transient volatile long base;
+
+    /**
+     * 初始化、扩容和创建槽位时使用的自旋锁。
+     */
+    transient volatile int cellsBusy;
+
+    private static final AtomicLongFieldUpdater<StripedCounter64> BASE =
+            AtomicLongFieldUpdater.newUpdater(StripedCounter64.class, "base");
+    private static final AtomicIntegerFieldUpdater<StripedCounter64> CELLS_BUSY =
+            AtomicIntegerFieldUpdater.newUpdater(StripedCounter64.class, "cellsBusy");
+
+    /**
+     * 每个线程的探针，作用等同于 {@code Thread.threadLocalRandomProbe}。
+     */
+    static final class Probe {
+        int hash;
+
+        Probe(int hash) {
+            this.hash = hash;
+        }
+
+        int advance() {
+            int h = hash;
+            h ^= h << 13;   // xorshift
+            h ^= h >>> 17;
+            h ^= h << 5;
+            return hash = h;
+        }
+    }
+
+    private static final AtomicInteger probeGenerator = new AtomicInteger();
+
+    /**
+     * 和 {@code ThreadLocalRandom.PROBE_INCREMENT} 相同的增量，使相邻创建的线程的探针分布均匀。
+     */
+    private static final int PROBE_INCREMENT = 0x9e3779b9;
+
+    static final ThreadLocal<Probe> PROBE = ThreadLocal.withInitial(() -> {
+        int h = probeGenerator.addAndGet(PROBE_INCREMENT);
+        // 探针不能为 0，否则 xorshift 永远得到 0
+        return new Probe(h == 0 ? 1 : h);
+    });
+
+    final boolean casBase(long cmp, long val) {
+        return BASE.compareAndSet(this, cmp, val);
+    }
+
+    final long getAndSetBase(long val) {
+        return BASE.getAndSet(this, val);
+    }
+
+    final boolean casCellsBusy() {
+        return CELLS_BUSY.compareAndSet(this, 0, 1);
+    }
+
+    /**
+     * 处理初始化、扩容、创建槽位和竞争的更新，逻辑和 {@code Striped64.longAccumulate} 相同。
+     *
+     * @param fn             更新函数，为 null 时表示加法
+     * @param wasUncontended 调用之前是否没有在槽位上 CAS 失败过
+     */
+    final void accumulate(long x, LongBinaryOperator fn, boolean wasUncontended, Probe probe) {
+        int h = probe.hash;
+        // 为 true 表示上一次的槽位非空且 CAS 失败
+        boolean collide = false;
+        for (;;) {
+            PaddedLong[] cs;
+            PaddedLong c;
+            int n;
+            long v;
+            if ((cs = cells) != null && (n = cs.length) > 0) {
+                if ((c = cs[(n - 1) & h]) == null) {
+                    // 槽位为空，尝试加锁创建新的槽位
+                    if (cellsBusy == 0) {
+                        PaddedLong r = new PaddedLong(x);
+                        if (cellsBusy == 0 && casCellsBusy()) {
+                            boolean created = false;
+                            try {
+                                PaddedLong[] rs;
+                                int m, j;
+                                if ((rs = cells) != null && (m = rs.length) > 0 && rs[j = (m - 1) & h] == null) {
+                                    rs[j] = r;
+                                    created = true;
+                                }
+                            } finally {
+                                cellsBusy = 0;
+                            }
+                            if (created) {
+                                break;
+                            }
+                            // 槽位已经被别的线程创建了，重试
+                            continue;
+                        }
+                    }
+                    collide = false;
+                } else if (!wasUncontended) {
+                    // 调用者已经 CAS 失败过，换一个探针后再试
+                    wasUncontended = true;
+                } else if (c.compareAndSet(v = c.get(), fn == null ? v + x : fn.applyAsLong(v, x))) {
+                    break;
+                } else if (n >= NCPU || cells != cs) {
+                    // 表已经达到上限或已经被扩容，只换探针
+                    collide = false;
+                } else if (!collide) {
+                    collide = true;
+                } else if (cellsBusy == 0 && casCellsBusy()) {
+                    // 连续两次冲突，扩容
+                    try {
+                        if (cells == cs) {
+                            cells = Arrays.copyOf(cs, n << 1);
+                        }
+                    } finally {
+                        cellsBusy = 0;
+                    }
+                    collide = false;
+                    continue;
+                }
+                h = probe.advance();
+            } else if (cellsBusy == 0 && cells == cs && casCellsBusy()) {
+                // 初始化大小为 2 的表
+                boolean init = false;
+                try {
+                    if (cells == cs) {
+                        PaddedLong[] rs = new PaddedLong[2];
+                        rs[h & 1] = new PaddedLong(x);
+                        cells = rs;
+                        init = true;
+                    }
+                } finally {
+                    cellsBusy = 0;
+                }
+                if (init) {
+                    break;
+                }
+            } else if (casBase(v = base, fn == null ? v + x : fn.applyAsLong(v, x))) {
+                // 别的线程正在初始化表，退回到 base
+                break;
+            }
+        }
+    }
+
+    /**
+     * 把 base 和所有槽位设为 identity。
+     */
+    final void reset(long identity) {
+        PaddedLong[] cs = cells;
+        base = identity;
+        if (cs != null) {
+            for (PaddedLong c : cs) {
+                if (c != null) {
+                    c.set(identity);
+                }
+            }
+        }
+    }
+
+    /**
+     * 返回 base 和每个槽位当前的值，空槽位用 identity 表示。不是原子快照。
+     * 可以用来观察竞争分散到了多少个槽位上。
+     */
+    final long[] values(long identity) {
+        PaddedLong[] cs = cells;
+        int n = cs == null ? 0 : cs.length;
+        long[] values = new long[n + 1];
+        values[0] = base;
+        for (int i = 0; i < n; i++) {
+            PaddedLong c = cs[i];
+            values[i + 1] = c == null ? identity : c.get();
+        }
+        return values;
+    }
+}
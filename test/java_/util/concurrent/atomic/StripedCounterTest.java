@@ -0,0 +1,234 @@
+package java_.util.concurrent.atomic;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongSupplier;
+
+import static java_.TestUtil.runThreads;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link StripedLongCounter}、{@link StripedLongAccumulator} 的测试，以及和其他计数方式的竞争基准。
+ */
+public class StripedCounterTest {
+
+    @Test
+    public void testCounter() throws InterruptedException {
+        StripedLongCounter counter = new StripedLongCounter();
+        assertEquals(0, counter.sum());
+        assertNull(counter.cells);
+
+        // 直接走竞争路径，初始化槽位表
+        StripedCounter64.Probe probe = StripedCounter64.PROBE.get();
+        counter.accumulate(5, null, true, probe);
+        assertNotNull(counter.cells);
+        counter.increment();
+        counter.add(10);
+        counter.decrement();
+        assertEquals(15, counter.sum());
+        assertEquals(15, Arrays.stream(counter.snapshot()).sum());
+        assertEquals("15", counter.toString());
+        assertEquals(15, counter.intValue());
+        assertEquals(15, counter.sumThenReset());
+        assertEquals(0, counter.sum());
+        counter.add(3);
+        counter.reset();
+        assertEquals(0, counter.sum());
+
+        // 序列化只保存当前的和
+        counter.add(42);
+        StripedLongCounter copy = serializeAndDeserialize(counter);
+        assertEquals(42, copy.sum());
+        copy.increment();
+        assertEquals(43, copy.sum());
+        counter.reset();
+
+        // 并发计数不丢失
+        final int threads = 16, times = 100_000;
+        runThreads(threads, t -> () -> {
+            for (int k = 0; k < times; k++) {
+                counter.increment();
+            }
+        });
+        assertEquals((long) threads * times, counter.sum());
+        counter.reset();
+
+        // 一边计数一边 sumThenReset，取走的值加上剩下的值等于总数
+        long[] drained = new long[1];
+        Thread reporter = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                drained[0] += counter.sumThenReset();
+            }
+        });
+        reporter.start();
+        runThreads(threads, t -> () -> {
+            for (int k = 0; k < times; k++) {
+                counter.add(2);
+            }
+        });
+        reporter.interrupt();
+        reporter.join();
+        assertEquals(2L * threads * times, drained[0] + counter.sum());
+    }
+
+    @Test
+    public void testAccumulator() throws InterruptedException {
+        StripedLongAccumulator max = new StripedLongAccumulator(Long::max, Long.MIN_VALUE);
+        assertEquals(Long.MIN_VALUE, max.get());
+        max.accumulate(5, (a, b) -> Math.max(a, b), true, StripedCounter64.PROBE.get());
+        max.accumulate(3);
+        assertEquals(5, max.get());
+        long[] snapshot = max.snapshot();
+        assertEquals(5, Arrays.stream(snapshot).max().getAsLong());
+        assertEquals(5, max.getThenReset());
+        assertEquals(Long.MIN_VALUE, max.get());
+
+        final int threads = 8, times = 100_000;
+        runThreads(threads, t -> () -> {
+            for (int k = 0; k < times; k++) {
+                max.accumulate((long) t * times + k);
+            }
+        });
+        assertEquals((long) threads * times - 1, max.get());
+        max.reset();
+        assertEquals(Long.MIN_VALUE, max.longValue());
+
+        StripedLongAccumulator product = new StripedLongAccumulator((a, b) -> a * b, 1);
+        for (int i = 1; i <= 10; i++) {
+            product.accumulate(i);
+        }
+        assertEquals(3628800, product.get());
+
+        // 函数可序列化时，反序列化得到相同的值、函数和单位元
+        StripedLongAccumulator serializableMax =
+                new StripedLongAccumulator((LongBinaryOperator & Serializable) Long::max, Long.MIN_VALUE);
+        serializableMax.accumulate(42);
+        StripedLongAccumulator copy = serializeAndDeserialize(serializableMax);
+        assertEquals(42, copy.get());
+        copy.accumulate(7);
+        assertEquals(42, copy.get());
+        copy.reset();
+        assertEquals(Long.MIN_VALUE, copy.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T serializeAndDeserialize(T object) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(object);
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                return (T) in.readObject();
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * 1 到 64 个线程同时递增同一个计数器，比较每秒总的递增次数（百万次）：
+     * <ul>
+     *     <li>synchronized：{@code ThreadUnsafeExample} 加锁后的版本</li>
+     *     <li>AtomicLong：所有线程 CAS 同一个缓存行</li>
+     *     <li>LongAdder、StripedLongCounter：分段计数</li>
+     * </ul>
+     */
+    @Test
+    public void testBenchmark() throws InterruptedException {
+        System.out.println(Runtime.getRuntime().availableProcessors() + " cpus, Mops/s");
+        System.out.printf("%-8s%14s%14s%14s%14s%n", "threads", "synchronized", "AtomicLong", "LongAdder", "Striped");
+        for (int threads = 1; threads <= 64; threads <<= 1) {
+            double sync = FalseSharingTest.measure(threads, synchronizedCounter());
+            double atomic = FalseSharingTest.measure(threads, atomicCounter());
+            double adder = FalseSharingTest.measure(threads, longAdder());
+            double striped = FalseSharingTest.measure(threads, stripedCounter());
+            System.out.printf("%-8d%14.1f%14.1f%14.1f%14.1f%n", threads, sync / 1e6, atomic / 1e6, adder / 1e6,
+                    striped / 1e6);
+        }
+
+        /*
+        输出：
+        1 cpus, Mops/s
+        threads   synchronized    AtomicLong     LongAdder       Striped
+        1                 30.0         110.4          62.4          63.1
+        2                 76.4         113.4          62.7          64.1
+        4                 50.5         108.3          63.2          61.9
+        8                 36.3         116.6          62.3          63.8
+        16                35.1         104.1          55.4          61.0
+        32                40.5         103.7          63.2          60.0
+        64                33.5         115.8          60.4          63.6
+
+        结论：
+        - 这台机器只有 1 个 CPU，线程只是轮流运行，CAS 几乎不会失败，所以 AtomicLong 最快，
+          也没有随线程数下降。分段计数在这里反而慢一半：线程在 CAS 中途被切换时 base 上出现过竞争，
+          之后每次递增都要查探针（LongAdder 读 Thread 的字段，StripedLongCounter 读 ThreadLocal）再 CAS 槽位。
+        - StripedLongCounter 和 LongAdder 的吞吐相同，说明用 ThreadLocal 代替 Unsafe 读探针没有明显的代价。
+        - 多核机器上 AtomicLong 的吞吐会随线程数增加而下降到单线程的几分之一，因为所有核心都在争用同一个缓存行；
+          分段计数的吞吐则随核心数增加，表最多扩大到不小于 CPU 数的 2 的幂。
+          请求计数这种写多读少的场景应当使用分段计数，读数时调用 sumThenReset 得到区间内的增量。
+        - synchronized 除了 2 个线程时以外都是最慢的，每次递增都要加锁和解锁，线程多时还会膨胀为重量级锁。
+        */
+    }
+
+    static IntFunction<LongSupplier> synchronizedCounter() {
+        long[] count = new long[1];
+        return t -> () -> {
+            long n = 0;
+            while (!FalseSharingTest.stop) {
+                synchronized (count) {
+                    count[0]++;
+                }
+                n++;
+            }
+            return n;
+        };
+    }
+
+    static IntFunction<LongSupplier> atomicCounter() {
+        AtomicLong count = new AtomicLong();
+        return t -> () -> {
+            long n = 0;
+            while (!FalseSharingTest.stop) {
+                count.incrementAndGet();
+                n++;
+            }
+            return n;
+        };
+    }
+
+    static IntFunction<LongSupplier> longAdder() {
+        LongAdder count = new LongAdder();
+        return t -> () -> {
+            long n = 0;
+            while (!FalseSharingTest.stop) {
+                count.increment();
+                n++;
+            }
+            return n;
+        };
+    }
+
+    static IntFunction<LongSupplier> stripedCounter() {
+        StripedLongCounter count = new StripedLongCounter();
+        return t -> () -> {
+            long n = 0;
+            while (!FalseSharingTest.stop) {
+                count.increment();
+                n++;
+            }
+            return n;
+        };
+    }
+}
@@ -0,0 +1,149 @@
+package java_.util.concurrent.atomic;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * 使用任意函数更新的分段累加器，作用和 {@link java.util.concurrent.atomic.LongAccumulator} 相同，
+ * 例如用 {@code Long::max} 统计并发请求的最大延迟。
+ *
+ * <p>函数必须满足结合律和交换律，并且没有副作用：各个槽位的更新顺序是不确定的，
+ * CAS 失败时函数还可能被调用多次。
+ */
+public class StripedLongAccumulator extends StripedCounter64 {
+
+    private static final long serialVersionUID = 1L;
+
+    private final LongBinaryOperator function;
+    private final long identity;
+
+    /**
+     * @param identity 函数的单位元，即对任意 x 都有 {@code function(identity, x) == x}
+     */
+    public StripedLongAccumulator(LongBinaryOperator function, long identity) {
+        this.function = function;
+        this.identity = identity;
+        base = identity;
+    }
+
+    public void accumulate(long x) {
+        PaddedLong[] cs;
+        long b, v, r;
+        int m;
+        PaddedLong c;
+        // 新值和旧值相同时不需要写入，对 max、min 这类函数可以省掉大部分 CAS
+        if ((cs = cells) != null || ((r = function.applyAsLong(b = base, x)) != b && !casBase(b, r))) {
+            Probe probe = PROBE.get();
+            boolean uncontended = true;
+            if (cs == null || (m = cs.length - 1) < 0 || (c = cs[probe.hash & m]) == null
+                    || !(uncontended = (r = function.applyAsLong(v = c.get(), x)) == v || c.compareAndSet(v, r))) {
+                accumulate(x, function, uncontended, probe);
+            }
+        }
+    }
+
+    /**
+     * 返回 base 和所有槽位用函数合并后的值。不是原子快照。
+     */
+    public long get() {
+        PaddedLong[] cs = cells;
+        long result = base;
+        if (cs != null) {
+            for (PaddedLong c : cs) {
+                if (c != null) {
+                    result = function.applyAsLong(result, c.get());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 把所有槽位重置为单位元。只有在没有并发更新时才准确。
+     */
+    public void reset() {
+        reset(identity);
+    }
+
+    /**
+     * 返回合并后的值并重置。和 {@link StripedLongCounter#sumThenReset()} 一样，并发的更新不会丢失。
+     */
+    public long getThenReset() {
+        PaddedLong[] cs = cells;
+        long result = getAndSetBase(identity);
+        if (cs != null) {
+            for (PaddedLong c : cs) {
+                if (c != null) {
+                    result = function.applyAsLong(result, c.getAndSet(identity));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 返回 base 和每个槽位的值，下标 0 是 base，空槽位是单位元。
+     */
+    public long[] snapshot() {
+        return values(identity);
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+
+    @Override
+    public long longValue() {
+        return get();
+    }
+
+    @Override
+    public int intValue() {
+        return (int) get();
+    }
+
+    @Override
+    public float floatValue() {
+        return (float) get();
+    }
+
+    @Override
+    public double doubleValue() {
+        return (double) get();
+    }
+
+    /**
+     * 序列化代理，和 {@code LongAccumulator.SerializationProxy} 相同，保存当前的值、函数和单位元。
+     * 函数本身也要可序列化，例如 {@code (LongBinaryOperator & Serializable) Long::max}。
+     */
+    private static class SerializationProxy implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long value;
+        private final LongBinaryOperator function;
+        private final long identity;
+
+        SerializationProxy(StripedLongAccumulator a) {
+            value = a.get();
+            function = a.function;
+            identity = a.identity;
+        }
+
+        private Object readResolve() {
+            StripedLongAccumulator a = new StripedLongAccumulator(function, identity);
+            a.base = value;
+            return a;
+        }
+    }
+
+    private Object writeReplace() {
+        return new SerializationProxy(this);
+    }
+
+    private void readObject(ObjectInputStream s) throws InvalidObjectException {
+        throw new InvalidObjectException("Proxy required");
+    }
+}
@@ -0,0 +1,143 @@
+package java_.util.concurrent.atomic;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+
+/**
+ * 分段计数器，作用和 {@link java.util.concurrent.atomic.LongAdder} 相同，用于被大量线程频繁更新的统计值，
+ * 例如请求计数。没有竞争时和 {@link java.util.concurrent.atomic.AtomicLong} 一样只 CAS 一个变量；
+ * 出现竞争后各个线程更新不同的槽位，不再争用同一个缓存行。
+ *
+ * <p>{@link #sum()} 需要遍历所有槽位，比 {@code AtomicLong.get()} 慢，所以适合“写多读少”的场景。
+ * 它返回的不是原子快照，求和期间的并发更新可能只有一部分被计入。
+ */
+public class StripedLongCounter extends StripedCounter64 {
+
+    private static final long serialVersionUID = 1L;
+
+    public void add(long x) {
+        PaddedLong[] cs;
+        long b, v;
+        int m;
+        PaddedLong c;
+        // 表已经初始化或者 base 上出现了竞争时才使用槽位
+        if ((cs = cells) != null || !casBase(b = base, b + x)) {
+            Probe probe = PROBE.get();
+            boolean uncontended = true;
+            if (cs == null || (m = cs.length - 1) < 0 || (c = cs[probe.hash & m]) == null
+                    || !(uncontended = c.compareAndSet(v = c.get(), v + x))) {
+                accumulate(x, null, uncontended, probe);
+            }
+        }
+    }
+
+    public void increment() {
+        add(1L);
+    }
+
+    public void decrement() {
+        add(-1L);
+    }
+
+    /**
+     * 返回当前的总和。没有并发更新时结果是准确的。
+     */
+    public long sum() {
+        PaddedLong[] cs = cells;
+        long sum = base;
+        if (cs != null) {
+            for (PaddedLong c : cs) {
+                if (c != null) {
+                    sum += c.get();
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 把计数清零。只有在没有并发更新时才能得到准确的 0。
+     */
+    public void reset() {
+        reset(0L);
+    }
+
+    /**
+     * 返回总和并清零，每个槽位都用 getAndSet 取走，所以并发的更新不会丢失，只会被计入这一次或下一次。
+     * 适合周期性地上报增量，例如每秒的请求数。
+     */
+    public long sumThenReset() {
+        PaddedLong[] cs = cells;
+        long sum = getAndSetBase(0L);
+        if (cs != null) {
+            for (PaddedLong c : cs) {
+                if (c != null) {
+                    sum += c.getAndSet(0L);
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * 返回 base 和每个槽位的值，下标 0 是 base。各项之和等于调用时刻附近的 {@link #sum()}。
+     * 非 0 的槽位越多，说明竞争分散得越开。
+     */
+    public long[] snapshot() {
+        return values(0L);
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+
+    @Override
+    public long longValue() {
+        return sum();
+    }
+
+    @Override
+    public int intValue() {
+        return (int) sum();
+    }
+
+    @Override
+    public float floatValue() {
+        return (float) sum();
+    }
+
+    @Override
+    public double doubleValue() {
+        return (double) sum();
+    }
+
+    /**
+     * 序列化代理，和 {@code LongAdder.SerializationProxy} 相同，只保存当前的和。
+     * 槽位表等状态都是 transient 的，直接序列化得到的计数器值为 0。
+     */
+    private static class SerializationProxy implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long value;
+
+        SerializationProxy(StripedLongCounter a) {
+            value = a.sum();
+        }
+
+        private Object readResolve() {
+            StripedLongCounter a = new StripedLongCounter();
+            a.base = value;
+            return a;
+        }
+    }
+
+    private Object writeReplace() {
+        return new SerializationProxy(this);
+    }
+
+    private void readObject(ObjectInputStream s) throws InvalidObjectException {
+        throw new InvalidObjectException("Proxy required");
+    }
+}
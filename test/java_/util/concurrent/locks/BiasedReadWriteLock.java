@@ -0,0 +1,417 @@
+package java_.util.concurrent.locks;
+
+import java_.util.concurrent.atomic.PaddedLong;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 偏向读者的 {@link ReadWriteLock}：读者计数分散在多个独占缓存行的槽位中，读锁的获取和释放只写自己线程的槽位。
+ *
+ * <p>{@link java.util.concurrent.locks.ReentrantReadWriteLock} 的读者计数保存在 Sync 的 state 的高 16 位，
+ * 每个读者都要 CAS 这个变量（见 ReentrantReadWriteLock.md）。读锁之间虽然不互斥，但所有核都在争用同一个缓存行，
+ * 核越多读锁越慢。这里把读者计数拆到 {@link #slots} 中：
+ * <ul>
+ *     <li>每个线程第一次获取读锁时按轮转分配一个槽位，线程数不超过槽位数时每个线程独占一个缓存行</li>
+ *     <li>读者先递增自己的槽位，再检查 {@link #readerBias}。偏向有效时直接进入临界区，不访问任何其他共享变量</li>
+ *     <li>写者先获取 {@link #writerLock}，再撤销偏向（readerBias = false），然后扫描所有槽位，等待它们都变成 0</li>
+ *     <li>读者看到偏向被撤销时，撤回对槽位的递增，改为先获取 writerLock 再递增槽位。
+ *     持有 writerLock 说明当前没有写者，所以这些读者不需要再检查偏向</li>
+ * </ul>
+ * 读者的“先写槽位、再读偏向”和写者的“先写偏向、再读槽位”都是 volatile 访问，两者之中至少有一个能看到对方的写，
+ * 所以不会出现读者和写者同时进入临界区的情况。
+ *
+ * <p>代价是写锁变慢了：每次获取写锁都要扫描所有槽位，偏向被撤销期间新的读者也要排队获取 writerLock。
+ * 适合读远多于写的场景，例如每秒读取千万次、每分钟修改一次的配置。
+ *
+ * <p>可重入性和 ReentrantReadWriteLock 相同：读锁和写锁都可重入，持有写锁的线程可以获取读锁（锁降级），
+ * 持有读锁的线程获取写锁会死锁。每个线程的读锁重入次数保存在 ThreadLocal 中，重入时不写槽位。
+ * 写锁不支持 {@link Condition}：等待时只释放 writerLock 而不恢复偏向，被唤醒时又不会重新等待读者，语义不正确。
+ */
+public class BiasedReadWriteLock implements ReadWriteLock {
+
+    /**
+     * 每个槽位是一个线程或一组线程持有的读锁数。
+     */
+    private final PaddedLong[] slots;
+
+    /**
+     * 读者是否可以只写自己的槽位就获取读锁。只有持有 writerLock 的写者修改它。
+     */
+    private volatile boolean readerBias = true;
+
+    /**
+     * 写者之间的互斥锁，也是偏向被撤销时读者排队的地方。
+     */
+    private final ReentrantLock writerLock = new ReentrantLock();
+
+    /**
+     * 正在等待读者离开的写者，读者释放读锁时唤醒它。
+     */
+    private volatile Thread waitingWriter;
+
+    private final AtomicInteger nextSlot = new AtomicInteger();
+
+    private final ThreadLocal<ReaderState> readerState;
+
+    private final ReadLock readLock = new ReadLock();
+    private final WriteLock writeLock = new WriteLock();
+
+    /**
+     * 每个线程的读锁状态。
+     */
+    private static final class ReaderState {
+        final PaddedLong slot;
+        int holds;
+
+        ReaderState(PaddedLong slot) {
+            this.slot = slot;
+        }
+    }
+
+    /**
+     * 槽位数为 CPU 数的 4 倍向上取整到 2 的幂。
+     */
+    public BiasedReadWriteLock() {
+        this(Math.min(1 << 10, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1));
+    }
+
+    /**
+     * @param slotCount 槽位数，每个槽位占用 264 字节。小于读线程数时，共用槽位的线程之间会争用缓存行
+     */
+    public BiasedReadWriteLock(int slotCount) {
+        if (slotCount <= 0) {
+            throw new IllegalArgumentException("slotCount: " + slotCount);
+        }
+        slots = new PaddedLong[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new PaddedLong();
+        }
+        readerState = ThreadLocal.withInitial(() ->
+                new ReaderState(slots[(nextSlot.getAndIncrement() & Integer.MAX_VALUE) % slots.length]));
+    }
+
+    @Override
+    public Lock readLock() {
+        return readLock;
+    }
+
+    @Override
+    public Lock writeLock() {
+        return writeLock;
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // 读锁
+
+    /**
+     * 快速路径：偏向有效时递增槽位即可。
+     *
+     * @return 是否获取成功。失败时槽位已经恢复
+     */
+    private boolean tryFastRead(ReaderState state) {
+        PaddedLong slot = state.slot;
+        slot.getAndAdd(1);
+        if (readerBias) {
+            return true;
+        }
+        // 写者已经或即将扫描槽位，撤回递增，它可能正在等待这个槽位变成 0
+        releaseSlot(slot);
+        return false;
+    }
+
+    /**
+     * 在 writerLock 的保护下递增槽位。调用者已经获取了 writerLock。
+     */
+    private void readUnderWriterLock(ReaderState state) {
+        try {
+            state.slot.getAndAdd(1);
+            state.holds = 1;
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    private void releaseSlot(PaddedLong slot) {
+        slot.getAndAdd(-1);
+        if (!readerBias) {
+            Thread writer = waitingWriter;
+            if (writer != null) {
+                LockSupport.unpark(writer);
+            }
+        }
+    }
+
+    private void unlockRead() {
+        ReaderState state = readerState.get();
+        if (state.holds <= 0) {
+            throw new IllegalMonitorStateException("attempt to unlock read lock, not locked by current thread");
+        }
+        if (--state.holds == 0) {
+            releaseSlot(state.slot);
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // 写锁
+
+    /**
+     * 撤销偏向并等待所有读者离开。调用者已经第一次获取了 writerLock。
+     *
+     * @param deadline 等待的截止时间，{@code Long.MAX_VALUE} 表示不限时；和 interruptible 只在非阻塞等待时使用
+     * @return 是否等到了所有读者离开。失败时偏向已经恢复，writerLock 已经释放
+     */
+    private boolean revokeBias(boolean timed, long deadline, boolean interruptible) throws InterruptedException {
+        readerBias = false;
+        waitingWriter = Thread.currentThread();
+        try {
+            for (PaddedLong slot : slots) {
+                for (int spins = 0; slot.get() != 0; spins++) {
+                    if (spins < 64) {
+                        continue;
+                    }
+                    if (interruptible && Thread.interrupted()) {
+                        abortWrite();
+                        throw new InterruptedException();
+                    }
+                    if (timed) {
+                        long nanos = deadline - System.nanoTime();
+                        if (nanos <= 0) {
+                            abortWrite();
+                            return false;
+                        }
+                        LockSupport.parkNanos(this, nanos);
+                    } else {
+                        LockSupport.park(this);
+                    }
+                }
+            }
+            return true;
+        } finally {
+            waitingWriter = null;
+        }
+    }
+
+    private void abortWrite() {
+        readerBias = true;
+        writerLock.unlock();
+    }
+
+    private void unlockWrite() {
+        if (!writerLock.isHeldByCurrentThread()) {
+            throw new IllegalMonitorStateException("attempt to unlock write lock, not locked by current thread");
+        }
+        if (writerLock.getHoldCount() == 1) {
+            // 恢复偏向之后，在 writerLock 上排队的读者仍然按慢速路径获取读锁
+            readerBias = true;
+        }
+        writerLock.unlock();
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // 监控
+
+    /**
+     * 返回持有的读锁总数，包括重入。只在读者的快速路径上短暂递增的槽位也会被计入，所以只是一个估计值。
+     */
+    public int getReadLockCount() {
+        long sum = 0;
+        for (PaddedLong slot : slots) {
+            sum += slot.get();
+        }
+        return (int) Math.max(0, sum);
+    }
+
+    public int getReadHoldCount() {
+        return readerState.get().holds;
+    }
+
+    public boolean isWriteLocked() {
+        return writerLock.isLocked() && !readerBias;
+    }
+
+    public boolean isWriteLockedByCurrentThread() {
+        return writerLock.isHeldByCurrentThread();
+    }
+
+    public int getWriteHoldCount() {
+        return writerLock.getHoldCount();
+    }
+
+    public int getSlotCount() {
+        return slots.length;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + "[Write locks = " + writerLock.getHoldCount() + ", Read locks = "
+                + getReadLockCount() + "]";
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // 视图
+
+    /**
+     * 读锁视图。
+     */
+    private final class ReadLock implements Lock {
+
+        @Override
+        public void lock() {
+            ReaderState state = readerState.get();
+            if (state.holds > 0) {
+                state.holds++;
+                return;
+            }
+            if (tryFastRead(state)) {
+                state.holds = 1;
+                return;
+            }
+            writerLock.lock();
+            readUnderWriterLock(state);
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            ReaderState state = readerState.get();
+            if (state.holds > 0) {
+                state.holds++;
+                return;
+            }
+            if (tryFastRead(state)) {
+                state.holds = 1;
+                return;
+            }
+            writerLock.lockInterruptibly();
+            readUnderWriterLock(state);
+        }
+
+        @Override
+        public boolean tryLock() {
+            ReaderState state = readerState.get();
+            if (state.holds > 0) {
+                state.holds++;
+                return true;
+            }
+            if (tryFastRead(state)) {
+                state.holds = 1;
+                return true;
+            }
+            if (!writerLock.tryLock()) {
+                return false;
+            }
+            readUnderWriterLock(state);
+            return true;
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            ReaderState state = readerState.get();
+            if (state.holds > 0) {
+                state.holds++;
+                return true;
+            }
+            if (tryFastRead(state)) {
+                state.holds = 1;
+                return true;
+            }
+            if (!writerLock.tryLock(time, unit)) {
+                return false;
+            }
+            readUnderWriterLock(state);
+            return true;
+        }
+
+        @Override
+        public void unlock() {
+            unlockRead();
+        }
+
+        /**
+         * 读锁不支持 Condition，和 ReentrantReadWriteLock 相同。
+         */
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * 写锁视图。
+     */
+    private final class WriteLock implements Lock {
+
+        @Override
+        public void lock() {
+            writerLock.lock();
+            if (writerLock.getHoldCount() > 1) {
+                return;
+            }
+            try {
+                revokeBias(false, Long.MAX_VALUE, false);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            writerLock.lockInterruptibly();
+            if (writerLock.getHoldCount() > 1) {
+                return;
+            }
+            revokeBias(false, Long.MAX_VALUE, true);
+        }
+
+        /**
+         * 只有在没有读者时才成功。
+         */
+        @Override
+        public boolean tryLock() {
+            if (!writerLock.tryLock()) {
+                return false;
+            }
+            if (writerLock.getHoldCount() > 1) {
+                return true;
+            }
+            try {
+                return revokeBias(true, System.nanoTime(), false);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(time);
+            if (!writerLock.tryLock(time, unit)) {
+                return false;
+            }
+            if (writerLock.getHoldCount() > 1) {
+                return true;
+            }
+            return revokeBias(true, deadline, true);
+        }
+
+        @Override
+        public void unlock() {
+            unlockWrite();
+        }
+
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
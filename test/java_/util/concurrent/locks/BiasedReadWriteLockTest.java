@@ -0,0 +1,290 @@
+package java_.util.concurrent.locks;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link BiasedReadWriteLock} 的测试，以及和 {@link ReentrantReadWriteLock} 的比较。
+ */
+public class BiasedReadWriteLockTest {
+
+    @Test
+    public void testReentrancy() {
+        BiasedReadWriteLock lock = new BiasedReadWriteLock(4);
+        Lock r = lock.readLock(), w = lock.writeLock();
+        r.lock();
+        r.lock();
+        assertTrue(r.tryLock());
+        assertEquals(3, lock.getReadHoldCount());
+        assertEquals(1, lock.getReadLockCount());
+        r.unlock();
+        r.unlock();
+        r.unlock();
+        assertEquals(0, lock.getReadLockCount());
+        assertThrows(IllegalMonitorStateException.class, r::unlock);
+        assertThrows(IllegalMonitorStateException.class, w::unlock);
+        assertThrows(UnsupportedOperationException.class, r::newCondition);
+        assertThrows(UnsupportedOperationException.class, w::newCondition);
+
+        // 写锁可重入，持有写锁时可以获取读锁，然后释放写锁完成降级
+        w.lock();
+        w.lock();
+        assertEquals(2, lock.getWriteHoldCount());
+        assertTrue(lock.isWriteLocked());
+        assertTrue(lock.isWriteLockedByCurrentThread());
+        w.unlock();
+        r.lock();
+        w.unlock();
+        assertFalse(lock.isWriteLocked());
+        assertEquals(1, lock.getReadHoldCount());
+        assertFalse(w.tryLock());
+        r.unlock();
+        assertTrue(w.tryLock());
+        w.unlock();
+        assertTrue(lock.toString().endsWith("[Write locks = 0, Read locks = 0]"));
+    }
+
+    @Test
+    public void testBlocking() throws Exception {
+        BiasedReadWriteLock lock = new BiasedReadWriteLock(4);
+        Lock r = lock.readLock(), w = lock.writeLock();
+
+        // 读者持有读锁时，写者等待；写者等待期间新的读者也等待
+        r.lock();
+        AtomicBoolean written = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            w.lock();
+            written.set(true);
+            w.unlock();
+        });
+        writer.start();
+        while (!lock.isWriteLocked()) {
+            Thread.yield();
+        }
+        // 其他线程中的断言失败不会让测试失败，所以把结果记录下来，在测试线程中断言
+        AtomicBoolean readerBlocked = new AtomicBoolean();
+        Thread reader = new Thread(() -> {
+            try {
+                readerBlocked.set(!r.tryLock(20, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                // readerBlocked 保持 false
+            }
+        });
+        reader.start();
+        reader.join();
+        assertTrue(readerBlocked.get());
+        assertFalse(written.get());
+        r.unlock();
+        writer.join();
+        assertTrue(written.get());
+
+        // 写锁被持有时，读者可以被中断，写者的 tryLock 超时
+        w.lock();
+        AtomicBoolean readerInterrupted = new AtomicBoolean();
+        Thread interrupted = new Thread(() -> {
+            try {
+                r.lockInterruptibly();
+            } catch (InterruptedException e) {
+                readerInterrupted.set(true);
+            }
+        });
+        interrupted.start();
+        Thread.sleep(20);
+        interrupted.interrupt();
+        interrupted.join();
+        assertTrue(readerInterrupted.get());
+        CountDownLatch tried = new CountDownLatch(1);
+        AtomicBoolean writerTimedOut = new AtomicBoolean();
+        new Thread(() -> {
+            try {
+                writerTimedOut.set(!w.tryLock(10, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                // writerTimedOut 保持 false
+            }
+            tried.countDown();
+        }).start();
+        assertTrue(tried.await(1, TimeUnit.SECONDS));
+        assertTrue(writerTimedOut.get());
+        w.unlock();
+
+        // 读者不离开时，写者的 tryLock 超时后恢复偏向，读者仍然可以获取读锁
+        r.lock();
+        AtomicBoolean timedOut = new AtomicBoolean();
+        Thread timedWriter = new Thread(() -> {
+            try {
+                timedOut.set(!w.tryLock(20, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                // timedOut 保持 false
+            }
+        });
+        timedWriter.start();
+        timedWriter.join();
+        assertTrue(timedOut.get());
+        assertFalse(lock.isWriteLocked());
+        AtomicBoolean anotherRead = new AtomicBoolean();
+        Thread another = new Thread(() -> {
+            if (r.tryLock()) {
+                anotherRead.set(true);
+                r.unlock();
+            }
+        });
+        another.start();
+        another.join();
+        assertTrue(anotherRead.get());
+        r.unlock();
+    }
+
+    /**
+     * 读者和写者（包括降级的写者）并发执行，读者不会看到写到一半的数据，写锁下的计数不会丢失更新。
+     * 槽位数少于线程数，有多个线程共用槽位。
+     */
+    @Test
+    public void testConsistency() throws Exception {
+        BiasedReadWriteLock lock = new BiasedReadWriteLock(2);
+        Lock r = lock.readLock(), w = lock.writeLock();
+        long[] pair = new long[2];
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicInteger inconsistent = new AtomicInteger();
+        AtomicLong writes = new AtomicLong();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            int id = t;
+            threads[t] = new Thread(() -> {
+                while (!stop.get()) {
+                    if (id < 2) {
+                        w.lock();
+                        pair[0]++;
+                        pair[1]--;
+                        if (id == 1) {
+                            // 降级
+                            r.lock();
+                            w.unlock();
+                            if (pair[0] + pair[1] != 0) {
+                                inconsistent.incrementAndGet();
+                            }
+                            r.unlock();
+                        } else {
+                            w.unlock();
+                        }
+                        writes.incrementAndGet();
+                    } else {
+                        r.lock();
+                        if (pair[0] + pair[1] != 0) {
+                            inconsistent.incrementAndGet();
+                        }
+                        r.unlock();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        Thread.sleep(500);
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, inconsistent.get());
+        assertEquals(writes.get(), pair[0]);
+        assertEquals(0, lock.getReadLockCount());
+        assertFalse(lock.isWriteLocked());
+    }
+
+    /**
+     * 读取路由表：按 key 查找一个 64 项的表，写者每 10 毫秒替换一次表中的一项。
+     * 每种锁在 1 到 64 个读线程下各运行 300 毫秒，输出所有读线程合计的每秒读取次数（百万次）。
+     * 读写线程见 {@link RouteTableBenchmark}。最后测量单线程反复获取、释放写锁的时间，写者每次都要扫描所有槽位。
+     */
+    @Test
+    public void testBenchmark() throws Exception {
+        System.out.println(Runtime.getRuntime().availableProcessors() + " cpus, slots: "
+                + new BiasedReadWriteLock().getSlotCount());
+        String[] names = {"ReentrantReadWriteLock", "BiasedReadWriteLock"};
+        int[] threadCounts = {1, 2, 4, 8, 16, 32, 64};
+        for (String name : names) {
+            run(newLock(name), 1, 300);
+        }
+        System.out.printf("%-24s", "reads (Mops/s)");
+        for (int threads : threadCounts) {
+            System.out.printf("%8d", threads);
+        }
+        System.out.println();
+        for (String name : names) {
+            System.out.printf("%-24s", name);
+            for (int threads : threadCounts) {
+                System.out.printf("%8.1f", run(newLock(name), threads, 300));
+            }
+            System.out.println();
+        }
+
+        System.out.printf("%n%-24s%14s%14s%n", "uncontended", "read ns", "write ns");
+        for (String name : names) {
+            ReadWriteLock lock = newLock(name);
+            long read = Long.MAX_VALUE, write = Long.MAX_VALUE;
+            final int n = 10_000_000;
+            for (int round = 0; round < 5; round++) {
+                Lock r = lock.readLock(), w = lock.writeLock();
+                long start = System.nanoTime();
+                for (int i = 0; i < n; i++) {
+                    r.lock();
+                    r.unlock();
+                }
+                read = Math.min(read, System.nanoTime() - start);
+                start = System.nanoTime();
+                for (int i = 0; i < n; i++) {
+                    w.lock();
+                    w.unlock();
+                }
+                write = Math.min(write, System.nanoTime() - start);
+            }
+            System.out.printf("%-24s%14.1f%14.1f%n", name, (double) read / n, (double) write / n);
+        }
+
+        /*
+        输出：
+        1 cpus, slots: 4
+        reads (Mops/s)                 1       2       4       8      16      32      64
+        ReentrantReadWriteLock      47.7    25.3    24.6    27.5    25.0    19.6    20.2
+        BiasedReadWriteLock         60.9    70.2    65.8    67.6    67.9    66.7    70.1
+
+        uncontended                    read ns      write ns
+        ReentrantReadWriteLock            18.3          15.4
+        BiasedReadWriteLock               14.6          36.0
+
+        结论：
+        - 这台机器只有 1 个 CPU，测不出多核下 state 缓存行的争用，只能看到单核上的开销。多核下 RRWL 的每个读者都 CAS 同一个 state，
+          吞吐量会随核数下降；分散的槽位上每个线程只写自己的缓存行，读吞吐量可以随核数增长。
+        - 多个读线程时 RRWL 降到一半左右：除了 CAS state，它还要在 ThreadLocal 中维护每个读者的重入计数，
+          只有一个读线程时可以用 firstReader 的快速路径。这里的 ThreadLocal 只在本线程内读写，读锁的开销不随线程数变化。
+        - 代价在写锁：每次获取都要撤销偏向并扫描所有槽位，比 RRWL 慢 1 倍多，槽位越多越慢（CPU 数的 4 倍）。
+          写者每 10 毫秒写一次时完全看不出影响，适合读远多于写的配置、路由表；写比较频繁时还是 RRWL 更合适。
+         */
+    }
+
+    private static ReadWriteLock newLock(String name) {
+        return name.equals("ReentrantReadWriteLock") ? new ReentrantReadWriteLock() : new BiasedReadWriteLock();
+    }
+
+    private static double run(ReadWriteLock lock, int readers, long millis) throws InterruptedException {
+        Lock r = lock.readLock(), w = lock.writeLock();
+        return RouteTableBenchmark.run((table, k) -> {
+            r.lock();
+            long v = table[k];
+            r.unlock();
+            return v;
+        }, (table, k, v) -> {
+            w.lock();
+            table[k] = v;
+            w.unlock();
+        }, readers, millis);
+    }
+}
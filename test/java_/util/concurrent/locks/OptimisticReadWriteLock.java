@@ -0,0 +1,483 @@
+package java_.util.concurrent.locks;
+
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.AbstractQueuedLongSynchronizer;
+
+/**
+ * 带版本戳的读写锁，除了读锁和写锁之外还支持乐观读，作用和 {@link java.util.concurrent.locks.StampedLock} 相同，
+ * 但阻塞和排队直接使用 AQS（见 AbstractQueuedSynchronizer.md）。
+ *
+ * <p>{@link java.util.concurrent.locks.ReentrantReadWriteLock} 的每次读锁获取和释放都要 CAS 同一个 state，
+ * 还要更新读者的重入计数。读多写少时，所有读线程反复争用 state 所在的缓存行，读者越多越慢。
+ * 乐观读只读取 state，不写任何共享变量：
+ * <pre>{@code
+ * long stamp = lock.tryOptimisticRead();
+ * Route route = table.get(key);            // 读取共享数据，可能读到写到一半的状态
+ * if (!lock.validate(stamp)) {             // 期间有写操作，退化为读锁
+ *     stamp = lock.readLock();
+ *     try {
+ *         route = table.get(key);
+ *     } finally {
+ *         lock.unlockRead(stamp);
+ *     }
+ * }
+ * }</pre>
+ * 乐观读期间读到的数据可能不一致，在 {@link #validate} 成功之前不能使用它们做任何有副作用的事，
+ * 也要避免它们导致的异常和死循环（例如先读数组引用再读长度）。
+ *
+ * <p>state 是一个 long：
+ * <ul>
+ *     <li>低 32 位是读锁的持有数</li>
+ *     <li>第 32 位 {@link #WBIT} 是写锁位</li>
+ *     <li>更高的位是版本号。获取写锁时加上 WBIT 设置写锁位，释放时再加 WBIT，进位到版本号，
+ *     所以写锁位和版本号（合称 {@link #SBITS}）在每次写锁获取和释放时都会改变</li>
+ * </ul>
+ * 乐观读的戳就是 SBITS 部分，validate 只需比较它有没有变化。版本号溢出时 state 会回到 0，
+ * 和 StampedLock 一样改为从 {@link #ORIGIN} 重新开始（见 {@link #unlockWriteState}）。
+ *
+ * <p>和 ReentrantReadWriteLock 的区别：
+ * <ul>
+ *     <li>不可重入，也没有所有者。持有写锁时获取读锁或写锁都会死锁；锁可以由另一个线程用戳释放</li>
+ *     <li>写者按 AQS 的队列顺序获取；有写者在排队时，新来的读者也排队，写者不会被源源不断的读者饿死。
+ *     只有读者在排队时（例如写锁释放后正在逐个唤醒它们），新来的读者直接获取，不用跟在后面一个个被唤醒。
+ *     {@link #tryReadLock()}、{@link #tryWriteLock()} 和模式转换不排队</li>
+ *     <li>不支持 Condition</li>
+ *     <li>支持读锁、写锁和乐观读之间的转换，见 {@link #tryConvertToWriteLock} 等方法</li>
+ * </ul>
+ *
+ * <p>戳为 0 表示获取失败；读锁的戳最低位为 1，用来和乐观读的戳区分。
+ */
+public class OptimisticReadWriteLock implements java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final long RUNIT = 1L;
+    static final long RMASK = (1L << 32) - 1;
+    static final long WBIT = 1L << 32;
+    static final long SBITS = ~RMASK;
+
+    /**
+     * 初始状态。版本号从 1 开始，所以有效的戳都不为 0。
+     */
+    private static final long ORIGIN = WBIT << 1;
+
+    /**
+     * 降级时传给 releaseShared 的参数，和普通的读锁释放（参数为 1）区分。
+     */
+    private static final long DOWNGRADE = -1L;
+
+    private final Sync sync = new Sync();
+
+    /**
+     * 读者和写者都使用共享模式和独占模式的 AQS 队列排队。
+     */
+    private static final class Sync extends AbstractQueuedLongSynchronizer {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * 正在获取写锁的线程数，读者据此判断是否要让路。只有写者修改它，读者只读取，不会产生缓存行争用。
+         */
+        private final AtomicInteger waitingWriters = new AtomicInteger();
+
+        Sync() {
+            setState(ORIGIN);
+        }
+
+        @Override
+        protected boolean tryAcquire(long arg) {
+            long s = getState();
+            return (s & (RMASK | WBIT)) == 0 && !hasQueuedPredecessors() && compareAndSetState(s, s + WBIT);
+        }
+
+        /**
+         * 加上 WBIT 清除写锁位，同时递增版本号。持有写锁时读者不会修改 state，所以不需要 CAS。
+         */
+        @Override
+        protected boolean tryRelease(long arg) {
+            setState(unlockWriteState(getState()));
+            return true;
+        }
+
+        @Override
+        protected long tryAcquireShared(long arg) {
+            for (;;) {
+                long s = getState();
+                if ((s & WBIT) != 0 || waitingWriters.get() != 0 && hasQueuedPredecessors()) {
+                    return -1;
+                }
+                if ((s & RMASK) == RMASK) {
+                    throw new Error("Maximum lock count exceeded");
+                }
+                if (compareAndSetState(s, s + RUNIT)) {
+                    return 1;
+                }
+            }
+        }
+
+        /**
+         * 释放一个读锁；或者在 arg 为 {@link #DOWNGRADE} 时把写锁原子地降级为读锁，唤醒排队的读者。
+         * 返回 true 时 AQS 会唤醒队列中的下一个线程，普通的释放只在最后一个读者离开时才需要唤醒。
+         */
+        @Override
+        protected boolean tryReleaseShared(long arg) {
+            if (arg == DOWNGRADE) {
+                setState(unlockWriteState(getState()) + RUNIT);
+                return true;
+            }
+            for (;;) {
+                long s = getState();
+                long next = s - RUNIT;
+                if (compareAndSetState(s, next)) {
+                    return (next & RMASK) == 0;
+                }
+            }
+        }
+
+        /**
+         * 不排队地尝试获取读锁，和 ReentrantReadWriteLock 的 tryLock 一样会插队。
+         */
+        long tryReadLockNow() {
+            for (;;) {
+                long s = getState();
+                if ((s & WBIT) != 0) {
+                    return 0L;
+                }
+                if ((s & RMASK) == RMASK) {
+                    throw new Error("Maximum lock count exceeded");
+                }
+                if (compareAndSetState(s, s + RUNIT)) {
+                    return readStamp(s);
+                }
+            }
+        }
+
+        long tryWriteLockNow() {
+            long s = getState();
+            long next = s + WBIT;
+            return (s & (RMASK | WBIT)) == 0 && compareAndSetState(s, next) ? next : 0L;
+        }
+
+        void acquireWrite() {
+            waitingWriters.incrementAndGet();
+            try {
+                acquire(1);
+            } finally {
+                waitingWriters.decrementAndGet();
+            }
+        }
+
+        void acquireWriteInterruptibly() throws InterruptedException {
+            waitingWriters.incrementAndGet();
+            try {
+                acquireInterruptibly(1);
+            } finally {
+                waitingWriters.decrementAndGet();
+            }
+        }
+
+        boolean tryAcquireWriteNanos(long nanos) throws InterruptedException {
+            waitingWriters.incrementAndGet();
+            try {
+                return tryAcquireNanos(1, nanos);
+            } finally {
+                waitingWriters.decrementAndGet();
+            }
+        }
+
+        long state() {
+            return getState();
+        }
+
+        void state(long s) {
+            setState(s);
+        }
+
+        boolean casState(long expect, long update) {
+            return compareAndSetState(expect, update);
+        }
+
+        private void readObject(java.io.ObjectInputStream in) throws java.io.IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            // 反序列化后处于未锁定状态
+            setState(ORIGIN);
+        }
+    }
+
+    private static long readStamp(long s) {
+        return (s & SBITS) | RUNIT;
+    }
+
+    /**
+     * 释放写锁之后的 state。写锁周期达到 2^31 次时版本号溢出，state 加上 WBIT 后正好为 0，
+     * 这时乐观读的戳会和表示失败的 0 相同，所以和 StampedLock 一样跳回 {@link #ORIGIN}。
+     */
+    private static long unlockWriteState(long s) {
+        s += WBIT;
+        return s == 0L ? ORIGIN : s;
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // 乐观读
+
+    /**
+     * 返回乐观读的戳，写锁被持有时返回 0。
+     */
+    public long tryOptimisticRead() {
+        long s = sync.state();
+        return (s & WBIT) == 0 ? s & SBITS : 0L;
+    }
+
+    /**
+     * 如果从获得 stamp 以来没有获取过写锁，返回 true。stamp 为 0 时总是返回 false。
+     * 对写锁的戳，只有在这个写锁仍然被持有时才返回 true。
+     *
+     * <p>返回之前的读操作不会被重排序到 state 的读取之后，否则可能读到写者在 validate 之后写入的数据。
+     * volatile 读只能阻止它之后的读写被重排序到它之前，所以这里需要一个 load 屏障。
+     */
+    public boolean validate(long stamp) {
+        U.loadFence();
+        return (stamp & SBITS) == (sync.state() & SBITS);
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // 读锁
+
+    /**
+     * 获取读锁，必要时阻塞，返回读锁的戳。
+     */
+    public long readLock() {
+        sync.acquireShared(1);
+        return readStamp(sync.state());
+    }
+
+    public long readLockInterruptibly() throws InterruptedException {
+        sync.acquireSharedInterruptibly(1);
+        return readStamp(sync.state());
+    }
+
+    /**
+     * 写锁没有被持有时立即获取读锁，否则返回 0。
+     */
+    public long tryReadLock() {
+        return sync.tryReadLockNow();
+    }
+
+    /**
+     * @return 读锁的戳，超时返回 0
+     */
+    public long tryReadLock(long time, TimeUnit unit) throws InterruptedException {
+        return sync.tryAcquireSharedNanos(1, unit.toNanos(time)) ? readStamp(sync.state()) : 0L;
+    }
+
+    /**
+     * @throws IllegalMonitorStateException 如果 stamp 不是当前有效的读锁的戳
+     */
+    public void unlockRead(long stamp) {
+        long s = sync.state();
+        if ((stamp & RMASK) != RUNIT || (stamp & SBITS) != (s & SBITS) || (s & RMASK) == 0) {
+            throw new IllegalMonitorStateException();
+        }
+        sync.releaseShared(1);
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // 写锁
+
+    /**
+     * 获取写锁，必要时阻塞，返回写锁的戳。
+     */
+    public long writeLock() {
+        sync.acquireWrite();
+        return sync.state();
+    }
+
+    public long writeLockInterruptibly() throws InterruptedException {
+        sync.acquireWriteInterruptibly();
+        return sync.state();
+    }
+
+    /**
+     * 锁完全空闲时立即获取写锁，否则返回 0。
+     */
+    public long tryWriteLock() {
+        return sync.tryWriteLockNow();
+    }
+
+    /**
+     * @return 写锁的戳，超时返回 0
+     */
+    public long tryWriteLock(long time, TimeUnit unit) throws InterruptedException {
+        return sync.tryAcquireWriteNanos(unit.toNanos(time)) ? sync.state() : 0L;
+    }
+
+    /**
+     * @throws IllegalMonitorStateException 如果 stamp 不是当前持有的写锁的戳
+     */
+    public void unlockWrite(long stamp) {
+        if ((stamp & WBIT) == 0 || stamp != sync.state()) {
+            throw new IllegalMonitorStateException();
+        }
+        sync.release(1);
+    }
+
+    /**
+     * 根据 stamp 的模式释放读锁或写锁。
+     */
+    public void unlock(long stamp) {
+        if ((stamp & WBIT) != 0) {
+            unlockWrite(stamp);
+        } else {
+            unlockRead(stamp);
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // 模式转换
+
+    /**
+     * 把 stamp 转换为写锁：
+     * <ul>
+     *     <li>写锁的戳：原样返回</li>
+     *     <li>读锁的戳：只有这个读者时，原子地释放读锁并获取写锁</li>
+     *     <li>乐观读的戳：锁完全空闲、并且版本号没有变化时获取写锁</li>
+     * </ul>
+     * 不能立即转换时返回 0，不会阻塞。
+     * 两个读者同时升级时最多只有一个成功，所以不会像“持有读锁时再获取写锁”那样死锁。
+     */
+    public long tryConvertToWriteLock(long stamp) {
+        for (;;) {
+            long s = sync.state();
+            if ((stamp & SBITS) != (s & SBITS)) {
+                return 0L;
+            }
+            if ((s & WBIT) != 0) {
+                return stamp == s ? stamp : 0L;
+            }
+            long readers = s & RMASK;
+            long reads = stamp & RMASK;
+            long next = s - reads + WBIT;
+            if (readers != reads || reads > RUNIT) {
+                return 0L;
+            }
+            if (sync.casState(s, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * 把 stamp 转换为读锁：
+     * <ul>
+     *     <li>写锁的戳：原子地降级为读锁，排队的读者可以随后获取读锁</li>
+     *     <li>读锁的戳：原样返回</li>
+     *     <li>乐观读的戳：写锁没有被持有、并且版本号没有变化时获取读锁</li>
+     * </ul>
+     * 不能立即转换时返回 0，不会阻塞。
+     */
+    public long tryConvertToReadLock(long stamp) {
+        for (;;) {
+            long s = sync.state();
+            if ((stamp & SBITS) != (s & SBITS)) {
+                return 0L;
+            }
+            if ((s & WBIT) != 0) {
+                if (stamp != s) {
+                    return 0L;
+                }
+                sync.releaseShared(DOWNGRADE);
+                return readStamp(unlockWriteState(s));
+            }
+            if ((stamp & RMASK) == RUNIT) {
+                return (s & RMASK) != 0 ? stamp : 0L;
+            }
+            if ((s & RMASK) == RMASK) {
+                throw new Error("Maximum lock count exceeded");
+            }
+            if (sync.casState(s, s + RUNIT)) {
+                return readStamp(s);
+            }
+        }
+    }
+
+    /**
+     * 把 stamp 转换为乐观读：释放 stamp 持有的读锁或写锁，返回乐观读的戳。
+     * 对乐观读的戳，如果 validate 成功就原样返回。失败时返回 0。
+     */
+    public long tryConvertToOptimisticRead(long stamp) {
+        long s = sync.state();
+        if ((stamp & SBITS) != (s & SBITS)) {
+            return 0L;
+        }
+        if ((s & WBIT) != 0) {
+            if (stamp != s) {
+                return 0L;
+            }
+            sync.release(1);
+            return unlockWriteState(s);
+        }
+        if ((stamp & RMASK) == RUNIT) {
+            if ((s & RMASK) == 0) {
+                return 0L;
+            }
+            sync.releaseShared(1);
+        }
+        return s & SBITS;
+    }
+
+    // ------------------------------------------------------------------------------------------------
+    // 监控
+
+    public boolean isWriteLocked() {
+        return (sync.state() & WBIT) != 0;
+    }
+
+    public boolean isReadLocked() {
+        return (sync.state() & RMASK) != 0;
+    }
+
+    public int getReadLockCount() {
+        return (int) (sync.state() & RMASK);
+    }
+
+    public boolean hasQueuedThreads() {
+        return sync.hasQueuedThreads();
+    }
+
+    public int getQueueLength() {
+        return sync.getQueueLength();
+    }
+
+    /**
+     * 只用于测试：直接设置 state，例如把版本号设到即将溢出的位置。
+     */
+    void setState(long s) {
+        sync.state(s);
+    }
+
+    @Override
+    public String toString() {
+        long s = sync.state();
+        return super.toString() + ((s & WBIT) != 0 ? "[Write-locked]"
+                : (s & RMASK) != 0 ? "[Read-locks:" + (s & RMASK) + "]" : "[Unlocked]");
+    }
+
+    /**
+     * Java 8 没有 VarHandle.acquireFence，和 JDK 8 的 StampedLock 一样使用 Unsafe.loadFence。
+     */
+    private static final Unsafe U;
+
+    static {
+        try {
+            Field f = Unsafe.class.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            U = (Unsafe) f.get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package java_.util.concurrent.locks;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link OptimisticReadWriteLock} 的测试，以及和 {@link ReentrantReadWriteLock} 的比较。
+ */
+public class OptimisticReadWriteLockTest {
+
+    @Test
+    public void testModes() {
+        OptimisticReadWriteLock lock = new OptimisticReadWriteLock();
+        long optimistic = lock.tryOptimisticRead();
+        assertNotEquals(0, optimistic);
+        assertTrue(lock.validate(optimistic));
+        assertFalse(lock.validate(0));
+
+        long r1 = lock.readLock();
+        long r2 = lock.tryReadLock();
+        assertNotEquals(0, r2);
+        assertEquals(2, lock.getReadLockCount());
+        assertTrue(lock.isReadLocked());
+        // 读锁不改变版本号
+        assertTrue(lock.validate(optimistic));
+        assertTrue(lock.validate(r1));
+        assertEquals(0, lock.tryWriteLock());
+        lock.unlockRead(r1);
+        lock.unlock(r2);
+        assertThrows(IllegalMonitorStateException.class, () -> lock.unlockRead(r1));
+        assertThrows(IllegalMonitorStateException.class, () -> lock.unlockRead(optimistic));
+
+        long w = lock.writeLock();
+        assertTrue(lock.isWriteLocked());
+        assertTrue(lock.validate(w));
+        assertFalse(lock.validate(optimistic));
+        assertEquals(0, lock.tryOptimisticRead());
+        assertEquals(0, lock.tryReadLock());
+        assertEquals(0, lock.tryWriteLock());
+        assertThrows(IllegalMonitorStateException.class, () -> lock.unlockWrite(w + 1));
+        assertTrue(lock.toString().endsWith("[Write-locked]"));
+        lock.unlockWrite(w);
+        assertFalse(lock.validate(w));
+        assertThrows(IllegalMonitorStateException.class, () -> lock.unlockWrite(w));
+        assertTrue(lock.toString().endsWith("[Unlocked]"));
+
+        // 每次写锁都产生新的戳
+        long w2 = lock.tryWriteLock();
+        assertNotEquals(0, w2);
+        assertNotEquals(w, w2);
+        lock.unlock(w2);
+        assertNotEquals(optimistic, lock.tryOptimisticRead());
+    }
+
+    @Test
+    public void testConversion() throws Exception {
+        OptimisticReadWriteLock lock = new OptimisticReadWriteLock();
+
+        // 乐观读 -> 读锁 -> 写锁
+        long stamp = lock.tryOptimisticRead();
+        long read = lock.tryConvertToReadLock(stamp);
+        assertNotEquals(0, read);
+        assertEquals(1, lock.getReadLockCount());
+        assertEquals(read, lock.tryConvertToReadLock(read));
+        long write = lock.tryConvertToWriteLock(read);
+        assertNotEquals(0, write);
+        assertTrue(lock.isWriteLocked());
+        assertFalse(lock.isReadLocked());
+        assertEquals(write, lock.tryConvertToWriteLock(write));
+
+        // 写锁 -> 乐观读，之前的乐观读戳失效
+        long optimistic = lock.tryConvertToOptimisticRead(write);
+        assertNotEquals(0, optimistic);
+        assertFalse(lock.isWriteLocked());
+        assertTrue(lock.validate(optimistic));
+        assertFalse(lock.validate(stamp));
+        assertEquals(0, lock.tryConvertToReadLock(stamp));
+        assertEquals(0, lock.tryConvertToWriteLock(stamp));
+
+        // 乐观读 -> 写锁 -> 读锁
+        write = lock.tryConvertToWriteLock(optimistic);
+        assertNotEquals(0, write);
+        read = lock.tryConvertToReadLock(write);
+        assertNotEquals(0, read);
+        assertFalse(lock.isWriteLocked());
+        assertEquals(1, lock.getReadLockCount());
+
+        // 有两个读者时不能升级
+        long other = lock.readLock();
+        assertEquals(0, lock.tryConvertToWriteLock(read));
+        lock.unlockRead(other);
+
+        // 读锁 -> 乐观读
+        optimistic = lock.tryConvertToOptimisticRead(read);
+        assertTrue(lock.validate(optimistic));
+        assertFalse(lock.isReadLocked());
+        assertEquals(optimistic, lock.tryConvertToOptimisticRead(optimistic));
+
+        // 降级会唤醒等待的读者
+        write = lock.writeLock();
+        CountDownLatch acquired = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            new Thread(() -> {
+                long s = lock.readLock();
+                acquired.countDown();
+                lock.unlockRead(s);
+            }).start();
+        }
+        while (lock.getQueueLength() < 3) {
+            Thread.yield();
+        }
+        read = lock.tryConvertToReadLock(write);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        lock.unlockRead(read);
+        assertFalse(lock.isReadLocked());
+    }
+
+    /**
+     * 版本号溢出之后，释放写锁、降级和转换为乐观读的路径都跳回初始状态，戳不会变成表示失败的 0。
+     */
+    @Test
+    public void testVersionWrap() {
+        final long lastVersion = -2 * OptimisticReadWriteLock.WBIT;
+        OptimisticReadWriteLock lock = new OptimisticReadWriteLock();
+        long origin = lock.tryOptimisticRead();
+
+        lock.setState(lastVersion);
+        long w = lock.writeLock();
+        assertEquals(0, lock.tryOptimisticRead());
+        lock.unlockWrite(w);
+        assertFalse(lock.validate(0));
+        assertEquals(origin, lock.tryOptimisticRead());
+        long w2 = lock.tryConvertToWriteLock(lock.tryOptimisticRead());
+        assertNotEquals(0, w2);
+        lock.unlockWrite(w2);
+
+        lock.setState(lastVersion);
+        w = lock.writeLock();
+        long read = lock.tryConvertToReadLock(w);
+        assertEquals(origin | 1, read);
+        assertEquals(1, lock.getReadLockCount());
+        assertTrue(lock.validate(read));
+        lock.unlockRead(read);
+
+        lock.setState(lastVersion);
+        w = lock.writeLock();
+        long optimistic = lock.tryConvertToOptimisticRead(w);
+        assertEquals(origin, optimistic);
+        assertTrue(lock.validate(optimistic));
+        assertFalse(lock.isWriteLocked());
+    }
+
+    @Test
+    public void testBlocking() throws Exception {
+        OptimisticReadWriteLock lock = new OptimisticReadWriteLock();
+        long read = lock.readLock();
+        AtomicLong writerStamp = new AtomicLong();
+        Thread writer = new Thread(() -> writerStamp.set(lock.writeLock()));
+        writer.start();
+        while (!lock.hasQueuedThreads()) {
+            Thread.yield();
+        }
+        // 有写者在排队时，新来的读者也要排队，但 tryReadLock 可以插队
+        assertEquals(0, lock.tryReadLock(10, TimeUnit.MILLISECONDS));
+        long barging = lock.tryReadLock();
+        assertNotEquals(0, barging);
+        lock.unlockRead(barging);
+        lock.unlockRead(read);
+        writer.join();
+        assertTrue(lock.isWriteLocked());
+
+        // 其他线程中的 fail() 不会让测试失败，所以记录结果，在测试线程中断言
+        AtomicBoolean readerInterrupted = new AtomicBoolean();
+        Thread reader = new Thread(() -> {
+            try {
+                lock.readLockInterruptibly();
+            } catch (InterruptedException e) {
+                readerInterrupted.set(true);
+            }
+        });
+        reader.start();
+        while (!lock.hasQueuedThreads()) {
+            Thread.yield();
+        }
+        reader.interrupt();
+        reader.join();
+        assertTrue(readerInterrupted.get());
+        assertEquals(0, lock.tryWriteLock(10, TimeUnit.MILLISECONDS));
+        lock.unlockWrite(writerStamp.get());
+        long w = lock.tryWriteLock(10, TimeUnit.MILLISECONDS);
+        assertNotEquals(0, w);
+        lock.unlockWrite(w);
+        assertFalse(lock.hasQueuedThreads());
+    }
+
+    /**
+     * 写者在写锁下修改 x 和 y，保持 x + y == 0；读者用乐观读、读锁和升级读取，validate 成功时一定看到一致的值。
+     */
+    @Test
+    public void testConsistency() throws Exception {
+        OptimisticReadWriteLock lock = new OptimisticReadWriteLock();
+        long[] pair = new long[2];
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicInteger inconsistent = new AtomicInteger();
+        AtomicLong validated = new AtomicLong(), writes = new AtomicLong();
+        Thread[] threads = new Thread[6];
+        for (int t = 0; t < threads.length; t++) {
+            int id = t;
+            threads[t] = new Thread(() -> {
+                while (!stop.get()) {
+                    if (id == 0) {
+                        long stamp = lock.writeLock();
+                        pair[0]++;
+                        pair[1]--;
+                        lock.unlockWrite(stamp);
+                        writes.incrementAndGet();
+                    } else if (id == 1) {
+                        // 读取后升级为写锁修改
+                        long stamp = lock.readLock();
+                        long x = pair[0], y = pair[1];
+                        long w = lock.tryConvertToWriteLock(stamp);
+                        if (w == 0) {
+                            lock.unlockRead(stamp);
+                        } else {
+                            pair[0] = x + 1;
+                            pair[1] = y - 1;
+                            lock.unlockWrite(w);
+                        }
+                    } else if (id == 2) {
+                        long stamp = lock.readLock();
+                        if (pair[0] + pair[1] != 0) {
+                            inconsistent.incrementAndGet();
+                        }
+                        lock.unlockRead(stamp);
+                    } else {
+                        long stamp = lock.tryOptimisticRead();
+                        long x = pair[0], y = pair[1];
+                        if (lock.validate(stamp)) {
+                            validated.incrementAndGet();
+                            if (x + y != 0) {
+                                inconsistent.incrementAndGet();
+                            }
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        Thread.sleep(500);
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, inconsistent.get());
+        assertTrue(validated.get() > 0);
+        assertTrue(writes.get() > 0);
+        assertEquals(0, pair[0] + pair[1]);
+        assertFalse(lock.isReadLocked() || lock.isWriteLocked());
+    }
+
+    /**
+     * 读取路由表：按 key 查找一个 64 项的表。写者每 10 毫秒替换一次表中的一项。
+     * 每种读法在 1 到 64 个读线程下各运行 300 毫秒，输出所有读线程合计的每秒读取次数（百万次）。
+     * 读写线程见 {@link RouteTableBenchmark}。
+     */
+    @Test
+    public void testBenchmark() throws Exception {
+        System.out.println(Runtime.getRuntime().availableProcessors() + " cpus");
+        String[] names = {"RRWL.readLock", "ORWL.readLock", "ORWL.optimistic", "StampedLock.optimistic"};
+        int[] threadCounts = {1, 2, 4, 8, 16, 32, 64};
+        System.out.printf("%-24s", "reads (Mops/s)");
+        for (int threads : threadCounts) {
+            System.out.printf("%8d", threads);
+        }
+        System.out.println();
+        // 预热，让每种读法都被 JIT 编译
+        for (String name : names) {
+            run(name, 1, 300);
+        }
+        for (String name : names) {
+            System.out.printf("%-24s", name);
+            for (int threads : threadCounts) {
+                System.out.printf("%8.1f", run(name, threads, 300));
+            }
+            System.out.println();
+        }
+
+        /*
+        输出：
+        1 cpus
+        reads (Mops/s)                 1       2       4       8      16      32      64
+        RRWL.readLock               55.3    33.6    37.4    25.8    23.5    22.8    21.5
+        ORWL.readLock               52.3    50.9    50.6    52.7    53.3    53.9    52.4
+        ORWL.optimistic            315.1   288.5   321.2   318.4   312.4   323.6   321.6
+        StampedLock.optimistic     347.9   349.9   352.7   354.9   347.6   355.2   354.3
+
+        结论：
+        - 这台机器只有 1 个 CPU，线程数增加只是轮流运行，测不出多核下缓存行的争用，合计吞吐量应该是平的。
+          多核下读锁的每次获取和释放都要 CAS 同一个 state，吞吐量会随线程数下降；乐观读不写共享变量，可以线性扩展。
+        - 即使没有缓存行争用，乐观读也比读锁快 6 倍左右：读锁一次读取要做两次 CAS，乐观读只有两次 volatile 读。
+          和 JDK 的 StampedLock 相比慢一些，差别在 AQS 子类多一层调用和 loadFence 的获取方式，数量级相同。
+        - RRWL 从 1 个线程到 2 个线程下降明显：它要为每个读者维护重入计数，只有一个读线程时命中 firstReader 的快速路径，
+          多个线程时要查 ThreadLocal。不可重入的读锁没有这部分开销，比 RRWL 快 2 倍左右。
+        - 写者每 10 毫秒写一次，validate 失败的比例可以忽略。对每分钟只写一次的配置和路由表，乐观读几乎总是成功。
+         */
+    }
+
+    private static double run(String name, int readers, long millis) throws InterruptedException {
+        switch (name) {
+            case "RRWL.readLock": {
+                ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+                return RouteTableBenchmark.run((table, k) -> {
+                    lock.readLock().lock();
+                    long v = table[k];
+                    lock.readLock().unlock();
+                    return v;
+                }, (table, k, v) -> {
+                    lock.writeLock().lock();
+                    table[k] = v;
+                    lock.writeLock().unlock();
+                }, readers, millis);
+            }
+            case "ORWL.readLock": {
+                OptimisticReadWriteLock lock = new OptimisticReadWriteLock();
+                return RouteTableBenchmark.run((table, k) -> {
+                    long stamp = lock.readLock();
+                    long v = table[k];
+                    lock.unlockRead(stamp);
+                    return v;
+                }, (table, k, v) -> {
+                    long stamp = lock.writeLock();
+                    table[k] = v;
+                    lock.unlockWrite(stamp);
+                }, readers, millis);
+            }
+            case "ORWL.optimistic": {
+                OptimisticReadWriteLock lock = new OptimisticReadWriteLock();
+                return RouteTableBenchmark.run((table, k) -> {
+                    long stamp = lock.tryOptimisticRead();
+                    long v = table[k];
+                    if (!lock.validate(stamp)) {
+                        stamp = lock.readLock();
+                        v = table[k];
+                        lock.unlockRead(stamp);
+                    }
+                    return v;
+                }, (table, k, v) -> {
+                    long stamp = lock.writeLock();
+                    table[k] = v;
+                    lock.unlockWrite(stamp);
+                }, readers, millis);
+            }
+            default: {
+                StampedLock lock = new StampedLock();
+                return RouteTableBenchmark.run((table, k) -> {
+                    long stamp = lock.tryOptimisticRead();
+                    long v = table[k];
+                    if (!lock.validate(stamp)) {
+                        stamp = lock.readLock();
+                        v = table[k];
+                        lock.unlockRead(stamp);
+                    }
+                    return v;
+                }, (table, k, v) -> {
+                    long stamp = lock.writeLock();
+                    table[k] = v;
+                    lock.unlockWrite(stamp);
+                }, readers, millis);
+            }
+        }
+    }
+}
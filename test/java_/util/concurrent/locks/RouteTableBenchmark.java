@@ -0,0 +1,87 @@
+package java_.util.concurrent.locks;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 读取路由表的基准：读线程按随机的 key 查找一个 64 项的表，写者每 10 毫秒替换一次表中的一项。
+ * {@link OptimisticReadWriteLockTest} 和 {@link BiasedReadWriteLockTest} 共用这个基准，只传入读写表的方式。
+ */
+final class RouteTableBenchmark {
+
+    /**
+     * 在锁的保护下读取 table[k]。
+     */
+    interface Read {
+        long read(long[] table, int k);
+    }
+
+    /**
+     * 在锁的保护下写入 table[k] = v。
+     */
+    interface Write {
+        void write(long[] table, int k, long v);
+    }
+
+    static volatile long sink;
+
+    private RouteTableBenchmark() {
+    }
+
+    /**
+     * readers 个读线程和 1 个写线程同时运行 millis 毫秒，返回所有读线程合计的每秒读取次数（百万次）。
+     */
+    static double run(Read read, Write write, int readers, long millis) throws InterruptedException {
+        long[] table = new long[64];
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLong reads = new AtomicLong();
+        // 所有线程都启动之后再一起开始，避免先启动的线程在计时之前就开始读取
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] threads = new Thread[readers + 1];
+        threads[0] = new Thread(() -> {
+            awaitUninterruptibly(go);
+            for (int i = 0; !stop.get(); i++) {
+                write.write(table, i & 63, i);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        for (int t = 1; t <= readers; t++) {
+            int seed = t;
+            threads[t] = new Thread(() -> {
+                long count = 0, sum = 0;
+                awaitUninterruptibly(go);
+                for (int key = seed; !stop.get(); count++) {
+                    key = key * 1103515245 + 12345;
+                    sum += read.read(table, (key >>> 16) & 63);
+                }
+                reads.addAndGet(count);
+                sink += sum;
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        long start = System.nanoTime();
+        go.countDown();
+        Thread.sleep(millis);
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        return reads.get() * 1e3 / elapsed;
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}